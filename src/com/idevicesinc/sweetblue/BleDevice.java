@@ -7,6 +7,7 @@ import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 import android.bluetooth.BluetoothDevice;
 import android.bluetooth.BluetoothGatt;
@@ -1612,7 +1613,14 @@ public class BleDevice implements UsesCustomNull
 			 * when {@link BleDevice#loadHistoricalData()} (or overloads) was called a second time. This doesn't
 			 * affect the actual loading process at all, and {@link #LOADED} will eventually be returned for both callbacks.
 			 */
-			ALREADY_LOADING;
+			ALREADY_LOADING,
+
+			/**
+			 * Sent after each chunk of a load when {@link BleDeviceConfig#historicalDataLoadChunkSize} is set. Data is loaded newest first,
+			 * so {@link HistoricalDataLoadEvent#range()} is the range that can already be accessed through {@link BleDevice#getHistoricalData_iterator(UUID)}
+			 * (or overloads), and {@link HistoricalDataLoadEvent#progress()} is how far along the load is. Expect {@link #LOADED} once the last chunk is in.
+			 */
+			PARTIALLY_LOADED;
 
 			/**
 			 * Returns true if <code>this==</code> {@link #NULL}.
@@ -1655,12 +1663,19 @@ public class BleDevice implements UsesCustomNull
 			public Status status() {  return m_status; }
 			private final Status m_status;
 
-			HistoricalDataLoadEvent(final BleDevice device, final UUID uuid, final EpochTimeRange range, final Status status)
+			/**
+			 * How much of the data has been loaded, from <code>0.0</code> to <code>1.0</code>. Only in between for {@link Status#PARTIALLY_LOADED}.
+			 */
+			public double progress() {  return m_progress; }
+			private final double m_progress;
+
+			HistoricalDataLoadEvent(final BleDevice device, final UUID uuid, final EpochTimeRange range, final Status status, final double progress)
 			{
 				m_device = device;
 				m_uuid = uuid;
 				m_range = range;
 				m_status = status;
+				m_progress = progress;
 			}
 
 			/**
@@ -1679,7 +1694,8 @@ public class BleDevice implements UsesCustomNull
 					this.getClass(),
 					"device", device().getName_debug(),
 					"uuid", device().getManager().getLogger().uuidName(uuid()),
-					"status", status()
+					"status", status(),
+					"progress", progress()
 				);
 			}
 		}
@@ -1804,6 +1820,115 @@ public class BleDevice implements UsesCustomNull
 		void onEvent(final HistoricalDataQueryEvent e);
 	}
 
+	/**
+	 * An opt-in alternative to getting one {@link ReadWriteListener.ReadWriteEvent} per notification, set through
+	 * {@link BleDevice#setListener_NotificationBatch(UUID, NotificationBatchListener)}. Meant for high-rate sensor streams
+	 * where a callback and a few allocations per packet start to add up.
+	 */
+	@com.idevicesinc.sweetblue.annotations.Advanced
+	@com.idevicesinc.sweetblue.annotations.Lambda
+	public static interface NotificationBatchListener
+	{
+		/**
+		 * Passed to {@link NotificationBatchListener#onEvent(NotificationBatchEvent)} with every notification received for
+		 * a characteristic since the last time {@link BleManager#update(double)} ran, oldest first. The same instance is reused
+		 * from batch to batch so don't hold on to it past the callback, though the <code>byte[]</code> instances returned
+		 * from {@link #data(int)} are yours to keep.
+		 */
+		public static class NotificationBatchEvent
+		{
+			private static final int INITIAL_CAPACITY = 16;
+
+			/**
+			 * The {@link BleDevice} the notifications came from.
+			 */
+			public BleDevice device() {  return m_device; }
+			private final BleDevice m_device;
+
+			/**
+			 * The {@link UUID} of the characteristic the notifications came from.
+			 */
+			public UUID charUuid() {  return m_charUuid;  }
+			private final UUID m_charUuid;
+
+			/**
+			 * The number of notifications in this batch, always at least one.
+			 */
+			public int count() {  return m_count;  }
+			private int m_count = 0;
+
+			private byte[][] m_data = new byte[INITIAL_CAPACITY][];
+			private long[] m_timestamps = new long[INITIAL_CAPACITY];
+
+			NotificationBatchEvent(final BleDevice device, final UUID charUuid)
+			{
+				m_device = device;
+				m_charUuid = charUuid;
+			}
+
+			/**
+			 * The payload of the notification at the given index, which can be <code>null</code> or empty if that's what the device sent.
+			 */
+			public @Nullable(Prevalence.RARE) byte[] data(final int index)
+			{
+				return m_data[index];
+			}
+
+			/**
+			 * The time the notification at the given index came in from the native stack, in milliseconds since 1970.
+			 */
+			public long timestamp(final int index)
+			{
+				return m_timestamps[index];
+			}
+
+			void add(final byte[] data, final long timestamp)
+			{
+				if( m_count == m_data.length )
+				{
+					final byte[][] data_new = new byte[m_data.length*2][];
+					final long[] timestamps_new = new long[m_timestamps.length*2];
+
+					System.arraycopy(m_data, 0, data_new, 0, m_count);
+					System.arraycopy(m_timestamps, 0, timestamps_new, 0, m_count);
+
+					m_data = data_new;
+					m_timestamps = timestamps_new;
+				}
+
+				m_data[m_count] = data;
+				m_timestamps[m_count] = timestamp;
+				m_count++;
+			}
+
+			void clear()
+			{
+				for( int i = 0; i < m_count; i++ )
+				{
+					m_data[i] = null;
+				}
+
+				m_count = 0;
+			}
+
+			@Override public String toString()
+			{
+				return Utils.toString
+				(
+					this.getClass(),
+					"device",		device().getName_debug(),
+					"charUuid",		device().getManager().getLogger().uuidName(charUuid()),
+					"count",		count()
+				);
+			}
+		}
+
+		/**
+		 * Called on the update thread once per {@link BleManager#update(double)} tick for each characteristic that got notifications since the last tick.
+		 */
+		void onEvent(final NotificationBatchEvent e);
+	}
+
 	static ConnectionFailListener DEFAULT_CONNECTION_FAIL_LISTENER = new DefaultConnectionFailListener();
 
 	//--- DRK > Some reusable empty-array-type instances so we don't have to create them from scratch over and over on demand.
@@ -1837,6 +1962,8 @@ public class BleDevice implements UsesCustomNull
 	private final P_RssiPollManager m_rssiPollMngr_auto;
 	private final P_Task_Disconnect m_dummyDisconnectTask;
 	private final P_HistoricalDataManager m_historicalDataMngr;
+	private final P_NotificationBatcher m_notificationBatcher = new P_NotificationBatcher(this);
+	private final ConcurrentHashMap<UUID, ByteRingBuffer> m_notificationStreams = new ConcurrentHashMap<UUID, ByteRingBuffer>();
 	final P_BondManager m_bondMngr;
 
 	private ReadWriteListener m_defaultReadWriteListener = null;
@@ -2165,6 +2292,87 @@ public class BleDevice implements UsesCustomNull
 		m_historicalDataMngr.setListener(listener_nullable);
 	}
 
+	/**
+	 * Starts copying every notification for the given characteristic into a fixed-size, off-heap {@link ByteRingBuffer},
+	 * straight from the native callback thread before anything else happens to it. Read it from any thread through
+	 * {@link ByteRingBuffer#newCursor()}, which gives you views into the buffer's memory instead of copies, so memory
+	 * use stays fixed regardless of notification rate. Normal delivery through {@link ReadWriteListener} instances is unaffected.
+	 * You still need to call {@link #enableNotify(UUID)} (or overloads) as usual to actually turn notifications on.
+	 * <br><br>
+	 * Timestamps on each frame are milliseconds since 1970. If a stream is already open for the characteristic it's returned as-is.
+	 */
+	@com.idevicesinc.sweetblue.annotations.Advanced
+	public @Nullable(Prevalence.NEVER) ByteRingBuffer openNotificationStream(final UUID characteristicUuid, final int capacityInBytes, final ByteRingBuffer.OverflowPolicy policy)
+	{
+		final ByteRingBuffer existing = m_notificationStreams.get(characteristicUuid);
+
+		if( existing != null )  return existing;
+
+		final ByteRingBuffer stream = new ByteRingBuffer(capacityInBytes, policy);
+
+		if( isNull() )  return stream;
+
+		final ByteRingBuffer raced = m_notificationStreams.putIfAbsent(characteristicUuid, stream);
+
+		return raced != null ? raced : stream;
+	}
+
+	/**
+	 * Returns the stream previously opened with {@link #openNotificationStream(UUID, int, ByteRingBuffer.OverflowPolicy)}, or <code>null</code>.
+	 */
+	@com.idevicesinc.sweetblue.annotations.Advanced
+	public @Nullable(Prevalence.NORMAL) ByteRingBuffer getNotificationStream(final UUID characteristicUuid)
+	{
+		return m_notificationStreams.get(characteristicUuid);
+	}
+
+	/**
+	 * Stops writing notifications to the stream opened with {@link #openNotificationStream(UUID, int, ByteRingBuffer.OverflowPolicy)}.
+	 * Any open {@link ByteRingBuffer.Cursor} instances can still read what's left.
+	 */
+	@com.idevicesinc.sweetblue.annotations.Advanced
+	public void closeNotificationStream(final UUID characteristicUuid)
+	{
+		m_notificationStreams.remove(characteristicUuid);
+	}
+
+	/**
+	 * Called from the native callback thread.
+	 */
+	void writeToNotificationStream(final UUID characteristicUuid, final byte[] value, final long timestamp)
+	{
+		if( m_notificationStreams.isEmpty() )  return;
+
+		final ByteRingBuffer stream = m_notificationStreams.get(characteristicUuid);
+
+		if( stream != null )
+		{
+			stream.write(value, timestamp);
+		}
+	}
+
+	/**
+	 * Switches notifications for the given characteristic over to batched delivery. Instead of going through {@link ReadWriteListener}
+	 * instances one at a time, all notifications received between {@link BleManager#update(double)} ticks are handed to the given
+	 * listener at once, saving a callback and a {@link ReadWriteListener.ReadWriteEvent} per packet. You still need to call
+	 * {@link #enableNotify(UUID)} (or overloads) as usual to actually turn notifications on. Notifications are still logged
+	 * as historical data, but {@link BleTransaction} instances won't see them. Pass <code>null</code> to go back to normal delivery.
+	 */
+	@com.idevicesinc.sweetblue.annotations.Advanced
+	public void setListener_NotificationBatch(final UUID characteristicUuid, @Nullable(Prevalence.NORMAL) final NotificationBatchListener listener_nullable)
+	{
+		if( isNull() )  return;
+
+		//--- The batcher is iterated on the update thread every tick, so changes to it have to happen there too.
+		getManager().getUpdateLoop().postIfNeeded(new Runnable()
+		{
+			@Override public void run()
+			{
+				m_notificationBatcher.setListener(characteristicUuid, listener_nullable);
+			}
+		});
+	}
+
 	/**
 	 * Returns the connection failure retry count during a retry loop. Basic example use case is to provide a callback to
 	 * {@link #setListener_ConnectionFail(ConnectionFailListener)} and update your application's UI with this method's return value downstream of your
@@ -3584,6 +3792,58 @@ public class BleDevice implements UsesCustomNull
 		});
 	}
 
+	/**
+	 * Runs a query compiled by {@link HistoricalDataQuery#compile()} directly against the historical data for this device,
+	 * whether it's in memory or in the database, and whether or not the database understands SQL. See {@link HistoricalDataQueryPlan}.
+	 */
+	@com.idevicesinc.sweetblue.annotations.Advanced
+	@com.idevicesinc.sweetblue.annotations.Alpha
+	public @Nullable(Prevalence.NEVER) HistoricalDataQueryListener.HistoricalDataQueryEvent queryHistoricalData(final HistoricalDataQueryPlan plan)
+	{
+		final String query = plan.toSql(getHistoricalDataTableName(plan.getUuid()));
+
+		if( isNull() )
+		{
+			return new HistoricalDataQueryListener.HistoricalDataQueryEvent(this, plan.getUuid(), new EmptyCursor(), HistoricalDataQueryListener.Status.NULL, query);
+		}
+
+		final HistoricalDataCursor source = m_historicalDataMngr.getCursor(plan.getUuid(), plan.getRange());
+		final Cursor cursor = plan.execute(source, m_historicalDataMngr.getDecoder());
+
+		return new HistoricalDataQueryListener.HistoricalDataQueryEvent(this, plan.getUuid(), cursor, HistoricalDataQueryListener.Status.SUCCESS, query);
+	}
+
+	/**
+	 * Same as {@link #queryHistoricalData(HistoricalDataQueryPlan)} but runs off the calling thread.
+	 */
+	@com.idevicesinc.sweetblue.annotations.Advanced
+	@com.idevicesinc.sweetblue.annotations.Alpha
+	public void queryHistoricalData(final HistoricalDataQueryPlan plan, final HistoricalDataQueryListener listener)
+	{
+		if( isNull() )
+		{
+			listener.onEvent(queryHistoricalData(plan));
+
+			return;
+		}
+
+		m_historicalDataMngr.post(new Runnable()
+		{
+			@Override public void run()
+			{
+				final BleDevice.HistoricalDataQueryListener.HistoricalDataQueryEvent e = queryHistoricalData(plan);
+
+				BleDevice.this.getManager().getUpdateLoop().postIfNeeded(new Runnable()
+				{
+					@Override public void run()
+					{
+						listener.onEvent(e);
+					}
+				});
+			}
+		});
+	}
+
 	@com.idevicesinc.sweetblue.annotations.Advanced
 	@com.idevicesinc.sweetblue.annotations.Alpha
 	public @Nullable(Prevalence.NEVER) HistoricalDataQuery.Part_Select select()
@@ -3831,6 +4091,28 @@ public class BleDevice implements UsesCustomNull
 		return m_historicalDataMngr.getWithOffset(uuid, EpochTimeRange.denull(range), offsetFromStart);
 	}
 
+	/**
+	 * Returns min/max/mean/count of the given characteristic's historical data within the given range, one {@link HistoricalDataRollup}
+	 * per non-empty bucket of the given resolution, oldest first. Requires {@link BleDeviceConfig#historicalDataRollupDecoder} to be set,
+	 * otherwise the list is always empty. If one of {@link BleDeviceConfig#historicalDataRollupTiers} fits the resolution evenly and
+	 * has seen all the data in the range the answer comes from those precomputed buckets, so asking for e.g. hourly buckets over a month
+	 * is cheap. Otherwise the raw data is gone through one by one. Precomputed buckets only start with the first data added after
+	 * the app starts, so data already on disk from before that is always read raw. If the range starts or ends partway through
+	 * a precomputed bucket, that part of the range is read raw too so the result only covers data inside the range.
+	 * <br><br>
+	 * NOTE: Precomputed buckets are only cleared by deletes of all data for a characteristic, so after deleting part of the data
+	 * rollups may still include it.
+	 *
+	 * @see com.idevicesinc.sweetblue.BleDeviceConfig.HistoricalDataRollupDecoder
+	 */
+	@com.idevicesinc.sweetblue.annotations.Advanced
+	public @Nullable(Prevalence.NEVER) List<HistoricalDataRollup> getHistoricalData_rollups(final UUID uuid, final EpochTimeRange range, final Interval resolution)
+	{
+		if( isNull() ) return new ArrayList<HistoricalDataRollup>();
+
+		return m_historicalDataMngr.getRollups(uuid, EpochTimeRange.denull(range), resolution);
+	}
+
 	/**
 	 * Returns the number of historical data entries that have been logged for the device's given characteristic.
 	 *
@@ -4759,11 +5041,21 @@ public class BleDevice implements UsesCustomNull
 		return m_txnMngr.m_otaTxn;
 	}
 
+	P_ConnectionFailManager getConnectionFailManager()
+	{
+		return m_connectionFailMngr;
+	}
+
 	P_PollManager getPollManager()
 	{
 		return m_pollMngr;
 	}
 
+	P_NotificationBatcher getNotificationBatcher()
+	{
+		return m_notificationBatcher;
+	}
+
 	P_ServiceManager getServiceManager()
 	{
 		return m_serviceMngr;
@@ -4805,6 +5097,14 @@ public class BleDevice implements UsesCustomNull
 		stateTracker_main().set(intent, BleStatuses.GATT_STATUS_NOT_APPLICABLE, UNDISCOVERED, true, DISCOVERED, false, ADVERTISING, false, m_bondMngr.getNativeBondingStateOverrides(), DISCONNECTED, true);
 	}
 
+	/**
+	 * Called when the device is removed from the manager without being cached, so nothing will hand it out again.
+	 */
+	void onRemoved()
+	{
+		if( m_historicalDataMngr != null )  m_historicalDataMngr.onRemoved();
+	}
+
 	double getTimeSinceLastDiscovery()
 	{
 		return m_timeSinceLastDiscovery;
@@ -4833,6 +5133,26 @@ public class BleDevice implements UsesCustomNull
 		m_reconnectMngr_longTerm.update(timeStep);
 		m_reconnectMngr_shortTerm.update(timeStep);
 		m_rssiPollMngr.update(timeStep);
+		m_notificationBatcher.update();
+		m_historicalDataMngr.update(timeStep);
+	}
+
+	/**
+	 * Returns how long in seconds until {@link #update(double)} would actually do something, assuming nothing else happens in the meantime.
+	 */
+	double getTimeToNextUpdate()
+	{
+		if( m_notificationBatcher.hasPending() )  return 0.0;
+
+		double soonest = m_txnMngr.getTimeToNextUpdate();
+
+		soonest = Math.min(soonest, m_pollMngr.getTimeToNextUpdate());
+		soonest = Math.min(soonest, m_reconnectMngr_longTerm.getTimeToNextUpdate());
+		soonest = Math.min(soonest, m_reconnectMngr_shortTerm.getTimeToNextUpdate());
+		soonest = Math.min(soonest, m_rssiPollMngr.getTimeToNextUpdate());
+		soonest = Math.min(soonest, m_historicalDataMngr.getTimeToNextUpdate());
+
+		return soonest;
 	}
 
 	void bond_justAddTheTask(E_TransactionLockBehavior lockBehavior)
@@ -5622,6 +5942,11 @@ public class BleDevice implements UsesCustomNull
 		m_txnMngr.onReadWriteResultCallbacksCalled();
 	}
 
+	void addHistoricalData_notification(final UUID charUuid, final byte[] data, final long timestamp)
+	{
+		m_historicalDataMngr.add_single(charUuid, data, new EpochTime(timestamp), BleDeviceConfig.HistoricalDataLogFilter.Source.NOTIFICATION);
+	}
+
 	ReadWriteListener.ReadWriteEvent NULL_READWRITE_EVENT()
 	{
 		if (m_nullReadWriteEvent != null)
@@ -58,6 +58,16 @@ public class BleDeviceConfig extends BleServerConfig implements Cloneable
 	 * Default value for {@link #defaultTxPower}.
 	 */
 	public static final int DEFAULT_TX_POWER							= -50;
+
+	/**
+	 * Default is 1440 buckets, i.e. one day's worth of one-minute buckets - see {@link #historicalDataRollupBucketLimit}.
+	 */
+	public static final int DEFAULT_HISTORICAL_DATA_ROLLUP_BUCKET_LIMIT	= 24*60;
+
+	/**
+	 * Default value for {@link #historicalDataCompactionRate}.
+	 */
+	public static final double DEFAULT_HISTORICAL_DATA_COMPACTION_RATE	= 10.0*60.0;
 	
 	/**
 	 * @deprecated Use {@link BleStatuses#BOND_FAIL_REASON_NOT_APPLICABLE}.
@@ -337,6 +347,83 @@ public class BleDeviceConfig extends BleServerConfig implements Cloneable
 	@Nullable(Prevalence.NORMAL)
 	public HistoricalDataLogFilter historicalDataLogFilter					= new DefaultHistoricalDataLogFilter();
 
+	/**
+	 * Default is {@link Interval#DISABLED} - if enabled, historical data that {@link #historicalDataLogFilter} sends to disk isn't written
+	 * right away but buffered together with data from all other devices and characteristics, then written as one batch once this much
+	 * time has passed or enough data has piled up. This is the most data (in time) that could be lost if the app dies, in exchange for far
+	 * fewer, larger writes when logging at high rates. Buffered data is also written out when {@link BleManager#onPause()} is called.
+	 */
+	@com.idevicesinc.sweetblue.annotations.Advanced
+	@Nullable(Prevalence.NORMAL)
+	public Interval historicalDataMaxWriteDelay							= Interval.DISABLED;
+
+	/**
+	 * Default is <code>null</code> - provide an implementation to turn the blob of each {@link HistoricalData} into a number, for example a
+	 * temperature or heart rate. Doing so turns on rollups: as data is logged, min/max/mean/count are kept per bucket of each width in
+	 * {@link #historicalDataRollupTiers}, so that {@link BleDevice#getHistoricalData_rollups(UUID, EpochTimeRange, Interval)} can answer
+	 * long-range queries (e.g. "hourly averages for the last month") without going through every raw sample.
+	 */
+	@com.idevicesinc.sweetblue.annotations.Advanced
+	@Nullable(Prevalence.NORMAL)
+	public HistoricalDataRollupDecoder historicalDataRollupDecoder			= null;
+
+	/**
+	 * Default is one minute and one hour - the bucket widths kept for rollups if {@link #historicalDataRollupDecoder} is set.
+	 * Queries use the coarsest width that's still no coarser than the requested resolution.
+	 */
+	@com.idevicesinc.sweetblue.annotations.Advanced
+	@Nullable(Prevalence.NORMAL)
+	public Interval[] historicalDataRollupTiers								= {Interval.mins(1), Interval.mins(60)};
+
+	/**
+	 * Default is {@link #DEFAULT_HISTORICAL_DATA_ROLLUP_BUCKET_LIMIT} - the most buckets kept in memory per characteristic for each of
+	 * {@link #historicalDataRollupTiers}. Once exceeded the oldest bucket is dropped, and queries reaching back before the oldest bucket
+	 * kept fall back to a finer tier or to the raw data.
+	 */
+	@com.idevicesinc.sweetblue.annotations.Advanced
+	@Nullable(Prevalence.NORMAL)
+	public Integer historicalDataRollupBucketLimit							= DEFAULT_HISTORICAL_DATA_ROLLUP_BUCKET_LIMIT;
+
+	/**
+	 * Default is {@link Interval#DISABLED} - if enabled, historical data older than this is deleted in the background every
+	 * {@link #historicalDataCompactionRate}, both from memory and from the {@link com.idevicesinc.sweetblue.backend.historical.Backend_HistoricalDatabase}.
+	 * This bounds disk usage by age rather than by count, without the app having to issue range deletes of its own. Data for MAC addresses
+	 * that aren't currently discovered is expired too, going by the value in {@link BleManagerConfig}.
+	 * The database may hang on to some expired data until it can drop it cheaply, see
+	 * {@link com.idevicesinc.sweetblue.backend.historical.Backend_HistoricalDatabase_Expiry#expire_singleUuid(String, UUID, long)}.
+	 */
+	@com.idevicesinc.sweetblue.annotations.Advanced
+	@Nullable(Prevalence.NORMAL)
+	public Interval historicalDataRetention								= Interval.DISABLED;
+
+	/**
+	 * Default is {@link Interval#DISABLED} - same idea as {@link #historicalDataRetention} but for the buckets kept for {@link #historicalDataRollupTiers}.
+	 * Rollups only live in memory and start over each session, so this can only trim buckets built since the app started; it
+	 * can't make them outlive the process. Note that {@link #historicalDataRollupBucketLimit} still applies as well.
+	 */
+	@com.idevicesinc.sweetblue.annotations.Advanced
+	@Nullable(Prevalence.NORMAL)
+	public Interval historicalDataRollupRetention							= Interval.DISABLED;
+
+	/**
+	 * Default is {@link #DEFAULT_HISTORICAL_DATA_COMPACTION_RATE} seconds - how often {@link #historicalDataRetention} and
+	 * {@link #historicalDataRollupRetention} are enforced. Only has an effect if one of them is enabled.
+	 */
+	@com.idevicesinc.sweetblue.annotations.Advanced
+	@Nullable(Prevalence.NORMAL)
+	public Interval historicalDataCompactionRate							= Interval.secs(DEFAULT_HISTORICAL_DATA_COMPACTION_RATE);
+
+	/**
+	 * Default is <code>null</code> - if set, {@link BleDevice#loadHistoricalData()} (or overloads) loads at most this many entries at a time,
+	 * newest first, instead of everything at once. Each chunk is available through {@link BleDevice#getHistoricalData_iterator(UUID)} (or overloads)
+	 * as soon as it's loaded, and is reported through {@link BleDevice.HistoricalDataLoadListener.Status#PARTIALLY_LOADED}, so an app that only
+	 * shows recent data doesn't have to wait for a long history to come off disk. Only applies to lists implementing
+	 * {@link com.idevicesinc.sweetblue.backend.historical.Backend_HistoricalDataList_ChunkedLoad}, as the in-memory and compressed lists do.
+	 */
+	@com.idevicesinc.sweetblue.annotations.Advanced
+	@Nullable(Prevalence.NORMAL)
+	public Integer historicalDataLoadChunkSize								= null;
+
 	/**
 	 * Implement this to override the default behavior, which is simply to return an instance created with
 	 * the constructor {@link HistoricalData#HistoricalData(byte[], com.idevicesinc.sweetblue.utils.EpochTime)}.
@@ -1230,6 +1317,19 @@ public class BleDeviceConfig extends BleServerConfig implements Cloneable
 		 */
 		HistoricalData newHistoricalData(final byte[] data, final EpochTime epochTime);
 	}
+
+	/**
+	 * Provide an instance to {@link #historicalDataRollupDecoder} to turn on rollups of historical data.
+	 */
+	@com.idevicesinc.sweetblue.annotations.Lambda
+	public static interface HistoricalDataRollupDecoder
+	{
+		/**
+		 * Return the numeric value of the given blob logged for the given characteristic, or {@link Double#NaN} to leave it out of rollups.
+		 * Called for every piece of data logged, so keep it cheap.
+		 */
+		double decode(final UUID charUuid, final byte[] data);
+	}
 	
 	/**
 	 * Creates a {@link BleDeviceConfig} with all default options set. See each member of this class
@@ -12,7 +12,7 @@ import android.app.Application;
 import android.bluetooth.BluetoothAdapter;
 import android.bluetooth.BluetoothDevice;
 import android.bluetooth.BluetoothManager;
-import android.bluetooth.le.ScanCallback;
+import android.bluetooth.le.BluetoothLeScanner;
 import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager;
@@ -44,12 +44,13 @@ import com.idevicesinc.sweetblue.utils.EpochTime;
 import com.idevicesinc.sweetblue.utils.ForEach_Breakable;
 import com.idevicesinc.sweetblue.utils.ForEach_Void;
 import com.idevicesinc.sweetblue.utils.HistoricalData;
+import com.idevicesinc.sweetblue.utils.HistoricalDataMemoryMetrics;
 import com.idevicesinc.sweetblue.utils.Interval;
 import com.idevicesinc.sweetblue.utils.Percent;
+import com.idevicesinc.sweetblue.utils.ScanRecordView;
 import com.idevicesinc.sweetblue.utils.State;
 import com.idevicesinc.sweetblue.utils.UpdateLoop;
 import com.idevicesinc.sweetblue.utils.Utils;
-import com.idevicesinc.sweetblue.utils.Utils_ScanRecord;
 
 /**
  * The entry point to the library. Get a singleton instance using {@link #get(android.content.Context, BleManagerConfig)} or its overloads. Make sure
@@ -185,12 +186,46 @@ public class BleManager
 			 */
 			public LifeCycle lifeCycle(){  return m_lifeCycle;  }
 			private final LifeCycle m_lifeCycle;
+
+			/**
+			 * The lowest RSSI among the advertisements behind this event. Only differs from {@link #rssi()} for a
+			 * {@link LifeCycle#REDISCOVERED} that merged more than one advertisement, see {@link BleManagerConfig#rediscoveryCoalescingWindow}.
+			 */
+			public int rssi_min(){  return m_rssiMin;  }
+			private final int m_rssiMin;
+
+			/**
+			 * The highest RSSI among the advertisements behind this event, see {@link #rssi_min()}.
+			 */
+			public int rssi_max(){  return m_rssiMax;  }
+			private final int m_rssiMax;
+
+			/**
+			 * The average RSSI of the advertisements behind this event, see {@link #rssi_min()}.
+			 */
+			public double rssi_mean(){  return m_rssiMean;  }
+			private final double m_rssiMean;
+
+			/**
+			 * The number of advertisements behind this event, which is only ever more than one if {@link BleManagerConfig#rediscoveryCoalescingWindow} is enabled.
+			 */
+			public int sightingCount(){  return m_sightingCount;  }
+			private final int m_sightingCount;
 			
 			DiscoveryEvent(BleManager manager, BleDevice device, LifeCycle lifeCycle)
+			{
+				this(manager, device, lifeCycle, device.getRssi(), device.getRssi(), device.getRssi(), 1);
+			}
+
+			DiscoveryEvent(BleManager manager, BleDevice device, LifeCycle lifeCycle, int rssiMin, int rssiMax, double rssiMean, int sightingCount)
 			{
 				m_manager = manager;
 				m_device = device;
 				m_lifeCycle = lifeCycle;
+				m_rssiMin = rssiMin;
+				m_rssiMax = rssiMax;
+				m_rssiMean = rssiMean;
+				m_sightingCount = sightingCount;
 			}
 			
 			/**
@@ -225,7 +260,8 @@ public class BleManager
 					"device",				device().getName_debug(),
 					"lifeCycle",			lifeCycle(),
 					"rssi",					rssi(),
-					"rssi_percent",			rssi_percent()
+					"rssi_percent",			rssi_percent(),
+					"sightingCount",		sightingCount()
 				);
 			}
 		}
@@ -661,6 +697,14 @@ public class BleManager
 		}
 	};
 
+	private final UpdateLoop.DeadlineProvider m_updateLoopDeadlineProvider = new UpdateLoop.DeadlineProvider()
+	{
+		@Override public double getTimeToNextUpdate()
+		{
+			return BleManager.this.getTimeToNextUpdate();
+		}
+	};
+
 	/**
 	 * Create the singleton instance or retrieve the already-created singleton instance with default configuration options set.
 	 * If you call this after you call {@link #get(android.content.Context, BleManagerConfig)} (for example in another
@@ -730,6 +774,12 @@ public class BleManager
 	final P_NativeBleStateTracker m_nativeStateTracker;
 	private 	 UpdateLoop m_updateLoop;
 	private final P_TaskQueue m_taskQueue;
+		final P_ConnectScheduler m_connectScheduler;
+		final P_HistoricalDataThreadPool m_historicalDataThreadPool;
+		final P_HistoricalDataWriteBuffer m_historicalDataWriteBuffer;
+	private final P_HistoricalDataRetention m_historicalDataRetention;
+		final P_HistoricalDataMemoryBudget m_historicalDataMemoryBudget;
+	private final P_DiscoveryCoalescer m_discoveryCoalescer;
 	private 	P_UhOhThrottler m_uhOhThrottler;
 				P_WakeLockManager m_wakeLockMngr;
 	
@@ -801,6 +851,12 @@ public class BleManager
 		m_nativeStateTracker.append(nativeState, E_Intent.UNINTENTIONAL, BleStatuses.GATT_STATUS_NOT_APPLICABLE);
 		m_mainThreadHandler = new Handler(m_context.getMainLooper());
 		m_taskQueue = new P_TaskQueue(this);
+		m_connectScheduler = new P_ConnectScheduler(this);
+		m_historicalDataThreadPool = new P_HistoricalDataThreadPool(m_config.historicalDataThreadCount);
+		m_historicalDataWriteBuffer = new P_HistoricalDataWriteBuffer(this);
+		m_historicalDataRetention = new P_HistoricalDataRetention(this);
+		m_historicalDataMemoryBudget = new P_HistoricalDataMemoryBudget(this);
+		m_discoveryCoalescer = new P_DiscoveryCoalescer(this);
 		m_crashResolver = new P_BluetoothCrashResolver(m_context);
 		m_deviceMngr = new P_DeviceManager(this);
 //		m_serverMngr = new P_ServerManager(this);
@@ -821,6 +877,9 @@ public class BleManager
 		this.m_config = config_nullable != null ? config_nullable.clone() : new BleManagerConfig();
 		this.initLogger();
 		this.initConfigDependentMembers();
+
+		//--- Verdicts may depend on things like BleManagerConfig#scanFilterSpecs that just changed.
+		m_filterMngr.invalidateVerdicts();
 	}
 
 	private void initLogger()
@@ -1204,6 +1263,8 @@ public class BleManager
 		m_config.autoScanTime = scanActiveTime;
 		m_config.autoScanInterval = scanPauseTime;
 
+		wakeUpdateLoop();
+
 		if( Interval.isEnabled(m_config.autoScanTime) )
 		{
 			if( doAutoScan() )
@@ -1421,6 +1482,29 @@ public class BleManager
 		return m_nativeStateTracker.getState();
 	}
 
+	/**
+	 * Returns how far along the automatic reconnect of devices is after BLE turns back on, as the percentage of those devices no longer
+	 * {@link BleDeviceState#CONNECTING_OVERALL}, whether they ended up connected or not. Returns {@link Percent#HUNDRED} if no such
+	 * reconnect has happened yet.
+	 *
+	 * @see BleDeviceConfig#autoReconnectDeviceWhenBleTurnsBackOn
+	 * @see BleManagerConfig#maxConcurrentConnects
+	 */
+	public Percent getReconnectProgress()
+	{
+		return m_connectScheduler.getProgress();
+	}
+
+	/**
+	 * Returns how in-memory historical data across all devices is doing against {@link BleManagerConfig#historicalDataMemoryBudget},
+	 * including how often lists were found in memory and how many were evicted.
+	 */
+	@com.idevicesinc.sweetblue.annotations.Advanced
+	public @Nullable(Prevalence.NEVER) HistoricalDataMemoryMetrics getHistoricalDataMemoryMetrics()
+	{
+		return m_historicalDataMemoryBudget.getMetrics();
+	}
+
 	/**
 	 * Enables BLE if manager is currently {@link BleManagerState#OFF} or {@link BleManagerState#TURNING_OFF}, otherwise does nothing.
 	 * For a convenient way to ask your user first see {@link #turnOnWithIntent(android.app.Activity, int)}.
@@ -1574,6 +1658,8 @@ public class BleManager
 		m_isForegrounded = true;
 		m_timeForegrounded = 0.0;
 
+		wakeUpdateLoop();
+
 		if( m_doingInfiniteScan )
 		{
 			m_triedToStartScanAfterResume = true;
@@ -1599,6 +1685,11 @@ public class BleManager
 		m_isForegrounded = false;
 		m_timeForegrounded = 0.0;
 
+		wakeUpdateLoop();
+
+		//--- App may be killed any time after this, so don't wait out BleDeviceConfig#historicalDataMaxWriteDelay.
+		m_historicalDataWriteBuffer.postFlush();
+
 		if( m_config.stopScanOnPause && is(SCANNING) )
 		{
 			stopScan_private(E_Intent.UNINTENTIONAL);
@@ -1614,6 +1705,7 @@ public class BleManager
 	{
 		m_wakeLockMngr.clear();
 		m_listeners.onDestroy();
+		m_historicalDataWriteBuffer.flush();
 	}
 
 	/**
@@ -2253,7 +2345,14 @@ public class BleManager
 	{
 		if( m_updateLoop != null )
 		{
-			m_updateLoop.start(updateRate);
+			if( Interval.isEnabled(m_config.idleUpdateRate) )
+			{
+				m_updateLoop.start(updateRate, Interval.secs(m_config.idleUpdateRate), m_updateLoopDeadlineProvider);
+			}
+			else
+			{
+				m_updateLoop.start(updateRate);
+			}
 		}
 	}
 
@@ -2266,6 +2365,15 @@ public class BleManager
 	}
 
 	void onDiscovered(final BluetoothDevice device_native, final int rssi, final byte[] scanRecord_nullable)
+	{
+		onDiscovered(device_native, rssi, scanRecord_nullable, /*flushed=*/false);
+	}
+
+	/**
+	 * Results flushed out of the Bluetooth stack's batch when stopping a scan can arrive after we've left {@link BleManagerState#SCANNING},
+	 * but were seen while scanning so still count.
+	 */
+	void onDiscovered(final BluetoothDevice device_native, final int rssi, final byte[] scanRecord_nullable, final boolean flushed)
 	{
 		//--- DRK > Protects against fringe case where scan task is executing and app calls turnOff().
 		//---		Here the scan task will be interrupted but still potentially has enough time to
@@ -2276,7 +2384,7 @@ public class BleManager
 
 		//--- DRK > Not sure if queued up messages to library's thread can sneak in a device discovery event
 		//---		after user called stopScan(), so just a check to prevent unexpected callbacks to the user.
-		if( !is(SCANNING) )  return;
+		if( !is(SCANNING) && !flushed )  return;
 
 		String rawDeviceName = "";
 
@@ -2334,15 +2442,30 @@ public class BleManager
 
 		if( device == null )
 		{
-	    	services_nullable = Utils_ScanRecord.parseServiceUuids(scanRecord_nullable);
-	    	byte[] scanRecord = scanRecord_nullable != null ? scanRecord_nullable : BleDevice.EMPTY_BYTE_ARRAY;
-	    	String deviceName = rawDeviceName;
-	    	deviceName = deviceName != null ? deviceName : "";
-	    	boolean hitDisk = BleDeviceConfig.boolOrDefault(m_config.manageLastDisconnectOnDisk);
-	    	State.ChangeIntent lastDisconnectIntent = m_diskOptionsMngr.loadLastDisconnect(macAddress, hitDisk);
-	    	please = m_filterMngr.allow(m_logger, device_native, services_nullable, deviceName, normalizedDeviceName, scanRecord, rssi, lastDisconnectIntent);
+	    	//--- Checked before anything else since a device that's been turned down once usually keeps advertising the same thing many times a second.
+	    	final Please cachedPlease = m_filterMngr.getCachedVerdict(macAddress, scanRecord_nullable);
 
-	    	if( please != null && !please.ack() )  return;
+	    	if( cachedPlease != null && !cachedPlease.ack() )  return;
+
+	    	final ScanRecordView scanRecord = new ScanRecordView(scanRecord_nullable);
+
+	    	if( cachedPlease != null )
+	    	{
+	    		please = cachedPlease;
+	    	}
+	    	else
+	    	{
+		    	String deviceName = rawDeviceName;
+		    	deviceName = deviceName != null ? deviceName : "";
+		    	boolean hitDisk = BleDeviceConfig.boolOrDefault(m_config.manageLastDisconnectOnDisk);
+		    	State.ChangeIntent lastDisconnectIntent = m_diskOptionsMngr.loadLastDisconnect(macAddress, hitDisk);
+		    	please = m_filterMngr.allow(m_logger, device_native, scanRecord, deviceName, normalizedDeviceName, rssi, lastDisconnectIntent);
+
+		    	if( please != null && !please.ack() )  return;
+	    	}
+
+	    	//--- Only decoded now if a filter didn't already ask for them.
+	    	services_nullable = scanRecord.getServiceUuids();
 		}
 		else
 		{
@@ -2406,6 +2529,8 @@ public class BleManager
     {
     	if( newlyDiscovered )
     	{
+    		m_discoveryCoalescer.remove(device);
+
     		device.onNewlyDiscovered(device_native, services_nullable, rssi, scanRecord_nullable, origin);
 
     		if( m_discoveryListener != null )
@@ -2416,20 +2541,37 @@ public class BleManager
     	}
     	else
     	{
-    		device.onRediscovered(device_native, services_nullable, rssi, scanRecord_nullable, BleDeviceOrigin.FROM_DISCOVERY);
+    		if( m_discoveryCoalescer.add(device, device_native, services_nullable, scanRecord_nullable, rssi) )  return;
 
-    		if( m_discoveryListener != null )
-    		{
-    			DiscoveryEvent event = new DiscoveryEvent(this, device, LifeCycle.REDISCOVERED);
-    			m_discoveryListener.onEvent(event);
-    		}
+    		onRediscovered_coalesced(device, device_native, services_nullable, scanRecord_nullable, rssi, rssi, rssi, rssi, 1);
     	}
     }
 
+	void onRediscovered_coalesced(final BleDevice device, final BluetoothDevice device_native, final List<UUID> services_nullable, final byte[] scanRecord_nullable, final int rssi, final int rssiMin, final int rssiMax, final double rssiMean, final int sightingCount)
+	{
+		device.onRediscovered(device_native, services_nullable, rssi, scanRecord_nullable, BleDeviceOrigin.FROM_DISCOVERY);
+
+		if( m_discoveryListener != null )
+		{
+			DiscoveryEvent event = new DiscoveryEvent(this, device, LifeCycle.REDISCOVERED, rssiMin, rssiMax, rssiMean, sightingCount);
+			m_discoveryListener.onEvent(event);
+		}
+	}
+
 	@TargetApi(Build.VERSION_CODES.LOLLIPOP)
-	private void stopNativeScan_nested_postLollipop(ScanCallback scanCallback_postLollipop)
+	private void stopNativeScan_nested_postLollipop(final P_Task_Scan scanTask)
 	{
-		getNativeAdapter().getBluetoothLeScanner().stopScan(scanCallback_postLollipop);
+		final BluetoothLeScanner scanner = getNativeAdapter().getBluetoothLeScanner();
+
+		//--- Otherwise whatever the stack has batched up since the last report is thrown away.
+		if( scanTask.isBatching() )
+		{
+			scanTask.onFlushing();
+
+			scanner.flushPendingScanResults(scanTask.getScanCallback_postLollipop());
+		}
+
+		scanner.stopScan(scanTask.getScanCallback_postLollipop());
 	}
 
 	void stopNativeScan(final P_Task_Scan scanTask)
@@ -2440,7 +2582,7 @@ public class BleManager
 			{
 				if( Utils.isLollipop() )
 				{
-					stopNativeScan_nested_postLollipop(scanTask.getScanCallback_postLollipop());
+					stopNativeScan_nested_postLollipop(scanTask);
 				}
 				else
 				{
@@ -2513,6 +2655,10 @@ public class BleManager
 		}
 
 		m_deviceMngr.update(timeStep_seconds);
+		m_connectScheduler.update(timeStep_seconds);
+		m_historicalDataWriteBuffer.update(timeStep_seconds);
+		m_historicalDataRetention.update(timeStep_seconds);
+		m_discoveryCoalescer.update(timeStep_seconds);
 
 		if( !is(SCANNING) )
 		{
@@ -2564,6 +2710,50 @@ public class BleManager
 		}
 	}
 
+	/**
+	 * Returns how long in seconds until {@link #update(double)} would actually do something, assuming nothing else happens in the meantime.
+	 * Used to let the update loop sleep when {@link BleManagerConfig#idleUpdateRate} is enabled.
+	 */
+	double getTimeToNextUpdate()
+	{
+		if( !m_taskQueue.isIdle() )  return 0.0;
+		if( is(SCANNING) )  return 0.0;
+		if( m_connectScheduler.isInProgress() )  return 0.0;
+
+		double soonest = Math.min(m_deviceMngr.getTimeToNextUpdate(), m_historicalDataWriteBuffer.getTimeToNextUpdate());
+		soonest = Math.min(soonest, m_historicalDataRetention.getTimeToNextUpdate());
+		soonest = Math.min(soonest, m_discoveryCoalescer.getTimeToNextUpdate());
+
+		if( soonest <= 0.0 )  return soonest;
+
+		if( Interval.isEnabled(m_config.autoScanTime) )
+		{
+			if( m_isForegrounded && Interval.isEnabled(m_config.autoScanDelayAfterResume) && !m_triedToStartScanAfterResume )
+			{
+				soonest = Math.min(soonest, Interval.secs(m_config.autoScanDelayAfterResume) - m_timeForegrounded);
+			}
+			else
+			{
+				final double scanInterval = Interval.secs(m_isForegrounded ? m_config.autoScanInterval : m_config.autoScanIntervalWhileAppIsPaused);
+
+				if( Interval.isEnabled(scanInterval) )
+				{
+					soonest = Math.min(soonest, scanInterval - m_timeNotScanning);
+				}
+			}
+		}
+
+		return soonest;
+	}
+
+	private void wakeUpdateLoop()
+	{
+		if( m_updateLoop != null )
+		{
+			m_updateLoop.wake();
+		}
+	}
+
 	/**
 	 * Returns this manager's knowledge of the app's foreground state, which must be
 	 * controlled manually from appland through {@link #onResume()} and {@link #onPause()}.
@@ -19,6 +19,8 @@ import com.idevicesinc.sweetblue.annotations.Nullable;
 import com.idevicesinc.sweetblue.annotations.Nullable.Prevalence;
 import com.idevicesinc.sweetblue.utils.Interval;
 import com.idevicesinc.sweetblue.utils.ReflectionUuidNameMap;
+import com.idevicesinc.sweetblue.utils.ScanFilterSpec;
+import com.idevicesinc.sweetblue.utils.ScanRecordView;
 import com.idevicesinc.sweetblue.utils.State;
 import com.idevicesinc.sweetblue.utils.Utils;
 import com.idevicesinc.sweetblue.utils.UuidNameMap;
@@ -35,6 +37,8 @@ public class BleManagerConfig extends BleDeviceConfig
 	public static final double DEFAULT_AUTO_SCAN_DELAY_AFTER_RESUME 	= 0.5;
 	public static final double DEFAULT_AUTO_UPDATE_RATE					= 1.01/30.0;
 	public static final double DEFAULT_UH_OH_CALLBACK_THROTTLE			= 30.0;
+	public static final int DEFAULT_MAX_CONCURRENT_CONNECTS				= 1;
+	public static final int DEFAULT_HISTORICAL_DATA_THREAD_COUNT		= 2;
 	
 	static final BleManagerConfig NULL = new BleManagerConfig();
 	
@@ -70,8 +74,7 @@ public class BleManagerConfig extends BleDeviceConfig
 			 * A list of {@link UUID}s parsed from {@link #scanRecord()} as a convenience. May be empty, notably
 			 * if {@link BleManagerConfig#revertToClassicDiscoveryIfNeeded} is invoked.
 			 */
-			public List<UUID> advertisedServices(){  return m_advertisedServices;  }
-			private final List<UUID> m_advertisedServices;
+			public List<UUID> advertisedServices(){  return m_scanRecordView.getServiceUuids();  }
 			
 			/**
 			 * The unaltered device name retrieved from the native bluetooth stack.
@@ -89,8 +92,14 @@ public class BleManagerConfig extends BleDeviceConfig
 			 * The raw scan record received when the device was discovered. May be empty, especially
 			 * if {@link BleManagerConfig#revertToClassicDiscoveryIfNeeded} is invoked.
 			 */
-			public byte[] scanRecord(){  return m_scanRecord;  }
-			private final byte[] m_scanRecord;
+			public byte[] scanRecord(){  return m_scanRecordView.getBytes();  }
+
+			/**
+			 * A view onto {@link #scanRecord()} that decodes things like manufacturer data, service data, or the advertised
+			 * local name only if asked for. Please don't {@link ScanRecordView#reset(byte[])} it.
+			 */
+			public ScanRecordView scanRecordView(){  return m_scanRecordView;  }
+			private final ScanRecordView m_scanRecordView;
 			
 			/**
 			 * The RSSI received when the device was discovered.
@@ -115,15 +124,14 @@ public class BleManagerConfig extends BleDeviceConfig
 			
 			ScanEvent
 			(
-				BluetoothDevice nativeInstance, List<UUID> advertisedServices, String rawDeviceName,
-				String normalizedDeviceName, byte[] scanRecord, int rssi, State.ChangeIntent lastDisconnectIntent
+				BluetoothDevice nativeInstance, ScanRecordView scanRecordView, String rawDeviceName,
+				String normalizedDeviceName, int rssi, State.ChangeIntent lastDisconnectIntent
 			)
 			{
 				this.m_nativeInstance = nativeInstance;
-				this.m_advertisedServices = advertisedServices;
+				this.m_scanRecordView = scanRecordView;
 				this.m_rawDeviceName = rawDeviceName;
 				this.m_normalizedDeviceName = normalizedDeviceName;
-				this.m_scanRecord = scanRecord;
 				this.m_rssi = rssi;
 				this.m_lastDisconnectIntent = lastDisconnectIntent;
 			}
@@ -381,7 +389,49 @@ public class BleManagerConfig extends BleDeviceConfig
 	 */
 	@com.idevicesinc.sweetblue.annotations.Advanced
 	public boolean manageCpuWakeLock					= true;
-	
+
+	/**
+	 * Default is <code>false</code> - by default SweetBlue runs exactly one task at a time across all devices, so for example
+	 * a slow read on one device will hold up writes to every other device. Android only serializes operations per-{@link android.bluetooth.BluetoothGatt}
+	 * though, so setting this to <code>true</code> lets reads, writes, notification toggles, RSSI reads, and service discovery
+	 * run in parallel "lanes", one per connected {@link BleDevice}. Tasks for any given device still run one at a time and in order.
+	 * Connecting, disconnecting, and bonding still go one at a time but may run alongside other devices' lanes,
+	 * while manager-level operations like scanning or turning BLE on/off wait for everything else to finish.
+	 */
+	@com.idevicesinc.sweetblue.annotations.Advanced
+	public boolean enableParallelDeviceTasks			= false;
+
+	/**
+	 * Default is {@value #DEFAULT_MAX_CONCURRENT_CONNECTS} - the maximum number of connection attempts allowed to be in flight at once.
+	 * Only has an effect if {@link #enableParallelDeviceTasks} is <code>true</code>, in which case values greater than one let
+	 * connection attempts run in their device's lane alongside each other. This mostly helps when reconnecting a bunch of devices
+	 * at once, for example after BLE turns back on, where the total time would otherwise be the sum of every attempt.
+	 * Devices reconnected after BLE turns back on are attempted in order of fewest connection failures since they were last connected, then strongest last known RSSI.
+	 *
+	 * @see BleManager#getReconnectProgress()
+	 */
+	@com.idevicesinc.sweetblue.annotations.Advanced
+	public int maxConcurrentConnects					= DEFAULT_MAX_CONCURRENT_CONNECTS;
+
+	/**
+	 * Default is {@value #DEFAULT_HISTORICAL_DATA_THREAD_COUNT} - the number of background threads shared by all devices for historical data work,
+	 * like loading from and writing to the database. Work for any one device always runs on the same thread in the order it was requested.
+	 * This is only read when the {@link BleManager} is first created, so changing it through {@link BleManager#setConfig(BleManagerConfig)} has no effect.
+	 */
+	@com.idevicesinc.sweetblue.annotations.Advanced
+	public int historicalDataThreadCount				= DEFAULT_HISTORICAL_DATA_THREAD_COUNT;
+
+	/**
+	 * Default is <code>0</code>, meaning no limit - if greater than zero, the rough number of bytes that in-memory historical data
+	 * for all devices combined may take up. Past that the least recently used per-characteristic lists are dropped from memory,
+	 * as if the app had restarted: data persisted to disk is still available through {@link BleDevice#getHistoricalData_cursor(UUID)}
+	 * and can be brought back with {@link BleDevice#loadHistoricalData(UUID)}, but data only kept in memory is gone.
+	 *
+	 * @see BleManager#getHistoricalDataMemoryMetrics()
+	 */
+	@com.idevicesinc.sweetblue.annotations.Advanced
+	public long historicalDataMemoryBudget				= 0;
+
 	/**
 	 * Default is {@value #DEFAULT_UH_OH_CALLBACK_THROTTLE} seconds - {@link BleManager.UhOhListener.UhOh} callbacks from {@link BleManager.UhOhListener}
 	 * can be a little spammy at times so this is an option to throttle them back on a per-{@link BleManager.UhOhListener.UhOh} basis.
@@ -439,6 +489,33 @@ public class BleManagerConfig extends BleDeviceConfig
 	@com.idevicesinc.sweetblue.annotations.Advanced
 	@Nullable(Prevalence.NORMAL)
 	public Interval	idealMinScanTime					= Interval.secs(DEFAULT_MINIMUM_SCAN_TIME);
+
+	/**
+	 * Default is {@link Interval#DISABLED} - If enabled, on Lollipop and up scan results are batched by the Bluetooth stack and delivered
+	 * about this often instead of one at a time, if the hardware supports it (see {@link android.bluetooth.BluetoothAdapter#isOffloadedScanBatchingSupported()}).
+	 * Each batch is then run through discovery in one go on the update thread, with repeat advertisements from the same device within a batch
+	 * collapsed into the latest one before your {@link BleManagerConfig.ScanFilter} sees them. This can greatly cut down on overhead when there
+	 * are lots of devices advertising nearby, at the cost of discovery events and RSSI updates arriving up to this much later.
+	 * Whatever's still batched up when a scan stops is flushed out and still discovered.
+	 * <br><br>
+	 * Should be kept well under {@link #minScanTimeNeededForUndiscovery} and {@link #undiscoveryKeepAlive}, since a device is only seen
+	 * as often as a batch comes in, so a delay close to either can get devices that are still advertising undiscovered.
+	 */
+	@com.idevicesinc.sweetblue.annotations.Advanced
+	@Nullable(Prevalence.NORMAL)
+	public Interval scanReportDelay						= Interval.DISABLED;
+
+	/**
+	 * Default is {@link Interval#DISABLED} - If enabled, advertisements from devices that have already been discovered are merged
+	 * over this long into a single {@link BleManager.DiscoveryListener.LifeCycle#REDISCOVERED} event per device, with the latest scan record
+	 * and RSSI applied to the {@link BleDevice}, and {@link BleManager.DiscoveryListener.DiscoveryEvent#rssi_min()},
+	 * {@link BleManager.DiscoveryListener.DiscoveryEvent#rssi_max()}, {@link BleManager.DiscoveryListener.DiscoveryEvent#rssi_mean()}, and
+	 * {@link BleManager.DiscoveryListener.DiscoveryEvent#sightingCount()} summarizing what was merged. Newly discovered devices are still reported right away.
+	 * Useful with lots of devices advertising many times a second, like beacons. Should be kept well under {@link #minScanTimeNeededForUndiscovery}.
+	 */
+	@com.idevicesinc.sweetblue.annotations.Advanced
+	@Nullable(Prevalence.NORMAL)
+	public Interval rediscoveryCoalescingWindow			= Interval.DISABLED;
 	
 	/**
 	 * Default is {@value #DEFAULT_AUTO_UPDATE_RATE} seconds - The rate at which the library's internal update loop ticks.
@@ -449,6 +526,17 @@ public class BleManagerConfig extends BleDeviceConfig
 	@Nullable(Prevalence.RARE)
 	public Interval autoUpdateRate						= Interval.secs(DEFAULT_AUTO_UPDATE_RATE);
 
+	/**
+	 * Default is {@link Interval#DISABLED} - If enabled, the library's internal update loop only ticks at {@link #autoUpdateRate}
+	 * while there's actually something to do, like tasks in the queue, scanning, or running transactions. Otherwise it sleeps until
+	 * the next poll, reconnect attempt, or periodic scan is due, up to this long at a time. Incoming native callbacks and new tasks wake it up early.
+	 * This can noticeably cut down on CPU wakeups and battery use for apps that keep the library alive in the background with nothing going on.
+	 * Has no effect if {@link #autoUpdateRate} is disabled.
+	 */
+	@com.idevicesinc.sweetblue.annotations.Advanced
+	@Nullable(Prevalence.NORMAL)
+	public Interval idleUpdateRate						= Interval.DISABLED;
+
 	/**
 	 * Default is <code>null</code>, meaning no filtering - all discovered devices will
 	 * be piped through your {@link BleManager.DiscoveryListener} instance
@@ -458,6 +546,27 @@ public class BleManagerConfig extends BleDeviceConfig
 	 */
 	@Nullable(Prevalence.NORMAL)
 	public ScanFilter defaultScanFilter	= null;
+
+	/**
+	 * Default is {@link Interval#DISABLED} - If enabled, what your {@link ScanFilter} decided for a device that wasn't already discovered
+	 * is remembered for this long, as long as the device keeps advertising the same scan record, instead of asking again for every advertisement.
+	 * Mostly helps with lots of nearby devices you're not interested in. Anything cached is forgotten when filters are added or removed,
+	 * or when {@link BleManager#setConfig(BleManagerConfig)} is called. Don't enable this if your filter looks at {@link ScanFilter.ScanEvent#rssi()},
+	 * or keep it short, since the RSSI isn't part of what's compared.
+	 */
+	@com.idevicesinc.sweetblue.annotations.Advanced
+	@Nullable(Prevalence.NORMAL)
+	public Interval scanFilterVerdictCacheTime			= Interval.DISABLED;
+
+	/**
+	 * Default is <code>null</code> - if not empty, only devices matching at least one of these specs are discovered. On Lollipop and up
+	 * these are also handed down to the Bluetooth stack when a scan starts, so on phones that support it non-matching advertisements are
+	 * dropped by the Bluetooth chip instead of waking up the CPU. Any {@link ScanFilter} still runs afterwards for devices that match.
+	 *
+	 * @see ScanFilterSpec
+	 */
+	@Nullable(Prevalence.NORMAL)
+	public List<ScanFilterSpec> scanFilterSpecs			= null;
 	
 	/**
 	 * Default is <code>null</code> - can also be set post-construction with {@link BleManager#setListener_Discovery(DiscoveryListener)},
@@ -14,7 +14,6 @@ import com.idevicesinc.sweetblue.BleDevice.BondListener.Status;
 import com.idevicesinc.sweetblue.BleDevice.ConnectionFailListener.AutoConnectUsage;
 import com.idevicesinc.sweetblue.PA_StateTracker.E_Intent;
 import com.idevicesinc.sweetblue.P_Task_Bond.E_TransactionLockBehavior;
-import com.idevicesinc.sweetblue.utils.UpdateLoop;
 import com.idevicesinc.sweetblue.utils.Utils;
 
 class P_BleDevice_Listeners extends BluetoothGattCallback
@@ -22,6 +21,7 @@ class P_BleDevice_Listeners extends BluetoothGattCallback
 	private final BleDevice m_device;
 	private final P_Logger m_logger;
 	private final P_TaskQueue m_queue;
+	private final P_GattEventQueue m_events;
 
 	final PA_Task.I_StateListener m_taskStateListener = new PA_Task.I_StateListener()
 	{
@@ -115,36 +115,34 @@ class P_BleDevice_Listeners extends BluetoothGattCallback
 		m_device = device;
 		m_logger = m_device.getManager().getLogger();
 		m_queue = m_device.getTaskQueue();
+		m_events = new P_GattEventQueue(m_device.getManager(), m_eventListener);
 	}
 
-	private void post(final Runnable runnable)
+	//--- Called on the update thread, in the same order the native callbacks came in.
+	private final P_GattEventQueue.Listener m_eventListener = new P_GattEventQueue.Listener()
 	{
-		final UpdateLoop updateLoop = m_device.getManager().getUpdateLoop();
-
-		updateLoop.postIfNeeded(runnable);
-	}
-
-	private boolean postNeeded()
-	{
-		return m_device.getManager().getUpdateLoop().postNeeded();
-	}
-
-	@Override public void onConnectionStateChange(final BluetoothGatt gatt, final int gattStatus, final int newState)
-	{
-		if( postNeeded() )
+		@Override public void onEvent(final P_GattEventQueue.Event e)
 		{
-			post(new Runnable()
+			switch( e.m_type )
 			{
-				@Override public void run()
-				{
-					onConnectionStateChange_mainThread(gatt, gattStatus, newState);
-				}
-			});
-		}
-		else
-		{
-			onConnectionStateChange_mainThread(gatt, gattStatus, newState);
+				case CONNECTION_STATE_CHANGE:	onConnectionStateChange_mainThread(e.m_gatt, e.m_gattStatus, e.m_intValue);						break;
+				case SERVICES_DISCOVERED:		onServicesDiscovered_mainThread(e.m_gatt, e.m_gattStatus);										break;
+				case CHARACTERISTIC_READ:		onCharacteristicRead_mainThread(e.m_gatt, e.m_characteristic, e.m_gattStatus, e.m_value);		break;
+				case CHARACTERISTIC_WRITE:		onCharacteristicWrite_mainThread(e.m_gatt, e.m_characteristic, e.m_gattStatus);				break;
+				case RELIABLE_WRITE_COMPLETED:	onReliableWriteCompleted_mainThread(e.m_gatt, e.m_gattStatus);									break;
+				case READ_REMOTE_RSSI:			onReadRemoteRssi_mainThread(e.m_gatt, e.m_intValue, e.m_gattStatus);							break;
+				case DESCRIPTOR_WRITE:			onDescriptorWrite_mainThread(e.m_gatt, e.m_descriptor, e.m_gattStatus);						break;
+				case CHARACTERISTIC_CHANGED:	onCharacteristicChanged_mainThread(e.m_gatt, e.m_characteristic, e.m_value, e.m_time);				break;
+			}
 		}
+	};
+
+	@Override public void onConnectionStateChange(final BluetoothGatt gatt, final int gattStatus, final int newState)
+	{
+		final P_GattEventQueue.Event event = m_events.obtain().init(P_GattEventQueue.Type.CONNECTION_STATE_CHANGE, gatt, gattStatus);
+		event.m_intValue = newState;
+
+		m_events.publish(event);
 	}
 	
 	private void onConnectionStateChange_mainThread(final BluetoothGatt gatt, final int gattStatus, final int newState)
@@ -263,20 +261,7 @@ class P_BleDevice_Listeners extends BluetoothGattCallback
 
 	@Override public void onServicesDiscovered(final BluetoothGatt gatt, final int gattStatus)
 	{
-		if( postNeeded() )
-		{
-			post(new Runnable()
-			{
-				@Override public void run()
-				{
-					onServicesDiscovered_mainThread(gatt, gattStatus);
-				}
-			});
-		}
-		else
-		{
-			onServicesDiscovered_mainThread(gatt, gattStatus);
-		}
+		m_events.publish(m_events.obtain().init(P_GattEventQueue.Type.SERVICES_DISCOVERED, gatt, gattStatus));
 	}
 
 	private void onServicesDiscovered_mainThread(final BluetoothGatt gatt, final int gattStatus)
@@ -300,22 +285,11 @@ class P_BleDevice_Listeners extends BluetoothGattCallback
 	
 	@Override public void onCharacteristicRead(final BluetoothGatt gatt, final BluetoothGattCharacteristic characteristic, final int gattStatus)
 	{
-		final byte[] value = characteristic.getValue() == null ? null : characteristic.getValue().clone();
+		final P_GattEventQueue.Event event = m_events.obtain().init(P_GattEventQueue.Type.CHARACTERISTIC_READ, gatt, gattStatus);
+		event.m_characteristic = characteristic;
+		event.m_value = characteristic.getValue() == null ? null : characteristic.getValue().clone();
 
-		if( postNeeded() )
-		{
-			post(new Runnable()
-			{
-				@Override public void run()
-				{
-					onCharacteristicRead_mainThread(gatt, characteristic, gattStatus, value);
-				}
-			});
-		}
-		else
-		{
-			onCharacteristicRead_mainThread(gatt, characteristic, gattStatus, value);
-		}
+		m_events.publish(event);
 	}
 
 	private void onCharacteristicRead_mainThread(final BluetoothGatt gatt, final BluetoothGattCharacteristic characteristic, final int gattStatus, final byte[] value)
@@ -338,20 +312,10 @@ class P_BleDevice_Listeners extends BluetoothGattCallback
 
 	@Override public void onCharacteristicWrite(final BluetoothGatt gatt, final BluetoothGattCharacteristic characteristic, final int gattStatus)
 	{
-		if( postNeeded() )
-		{
-			post(new Runnable()
-			{
-				@Override public void run()
-				{
-					onCharacteristicWrite_mainThread(gatt, characteristic, gattStatus);
-				}
-			});
-		}
-		else
-		{
-			onCharacteristicWrite_mainThread(gatt, characteristic, gattStatus);
-		}
+		final P_GattEventQueue.Event event = m_events.obtain().init(P_GattEventQueue.Type.CHARACTERISTIC_WRITE, gatt, gattStatus);
+		event.m_characteristic = characteristic;
+
+		m_events.publish(event);
 	}
 
 	private void onCharacteristicWrite_mainThread(final BluetoothGatt gatt, final BluetoothGattCharacteristic characteristic, final int gattStatus)
@@ -374,21 +338,8 @@ class P_BleDevice_Listeners extends BluetoothGattCallback
 	
 	@Override public void onReliableWriteCompleted(final BluetoothGatt gatt, final int gattStatus)
 	{
-		if( postNeeded() )
-		{
-			post(new Runnable()
-			{
-				@Override public void run()
-				{
-					onReliableWriteCompleted_mainThread(gatt, gattStatus);
-				}
-			});
-		}
-		else
-		{
-			onReliableWriteCompleted_mainThread(gatt, gattStatus);
-		}
-    }
+		m_events.publish(m_events.obtain().init(P_GattEventQueue.Type.RELIABLE_WRITE_COMPLETED, gatt, gattStatus));
+	}
 
 	private void onReliableWriteCompleted_mainThread(final BluetoothGatt gatt, final int gattStatus)
 	{
@@ -408,20 +359,10 @@ class P_BleDevice_Listeners extends BluetoothGattCallback
 	
 	@Override public void onReadRemoteRssi(final BluetoothGatt gatt, final int rssi, final int gattStatus)
 	{
-		if( postNeeded() )
-		{
-			post(new Runnable()
-			{
-				@Override public void run()
-				{
-					onReadRemoteRssi_mainThread(gatt, rssi, gattStatus);
-				}
-			});
-		}
-		else
-		{
-			onReadRemoteRssi_mainThread(gatt, rssi, gattStatus);
-		}
+		final P_GattEventQueue.Event event = m_events.obtain().init(P_GattEventQueue.Type.READ_REMOTE_RSSI, gatt, gattStatus);
+		event.m_intValue = rssi;
+
+		m_events.publish(event);
 	}
 
 	private void onReadRemoteRssi_mainThread(final BluetoothGatt gatt, final int rssi, final int gattStatus)
@@ -445,20 +386,10 @@ class P_BleDevice_Listeners extends BluetoothGattCallback
 	
 	@Override public void onDescriptorWrite(final BluetoothGatt gatt, final BluetoothGattDescriptor descriptor, final int gattStatus)
 	{
-		if( postNeeded() )
-		{
-			post(new Runnable()
-			{
-				@Override public void run()
-				{
-					onDescriptorWrite_mainThread(gatt, descriptor, gattStatus);
-				}
-			});
-		}
-		else
-		{
-			onDescriptorWrite_mainThread(gatt, descriptor, gattStatus);
-		}
+		final P_GattEventQueue.Event event = m_events.obtain().init(P_GattEventQueue.Type.DESCRIPTOR_WRITE, gatt, gattStatus);
+		event.m_descriptor = descriptor;
+
+		m_events.publish(event);
 	}
 
 	private void onDescriptorWrite_mainThread(final BluetoothGatt gatt, final BluetoothGattDescriptor descriptor, final int gattStatus)
@@ -481,29 +412,31 @@ class P_BleDevice_Listeners extends BluetoothGattCallback
 	
 	@Override public void onCharacteristicChanged(final BluetoothGatt gatt, final BluetoothGattCharacteristic characteristic)
 	{
-		final byte[] value = characteristic.getValue() == null ? null : characteristic.getValue().clone();
+		//--- The value copy is the only allocation on this path, since the characteristic's value can be overwritten by the next notification.
+		final long time = System.currentTimeMillis();
 
-		if( postNeeded() )
-		{
-			post(new Runnable()
-			{
-				@Override public void run()
-				{
-					onCharacteristicChanged_mainThread(gatt, characteristic, value);
-				}
-			});
-		}
-		else
-		{
-			onCharacteristicChanged_mainThread(gatt, characteristic, value);
-		}
+		m_device.writeToNotificationStream(characteristic.getUuid(), characteristic.getValue(), time);
+
+		final P_GattEventQueue.Event event = m_events.obtain().init(P_GattEventQueue.Type.CHARACTERISTIC_CHANGED, gatt, BleStatuses.GATT_STATUS_NOT_APPLICABLE);
+		event.m_characteristic = characteristic;
+		event.m_value = characteristic.getValue() == null ? null : characteristic.getValue().clone();
+		event.m_time = time;
+
+		m_events.publish(event);
 	}
 
-	private void onCharacteristicChanged_mainThread(final BluetoothGatt gatt, final BluetoothGattCharacteristic characteristic, final byte[] value)
+	private void onCharacteristicChanged_mainThread(final BluetoothGatt gatt, final BluetoothGattCharacteristic characteristic, final byte[] value, final long time)
 	{
 		final UUID characteristicUuid = characteristic.getUuid();
 		final UUID serviceUuid = characteristic.getService().getUuid();
 
+		if( m_device.getNotificationBatcher().onCharacteristicChanged(characteristicUuid, value, time) )
+		{
+			m_device.getPollManager().onCharacteristicChangedFromNativeNotify_batched(serviceUuid, characteristicUuid);
+
+			return;
+		}
+
 		m_device.getPollManager().onCharacteristicChangedFromNativeNotify(serviceUuid, characteristicUuid, value);
 	}
 
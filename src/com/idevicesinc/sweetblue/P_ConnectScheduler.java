@@ -0,0 +1,137 @@
+package com.idevicesinc.sweetblue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import com.idevicesinc.sweetblue.utils.Percent;
+
+/**
+ * Kicks off and keeps track of "mass" reconnects, for now only the one after BLE turns back on. Devices are connected
+ * in order of how likely they are to succeed quickly, so that with {@link BleManagerConfig#maxConcurrentConnects} &gt; 1
+ * the first batch of concurrent attempts isn't wasted on devices that are far away or have been failing.
+ */
+class P_ConnectScheduler
+{
+	//--- Fewest connection failures since last connected first, then strongest signal, then whichever failed longest ago.
+	private static final Comparator<BleDevice> s_comparator = new Comparator<BleDevice>()
+	{
+		@Override public int compare(final BleDevice lhs, final BleDevice rhs)
+		{
+			final P_ConnectionFailManager lhsFails = lhs.getConnectionFailManager();
+			final P_ConnectionFailManager rhsFails = rhs.getConnectionFailManager();
+
+			final int failDiff = lhsFails.getFailCount_sinceLastConnect() - rhsFails.getFailCount_sinceLastConnect();
+
+			if( failDiff != 0 )  return failDiff;
+
+			final int rssiDiff = sortableRssi(rhs) - sortableRssi(lhs);
+
+			if( rssiDiff != 0 )  return rssiDiff;
+
+			final long lastFailDiff = lhsFails.getTimeOfLastFail_total() - rhsFails.getTimeOfLastFail_total();
+
+			return lastFailDiff < 0 ? -1 : (lastFailDiff > 0 ? 1 : 0);
+		}
+	};
+
+	private final BleManager m_mngr;
+
+	private final ArrayList<BleDevice> m_devices = new ArrayList<BleDevice>();
+
+	private boolean m_inProgress = false;
+
+	P_ConnectScheduler(final BleManager mngr)
+	{
+		m_mngr = mngr;
+	}
+
+	void connectAll(final List<BleDevice> devices)
+	{
+		m_devices.clear();
+		m_devices.addAll(devices);
+
+		sort(m_devices);
+
+		m_inProgress = !m_devices.isEmpty();
+
+		if( m_inProgress )
+		{
+			m_mngr.getLogger().i("Reconnecting " + m_devices.size() + " device(s).");
+		}
+
+		for( int i = 0; i < m_devices.size(); i++ )
+		{
+			m_devices.get(i).connect();
+		}
+	}
+
+	/**
+	 * Puts the given devices in the order they should be connected in.
+	 */
+	static void sort(final List<BleDevice> devices)
+	{
+		Collections.sort(devices, s_comparator);
+	}
+
+	private static int sortableRssi(final BleDevice device)
+	{
+		//--- Zero means we've never gotten an RSSI for the device, so put it at the back.
+		return device.getRssi() != 0 ? device.getRssi() : Integer.MIN_VALUE/2;
+	}
+
+	void update(final double timeStep)
+	{
+		if( !m_inProgress )  return;
+
+		if( getFinishedCount() >= m_devices.size() )
+		{
+			m_inProgress = false;
+
+			m_mngr.getLogger().i("Finished reconnecting, " + getConnectedCount() + " of " + m_devices.size() + " device(s) connected.");
+		}
+	}
+
+	Percent getProgress()
+	{
+		if( m_devices.isEmpty() )  return Percent.HUNDRED;
+
+		return Percent.fromDouble_clamped(100.0 * getFinishedCount() / m_devices.size());
+	}
+
+	boolean isInProgress()
+	{
+		return m_inProgress;
+	}
+
+	private int getFinishedCount()
+	{
+		int count = 0;
+
+		for( int i = 0; i < m_devices.size(); i++ )
+		{
+			if( !m_devices.get(i).is(BleDeviceState.CONNECTING_OVERALL) )
+			{
+				count++;
+			}
+		}
+
+		return count;
+	}
+
+	private int getConnectedCount()
+	{
+		int count = 0;
+
+		for( int i = 0; i < m_devices.size(); i++ )
+		{
+			if( m_devices.get(i).is(BleDeviceState.CONNECTED) )
+			{
+				count++;
+			}
+		}
+
+		return count;
+	}
+}
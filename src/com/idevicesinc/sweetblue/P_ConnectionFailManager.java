@@ -24,6 +24,11 @@ class P_ConnectionFailManager
 	
 	private Long m_timeOfFirstConnect = null;
 	private Long m_timeOfLastConnectFail = null;
+
+	//--- Unlike m_failCount these survive a new connect() call or a failure that isn't retried, so they still say
+	//---	something about how the device has been doing by the time the next mass reconnect comes around.
+	private int m_failCount_sinceLastConnect = 0;
+	private long m_timeOfLastFail_total = 0;
 	
 	private final ArrayList<ConnectionFailEvent> m_history = new ArrayList<ConnectionFailEvent>();
 	
@@ -42,6 +47,8 @@ class P_ConnectionFailManager
 	void onFullyInitialized()
 	{
 		resetFailCount();
+
+		m_failCount_sinceLastConnect = 0;
 	}
 	
 	void onExplicitConnectionStarted()
@@ -65,12 +72,41 @@ class P_ConnectionFailManager
 		
 		return retryCount;
 	}
+
+	/**
+	 * Number of failed connection attempts since the device was last fully connected, not counting cancellations.
+	 */
+	int getFailCount_sinceLastConnect()
+	{
+		return m_failCount_sinceLastConnect;
+	}
+
+	/**
+	 * Time of the last failed connection attempt not counting cancellations, or zero if there hasn't been one.
+	 */
+	long getTimeOfLastFail_total()
+	{
+		return m_timeOfLastFail_total;
+	}
+
+	//--- Package-private so tests can build up a history without going through real connection attempts.
+	void onFailureCounted(final long currentTime)
+	{
+		m_failCount_sinceLastConnect++;
+		m_timeOfLastFail_total = currentTime;
+	}
 	
 	PE_Please onConnectionFailed(ConnectionFailListener.Status reason_nullable, ConnectionFailListener.Timing timing, boolean isAttemptingReconnect_longTerm, int gattStatus, int bondFailReason, BleDeviceState highestStateReached, AutoConnectUsage autoConnectUsage, ReadWriteListener.ReadWriteEvent txnFailReason)
 	{
 		if( reason_nullable == null )  return PE_Please.DO_NOT_RETRY;
 		
 		final long currentTime = System.currentTimeMillis();
+
+		//--- Cancellations, like BLE turning off, don't say anything about the device itself.
+		if( !reason_nullable.wasCancelled() )
+		{
+			onFailureCounted(currentTime);
+		}
 		
 		//--- DRK > Can be null if this is a spontaneous connect (can happen with autoConnect sometimes for example).
 		m_timeOfFirstConnect = m_timeOfFirstConnect != null ? m_timeOfFirstConnect : currentTime;
@@ -343,6 +343,20 @@ class P_DeviceManager
 
 		m_updating = false;
 	}
+
+	double getTimeToNextUpdate()
+	{
+		double soonest = Double.POSITIVE_INFINITY;
+
+		for( int i = 0; i < m_list.size(); i++ )
+		{
+			soonest = Math.min(soonest, m_list.get(i).getTimeToNextUpdate());
+
+			if( soonest <= 0.0 )  break;
+		}
+
+		return soonest;
+	}
 	
 	void unbondAll(PE_TaskPriority priority, BondListener.Status status)
 	{
@@ -422,6 +436,8 @@ class P_DeviceManager
 	
 	void reconnectDevicesAfterBleTurningBackOn()
 	{
+		final ArrayList<BleDevice> toReconnect = new ArrayList<BleDevice>();
+
 		for( int i = m_list.size()-1; i >= 0; i-- )
 		{
 			final BleDevice device = (BleDevice) m_list.get(i);
@@ -430,9 +446,11 @@ class P_DeviceManager
 
 			if( autoReconnectDeviceWhenBleTurnsBackOn && device.lastDisconnectWasBecauseOfBleTurnOff() )
 			{
-				device.connect();
+				toReconnect.add(device);
 			}
 		}
+
+		m_mngr.m_connectScheduler.connectAll(toReconnect);
 	}
 
 	void undiscoverAllForTurnOff(final P_DeviceManager cache, final PA_StateTracker.E_Intent intent)
@@ -479,6 +497,11 @@ class P_DeviceManager
 		remove(device, cache);
 
 		undiscoverDevice(device, discoveryListener, intent);
+
+		if( cache == null || !cache.has(device) )
+		{
+			device.onRemoved();
+		}
 	}
 	
 	void purgeStaleDevices(final double scanTime, final P_DeviceManager cache, final BleManager.DiscoveryListener listener)
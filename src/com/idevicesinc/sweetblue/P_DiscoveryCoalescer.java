@@ -0,0 +1,169 @@
+package com.idevicesinc.sweetblue;
+
+import android.bluetooth.BluetoothDevice;
+
+import com.idevicesinc.sweetblue.utils.Interval;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Merges repeated advertisements from already discovered devices into one {@link BleManager.DiscoveryListener.LifeCycle#REDISCOVERED}
+ * per device per {@link BleManagerConfig#rediscoveryCoalescingWindow}, keeping the latest scan record and some RSSI statistics.
+ * Like discovery itself, everything here happens on the update thread.
+ */
+class P_DiscoveryCoalescer
+{
+	private static class Sighting
+	{
+		private final BleDevice m_device;
+
+		private BluetoothDevice m_device_native;
+		private List<UUID> m_services_nullable;
+		private byte[] m_scanRecord_nullable;
+		private int m_rssi;
+
+		private int m_rssiMin;
+		private int m_rssiMax;
+		private long m_rssiSum = 0;
+		private int m_count = 0;
+
+		private double m_age = 0.0;
+
+		private Sighting(final BleDevice device, final int rssi)
+		{
+			m_device = device;
+			m_rssiMin = rssi;
+			m_rssiMax = rssi;
+		}
+	}
+
+	private final BleManager m_mngr;
+
+	private final HashMap<String, Sighting> m_sightings = new HashMap<String, Sighting>();
+	private final ArrayList<Sighting> m_due = new ArrayList<Sighting>();
+
+	P_DiscoveryCoalescer(final BleManager mngr)
+	{
+		m_mngr = mngr;
+	}
+
+	private double getWindow()
+	{
+		return Interval.secs(m_mngr.m_config.rediscoveryCoalescingWindow);
+	}
+
+	/**
+	 * Returns <code>false</code> if coalescing is disabled, in which case the caller should go ahead with the rediscovery right away.
+	 */
+	boolean add(final BleDevice device, final BluetoothDevice device_native, final List<UUID> services_nullable, final byte[] scanRecord_nullable, final int rssi)
+	{
+		if( !Interval.isEnabled(getWindow()) )  return false;
+
+		Sighting sighting = m_sightings.get(device.getMacAddress());
+
+		if( sighting == null || sighting.m_device != device )
+		{
+			sighting = new Sighting(device, rssi);
+
+			m_sightings.put(device.getMacAddress(), sighting);
+		}
+
+		sighting.m_device_native = device_native;
+		sighting.m_scanRecord_nullable = scanRecord_nullable;
+		sighting.m_rssi = rssi;
+
+		//--- Not every advertisement has the services in it, so don't let a later one without them wipe out an earlier one's.
+		if( services_nullable != null && !services_nullable.isEmpty() )
+		{
+			sighting.m_services_nullable = services_nullable;
+		}
+
+		sighting.m_rssiMin = Math.min(sighting.m_rssiMin, rssi);
+		sighting.m_rssiMax = Math.max(sighting.m_rssiMax, rssi);
+		sighting.m_rssiSum += rssi;
+		sighting.m_count++;
+
+		return true;
+	}
+
+	void update(final double timeStep)
+	{
+		if( m_sightings.isEmpty() )  return;
+
+		final double window = getWindow();
+		final Iterator<Sighting> iterator = m_sightings.values().iterator();
+
+		while( iterator.hasNext() )
+		{
+			final Sighting sighting = iterator.next();
+
+			sighting.m_age += timeStep;
+
+			//--- Window may have been disabled in the meantime, in which case anything still waiting goes out now.
+			if( Interval.isEnabled(window) && sighting.m_age < window )  continue;
+
+			iterator.remove();
+
+			m_due.add(sighting);
+		}
+
+		//--- Emitted separately since listeners are free to do things that end up back in add().
+		for( int i = 0; i < m_due.size(); i++ )
+		{
+			final Sighting ith = m_due.get(i);
+
+			if( !canEmit(ith.m_device) )  continue;
+
+			final double rssiMean = (double) ith.m_rssiSum / ith.m_count;
+
+			emit(ith.m_device, ith.m_device_native, ith.m_services_nullable, ith.m_scanRecord_nullable, ith.m_rssi, ith.m_rssiMin, ith.m_rssiMax, rssiMean, ith.m_count);
+		}
+
+		m_due.clear();
+	}
+
+	/**
+	 * Device may have been undiscovered or BLE turned off since the last sighting.
+	 */
+	boolean canEmit(final BleDevice device)
+	{
+		return m_mngr.is(BleManagerState.ON) && m_mngr.m_deviceMngr.has(device);
+	}
+
+	void emit(final BleDevice device, final BluetoothDevice device_native, final List<UUID> services_nullable, final byte[] scanRecord_nullable, final int rssi, final int rssiMin, final int rssiMax, final double rssiMean, final int sightingCount)
+	{
+		m_mngr.onRediscovered_coalesced(device, device_native, services_nullable, scanRecord_nullable, rssi, rssiMin, rssiMax, rssiMean, sightingCount);
+	}
+
+	double getTimeToNextUpdate()
+	{
+		if( m_sightings.isEmpty() )  return Double.POSITIVE_INFINITY;
+
+		final double window = getWindow();
+
+		if( !Interval.isEnabled(window) )  return 0.0;
+
+		double soonest = Double.POSITIVE_INFINITY;
+
+		final Iterator<Sighting> iterator = m_sightings.values().iterator();
+
+		while( iterator.hasNext() )
+		{
+			soonest = Math.min(soonest, window - iterator.next().m_age);
+		}
+
+		return Math.max(0.0, soonest);
+	}
+
+	/**
+	 * Drops anything waiting for the given device, for when it's discovered anew and older sightings no longer apply.
+	 */
+	void remove(final BleDevice device)
+	{
+		m_sightings.remove(device.getMacAddress());
+	}
+}
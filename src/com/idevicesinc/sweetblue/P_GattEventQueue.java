@@ -0,0 +1,217 @@
+package com.idevicesinc.sweetblue;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattDescriptor;
+
+import com.idevicesinc.sweetblue.utils.UpdateLoop;
+
+/**
+ * Hands native {@link android.bluetooth.BluetoothGattCallback} calls for one device over to the update thread without
+ * allocating a new {@link Runnable} per callback. Events are written into a fixed ring of reusable {@link Event} instances
+ * by the binder thread and read back out by the update thread, with a single preallocated {@link Runnable} posted to
+ * wake the update thread up only if it isn't already scheduled to drain.
+ * <br><br>
+ * This is single-producer/single-consumer. Android delivers callbacks for a given {@link BluetoothGatt} one at a time,
+ * so while the producer thread can change from callback to callback, two callbacks are never writing at once.
+ * If the ring fills up because the update thread falls behind, events spill over into an unbounded queue so nothing
+ * is dropped, at the cost of an allocation per event until the update thread catches up.
+ */
+class P_GattEventQueue
+{
+	static enum Type
+	{
+		CONNECTION_STATE_CHANGE,
+		SERVICES_DISCOVERED,
+		CHARACTERISTIC_READ,
+		CHARACTERISTIC_WRITE,
+		RELIABLE_WRITE_COMPLETED,
+		READ_REMOTE_RSSI,
+		DESCRIPTOR_WRITE,
+		CHARACTERISTIC_CHANGED;
+	}
+
+	static interface Listener
+	{
+		void onEvent(final Event event);
+	}
+
+	/**
+	 * Mutable carrier for one callback's arguments. Only valid for the duration of {@link Listener#onEvent(Event)}.
+	 */
+	static class Event
+	{
+		private final boolean m_pooled;
+
+		Type m_type;
+		BluetoothGatt m_gatt;
+		BluetoothGattCharacteristic m_characteristic;
+		BluetoothGattDescriptor m_descriptor;
+		int m_gattStatus;
+
+		//--- newState for connection state changes, rssi for rssi reads.
+		int m_intValue;
+
+		byte[] m_value;
+
+		//--- Only set for notifications.
+		long m_time;
+
+		private Event(final boolean pooled)
+		{
+			m_pooled = pooled;
+		}
+
+		Event init(final Type type, final BluetoothGatt gatt, final int gattStatus)
+		{
+			m_type = type;
+			m_gatt = gatt;
+			m_gattStatus = gattStatus;
+
+			return this;
+		}
+
+		private void clear()
+		{
+			m_type = null;
+			m_gatt = null;
+			m_characteristic = null;
+			m_descriptor = null;
+			m_gattStatus = 0;
+			m_intValue = 0;
+			m_value = null;
+			m_time = 0;
+		}
+	}
+
+	static final int CAPACITY = 128;
+
+	private final Event[] m_ring = new Event[CAPACITY];
+	private final int m_mask = CAPACITY - 1;
+
+	//--- Both only ever increase, wrapping around is fine because we only ever look at the difference.
+	//---	m_tail is only written by the producer and m_head only by the consumer.
+	private volatile int m_head = 0;
+	private volatile int m_tail = 0;
+
+	private final ConcurrentLinkedQueue<Event> m_overflow = new ConcurrentLinkedQueue<Event>();
+
+	private final AtomicBoolean m_drainPosted = new AtomicBoolean(false);
+	private boolean m_draining = false;
+
+	private final BleManager m_mngr;
+	private final Listener m_listener;
+
+	private final Runnable m_drainRunnable = new Runnable()
+	{
+		@Override public void run()
+		{
+			drain();
+		}
+	};
+
+	P_GattEventQueue(final BleManager mngr, final Listener listener)
+	{
+		m_mngr = mngr;
+		m_listener = listener;
+
+		for( int i = 0; i < m_ring.length; i++ )
+		{
+			m_ring[i] = new Event(/*pooled=*/true);
+		}
+	}
+
+	/**
+	 * Called from the producer thread to get an {@link Event} to fill out and pass to {@link #publish(Event)}.
+	 */
+	Event obtain()
+	{
+		//--- Once we've started spilling over we have to keep doing so until the consumer catches up, otherwise order would be lost.
+		if( !m_overflow.isEmpty() || m_tail - m_head >= CAPACITY )
+		{
+			return new Event(/*pooled=*/false);
+		}
+
+		return m_ring[m_tail & m_mask];
+	}
+
+	void publish(final Event event)
+	{
+		if( event.m_pooled )
+		{
+			m_tail = m_tail + 1;
+		}
+		else
+		{
+			m_overflow.add(event);
+		}
+
+		final UpdateLoop updateLoop = m_mngr.getUpdateLoop();
+
+		if( updateLoop.postNeeded() )
+		{
+			if( m_drainPosted.compareAndSet(false, true) )
+			{
+				updateLoop.postIfNeeded(m_drainRunnable);
+			}
+		}
+		else
+		{
+			drain();
+		}
+	}
+
+	private void drain()
+	{
+		m_drainPosted.set(false);
+
+		//--- Something downstream of a callback ended up producing another one on this same thread, so just let the outer loop get it.
+		if( m_draining )  return;
+
+		m_draining = true;
+
+		try
+		{
+			while( true )
+			{
+				final int head = m_head;
+
+				if( head != m_tail )
+				{
+					final Event event = m_ring[head & m_mask];
+
+					try
+					{
+						m_listener.onEvent(event);
+					}
+					finally
+					{
+						event.clear();
+
+						m_head = head + 1;
+					}
+
+					continue;
+				}
+
+				final Event overflow = m_overflow.poll();
+
+				if( overflow != null )
+				{
+					m_listener.onEvent(overflow);
+
+					continue;
+				}
+
+				break;
+			}
+		}
+		finally
+		{
+			m_draining = false;
+		}
+	}
+}
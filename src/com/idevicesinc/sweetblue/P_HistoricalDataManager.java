@@ -6,39 +6,51 @@ import static com.idevicesinc.sweetblue.BleDeviceConfig.HistoricalDataLogFilter.
 
 import com.idevicesinc.sweetblue.annotations.Nullable;
 import com.idevicesinc.sweetblue.backend.historical.Backend_HistoricalDataList;
+import com.idevicesinc.sweetblue.backend.historical.Backend_HistoricalDataList_ChunkedLoad;
 import com.idevicesinc.sweetblue.backend.historical.Backend_HistoricalDatabase;
+import com.idevicesinc.sweetblue.backend.historical.Backend_HistoricalDatabase_Expiry;
 import com.idevicesinc.sweetblue.utils.EmptyIterator;
 import com.idevicesinc.sweetblue.utils.EpochTime;
 import com.idevicesinc.sweetblue.utils.EpochTimeRange;
 import com.idevicesinc.sweetblue.utils.ForEach_Returning;
 import com.idevicesinc.sweetblue.utils.HistoricalData;
 import com.idevicesinc.sweetblue.utils.HistoricalDataCursor;
+import com.idevicesinc.sweetblue.utils.HistoricalDataRollup;
+import com.idevicesinc.sweetblue.utils.Interval;
 import com.idevicesinc.sweetblue.utils.UpdateLoop;
 
-import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 class P_HistoricalDataManager
 {
 	private static final byte[] EMPTY_BYTE_ARRAY = new byte[0];
 	private static final EmptyIterator<HistoricalData> EMPTY_ITERATOR = new EmptyIterator<HistoricalData>();
 
-	private final Object LIST_CREATE_MUTEX = new Object();
-
-	private final HashMap<UUID, Backend_HistoricalDataList> m_lists = new HashMap<UUID, Backend_HistoricalDataList>();
+	//--- Read on whatever thread the app asks for data from and written on the update thread, so lookups shouldn't have to wait on a lock.
+	private final ConcurrentHashMap<UUID, Backend_HistoricalDataList> m_lists = new ConcurrentHashMap<UUID, Backend_HistoricalDataList>();
 	private final BleDevice m_device;
-	private final UpdateLoop m_updateLoop = UpdateLoop.newAnonThreadLoop();
+	private final UpdateLoop m_updateLoop;
 
 	private BleDevice.HistoricalDataLoadListener m_defaultListener = null;
 
 	private final P_HistoricalDataManager_PreviousUuids m_previousUuidsWithDataAdded;
 
+	private final P_HistoricalDataRollups m_rollups;
+
+	//--- Starts at zero so retention is enforced right away, catching up on anything that expired while the app wasn't running.
+	private double m_timeUntilCompaction = 0.0;
+
 	P_HistoricalDataManager(final BleDevice device)
 	{
 		m_device = device;
+		m_updateLoop = m_device.getManager().m_historicalDataThreadPool.getLoop(m_device.getMacAddress());
 
 		m_previousUuidsWithDataAdded = new P_HistoricalDataManager_PreviousUuids(m_device.getManager().getApplicationContext(), m_device.getMacAddress());
+
+		m_rollups = new P_HistoricalDataRollups(m_device);
 	}
 
 	void setListener(final BleDevice.HistoricalDataLoadListener listener)
@@ -51,64 +63,301 @@ class P_HistoricalDataManager
 		return m_device.getManager().m_historicalDatabase;
 	}
 
-	//GOOD
-	private Backend_HistoricalDataList getList_doNotCreate(final UUID uuid)
+	/**
+	 * Call before anything that reads from or deletes from the database directly, so it sees samples still sitting in
+	 * {@link P_HistoricalDataWriteBuffer}. Cheap when nothing's buffered.
+	 */
+	private void flushWriteBuffer()
 	{
-		synchronized(LIST_CREATE_MUTEX)
-		{
-			final Backend_HistoricalDataList existingList = m_lists.get(uuid);
+		m_device.getManager().m_historicalDataWriteBuffer.flush();
+	}
 
-			return existingList;
-		}
+	private Interval getRetention()
+	{
+		return BleDeviceConfig.interval(m_device.conf_device().historicalDataRetention, m_device.conf_mngr().historicalDataRetention);
 	}
 
-	//GOOD
-	private Backend_HistoricalDataList getList_onlyCreateIfDataIsOnDisk(final UUID uuid)
+	private Interval getRollupRetention()
+	{
+		return BleDeviceConfig.interval(m_device.conf_device().historicalDataRollupRetention, m_device.conf_mngr().historicalDataRollupRetention);
+	}
+
+	private boolean isRetentionEnabled()
+	{
+		return Interval.isEnabled(getRetention()) || Interval.isEnabled(getRollupRetention());
+	}
+
+	void update(final double timeStep)
+	{
+		if( !isRetentionEnabled() )  return;
+
+		m_timeUntilCompaction -= timeStep;
+
+		if( m_timeUntilCompaction > 0.0 )  return;
+
+		final Interval rate = BleDeviceConfig.interval(m_device.conf_device().historicalDataCompactionRate, m_device.conf_mngr().historicalDataCompactionRate);
+
+		m_timeUntilCompaction = Interval.isEnabled(rate) ? rate.secs() : BleDeviceConfig.DEFAULT_HISTORICAL_DATA_COMPACTION_RATE;
+
+		compact();
+	}
+
+	double getTimeToNextUpdate()
+	{
+		return isRetentionEnabled() ? Math.max(0.0, m_timeUntilCompaction) : Double.POSITIVE_INFINITY;
+	}
+
+	/**
+	 * Enforces {@link BleDeviceConfig#historicalDataRetention} and {@link BleDeviceConfig#historicalDataRollupRetention}. Rollups are
+	 * in memory so are expired right here, while raw data is expired on the historical data thread since it means going to disk.
+	 */
+	private void compact()
 	{
-		synchronized(LIST_CREATE_MUTEX)
+		final long now = System.currentTimeMillis();
+
+		final Interval rollupRetention = getRollupRetention();
+
+		if( Interval.isEnabled(rollupRetention) )
+		{
+			m_rollups.expire(now - rollupRetention.millis());
+		}
+
+		final Interval retention = getRetention();
+
+		if( !Interval.isEnabled(retention) )  return;
+
+		final long olderThan = now - retention.millis();
+		final UUID[] uuids = new UUID[m_previousUuidsWithDataAdded.getCount()];
+		final Iterator<UUID> previousUuids = m_previousUuidsWithDataAdded.getUuids();
+
+		for( int i = 0; i < uuids.length && previousUuids.hasNext(); i++ )
 		{
-			final Backend_HistoricalDataList existingList = m_lists.get(uuid);
+			uuids[i] = previousUuids.next();
+		}
 
-			if( existingList == null )
+		post(new Runnable()
+		{
+			@Override public void run()
 			{
-				final boolean tableExists = getDatabase().doesDataExist(m_device.getMacAddress(), uuid);
+				flushWriteBuffer();
 
-				if( tableExists )
+				final EpochTimeRange expired = new EpochTimeRange(Long.MIN_VALUE, olderThan - 1);
+
+				for( int i = 0; i < uuids.length; i++ )
 				{
-					final String uuidName = m_device.getManager().getLogger().charName(uuid);
-					final Backend_HistoricalDataList newList = PU_HistoricalData.newList(getDatabase(), m_updateLoop, m_device.getMacAddress(), uuid, uuidName, tableExists);
-					m_lists.put(uuid, newList);
+					if( uuids[i] == null )  continue;
+
+					final Backend_HistoricalDataList list = getList_doNotCreate(uuids[i]);
+
+					if( list != null )
+					{
+						list.delete_fromMemoryOnly(expired, Long.MAX_VALUE);
 
-					return newList;
+						onChanged(uuids[i], list);
+					}
+
+					expire(getDatabase(), m_device.getMacAddress(), uuids[i], olderThan);
 				}
 			}
+		});
+	}
 
-			return existingList;
+	static void expire(final Backend_HistoricalDatabase database, final String macAddress, final UUID uuid, final long olderThan)
+	{
+		if( database instanceof Backend_HistoricalDatabase_Expiry )
+		{
+			((Backend_HistoricalDatabase_Expiry) database).expire_singleUuid(macAddress, uuid, olderThan);
+		}
+		else
+		{
+			database.delete_singleUuid_inRange(macAddress, uuid, new EpochTimeRange(Long.MIN_VALUE, olderThan - 1), Long.MAX_VALUE);
 		}
 	}
 
-	//GOOD
-	private Backend_HistoricalDataList getList_createIfNotExists(final UUID uuid)
+	private double getMaxWriteDelay()
+	{
+		return Interval.secs(BleDeviceConfig.interval(m_device.conf_device().historicalDataMaxWriteDelay, m_device.conf_mngr().historicalDataMaxWriteDelay));
+	}
+
+	/**
+	 * Adds to the list, except that if {@link BleDeviceConfig#historicalDataMaxWriteDelay} is enabled the disk half of the add
+	 * goes through {@link P_HistoricalDataWriteBuffer} instead.
+	 */
+	private void add(final Backend_HistoricalDataList list, final UUID uuid, final HistoricalData historicalData, final PersistenceLevel logChoice, final long limit, final double maxWriteDelay)
 	{
-		synchronized(LIST_CREATE_MUTEX)
+		m_rollups.add(uuid, historicalData.getEpochTime_millis(), historicalData.getBlob());
+
+		if( logChoice.includesDisk() && Interval.isEnabled(maxWriteDelay) )
 		{
-			final Backend_HistoricalDataList existingList = m_lists.get(uuid);
+			if( logChoice.includesMemory() )
+			{
+				list.add_single(historicalData, PersistenceLevel.MEMORY, limit);
+			}
 
-			if( existingList == null )
+			m_device.getManager().m_historicalDataWriteBuffer.add(m_device.getMacAddress(), uuid, historicalData, limit, maxWriteDelay);
+		}
+		else
+		{
+			list.add_single(historicalData, logChoice, limit);
+		}
+
+		onChanged(uuid, list);
+	}
+
+	private boolean isWriteBuffered(final PersistenceLevel logChoice)
+	{
+		return logChoice.includesDisk() && Interval.isEnabled(getMaxWriteDelay());
+	}
+
+	/**
+	 * Multiple adds that aren't buffered go straight to the list in one call, so rollups are fed as the list pulls each item out.
+	 */
+	private Iterator<HistoricalData> rollupAsYouGo(final UUID uuid, final Iterator<HistoricalData> historicalData)
+	{
+		if( m_rollups.getDecoder() == null )  return historicalData;
+
+		return new Iterator<HistoricalData>()
+		{
+			@Override public boolean hasNext()
+			{
+				return historicalData.hasNext();
+			}
+
+			@Override public HistoricalData next()
 			{
-				final boolean tableExists = getDatabase().doesDataExist(m_device.getMacAddress(), uuid);
-				final String uuidName = m_device.getManager().getLogger().charName(uuid);
+				final HistoricalData next = historicalData.next();
 
-				final Backend_HistoricalDataList newList = PU_HistoricalData.newList(getDatabase(), m_updateLoop, m_device.getMacAddress(), uuid, uuidName, tableExists);
-				m_lists.put(uuid, newList);
+				m_rollups.add(uuid, next.getEpochTime_millis(), next.getBlob());
 
-				return newList;
+				return next;
 			}
-			else
+
+			@Override public void remove()
+			{
+				historicalData.remove();
+			}
+		};
+	}
+
+	private ForEach_Returning<HistoricalData> rollupAsYouGo(final UUID uuid, final ForEach_Returning<HistoricalData> historicalData)
+	{
+		if( m_rollups.getDecoder() == null )  return historicalData;
+
+		return new ForEach_Returning<HistoricalData>()
+		{
+			@Override public HistoricalData next(final int index)
 			{
-				return existingList;
+				final HistoricalData next = historicalData.next(index);
+
+				if( next != null )
+				{
+					m_rollups.add(uuid, next.getEpochTime_millis(), next.getBlob());
+				}
+
+				return next;
 			}
+		};
+	}
+
+	private static boolean isEverything(final EpochTimeRange range, final long limit)
+	{
+		final EpochTimeRange range_nonNull = EpochTimeRange.denull(range);
+
+		return limit == Long.MAX_VALUE && range_nonNull.from().toMilliseconds() == Long.MIN_VALUE && range_nonNull.to().toMilliseconds() == Long.MAX_VALUE;
+	}
+
+	//GOOD
+	private Backend_HistoricalDataList getList_doNotCreate(final UUID uuid)
+	{
+		return m_lists.get(uuid);
+	}
+
+	//GOOD
+	private Backend_HistoricalDataList getList_onlyCreateIfDataIsOnDisk(final UUID uuid)
+	{
+		final Backend_HistoricalDataList existingList = m_lists.get(uuid);
+		final Backend_HistoricalDataList list;
+
+		if( existingList == null )
+		{
+			flushWriteBuffer();
+
+			final boolean tableExists = getDatabase().doesDataExist(m_device.getMacAddress(), uuid);
+
+			list = tableExists ? putList(uuid, tableExists) : null;
+		}
+		else
+		{
+			list = existingList;
 		}
+
+		getMemoryBudget().onLookup(this, uuid, list, existingList != null);
+
+		return list;
+	}
+
+	//GOOD
+	private Backend_HistoricalDataList getList_createIfNotExists(final UUID uuid)
+	{
+		final Backend_HistoricalDataList existingList = m_lists.get(uuid);
+		final Backend_HistoricalDataList list;
+
+		if( existingList == null )
+		{
+			final boolean tableExists = getDatabase().doesDataExist(m_device.getMacAddress(), uuid);
+
+			list = putList(uuid, tableExists);
+		}
+		else
+		{
+			list = existingList;
+		}
+
+		getMemoryBudget().onLookup(this, uuid, list, existingList != null);
+
+		return list;
+	}
+
+	/**
+	 * Creates a new list and adds it to {@link #m_lists}, unless another thread got there first, in which case that one is returned
+	 * and the new one is just dropped. Creating a list has no side effects so this is cheaper than making every lookup take a lock.
+	 */
+	private Backend_HistoricalDataList putList(final UUID uuid, final boolean tableExists)
+	{
+		final String uuidName = m_device.getManager().getLogger().charName(uuid);
+		final Backend_HistoricalDataList newList = PU_HistoricalData.newList(getDatabase(), m_updateLoop, m_device.getMacAddress(), uuid, uuidName, tableExists);
+		final Backend_HistoricalDataList existingList = m_lists.putIfAbsent(uuid, newList);
+
+		return existingList != null ? existingList : newList;
+	}
+
+	/**
+	 * Called by {@link P_HistoricalDataMemoryBudget} to drop a list from memory, unless it's already been replaced.
+	 */
+	void evict(final UUID uuid, final Backend_HistoricalDataList list)
+	{
+		m_lists.remove(uuid, list);
+	}
+
+	/**
+	 * Called when the device is dropped for good, as opposed to undiscovered but kept in the cache, where its lists could still be read.
+	 */
+	void onRemoved()
+	{
+		getMemoryBudget().remove(this);
+	}
+
+	private P_HistoricalDataMemoryBudget getMemoryBudget()
+	{
+		return m_device.getManager().m_historicalDataMemoryBudget;
+	}
+
+	private void onChanged(final UUID uuid, final Backend_HistoricalDataList list)
+	{
+		//--- Might have been evicted in the meantime, in which case it shouldn't count against the budget anymore.
+		if( getList_doNotCreate(uuid) != list )  return;
+
+		getMemoryBudget().onChanged(this, uuid, list);
 	}
 
 	//GOOD
@@ -124,7 +373,7 @@ class P_HistoricalDataManager
 
 		m_previousUuidsWithDataAdded.addUuid(uuid);
 
-		list.add_single(historicalData, please.m_logChoice, please.getLimit());
+		add(list, uuid, historicalData, please.m_logChoice, please.getLimit(), getMaxWriteDelay());
 	}
 
 	//GOOD
@@ -149,7 +398,7 @@ class P_HistoricalDataManager
 
 		m_previousUuidsWithDataAdded.addUuid(uuid);
 
-		list.add_single(historicalData_override, please.m_logChoice, please.getLimit());
+		add(list, uuid, historicalData_override, please.m_logChoice, please.getLimit(), getMaxWriteDelay());
 	}
 
 	//GOOD
@@ -163,7 +412,21 @@ class P_HistoricalDataManager
 
 		m_previousUuidsWithDataAdded.addUuid(uuid);
 
-		list.add_multiple(historicalData, please.m_logChoice, please.getLimit());
+		if( isWriteBuffered(please.m_logChoice) )
+		{
+			final double maxWriteDelay = getMaxWriteDelay();
+
+			while( historicalData.hasNext() )
+			{
+				add(list, uuid, historicalData.next(), please.m_logChoice, please.getLimit(), maxWriteDelay);
+			}
+		}
+		else
+		{
+			list.add_multiple(rollupAsYouGo(uuid, historicalData), please.m_logChoice, please.getLimit());
+
+			onChanged(uuid, list);
+		}
 	}
 
 	//GOOD
@@ -177,7 +440,25 @@ class P_HistoricalDataManager
 
 		m_previousUuidsWithDataAdded.addUuid(uuid);
 
-		list.add_multiple(historicalData, please.m_logChoice, please.getLimit());
+		if( isWriteBuffered(please.m_logChoice) )
+		{
+			final double maxWriteDelay = getMaxWriteDelay();
+
+			for( int i = 0; ; i++ )
+			{
+				final HistoricalData next = historicalData.next(i);
+
+				if( next == null )  break;
+
+				add(list, uuid, next, please.m_logChoice, please.getLimit(), maxWriteDelay);
+			}
+		}
+		else
+		{
+			list.add_multiple(rollupAsYouGo(uuid, historicalData), please.m_logChoice, please.getLimit());
+
+			onChanged(uuid, list);
+		}
 	}
 
 	//GOOD
@@ -200,6 +481,17 @@ class P_HistoricalDataManager
 	{
 		final Backend_HistoricalDataList list = getList_doNotCreate(uuid);
 
+		if( !memoryOnly )
+		{
+			flushWriteBuffer();
+
+			//--- Rollups can't be un-merged, so they only follow deletes that wipe everything.
+			if( isEverything(range, limit) )
+			{
+				m_rollups.clear(uuid);
+			}
+		}
+
 		if( memoryOnly )
 		{
 			if( list != null )
@@ -218,6 +510,11 @@ class P_HistoricalDataManager
 				getDatabase().delete_singleUuid_inRange(m_device.getMacAddress(), uuid, range, limit);
 			}
 		}
+
+		if( list != null )
+		{
+			onChanged(uuid, list);
+		}
 	}
 
 	// GOOD
@@ -231,6 +528,16 @@ class P_HistoricalDataManager
 	//GOOD
 	public void delete_all(final EpochTimeRange range, final long limit, final boolean memoryOnly)
 	{
+		if( !memoryOnly )
+		{
+			flushWriteBuffer();
+
+			if( isEverything(range, limit) )
+			{
+				m_rollups.clearAll();
+			}
+		}
+
 		final Iterator<UUID> knownUuids = m_previousUuidsWithDataAdded.getUuids();
 
 		final UUID[] uuids = !memoryOnly ? new UUID[m_previousUuidsWithDataAdded.getCount()] : null;
@@ -262,6 +569,8 @@ class P_HistoricalDataManager
 			{
 				list.delete_fromMemoryOnlyForNowButDatabaseSoon(range, limit);
 			}
+
+			onChanged(ith, list);
 		}
 
 		if( !memoryOnly )
@@ -319,10 +628,102 @@ class P_HistoricalDataManager
 		}
 		else
 		{
+			flushWriteBuffer();
+
 			return getDatabase().getCursor(m_device.getMacAddress(), uuid, range);
 		}
 	}
 
+	public BleDeviceConfig.HistoricalDataRollupDecoder getDecoder()
+	{
+		return m_rollups.getDecoder();
+	}
+
+	public List<HistoricalDataRollup> getRollups(final UUID uuid, final EpochTimeRange range, final Interval resolution)
+	{
+		final EpochTimeRange range_nonNull = EpochTimeRange.denull(range);
+		final long from = range_nonNull.from().toMilliseconds();
+		final long to = range_nonNull.to().toMilliseconds();
+		final long resolution_millis = Interval.isEnabled(resolution) ? resolution.millis() : 1;
+
+		final P_HistoricalDataRollups.Accumulator accumulator = new P_HistoricalDataRollups.Accumulator(resolution_millis);
+
+		final BleDeviceConfig.HistoricalDataRollupDecoder decoder = m_rollups.getDecoder();
+
+		if( decoder == null )  return accumulator.getResult();
+
+		final long width = m_rollups.getTierWidth(uuid, resolution_millis);
+
+		//--- Only whole tier buckets inside the range can come from rollups, partial ones at either end would include data outside it.
+		if( width > 0 && to >= Long.MIN_VALUE + width )
+		{
+			final long innerFrom = from == Long.MIN_VALUE ? from : P_HistoricalDataRollupTier.alignUp(from, width);
+			final long innerTo = to == Long.MAX_VALUE ? to : P_HistoricalDataRollupTier.align(to + 1, width) - 1;
+
+			if( innerFrom <= innerTo && isRolledUp(uuid, width, innerFrom, innerTo) )
+			{
+				if( from < innerFrom )
+				{
+					accumulateRaw(uuid, new EpochTimeRange(from, innerFrom - 1), decoder, accumulator);
+				}
+
+				m_rollups.forEach(uuid, width, innerFrom, innerTo, accumulator);
+
+				if( innerTo < to )
+				{
+					accumulateRaw(uuid, new EpochTimeRange(innerTo + 1, to), decoder, accumulator);
+				}
+
+				return accumulator.getResult();
+			}
+		}
+
+		accumulateRaw(uuid, range_nonNull, decoder, accumulator);
+
+		return accumulator.getResult();
+	}
+
+	/**
+	 * Whether the tier of the given width has seen all the data in the given range. Rollups only start with the first data added
+	 * this session and drop old buckets past their limit, so anything older still in the database has to be checked for.
+	 */
+	private boolean isRolledUp(final UUID uuid, final long width, final long from, final long to)
+	{
+		final long coverageStart = m_rollups.getCoverageStart(uuid, width);
+
+		if( coverageStart <= from )  return true;
+
+		final EpochTimeRange uncovered = new EpochTimeRange(from, Math.min(coverageStart - 1, to));
+		final Backend_HistoricalDataList list = getList_doNotCreate(uuid);
+
+		if( list != null )
+		{
+			if( list.getCount(uncovered) > 0 )  return false;
+
+			if( list.getLoadState() == Backend_HistoricalDataList.LOAD_STATE__LOADED )  return true;
+		}
+
+		//--- A list that isn't loaded only counts what's in memory, which is exactly the data rollups already have, so go to disk for the rest.
+		flushWriteBuffer();
+
+		return getDatabase().getCount(m_device.getMacAddress(), uuid, uncovered) == 0;
+	}
+
+	private void accumulateRaw(final UUID uuid, final EpochTimeRange range, final BleDeviceConfig.HistoricalDataRollupDecoder decoder, final P_HistoricalDataRollups.Accumulator accumulator)
+	{
+		final Iterator<HistoricalData> iterator = getIterator(uuid, range);
+
+		while( iterator.hasNext() )
+		{
+			final HistoricalData next = iterator.next();
+			final double value = decoder.decode(uuid, next.getBlob());
+
+			if( Double.isNaN(value) )  continue;
+
+			accumulator.add(next.getEpochTime_millis(), value);
+		}
+	}
+
 	//GOOD
 	public boolean hasHistoricalData(final UUID uuid, final EpochTimeRange range)
 	{
@@ -356,6 +757,8 @@ class P_HistoricalDataManager
 				}
 				else
 				{
+					flushWriteBuffer();
+
 					if( getDatabase().getCount(m_device.getMacAddress(), ithUuid, range) > 0 )
 					{
 						return true;
@@ -407,14 +810,37 @@ class P_HistoricalDataManager
 						invokeListeners(uuid_nullable, EpochTimeRange.NULL, BleDevice.HistoricalDataLoadListener.Status.STARTED_LOADING, listener_nullable);
 					}
 
-					list.load(new Backend_HistoricalDataList.AsyncLoadCallback()
+					flushWriteBuffer();
+
+					final int chunkSize = BleDeviceConfig.integer(m_device.conf_device().historicalDataLoadChunkSize, m_device.conf_mngr().historicalDataLoadChunkSize, 0);
+
+					final Backend_HistoricalDataList.AsyncLoadProgressCallback callback = new Backend_HistoricalDataList.AsyncLoadProgressCallback()
 					{
+						@Override public void onProgress(final int loadedCount, final int totalCount)
+						{
+							if( loadedCount >= totalCount )  return;
+
+							final double progress = (double) loadedCount / totalCount;
+
+							m_device.getManager().getUpdateLoop().postIfNeeded(new Runnable()
+							{
+								@Override public void run()
+								{
+									onChanged(uuid_nullable, list);
+
+									invokeListeners(uuid_nullable, list.getRange(), BleDevice.HistoricalDataLoadListener.Status.PARTIALLY_LOADED, listener_nullable, progress);
+								}
+							});
+						}
+
 						@Override public void onDone()
 						{
 							m_device.getManager().getUpdateLoop().postIfNeeded(new Runnable()
 							{
 								@Override public void run()
 								{
+									onChanged(uuid_nullable, list);
+
 									if( list.getLoadState() == Backend_HistoricalDataList.LOAD_STATE__LOADED )
 									{
 										invokeListeners(uuid_nullable, list.getRange(), BleDevice.HistoricalDataLoadListener.Status.LOADED, listener_nullable);
@@ -432,7 +858,17 @@ class P_HistoricalDataManager
 							});
 
 						}
-					});
+					};
+
+					if( list instanceof Backend_HistoricalDataList_ChunkedLoad )
+					{
+						((Backend_HistoricalDataList_ChunkedLoad) list).load(chunkSize, callback);
+					}
+					else
+					{
+						//--- Custom lists without chunked loading load everything at once, so only ever report being done.
+						list.load(callback);
+					}
 				}
 				else
 				{
@@ -522,20 +958,25 @@ class P_HistoricalDataManager
 
 	//GOOD
 	void invokeListeners(final UUID uuid, final EpochTimeRange range, final BleDevice.HistoricalDataLoadListener.Status status, final BleDevice.HistoricalDataLoadListener listener_nullable)
+	{
+		invokeListeners(uuid, range, status, listener_nullable, status == BleDevice.HistoricalDataLoadListener.Status.LOADED || status == BleDevice.HistoricalDataLoadListener.Status.ALREADY_LOADED ? 1.0 : 0.0);
+	}
+
+	void invokeListeners(final UUID uuid, final EpochTimeRange range, final BleDevice.HistoricalDataLoadListener.Status status, final BleDevice.HistoricalDataLoadListener listener_nullable, final double progress)
 	{
 		BleDevice.HistoricalDataLoadListener.HistoricalDataLoadEvent event = null;
 
-		event = invokeListener(uuid, range, listener_nullable, status, event);
-		event = invokeListener(uuid, range, m_defaultListener, status, event);
-		event = invokeListener(uuid, range, m_device.getManager().m_historicalDataLoadListener, status, event);
+		event = invokeListener(uuid, range, listener_nullable, status, progress, event);
+		event = invokeListener(uuid, range, m_defaultListener, status, progress, event);
+		event = invokeListener(uuid, range, m_device.getManager().m_historicalDataLoadListener, status, progress, event);
 	}
 
 	//GOOD
-	private BleDevice.HistoricalDataLoadListener.HistoricalDataLoadEvent invokeListener(final UUID uuid, final EpochTimeRange range, final BleDevice.HistoricalDataLoadListener listener_nullable, BleDevice.HistoricalDataLoadListener.Status status, BleDevice.HistoricalDataLoadListener.HistoricalDataLoadEvent event_nullable)
+	private BleDevice.HistoricalDataLoadListener.HistoricalDataLoadEvent invokeListener(final UUID uuid, final EpochTimeRange range, final BleDevice.HistoricalDataLoadListener listener_nullable, BleDevice.HistoricalDataLoadListener.Status status, final double progress, BleDevice.HistoricalDataLoadListener.HistoricalDataLoadEvent event_nullable)
 	{
 		if( listener_nullable != null )
 		{
-			event_nullable = event_nullable != null ? event_nullable : new BleDevice.HistoricalDataLoadListener.HistoricalDataLoadEvent(m_device, uuid, range, status);
+			event_nullable = event_nullable != null ? event_nullable : new BleDevice.HistoricalDataLoadListener.HistoricalDataLoadEvent(m_device, uuid, range, status, progress);
 
 			listener_nullable.onEvent(event_nullable);
 		}
@@ -5,8 +5,11 @@ import android.content.SharedPreferences;
 
 import com.idevicesinc.sweetblue.utils.Uuids;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 
@@ -83,6 +86,42 @@ class P_HistoricalDataManager_PreviousUuids
 		}
 	}
 
+	/**
+	 * Every MAC address that's had data added, mapped to the UUIDs it was added for, whether or not there's a {@link BleDevice} for it right now.
+	 */
+	static HashMap<String, ArrayList<UUID>> getAll(final Context context)
+	{
+		final HashMap<String, ArrayList<UUID>> all = new HashMap<String, ArrayList<UUID>>();
+		final Map<String, ?> prefs = context.getSharedPreferences(NAMESPACE, ACCESS_MODE).getAll();
+		final Iterator<? extends Map.Entry<String, ?>> entries = prefs.entrySet().iterator();
+
+		while( entries.hasNext() )
+		{
+			final Map.Entry<String, ?> entry = entries.next();
+
+			if( !(entry.getValue() instanceof Set) )  continue;
+
+			final ArrayList<UUID> uuids = new ArrayList<UUID>();
+			final Iterator<?> iterator = ((Set<?>) entry.getValue()).iterator();
+
+			while( iterator.hasNext() )
+			{
+				final Object uuid_string = iterator.next();
+
+				if( !(uuid_string instanceof String) || ((String) uuid_string).isEmpty() )  continue;
+
+				uuids.add(Uuids.fromString((String) uuid_string));
+			}
+
+			if( !uuids.isEmpty() )
+			{
+				all.put(entry.getKey(), uuids);
+			}
+		}
+
+		return all;
+	}
+
 	private SharedPreferences prefs()
 	{
 		final SharedPreferences prefs = m_context.getSharedPreferences(NAMESPACE, ACCESS_MODE);
@@ -0,0 +1,193 @@
+package com.idevicesinc.sweetblue;
+
+import com.idevicesinc.sweetblue.backend.historical.Backend_HistoricalDataList;
+import com.idevicesinc.sweetblue.backend.historical.Backend_HistoricalDataList_MemoryUsage;
+import com.idevicesinc.sweetblue.utils.EpochTimeRange;
+import com.idevicesinc.sweetblue.utils.HistoricalDataMemoryMetrics;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.UUID;
+
+/**
+ * Keeps the in-memory historical data lists of all devices within {@link BleManagerConfig#historicalDataMemoryBudget} by evicting
+ * the least recently used ones. An evicted list is simply dropped from its {@link P_HistoricalDataManager}, which is the same state
+ * it would be in after an app restart - anything persisted is still on disk and is read or loaded back from there on demand,
+ * and anything that was only in memory is gone.
+ * <br><br>
+ * Evictions happen outside of this class's lock, since evicting calls back into the owning {@link P_HistoricalDataManager},
+ * which should never have to wait on every other device's lookups.
+ */
+class P_HistoricalDataMemoryBudget
+{
+	//--- For lists that can't measure themselves: a HistoricalData, its EpochTime and a small blob, plus the reference to it.
+	private static final long ESTIMATED_BYTES_PER_ENTRY = 64;
+
+	private static class Entry
+	{
+		private final P_HistoricalDataManager m_owner;
+		private final UUID m_uuid;
+		private final Backend_HistoricalDataList m_list;
+		private long m_size = 0;
+
+		private Entry(final P_HistoricalDataManager owner, final UUID uuid, final Backend_HistoricalDataList list)
+		{
+			m_owner = owner;
+			m_uuid = uuid;
+			m_list = list;
+		}
+	}
+
+	private final BleManager m_mngr;
+
+	//--- Access ordered, so iteration goes from least to most recently used.
+	private final LinkedHashMap<Backend_HistoricalDataList, Entry> m_entries = new LinkedHashMap<Backend_HistoricalDataList, Entry>(16, 0.75f, /*accessOrder=*/true);
+
+	private long m_bytesUsed = 0;
+	private long m_hits = 0;
+	private long m_misses = 0;
+	private long m_evictions = 0;
+
+	P_HistoricalDataMemoryBudget(final BleManager mngr)
+	{
+		m_mngr = mngr;
+	}
+
+	private long getBudget()
+	{
+		return m_mngr.m_config.historicalDataMemoryBudget;
+	}
+
+	/**
+	 * Call whenever a list is looked up in order to read from or add to it, with <code>wasInMemory</code> being whether the list already existed.
+	 * Lookups that don't end up with a list, because there's no data at all, don't count.
+	 */
+	void onLookup(final P_HistoricalDataManager owner, final UUID uuid, final Backend_HistoricalDataList list_nullable, final boolean wasInMemory)
+	{
+		if( list_nullable == null )  return;
+
+		synchronized (this)
+		{
+			if( wasInMemory )
+			{
+				m_hits++;
+			}
+			else
+			{
+				m_misses++;
+			}
+
+			if( getBudget() > 0 )
+			{
+				getEntry(owner, uuid, list_nullable);
+			}
+		}
+	}
+
+	/**
+	 * Call after a list grows or shrinks, which re-measures it and evicts other lists if that puts things over budget.
+	 */
+	void onChanged(final P_HistoricalDataManager owner, final UUID uuid, final Backend_HistoricalDataList list)
+	{
+		final long budget = getBudget();
+
+		if( budget <= 0 )  return;
+
+		final long size = getMemoryUsage(list);
+
+		ArrayList<Entry> evicted = null;
+
+		synchronized (this)
+		{
+			final Entry entry = getEntry(owner, uuid, list);
+
+			m_bytesUsed += size - entry.m_size;
+			entry.m_size = size;
+
+			final Iterator<Entry> entries = m_entries.values().iterator();
+
+			while( m_bytesUsed > budget && entries.hasNext() )
+			{
+				final Entry eldest = entries.next();
+
+				//--- The list just changed is about to be used again, and one that's loading would just lose the load.
+				if( eldest == entry || eldest.m_list.getLoadState() == Backend_HistoricalDataList.LOAD_STATE__LOADING )  continue;
+
+				entries.remove();
+
+				m_bytesUsed -= eldest.m_size;
+				m_evictions++;
+
+				evicted = evicted != null ? evicted : new ArrayList<Entry>();
+				evicted.add(eldest);
+			}
+		}
+
+		if( evicted == null )  return;
+
+		for( int i = 0; i < evicted.size(); i++ )
+		{
+			final Entry ith = evicted.get(i);
+
+			ith.m_owner.evict(ith.m_uuid, ith.m_list);
+		}
+	}
+
+	/**
+	 * Stops tracking every list belonging to the given owner, for when its device is dropped for good. Otherwise the entries here
+	 * would be the only thing keeping the device and its lists from being garbage collected.
+	 */
+	void remove(final P_HistoricalDataManager owner)
+	{
+		synchronized (this)
+		{
+			final Iterator<Entry> entries = m_entries.values().iterator();
+
+			while( entries.hasNext() )
+			{
+				final Entry entry = entries.next();
+
+				if( entry.m_owner != owner )  continue;
+
+				entries.remove();
+
+				m_bytesUsed -= entry.m_size;
+			}
+		}
+	}
+
+	HistoricalDataMemoryMetrics getMetrics()
+	{
+		synchronized (this)
+		{
+			return new HistoricalDataMemoryMetrics(Math.max(0, getBudget()), m_bytesUsed, m_entries.size(), m_hits, m_misses, m_evictions);
+		}
+	}
+
+	private static long getMemoryUsage(final Backend_HistoricalDataList list)
+	{
+		if( list instanceof Backend_HistoricalDataList_MemoryUsage )
+		{
+			return ((Backend_HistoricalDataList_MemoryUsage) list).getMemoryUsage();
+		}
+		else
+		{
+			return list.getCount(EpochTimeRange.FROM_MIN_TO_MAX) * ESTIMATED_BYTES_PER_ENTRY;
+		}
+	}
+
+	private Entry getEntry(final P_HistoricalDataManager owner, final UUID uuid, final Backend_HistoricalDataList list)
+	{
+		Entry entry = m_entries.get(list);
+
+		if( entry == null )
+		{
+			entry = new Entry(owner, uuid, list);
+
+			m_entries.put(list, entry);
+		}
+
+		return entry;
+	}
+}
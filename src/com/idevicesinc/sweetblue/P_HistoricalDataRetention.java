@@ -0,0 +1,104 @@
+package com.idevicesinc.sweetblue;
+
+import com.idevicesinc.sweetblue.utils.Interval;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Enforces {@link BleManagerConfig#historicalDataRetention} for everything in the database whose MAC address doesn't currently have a
+ * discovered {@link BleDevice}, for example devices that haven't been seen since the app started. Discovered devices enforce their own,
+ * possibly overridden, retention through {@link P_HistoricalDataManager}. Which MAC addresses and UUIDs have data comes from
+ * {@link P_HistoricalDataManager_PreviousUuids}, so this works the same for any database backend.
+ */
+class P_HistoricalDataRetention
+{
+	private final BleManager m_mngr;
+
+	//--- Starts at zero so retention is enforced right away, catching up on anything that expired while the app wasn't running.
+	private double m_timeUntilCompaction = 0.0;
+
+	P_HistoricalDataRetention(final BleManager mngr)
+	{
+		m_mngr = mngr;
+	}
+
+	private Interval getRetention()
+	{
+		return m_mngr.m_config.historicalDataRetention;
+	}
+
+	void update(final double timeStep)
+	{
+		final Interval retention = getRetention();
+
+		if( !Interval.isEnabled(retention) )  return;
+
+		m_timeUntilCompaction -= timeStep;
+
+		if( m_timeUntilCompaction > 0.0 )  return;
+
+		final Interval rate = m_mngr.m_config.historicalDataCompactionRate;
+
+		m_timeUntilCompaction = Interval.isEnabled(rate) ? rate.secs() : BleDeviceConfig.DEFAULT_HISTORICAL_DATA_COMPACTION_RATE;
+
+		compact(System.currentTimeMillis() - retention.millis());
+	}
+
+	double getTimeToNextUpdate()
+	{
+		return Interval.isEnabled(getRetention()) ? Math.max(0.0, m_timeUntilCompaction) : Double.POSITIVE_INFINITY;
+	}
+
+	private void compact(final long olderThan)
+	{
+		//--- Gathered here since the device list belongs to the update thread.
+		final HashSet<String> discovered = new HashSet<String>();
+
+		for( int i = 0; i < m_mngr.m_deviceMngr.getCount(); i++ )
+		{
+			discovered.add(m_mngr.m_deviceMngr.get(i).getMacAddress());
+		}
+
+		m_mngr.m_historicalDataThreadPool.getSharedLoop().forcePost(new Runnable()
+		{
+			@Override public void run()
+			{
+				final HashMap<String, ArrayList<UUID>> all = P_HistoricalDataManager_PreviousUuids.getAll(m_mngr.getApplicationContext());
+				final Iterator<Map.Entry<String, ArrayList<UUID>>> entries = all.entrySet().iterator();
+
+				while( entries.hasNext() )
+				{
+					final Map.Entry<String, ArrayList<UUID>> entry = entries.next();
+
+					if( discovered.contains(entry.getKey()) )  continue;
+
+					expire(entry.getKey(), entry.getValue(), olderThan);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Posted to the MAC address's own thread so it's ordered with anything else going on for that address.
+	 */
+	private void expire(final String macAddress, final ArrayList<UUID> uuids, final long olderThan)
+	{
+		m_mngr.m_historicalDataThreadPool.getLoop(macAddress).forcePost(new Runnable()
+		{
+			@Override public void run()
+			{
+				m_mngr.m_historicalDataWriteBuffer.flush();
+
+				for( int i = 0; i < uuids.size(); i++ )
+				{
+					P_HistoricalDataManager.expire(m_mngr.m_historicalDatabase, macAddress, uuids.get(i), olderThan);
+				}
+			}
+		});
+	}
+}
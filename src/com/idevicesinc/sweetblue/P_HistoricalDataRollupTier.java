@@ -0,0 +1,210 @@
+package com.idevicesinc.sweetblue;
+
+
+/**
+ * One resolution of rollups for one characteristic, see {@link BleDeviceConfig#historicalDataRollupTiers}. Buckets are aligned to
+ * multiples of the bucket width since 1970, kept sorted by start time in parallel primitive arrays, and the oldest are dropped past
+ * {@link BleDeviceConfig#historicalDataRollupBucketLimit}. Not thread safe, {@link P_HistoricalDataRollups} synchronizes access.
+ */
+class P_HistoricalDataRollupTier
+{
+	private final long m_width;
+	private final int m_bucketLimit;
+
+	//--- Bucket i lives at physical index m_start + i.
+	private long[] m_starts = new long[16];
+	private double[] m_mins = new double[16];
+	private double[] m_maxes = new double[16];
+	private double[] m_sums = new double[16];
+	private int[] m_counts = new int[16];
+	private int m_start = 0;
+	private int m_count = 0;
+
+	P_HistoricalDataRollupTier(final long width_millis, final int bucketLimit)
+	{
+		m_width = Math.max(1, width_millis);
+		m_bucketLimit = Math.max(1, bucketLimit);
+	}
+
+	long getWidth()
+	{
+		return m_width;
+	}
+
+	/**
+	 * Returns the start of the oldest bucket still kept, i.e. data at or after this time is fully represented.
+	 */
+	long getCoverageStart()
+	{
+		return m_count > 0 ? m_starts[m_start] : Long.MAX_VALUE;
+	}
+
+	static long align(final long time, final long width)
+	{
+		final long remainder = time % width;
+
+		return remainder >= 0 ? time - remainder : time - remainder - width;
+	}
+
+	/**
+	 * Start of the first bucket that starts at or after the given time, or {@link Long#MAX_VALUE} if that would overflow.
+	 */
+	static long alignUp(final long time, final long width)
+	{
+		final long aligned = align(time, width);
+
+		if( aligned == time )  return time;
+
+		return aligned > Long.MAX_VALUE - width ? Long.MAX_VALUE : aligned + width;
+	}
+
+	void add(final long time, final double value)
+	{
+		final long bucketStart = align(time, m_width);
+
+		final int index = findBucket(bucketStart);
+
+		if( index < m_count && m_starts[m_start + index] == bucketStart )
+		{
+			final int physical = m_start + index;
+
+			m_mins[physical] = Math.min(m_mins[physical], value);
+			m_maxes[physical] = Math.max(m_maxes[physical], value);
+			m_sums[physical] += value;
+			m_counts[physical]++;
+
+			return;
+		}
+
+		//--- Older than anything we're keeping, and keeping it would just evict it again right away.
+		if( index == 0 && m_count >= m_bucketLimit )  return;
+
+		insert(index, bucketStart, value);
+
+		if( m_count > m_bucketLimit )
+		{
+			m_start++;
+			m_count--;
+		}
+	}
+
+	/**
+	 * Drops buckets that end at or before the given time.
+	 */
+	void expire(final long olderThan)
+	{
+		while( m_count > 0 && m_starts[m_start] + m_width <= olderThan )
+		{
+			m_start++;
+			m_count--;
+		}
+	}
+
+	void clear()
+	{
+		m_start = 0;
+		m_count = 0;
+	}
+
+	/**
+	 * Feeds all buckets overlapping the given range into the accumulator.
+	 */
+	void forEach(final long from, final long to, final P_HistoricalDataRollups.Accumulator accumulator)
+	{
+		//--- Checked first so aligning something like Long.MIN_VALUE can't overflow.
+		final int first = from <= getCoverageStart() ? 0 : findBucket(align(from, m_width));
+
+		for( int i = first; i < m_count; i++ )
+		{
+			final int physical = m_start + i;
+
+			if( m_starts[physical] > to )  break;
+
+			accumulator.add(m_starts[physical], m_mins[physical], m_maxes[physical], m_sums[physical], m_counts[physical]);
+		}
+	}
+
+	/**
+	 * Index of the first bucket with a start &gt;= the given start.
+	 */
+	private int findBucket(final long bucketStart)
+	{
+		//--- Data almost always arrives in order, so check the newest bucket before searching.
+		if( m_count == 0 || m_starts[m_start + m_count - 1] < bucketStart )  return m_count;
+		if( m_starts[m_start + m_count - 1] == bucketStart )  return m_count - 1;
+
+		int low = 0;
+		int high = m_count;
+
+		while( low < high )
+		{
+			final int mid = (low + high) >>> 1;
+
+			if( m_starts[m_start + mid] < bucketStart )
+			{
+				low = mid + 1;
+			}
+			else
+			{
+				high = mid;
+			}
+		}
+
+		return low;
+	}
+
+	private void insert(final int index, final long bucketStart, final double value)
+	{
+		if( m_start + m_count == m_starts.length )
+		{
+			final int capacity = m_count + 1 <= m_starts.length / 2 ? m_starts.length : m_starts.length * 2;
+
+			m_starts = compact(m_starts, capacity);
+			m_mins = compact(m_mins, capacity);
+			m_maxes = compact(m_maxes, capacity);
+			m_sums = compact(m_sums, capacity);
+			m_counts = compact(m_counts, capacity);
+			m_start = 0;
+		}
+
+		final int physical = m_start + index;
+		final int toMove = m_count - index;
+
+		if( toMove > 0 )
+		{
+			System.arraycopy(m_starts, physical, m_starts, physical + 1, toMove);
+			System.arraycopy(m_mins, physical, m_mins, physical + 1, toMove);
+			System.arraycopy(m_maxes, physical, m_maxes, physical + 1, toMove);
+			System.arraycopy(m_sums, physical, m_sums, physical + 1, toMove);
+			System.arraycopy(m_counts, physical, m_counts, physical + 1, toMove);
+		}
+
+		m_starts[physical] = bucketStart;
+		m_mins[physical] = value;
+		m_maxes[physical] = value;
+		m_sums[physical] = value;
+		m_counts[physical] = 1;
+		m_count++;
+	}
+
+	private long[] compact(final long[] array, final int capacity)
+	{
+		final long[] compacted = capacity == array.length ? array : new long[capacity];
+		System.arraycopy(array, m_start, compacted, 0, m_count);
+		return compacted;
+	}
+
+	private double[] compact(final double[] array, final int capacity)
+	{
+		final double[] compacted = capacity == array.length ? array : new double[capacity];
+		System.arraycopy(array, m_start, compacted, 0, m_count);
+		return compacted;
+	}
+
+	private int[] compact(final int[] array, final int capacity)
+	{
+		final int[] compacted = capacity == array.length ? array : new int[capacity];
+		System.arraycopy(array, m_start, compacted, 0, m_count);
+		return compacted;
+	}
+}
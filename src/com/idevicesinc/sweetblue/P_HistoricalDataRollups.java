@@ -0,0 +1,260 @@
+package com.idevicesinc.sweetblue;
+
+import com.idevicesinc.sweetblue.utils.HistoricalDataRollup;
+import com.idevicesinc.sweetblue.utils.Interval;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Per-device rollups of historical data, one set of {@link P_HistoricalDataRollupTier} per characteristic, updated as data is added
+ * so that coarse queries over long ranges don't have to go through the raw data.
+ */
+class P_HistoricalDataRollups
+{
+	/**
+	 * Merges buckets (or single raw values) given in time order into buckets of the requested resolution.
+	 */
+	static class Accumulator
+	{
+		private final long m_resolution;
+		private final ArrayList<HistoricalDataRollup> m_result = new ArrayList<HistoricalDataRollup>();
+
+		private long m_bucketStart = Long.MIN_VALUE;
+		private double m_min;
+		private double m_max;
+		private double m_sum;
+		private int m_count = 0;
+
+		Accumulator(final long resolution_millis)
+		{
+			m_resolution = Math.max(1, resolution_millis);
+		}
+
+		void add(final long time, final double value)
+		{
+			add(time, value, value, value, 1);
+		}
+
+		void add(final long time, final double min, final double max, final double sum, final int count)
+		{
+			final long bucketStart = P_HistoricalDataRollupTier.align(time, m_resolution);
+
+			if( m_count > 0 && bucketStart != m_bucketStart )
+			{
+				emit();
+			}
+
+			if( m_count == 0 )
+			{
+				m_bucketStart = bucketStart;
+				m_min = min;
+				m_max = max;
+				m_sum = sum;
+				m_count = count;
+			}
+			else
+			{
+				m_min = Math.min(m_min, min);
+				m_max = Math.max(m_max, max);
+				m_sum += sum;
+				m_count += count;
+			}
+		}
+
+		List<HistoricalDataRollup> getResult()
+		{
+			if( m_count > 0 )
+			{
+				emit();
+			}
+
+			return m_result;
+		}
+
+		private void emit()
+		{
+			m_result.add(new HistoricalDataRollup(m_bucketStart, m_resolution, m_min, m_max, m_sum, m_count));
+
+			m_count = 0;
+		}
+	}
+
+	private final BleDevice m_device;
+
+	private final HashMap<UUID, P_HistoricalDataRollupTier[]> m_tiers = new HashMap<UUID, P_HistoricalDataRollupTier[]>();
+
+	//--- Time of the first value rolled up for each characteristic. Anything older, e.g. already on disk from a previous session, was never seen.
+	private final HashMap<UUID, Long> m_completeSince = new HashMap<UUID, Long>();
+
+	P_HistoricalDataRollups(final BleDevice device)
+	{
+		m_device = device;
+	}
+
+	BleDeviceConfig.HistoricalDataRollupDecoder getDecoder()
+	{
+		final BleDeviceConfig.HistoricalDataRollupDecoder decoder_device = m_device.conf_device().historicalDataRollupDecoder;
+
+		return decoder_device != null ? decoder_device : m_device.conf_mngr().historicalDataRollupDecoder;
+	}
+
+	/**
+	 * Decodes and adds the given data if {@link BleDeviceConfig#historicalDataRollupDecoder} is set, otherwise does nothing.
+	 */
+	void add(final UUID uuid, final long time, final byte[] data)
+	{
+		final BleDeviceConfig.HistoricalDataRollupDecoder decoder = getDecoder();
+
+		if( decoder == null )  return;
+
+		final double value = decoder.decode(uuid, data);
+
+		if( Double.isNaN(value) )  return;
+
+		synchronized(this)
+		{
+			final P_HistoricalDataRollupTier[] tiers = getTiers_createIfNotExists(uuid, time);
+
+			for( int i = 0; i < tiers.length; i++ )
+			{
+				tiers[i].add(time, value);
+			}
+		}
+	}
+
+	synchronized void clear(final UUID uuid)
+	{
+		m_tiers.remove(uuid);
+		m_completeSince.remove(uuid);
+	}
+
+	synchronized void clearAll()
+	{
+		m_tiers.clear();
+		m_completeSince.clear();
+	}
+
+	synchronized void expire(final long olderThan)
+	{
+		final Iterator<P_HistoricalDataRollupTier[]> iterator = m_tiers.values().iterator();
+
+		while( iterator.hasNext() )
+		{
+			final P_HistoricalDataRollupTier[] tiers = iterator.next();
+
+			for( int i = 0; i < tiers.length; i++ )
+			{
+				tiers[i].expire(olderThan);
+			}
+		}
+	}
+
+	/**
+	 * Returns the width of the coarsest tier whose buckets merge cleanly into the given resolution, or 0 if there's none.
+	 */
+	synchronized long getTierWidth(final UUID uuid, final long resolution_millis)
+	{
+		final P_HistoricalDataRollupTier tier = getTier(uuid, resolution_millis);
+
+		return tier != null ? tier.getWidth() : 0;
+	}
+
+	/**
+	 * Returns the time from which the tier of the given width has seen all data, or {@link Long#MAX_VALUE} if it has none.
+	 * Data from before this might still exist as raw data, either from before the tiers were created or from buckets since evicted.
+	 */
+	synchronized long getCoverageStart(final UUID uuid, final long width_millis)
+	{
+		final P_HistoricalDataRollupTier tier = getTier(uuid, width_millis);
+
+		if( tier == null || tier.getWidth() != width_millis )  return Long.MAX_VALUE;
+
+		return Math.max(tier.getCoverageStart(), m_completeSince.get(uuid));
+	}
+
+	/**
+	 * Feeds the buckets of the tier of the given width that start within the given range into the accumulator.
+	 */
+	synchronized void forEach(final UUID uuid, final long width_millis, final long from, final long to, final Accumulator accumulator)
+	{
+		final P_HistoricalDataRollupTier tier = getTier(uuid, width_millis);
+
+		if( tier == null || tier.getWidth() != width_millis )  return;
+
+		tier.forEach(from, to, accumulator);
+	}
+
+	private P_HistoricalDataRollupTier getTier(final UUID uuid, final long resolution_millis)
+	{
+		final P_HistoricalDataRollupTier[] tiers = m_tiers.get(uuid);
+
+		if( tiers == null )  return null;
+
+		//--- Tiers are sorted finest to coarsest, so go backwards to find the coarsest that fits.
+		for( int i = tiers.length-1; i >= 0; i-- )
+		{
+			final P_HistoricalDataRollupTier tier = tiers[i];
+
+			if( tier.getWidth() > resolution_millis )  continue;
+
+			//--- Buckets of a finer tier only merge cleanly into the requested resolution if they don't straddle its edges.
+			if( resolution_millis % tier.getWidth() != 0 )  continue;
+
+			return tier;
+		}
+
+		return null;
+	}
+
+	private P_HistoricalDataRollupTier[] getTiers_createIfNotExists(final UUID uuid, final long time)
+	{
+		P_HistoricalDataRollupTier[] tiers = m_tiers.get(uuid);
+
+		if( tiers == null )
+		{
+			tiers = newTiers();
+
+			m_tiers.put(uuid, tiers);
+			m_completeSince.put(uuid, time);
+		}
+
+		return tiers;
+	}
+
+	private P_HistoricalDataRollupTier[] newTiers()
+	{
+		final Interval[] widths_device = m_device.conf_device().historicalDataRollupTiers;
+		final Interval[] widths = widths_device != null ? widths_device : m_device.conf_mngr().historicalDataRollupTiers;
+
+		if( widths == null )  return new P_HistoricalDataRollupTier[0];
+
+		final int bucketLimit = BleDeviceConfig.integer(m_device.conf_device().historicalDataRollupBucketLimit, m_device.conf_mngr().historicalDataRollupBucketLimit, BleDeviceConfig.DEFAULT_HISTORICAL_DATA_ROLLUP_BUCKET_LIMIT);
+
+		final ArrayList<P_HistoricalDataRollupTier> tiers = new ArrayList<P_HistoricalDataRollupTier>(widths.length);
+
+		for( int i = 0; i < widths.length; i++ )
+		{
+			if( !Interval.isEnabled(widths[i]) )  continue;
+
+			tiers.add(new P_HistoricalDataRollupTier(widths[i].millis(), bucketLimit));
+		}
+
+		final P_HistoricalDataRollupTier[] tiers_array = tiers.toArray(new P_HistoricalDataRollupTier[tiers.size()]);
+
+		Arrays.sort(tiers_array, new Comparator<P_HistoricalDataRollupTier>()
+		{
+			@Override public int compare(final P_HistoricalDataRollupTier lhs, final P_HistoricalDataRollupTier rhs)
+			{
+				return lhs.getWidth() < rhs.getWidth() ? -1 : (lhs.getWidth() == rhs.getWidth() ? 0 : 1);
+			}
+		});
+
+		return tiers_array;
+	}
+}
@@ -0,0 +1,39 @@
+package com.idevicesinc.sweetblue;
+
+import com.idevicesinc.sweetblue.utils.UpdateLoop;
+
+/**
+ * Fixed set of background threads that all historical data work for all devices runs on, sized by
+ * {@link BleManagerConfig#historicalDataThreadCount}. A given MAC address always maps to the same thread,
+ * so work for one device still runs in the order it was posted, even across {@link BleDevice} instances
+ * for the same address. Threads aren't actually created until something is first posted to them.
+ */
+class P_HistoricalDataThreadPool
+{
+	private final UpdateLoop[] m_loops;
+
+	P_HistoricalDataThreadPool(final int threadCount)
+	{
+		m_loops = new UpdateLoop[Math.max(1, threadCount)];
+
+		for( int i = 0; i < m_loops.length; i++ )
+		{
+			m_loops[i] = UpdateLoop.newAnonThreadLoop();
+		}
+	}
+
+	UpdateLoop getLoop(final String macAddress)
+	{
+		final int index = (macAddress.hashCode() & 0x7fffffff) % m_loops.length;
+
+		return m_loops[index];
+	}
+
+	/**
+	 * For work that isn't tied to any one device.
+	 */
+	UpdateLoop getSharedLoop()
+	{
+		return m_loops[0];
+	}
+}
@@ -0,0 +1,238 @@
+package com.idevicesinc.sweetblue;
+
+import com.idevicesinc.sweetblue.backend.historical.Backend_HistoricalDatabase;
+import com.idevicesinc.sweetblue.utils.EpochTimeRange;
+import com.idevicesinc.sweetblue.utils.HistoricalData;
+import com.idevicesinc.sweetblue.utils.UpdateLoop;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Manager-wide write-behind buffer for historical data headed to disk. Instead of one {@link Backend_HistoricalDatabase#add_single(String, UUID, HistoricalData, long)}
+ * per sample, samples from all devices and characteristics are collected here and written together through
+ * {@link Backend_HistoricalDatabase#add_multiple_start()}/next/end once either {@link #FLUSH_COUNT} samples are waiting or the
+ * oldest one has waited for the smallest {@link BleDeviceConfig#historicalDataMaxWriteDelay} among them.
+ * <br><br>
+ * Adds can come from any thread. Flushes run on one of the historical data threads, except for {@link #flush()} called directly,
+ * which writes on the calling thread so that anything reading or deleting from the database right after sees the buffered samples.
+ */
+class P_HistoricalDataWriteBuffer
+{
+	static final int FLUSH_COUNT = 256;
+
+	private final BleManager m_mngr;
+
+	//--- Guarded by this. Samples waiting to be written, swapped with the m_flush* arrays on flush so adds never wait on I/O.
+	private String[] m_macs = new String[FLUSH_COUNT];
+	private UUID[] m_uuids = new UUID[FLUSH_COUNT];
+	private HistoricalData[] m_data = new HistoricalData[FLUSH_COUNT];
+	private long[] m_limits = new long[FLUSH_COUNT];
+	private int m_count = 0;
+	private double m_timeUntilFlush = Double.POSITIVE_INFINITY;
+
+	//--- Guarded by m_flushLock, which also keeps flushes from different threads in order.
+	private final Object m_flushLock = new Object();
+	private String[] m_flushMacs = new String[FLUSH_COUNT];
+	private UUID[] m_flushUuids = new UUID[FLUSH_COUNT];
+	private HistoricalData[] m_flushData = new HistoricalData[FLUSH_COUNT];
+	private long[] m_flushLimits = new long[FLUSH_COUNT];
+
+	private final AtomicBoolean m_flushPosted = new AtomicBoolean(false);
+
+	private final Runnable m_flushRunnable = new Runnable()
+	{
+		@Override public void run()
+		{
+			m_flushPosted.set(false);
+
+			flush();
+		}
+	};
+
+	P_HistoricalDataWriteBuffer(final BleManager mngr)
+	{
+		m_mngr = mngr;
+	}
+
+	void add(final String macAddress, final UUID uuid, final HistoricalData data, final long limit, final double maxWriteDelay)
+	{
+		final boolean isFull;
+		final boolean isFirst;
+
+		synchronized(this)
+		{
+			if( m_count == m_macs.length )
+			{
+				//--- Only happens if a flush is slow to get scheduled, so growing is fine.
+				final int capacity = m_count * 2;
+
+				m_macs = Arrays.copyOf(m_macs, capacity);
+				m_uuids = Arrays.copyOf(m_uuids, capacity);
+				m_data = Arrays.copyOf(m_data, capacity);
+				m_limits = Arrays.copyOf(m_limits, capacity);
+			}
+
+			m_macs[m_count] = macAddress;
+			m_uuids[m_count] = uuid;
+			m_data[m_count] = data;
+			m_limits[m_count] = limit;
+			m_count++;
+
+			m_timeUntilFlush = Math.min(m_timeUntilFlush, maxWriteDelay);
+
+			isFull = m_count >= FLUSH_COUNT;
+			isFirst = m_count == 1;
+		}
+
+		if( isFull )
+		{
+			postFlush();
+		}
+		else if( isFirst && m_mngr.getUpdateLoop() != null )
+		{
+			//--- Update loop may be idling with no idea there's now a deadline.
+			m_mngr.getUpdateLoop().wake();
+		}
+	}
+
+	void update(final double timeStep)
+	{
+		final boolean isDue;
+
+		synchronized(this)
+		{
+			if( m_count == 0 )  return;
+
+			m_timeUntilFlush -= timeStep;
+
+			isDue = m_timeUntilFlush <= 0.0;
+		}
+
+		if( isDue )
+		{
+			postFlush();
+		}
+	}
+
+	synchronized double getTimeToNextUpdate()
+	{
+		return m_count > 0 ? Math.max(0.0, m_timeUntilFlush) : Double.POSITIVE_INFINITY;
+	}
+
+	synchronized boolean hasPending()
+	{
+		return m_count > 0;
+	}
+
+	/**
+	 * Writes everything pending in the background.
+	 */
+	void postFlush()
+	{
+		if( !hasPending() )  return;
+
+		if( m_flushPosted.compareAndSet(false, true) )
+		{
+			final UpdateLoop loop = m_mngr.m_historicalDataThreadPool.getSharedLoop();
+
+			loop.forcePost(m_flushRunnable);
+		}
+	}
+
+	/**
+	 * Writes everything pending on the calling thread, returning once it's all been handed to the database.
+	 */
+	void flush()
+	{
+		synchronized(m_flushLock)
+		{
+			final int count;
+
+			synchronized(this)
+			{
+				count = m_count;
+
+				if( count == 0 )  return;
+
+				swap();
+
+				m_count = 0;
+				m_timeUntilFlush = Double.POSITIVE_INFINITY;
+			}
+
+			write(count);
+		}
+	}
+
+	private void swap()
+	{
+		final String[] macs = m_macs;
+		final UUID[] uuids = m_uuids;
+		final HistoricalData[] data = m_data;
+		final long[] limits = m_limits;
+
+		m_macs = m_flushMacs;
+		m_uuids = m_flushUuids;
+		m_data = m_flushData;
+		m_limits = m_flushLimits;
+
+		m_flushMacs = macs;
+		m_flushUuids = uuids;
+		m_flushData = data;
+		m_flushLimits = limits;
+
+		//--- If the pending arrays grew they'll be the bigger ones now, so make the new pending arrays at least as big.
+		if( m_macs.length < m_flushMacs.length )
+		{
+			m_macs = new String[m_flushMacs.length];
+			m_uuids = new UUID[m_flushMacs.length];
+			m_data = new HistoricalData[m_flushMacs.length];
+			m_limits = new long[m_flushMacs.length];
+		}
+	}
+
+	private void write(final int count)
+	{
+		final Backend_HistoricalDatabase database = m_mngr.m_historicalDatabase;
+
+		HashMap<String, Integer> limited = null;
+
+		database.add_multiple_start();
+
+		for( int i = 0; i < count; i++ )
+		{
+			database.add_multiple_next(m_flushMacs[i], m_flushUuids[i], m_flushData[i]);
+
+			if( m_flushLimits[i] != Long.MAX_VALUE )
+			{
+				limited = limited != null ? limited : new HashMap<String, Integer>();
+				limited.put(m_flushMacs[i] + m_flushUuids[i], i);
+			}
+		}
+
+		database.add_multiple_end();
+
+		//--- The multi-add path has no way to trim as it goes, so enforce each stream's limit once at the end instead.
+		if( limited != null )
+		{
+			for( Integer i : limited.values() )
+			{
+				final String mac = m_flushMacs[i];
+				final UUID uuid = m_flushUuids[i];
+				final long overflow = database.getCount(mac, uuid, EpochTimeRange.FROM_MIN_TO_MAX) - m_flushLimits[i];
+
+				if( overflow > 0 )
+				{
+					database.delete_singleUuid_inRange(mac, uuid, EpochTimeRange.FROM_MIN_TO_MAX, overflow);
+				}
+			}
+		}
+
+		Arrays.fill(m_flushMacs, 0, count, null);
+		Arrays.fill(m_flushUuids, 0, count, null);
+		Arrays.fill(m_flushData, 0, count, null);
+	}
+}
@@ -0,0 +1,139 @@
+package com.idevicesinc.sweetblue;
+
+import java.util.ArrayList;
+import java.util.UUID;
+
+import com.idevicesinc.sweetblue.BleDevice.NotificationBatchListener;
+import com.idevicesinc.sweetblue.BleDevice.NotificationBatchListener.NotificationBatchEvent;
+
+/**
+ * Collects notifications for characteristics that have a {@link NotificationBatchListener} and hands them off
+ * once per update tick. Everything here runs on the update thread, including {@link #setListener(UUID, NotificationBatchListener)},
+ * which {@link BleDevice#setListener_NotificationBatch(UUID, NotificationBatchListener)} posts over from whatever thread the app called it on.
+ */
+class P_NotificationBatcher
+{
+	private static class Batch
+	{
+		private final NotificationBatchEvent m_event;
+		private NotificationBatchListener m_listener;
+
+		Batch(final NotificationBatchEvent event, final NotificationBatchListener listener)
+		{
+			m_event = event;
+			m_listener = listener;
+		}
+	}
+
+	private final BleDevice m_device;
+
+	//--- Usually only one or two entries, so a list beats a map here.
+	private final ArrayList<Batch> m_batches = new ArrayList<Batch>();
+
+	private boolean m_hasPending = false;
+
+	P_NotificationBatcher(final BleDevice device)
+	{
+		m_device = device;
+	}
+
+	void setListener(final UUID charUuid, final NotificationBatchListener listener_nullable)
+	{
+		final int index = indexOf(charUuid);
+
+		if( listener_nullable == null )
+		{
+			if( index != -1 )
+			{
+				//--- Don't lose anything that already came in.
+				flush(m_batches.get(index));
+
+				m_batches.remove(index);
+			}
+		}
+		else if( index != -1 )
+		{
+			m_batches.get(index).m_listener = listener_nullable;
+		}
+		else
+		{
+			m_batches.add(new Batch(new NotificationBatchEvent(m_device, charUuid), listener_nullable));
+		}
+	}
+
+	/**
+	 * Returns <code>true</code> if the notification was taken for batching, in which case it shouldn't be sent anywhere else.
+	 */
+	boolean onCharacteristicChanged(final UUID charUuid, final byte[] value, final long timestamp)
+	{
+		if( m_batches.isEmpty() )  return false;
+
+		final int index = indexOf(charUuid);
+
+		if( index == -1 )  return false;
+
+		//--- Same reasoning as P_PollManager's early-out, notifications shouldn't reach app-land after an explicit disconnect.
+		if( isDisconnected() )  return true;
+
+		m_batches.get(index).m_event.add(value, timestamp);
+
+		if( value != null && value.length > 0 )
+		{
+			m_device.addHistoricalData_notification(charUuid, value, timestamp);
+		}
+
+		m_hasPending = true;
+
+		return true;
+	}
+
+	//--- Package-private so tests can feed notifications in without having to get a device connected.
+	boolean isDisconnected()
+	{
+		return m_device.is(BleDeviceState.DISCONNECTED);
+	}
+
+	boolean hasPending()
+	{
+		return m_hasPending;
+	}
+
+	void update()
+	{
+		if( !m_hasPending )  return;
+
+		m_hasPending = false;
+
+		for( int i = 0; i < m_batches.size(); i++ )
+		{
+			flush(m_batches.get(i));
+		}
+	}
+
+	private void flush(final Batch batch)
+	{
+		if( batch.m_event.count() == 0 )  return;
+
+		try
+		{
+			batch.m_listener.onEvent(batch.m_event);
+		}
+		finally
+		{
+			batch.m_event.clear();
+		}
+	}
+
+	private int indexOf(final UUID charUuid)
+	{
+		for( int i = 0; i < m_batches.size(); i++ )
+		{
+			if( m_batches.get(i).m_event.charUuid().equals(charUuid) )
+			{
+				return i;
+			}
+		}
+
+		return -1;
+	}
+}
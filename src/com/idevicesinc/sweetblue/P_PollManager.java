@@ -198,6 +198,12 @@ class P_PollManager
 			
 			m_timeTracker = 0.0;
 		}
+
+		void onCharacteristicChangedFromNativeNotify_batched()
+		{
+			//--- The batch listener gets the value, but this still counts as the entry hearing from the characteristic.
+			m_timeTracker = 0.0;
+		}
 		
 		void onSuccessOrFailure()
 		{
@@ -205,6 +211,14 @@ class P_PollManager
 			m_timeTracker = 0.0;
 		}
 		
+		double getTimeToNextUpdate()
+		{
+			if( m_interval <= 0.0 )  return Double.POSITIVE_INFINITY;
+			if( m_interval == Interval.INFINITE.secs() )  return Double.POSITIVE_INFINITY;
+
+			return m_interval - m_timeTracker;
+		}
+		
 		void update(double timeStep)
 		{
 			if( m_interval <= 0.0 )  return;
@@ -241,6 +255,8 @@ class P_PollManager
 	void startPoll(final UUID serviceUuid, final UUID charUuid, double interval, ReadWriteListener listener, boolean trackChanges, boolean usingNotify)
 	{
 		if( m_device.isNull() )  return;
+
+		m_device.getManager().getUpdateLoop().wake();
 		
 		boolean allowDuplicatePollEntries = BleDeviceConfig.bool(m_device.conf_device().allowDuplicatePollEntries, m_device.conf_mngr().allowDuplicatePollEntries);
 		
@@ -302,6 +318,18 @@ class P_PollManager
 			ithEntry.update(timeStep);
 		}
 	}
+
+	double getTimeToNextUpdate()
+	{
+		double soonest = Double.POSITIVE_INFINITY;
+
+		for( int i = 0; i < m_entries.size(); i++ )
+		{
+			soonest = Math.min(soonest, m_entries.get(i).getTimeToNextUpdate());
+		}
+
+		return soonest;
+	}
 	
 	void onCharacteristicChangedFromNativeNotify(final UUID serviceUuid, final UUID charUuid, byte[] value)
 	{
@@ -316,6 +344,24 @@ class P_PollManager
 		}
 	}
 	
+	/**
+	 * Called instead of {@link #onCharacteristicChangedFromNativeNotify(UUID, UUID, byte[])} when the notification
+	 * was taken by a {@link BleDevice.NotificationBatchListener}, so polls backed by notifications don't fall back
+	 * to reading just because nothing was dispatched through them.
+	 */
+	void onCharacteristicChangedFromNativeNotify_batched(final UUID serviceUuid, final UUID charUuid)
+	{
+		for( int i = 0; i < m_entries.size(); i++ )
+		{
+			CallbackEntry ithEntry = m_entries.get(i);
+
+			if( ithEntry.isFor(serviceUuid, charUuid) && ithEntry.usingNotify() )
+			{
+				ithEntry.onCharacteristicChangedFromNativeNotify_batched();
+			}
+		}
+	}
+	
 	E_NotifyState getNotifyState(final UUID serviceUuid, final UUID charUuid)
 	{
 		E_NotifyState highestState = E_NotifyState.NOT_ENABLED;
@@ -167,6 +167,16 @@ class P_ReconnectManager
 		}
 	}
 	
+	double getTimeToNextUpdate()
+	{
+		if( !isRunning() )  return Double.POSITIVE_INFINITY;
+
+		if( !m_isShortTerm && !m_device.is(BleDeviceState.RECONNECTING_LONG_TERM) )  return Double.POSITIVE_INFINITY;
+		if( m_isShortTerm && !m_device.is(BleDeviceState.RECONNECTING_SHORT_TERM) )  return Double.POSITIVE_INFINITY;
+
+		return m_delay - m_timeTracker;
+	}
+	
 	void update(double timeStep)
 	{
 		if( !isRunning() )  return;
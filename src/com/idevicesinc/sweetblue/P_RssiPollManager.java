@@ -55,6 +55,8 @@ class P_RssiPollManager
 			m_timeTracker = ENABLE_TIMER;
 			m_interval = interval;
 			m_listener = new CustomListener(this, listener_nullable, m_device.getManager().m_mainThreadHandler, m_device.conf_mngr().postCallbacksToMainThread);
+
+			m_device.getManager().getUpdateLoop().wake();
 		}
 	}
 	
@@ -71,6 +73,16 @@ class P_RssiPollManager
 		m_waitingOnResponse = false;
 	}
 	
+	double getTimeToNextUpdate()
+	{
+		if( m_timeTracker == DISABLE_TIMER )  return Double.POSITIVE_INFINITY;
+
+		//--- The response comes in through a post to the update thread, which is enough to get us ticking again.
+		if( m_waitingOnResponse )  return Double.POSITIVE_INFINITY;
+
+		return m_interval - m_timeTracker;
+	}
+	
 	void update(double timestep)
 	{
 		if( m_timeTracker != DISABLE_TIMER )
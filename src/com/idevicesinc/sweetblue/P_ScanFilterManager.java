@@ -1,21 +1,56 @@
 package com.idevicesinc.sweetblue;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.UUID;
+import java.util.Map;
 
 import android.bluetooth.BluetoothDevice;
 
 import com.idevicesinc.sweetblue.BleManagerConfig.ScanFilter;
 import com.idevicesinc.sweetblue.BleManagerConfig.ScanFilter.Please;
 import com.idevicesinc.sweetblue.BleManagerConfig.ScanFilter.ScanEvent;
+import com.idevicesinc.sweetblue.utils.Interval;
+import com.idevicesinc.sweetblue.utils.ScanFilterSpec;
+import com.idevicesinc.sweetblue.utils.ScanRecordView;
 import com.idevicesinc.sweetblue.utils.State;
 
 class P_ScanFilterManager
 {
+	private static final int MAX_CACHED_VERDICTS = 256;
+
+	private static class Verdict
+	{
+		private final int m_scanRecordHash;
+		private final Please m_please;
+		private final long m_expiry;
+
+		private Verdict(final int scanRecordHash, final Please please, final long expiry)
+		{
+			m_scanRecordHash = scanRecordHash;
+			m_please = please;
+			m_expiry = expiry;
+		}
+	}
+
 	private final ArrayList<BleManagerConfig.ScanFilter> m_filters = new ArrayList<BleManagerConfig.ScanFilter>();
 	private final ScanFilter m_default;
 	private final BleManager m_mngr;
+
+	//--- One verdict per mac address, for the last scan record seen from it. Access ordered so the least recently seen devices go first.
+	//--- Verdicts are read and written on the update thread but invalidated from whatever thread the filters are changed on, and even
+	//--- a get() reorders an access ordered map, so every access locks on it.
+	private final LinkedHashMap<String, Verdict> m_verdicts = new LinkedHashMap<String, Verdict>(16, 0.75f, /*accessOrder=*/true)
+	{
+		@Override protected boolean removeEldestEntry(final Map.Entry<String, Verdict> eldest)
+		{
+			return size() > MAX_CACHED_VERDICTS;
+		}
+	};
+
+	//--- Bumped on every invalidation, so a verdict reached with the old filters isn't cached after they've changed.
+	private int m_verdictGeneration = 0;
 	
 	P_ScanFilterManager(final BleManager mngr, final ScanFilter defaultFilter)
 	{
@@ -26,11 +61,15 @@ class P_ScanFilterManager
 	void clear()
 	{
 		m_filters.clear();
+
+		invalidateVerdicts();
 	}
 	
 	void remove(ScanFilter filter)
 	{
 		while( m_filters.remove(filter) ){};
+
+		invalidateVerdicts();
 	}
 	
 	void add(ScanFilter filter)
@@ -43,17 +82,88 @@ class P_ScanFilterManager
 		}
 		
 		m_filters.add(filter);
+
+		invalidateVerdicts();
+	}
+
+	/**
+	 * Forgets all cached verdicts, for when the filters or {@link BleManagerConfig#scanFilterSpecs} change.
+	 */
+	void invalidateVerdicts()
+	{
+		synchronized (m_verdicts)
+		{
+			m_verdicts.clear();
+			m_verdictGeneration++;
+		}
+	}
+
+	/**
+	 * Returns what {@link #allow(P_Logger, BluetoothDevice, ScanRecordView, String, String, int, State.ChangeIntent)} returned for the same device
+	 * and scan record within the last {@link BleManagerConfig#scanFilterVerdictCacheTime}, or <code>null</code> if it needs to be asked again.
+	 */
+	Please getCachedVerdict(final String macAddress, final byte[] scanRecord_nullable)
+	{
+		synchronized (m_verdicts)
+		{
+			if( m_verdicts.isEmpty() )  return null;
+
+			final Verdict verdict = m_verdicts.get(macAddress);
+
+			if( verdict == null )  return null;
+
+			final byte[] scanRecord = scanRecord_nullable != null ? scanRecord_nullable : BleDevice.EMPTY_BYTE_ARRAY;
+
+			if( verdict.m_expiry < System.currentTimeMillis() || verdict.m_scanRecordHash != Arrays.hashCode(scanRecord) )
+			{
+				m_verdicts.remove(macAddress);
+
+				return null;
+			}
+
+			return verdict.m_please;
+		}
 	}
 	
-	BleManagerConfig.ScanFilter.Please allow(P_Logger logger, BluetoothDevice nativeInstance, List<UUID> uuids, String deviceName, String normalizedDeviceName, byte[] scanRecord, int rssi, State.ChangeIntent lastDisconnectIntent)
+	BleManagerConfig.ScanFilter.Please allow(P_Logger logger, BluetoothDevice nativeInstance, ScanRecordView scanRecord, String deviceName, String normalizedDeviceName, int rssi, State.ChangeIntent lastDisconnectIntent)
+	{
+		final int generation;
+
+		synchronized (m_verdicts)
+		{
+			generation = m_verdictGeneration;
+		}
+
+		final Please please = allow_private(logger, nativeInstance, scanRecord, deviceName, normalizedDeviceName, rssi, lastDisconnectIntent);
+
+		final long cacheTime = Interval.isEnabled(m_mngr.m_config.scanFilterVerdictCacheTime) ? m_mngr.m_config.scanFilterVerdictCacheTime.millis() : 0;
+
+		//--- A filter that asked to stop scanning has to see the next device, since that'll come from a different scan. Null isn't cached
+		//--- either, since getCachedVerdict() returning null already means there's no verdict.
+		if( cacheTime > 0 && please != null && please.m_stopScanOptions == 0x0 )
+		{
+			synchronized (m_verdicts)
+			{
+				if( generation != m_verdictGeneration )  return please;
+
+				m_verdicts.put(nativeInstance.getAddress(), new Verdict(Arrays.hashCode(scanRecord.getBytes()), please, System.currentTimeMillis() + cacheTime));
+			}
+		}
+
+		return please;
+	}
+
+	private Please allow_private(P_Logger logger, BluetoothDevice nativeInstance, ScanRecordView scanRecord, String deviceName, String normalizedDeviceName, int rssi, State.ChangeIntent lastDisconnectIntent)
 	{
+		if( !matchesSpecs(nativeInstance.getAddress(), deviceName, scanRecord) )  return Please.ignore();
+
 		if( m_filters.size() == 0 && m_default == null )  return Please.acknowledge();
 		
 		ScanEvent result = null;
 		
 		if( m_default != null )
 		{
-			result = new ScanEvent(nativeInstance, uuids, deviceName, normalizedDeviceName, scanRecord, rssi, lastDisconnectIntent);
+			result = new ScanEvent(nativeInstance, scanRecord, deviceName, normalizedDeviceName, rssi, lastDisconnectIntent);
 			
 			final Please please = m_default.onEvent(result);
 			
@@ -69,7 +179,7 @@ class P_ScanFilterManager
 		
 		for( int i = 0; i < m_filters.size(); i++ )
 		{
-			result = result != null ? result : new ScanEvent(nativeInstance, uuids, deviceName, normalizedDeviceName, scanRecord, rssi, lastDisconnectIntent);
+			result = result != null ? result : new ScanEvent(nativeInstance, scanRecord, deviceName, normalizedDeviceName, rssi, lastDisconnectIntent);
 			
 			final ScanFilter ithFilter = m_filters.get(i);
 			
@@ -88,6 +198,24 @@ class P_ScanFilterManager
 		return BleManagerConfig.ScanFilter.Please.ignore();
 	}
 
+	/**
+	 * First stage of filtering, against {@link BleManagerConfig#scanFilterSpecs}. The Bluetooth stack may have already done this,
+	 * but not necessarily, and not for the parts of a spec it can't handle.
+	 */
+	private boolean matchesSpecs(final String macAddress, final String deviceName, final ScanRecordView scanRecord)
+	{
+		final List<ScanFilterSpec> specs = m_mngr.m_config.scanFilterSpecs;
+
+		if( specs == null || specs.isEmpty() )  return true;
+
+		for( int i = 0; i < specs.size(); i++ )
+		{
+			if( specs.get(i).matches(macAddress, deviceName, scanRecord) )  return true;
+		}
+
+		return false;
+	}
+
 	private void stopScanningIfNeeded(final ScanFilter filter, final BleManagerConfig.ScanFilter.Please please_nullable)
 	{
 		if( please_nullable != null )
@@ -1,6 +1,8 @@
 package com.idevicesinc.sweetblue;
 
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 
 import android.os.Handler;
@@ -9,7 +11,15 @@ import android.os.Looper;
 class P_TaskQueue
 {
 	private final ArrayList<PA_Task> m_queue = new ArrayList<PA_Task>();
+	private final P_TaskQueue_Index m_index = new P_TaskQueue_Index();
 	private PA_Task m_current;
+
+	//--- Per-device "lanes" used when BleManagerConfig#enableParallelDeviceTasks is true, keyed by mac address.
+	//---	m_current is still used for everything that doesn't go in a lane.
+	private final LinkedHashMap<String, PA_Task> m_laneCurrents = new LinkedHashMap<String, PA_Task>();
+	private final ArrayList<PA_Task> m_laneBuffer = new ArrayList<PA_Task>();
+	private final HashSet<String> m_blockedDevices = new HashSet<String>();
+
 	private long m_updateCount;
 	private final P_Logger m_logger;
 	private final BleManager m_mngr;
@@ -68,6 +78,8 @@ class P_TaskQueue
 	
 	private boolean tryCancellingCurrentTask(PA_Task newTask)
 	{
+		boolean cancelled = false;
+
 		if( getCurrent() != null && getCurrent().isCancellableBy(newTask) )
 		{
 //			int soonestSpot = U_BtTaskQueue.findSoonestSpot(m_queue, newTask);
@@ -75,25 +87,63 @@ class P_TaskQueue
 //			if( soonestSpot == 0 )
 			{
 				endCurrentTask(PE_TaskState.CANCELLED);
-				addAtIndex(newTask, 0);
-				
-				return true;
+
+				cancelled = true;
 			}
 		}
+
+		if( !m_laneCurrents.isEmpty() )
+		{
+			//--- Not using m_laneBuffer because we can get here from a task's update.
+			final ArrayList<PA_Task> laneCurrents = new ArrayList<PA_Task>(m_laneCurrents.values());
+
+			for( int i = 0; i < laneCurrents.size(); i++ )
+			{
+				final PA_Task ith = laneCurrents.get(i);
+
+				if( isCurrent(ith) && ith.isCancellableBy(newTask) )
+				{
+					endTask(ith, PE_TaskState.CANCELLED);
+
+					cancelled = true;
+				}
+			}
+		}
+
+		if( cancelled )
+		{
+			addAtIndex(newTask, 0);
+		}
 		
-		return false;
+		return cancelled;
 	}
 	
 	private boolean tryInterruptingCurrentTask(PA_Task newTask)
 	{
+		PA_Task toInterrupt = null;
+
 		if( getCurrent() != null && getCurrent().isInterruptableBy(newTask) )
 		{
+			toInterrupt = getCurrent();
+		}
+		else
+		{
+			final PA_Task laneCurrent = getLaneCurrent(newTask.getDevice());
+
+			if( laneCurrent != null && laneCurrent.isInterruptableBy(newTask) )
+			{
+				toInterrupt = laneCurrent;
+			}
+		}
+
+		if( toInterrupt != null )
+		{
 //			int soonestSpot = U_BtTaskQueue.findSoonestSpot(m_queue, newTask);
 			
 //			if( soonestSpot == 0 )
 			{
-				PA_Task current_saved = getCurrent();
-				endCurrentTask(PE_TaskState.INTERRUPTED);
+				PA_Task current_saved = toInterrupt;
+				endTask(current_saved, PE_TaskState.INTERRUPTED);
 				addAtIndex(newTask, 0);
 				addAtIndex(current_saved, 1);
 				
@@ -106,6 +156,9 @@ class P_TaskQueue
 	
 	private boolean tryInsertingIntoQueue(PA_Task newTask)
 	{
+		//--- Common case is a bunch of same-priority reads/writes, so skip the linear scan if we know it can only end up at the back.
+		if( !m_index.couldCutInLine(newTask) )  return false;
+
 		int soonestSpot = PU_TaskQueue.findSoonestSpot(m_queue, newTask);
 		
 		if( soonestSpot >= 0 )
@@ -125,10 +178,27 @@ class P_TaskQueue
 	
 	public void softlyCancelTasks(PA_Task task)
 	{
-		for( int i = 0; i < m_queue.size()-1; i++ )
+		//--- Implementations of isSoftlyCancellableBy() are scoped to either the same device or the same server,
+		//---	so only that one's tasks need a look. Anything else falls back to the whole queue.
+		final List<PA_Task> candidates;
+
+		if( task.getDevice() != null )
+		{
+			candidates = m_index.getForDevice(task.getDevice());
+		}
+		else if( task.getServer() != null )
+		{
+			candidates = m_index.getForServer(task.getServer());
+		}
+		else
+		{
+			candidates = m_queue;
+		}
+
+		for( int i = 0; i < candidates.size(); i++ )
 		{
-			PA_Task ithTask = m_queue.get(i);
-			if( ithTask.isSoftlyCancellableBy(task) )
+			PA_Task ithTask = candidates.get(i);
+			if( ithTask != task && ithTask.isSoftlyCancellableBy(task) )
 			{
 				ithTask.attemptToSoftlyCancel(task);
 			}
@@ -141,6 +211,13 @@ class P_TaskQueue
 				getCurrent().attemptToSoftlyCancel(task);
 			}
 		}
+
+		final PA_Task laneCurrent = getLaneCurrent(task.getDevice());
+
+		if( laneCurrent != null && laneCurrent.isSoftlyCancellableBy(task) )
+		{
+			laneCurrent.attemptToSoftlyCancel(task);
+		}
 	}
 	
 	private void addAtIndex(PA_Task task, int index)
@@ -156,6 +233,8 @@ class P_TaskQueue
 			index = m_queue.size()-1;
 		}
 
+		m_index.add(task);
+
 		task.assignDefaultOrdinal(this);
 		
 		softlyCancelTasks(task);
@@ -196,10 +275,20 @@ class P_TaskQueue
 		else if( tryInsertingIntoQueue(newTask) ) {}
 		else { addToBack(newTask); }
 
-		while( getCurrent() == null && m_queue.size() > 0 )
+		if( lanesEnabled() )
 		{
 			dequeue();
 		}
+		else
+		{
+			while( getCurrent() == null && m_queue.size() > 0 )
+			{
+				dequeue();
+			}
+		}
+
+		//--- Tasks need the update loop to tick at its normal rate for timeouts and such.
+		m_mngr.getUpdateLoop().wake();
 	}
 	
 	double getTime()
@@ -218,7 +307,7 @@ class P_TaskQueue
 			return;
 		}
 
-		if( m_current == null )
+		if( m_current == null || lanesEnabled() && m_queue.size() > 0 )
 		{
 			dequeue();
 		}
@@ -227,12 +316,96 @@ class P_TaskQueue
 		{			
 			getCurrent().update_internal(timeStep);
 		}
+
+		if( !m_laneCurrents.isEmpty() )
+		{
+			//--- Copying because updating can end a task and thus modify the map.
+			m_laneBuffer.addAll(m_laneCurrents.values());
+
+			for( int i = 0; i < m_laneBuffer.size(); i++ )
+			{
+				final PA_Task ith = m_laneBuffer.get(i);
+
+				if( isCurrent(ith) )
+				{
+					ith.update_internal(timeStep);
+				}
+			}
+
+			m_laneBuffer.clear();
+		}
 		
 		m_updateCount++;
 	}
+
+	private boolean lanesEnabled()
+	{
+		return m_mngr.m_config.enableParallelDeviceTasks;
+	}
+
+	/**
+	 * Tasks that talk to a single connected device's gatt, which Android serializes per-gatt, so they can run alongside
+	 * tasks for other devices. Transaction locks are included so a transaction on one device doesn't block all the others.
+	 * Connection attempts are included if more than one is allowed at a time, see {@link #isConnectSlotFree()}.
+	 */
+	private boolean isLaneTask(final PA_Task task)
+	{
+		if( task.getDevice() == null )  return false;
+
+		if( task instanceof P_Task_Connect )
+		{
+			return m_mngr.m_config.maxConcurrentConnects > 1;
+		}
+
+		return task instanceof PA_Task_RequiresConnection || task instanceof P_Task_TxnLock;
+	}
+
+	private boolean isConnectSlotFree()
+	{
+		int connectCount = 0;
+
+		for( PA_Task laneCurrent : m_laneCurrents.values() )
+		{
+			if( laneCurrent instanceof P_Task_Connect )
+			{
+				connectCount++;
+			}
+		}
+
+		return connectCount < m_mngr.m_config.maxConcurrentConnects;
+	}
+
+	/**
+	 * Manager-level tasks like scanning or turning ble on/off that must run with nothing else going on.
+	 */
+	private static boolean isExclusiveTask(final PA_Task task)
+	{
+		return task.getDevice() == null && task.getServer() == null;
+	}
+
+	private PA_Task getLaneCurrent(final BleDevice device_nullable)
+	{
+		if( device_nullable == null || m_laneCurrents.isEmpty() )  return null;
+
+		return m_laneCurrents.get(device_nullable.getMacAddress());
+	}
+
+	private boolean isCurrent(final PA_Task task)
+	{
+		return task != null && (task == m_current || task == getLaneCurrent(task.getDevice()));
+	}
 	
 	private void dequeue()
 	{
+		if( lanesEnabled() )
+		{
+			while( dequeue_lanes() ){}
+
+			print();
+
+			return;
+		}
+
 		if( !m_mngr.ASSERT(m_current == null) )  return;
 		if( m_queue.size() == 0 )  return;
 		
@@ -242,10 +415,7 @@ class P_TaskQueue
 			
 			if( newPotentialCurrent.isArmable() )
 			{
-				m_queue.remove(i);
-				m_current = newPotentialCurrent;
-				m_current.arm();
-				m_current.tryExecuting();
+				start(i, null);
 				
 				break;
 			}
@@ -253,6 +423,80 @@ class P_TaskQueue
 		
 		print();
 	}
+
+	/**
+	 * Starts at most one task, walking the queue in order, and returns whether it did. Rescans from the front
+	 * each call because starting a task can synchronously end it and re-enter {@link #dequeue()}.
+	 */
+	private boolean dequeue_lanes()
+	{
+		if( m_current != null && isExclusiveTask(m_current) )  return false;
+
+		m_blockedDevices.clear();
+
+		for( int i = 0; i < m_queue.size(); i++ )
+		{
+			final PA_Task ith = m_queue.get(i);
+
+			if( isExclusiveTask(ith) )
+			{
+				if( !ith.isArmable() )  continue;
+
+				//--- Nothing gets to cut past a manager-level task, and it waits for every lane to drain.
+				if( m_current == null && m_laneCurrents.isEmpty() )
+				{
+					start(i, null);
+
+					return true;
+				}
+
+				return false;
+			}
+
+			final String macAddress = ith.getDevice() != null ? ith.getDevice().getMacAddress() : null;
+
+			if( macAddress != null && m_blockedDevices.contains(macAddress) )  continue;
+
+			final boolean isLaneTask = isLaneTask(ith);
+			final boolean deviceBusy = macAddress != null && (m_laneCurrents.containsKey(macAddress) || m_current != null && ith.getDevice().equals(m_current.getDevice()));
+			final boolean slotFree = isLaneTask ? !(ith instanceof P_Task_Connect) || isConnectSlotFree() : m_current == null;
+
+			if( !deviceBusy && slotFree )
+			{
+				if( ith.isArmable() )
+				{
+					start(i, isLaneTask ? macAddress : null);
+
+					return true;
+				}
+			}
+			else if( macAddress != null )
+			{
+				//--- Keeps later tasks for the same device from jumping ahead of this one.
+				m_blockedDevices.add(macAddress);
+			}
+		}
+
+		return false;
+	}
+
+	private void start(final int index, final String laneMacAddress_nullable)
+	{
+		final PA_Task task = m_queue.remove(index);
+		m_index.remove(task);
+
+		if( laneMacAddress_nullable != null )
+		{
+			m_laneCurrents.put(laneMacAddress_nullable, task);
+		}
+		else
+		{
+			m_current = task;
+		}
+
+		task.arm();
+		task.tryExecuting();
+	}
 	
 	public long getUpdateCount()
 	{
@@ -266,16 +510,34 @@ class P_TaskQueue
 	}
 	
 	private boolean endCurrentTask(PE_TaskState endingState)
+	{
+		return endTask(getCurrent(), endingState);
+	}
+
+	private boolean endTask(final PA_Task task, PE_TaskState endingState)
 	{
 		if( !m_mngr.ASSERT(endingState.isEndingState()) )	return false;
-		if( getCurrent() == null ) 							return false;
+		if( task == null ) 									return false;
 //		if( m_pendingEndingStateForCurrentTask != null )	return false;
 		
-		PA_Task current_saved = m_current;
-		m_current = null;
+		PA_Task current_saved = task;
+
+		if( task == m_current )
+		{
+			m_current = null;
+		}
+		else if( task == getLaneCurrent(task.getDevice()) )
+		{
+			m_laneCurrents.remove(task.getDevice().getMacAddress());
+		}
+		else
+		{
+			return false;
+		}
+
 		current_saved.setEndingState(endingState);
 
-		if( m_queue.size() > 0 && getCurrent() == null )
+		if( m_queue.size() > 0 && canDequeue() )
 		{
 			if( endingState.canGoToNextTaskImmediately() )
 			{
@@ -288,7 +550,7 @@ class P_TaskQueue
 				{
 					@Override public void run()
 					{
-						if( m_queue.size() > 0 && getCurrent() == null )
+						if( m_queue.size() > 0 && canDequeue() )
 						{
 							dequeue();
 						}
@@ -304,11 +566,48 @@ class P_TaskQueue
 		return true;
 	}
 	
+	private boolean canDequeue()
+	{
+		return lanesEnabled() || getCurrent() == null;
+	}
+
+	/**
+	 * Returns the current task, either the main one or a device's lane, that matches the given arguments.
+	 */
+	private PA_Task findCurrent(final Class<? extends PA_Task> taskClass, final BleManager mngr_nullable, final BleDevice device_nullable, final BleServer server_nullable)
+	{
+		if( PU_TaskQueue.isMatch(getCurrent(), taskClass, mngr_nullable, device_nullable, server_nullable) )
+		{
+			return getCurrent();
+		}
+
+		if( m_laneCurrents.isEmpty() )  return null;
+
+		if( device_nullable != null )
+		{
+			final PA_Task laneCurrent = getLaneCurrent(device_nullable);
+
+			return PU_TaskQueue.isMatch(laneCurrent, taskClass, mngr_nullable, device_nullable, server_nullable) ? laneCurrent : null;
+		}
+		else if( mngr_nullable != null )
+		{
+			for( PA_Task laneCurrent : m_laneCurrents.values() )
+			{
+				if( PU_TaskQueue.isMatch(laneCurrent, taskClass, mngr_nullable, null, null) )
+				{
+					return laneCurrent;
+				}
+			}
+		}
+
+		return null;
+	}
+	
 	public void interrupt(Class<? extends PA_Task> taskClass, BleManager manager)
 	{
 		PA_Task current = getCurrent(taskClass, manager);
 		
-		if( PU_TaskQueue.isMatch(getCurrent(), taskClass, manager, null, null) )
+		if( current != null )
 		{
 			tryEndingTask(current, PE_TaskState.INTERRUPTED);
 			
@@ -350,9 +649,11 @@ class P_TaskQueue
 	
 	private boolean tryEndingTask(final Class<? extends PA_Task> taskClass, final BleManager mngr_nullable, final BleDevice device_nullable, final BleServer server_nullable, final PE_TaskState endingState)
 	{
-		if( PU_TaskQueue.isMatch(getCurrent(), taskClass, mngr_nullable, device_nullable, server_nullable ) )
+		final PA_Task current = findCurrent(taskClass, mngr_nullable, device_nullable, server_nullable);
+
+		if( current != null )
 		{
-			return endCurrentTask(endingState);
+			return endTask(current, endingState);
 		}
 		
 		return false;
@@ -378,9 +679,9 @@ class P_TaskQueue
 
 	private void tryEndingTask_mainThread(final PA_Task task, final PE_TaskState endingState)
 	{
-		if( task != null && task == getCurrent() )
+		if( isCurrent(task) )
 		{
-			if( !endCurrentTask(endingState) )
+			if( !endTask(task, endingState) )
 			{
 				m_mngr.ASSERT(false);
 			}
@@ -389,23 +690,25 @@ class P_TaskQueue
 	
 	public boolean isCurrent(Class<? extends PA_Task> taskClass, BleManager mngr)
 	{
-		return PU_TaskQueue.isMatch(getCurrent(), taskClass, mngr, null, null);
+		return findCurrent(taskClass, mngr, null, null) != null;
 	}
 	
 	public boolean isCurrent(Class<? extends PA_Task> taskClass, BleDevice device)
 	{
-		return PU_TaskQueue.isMatch(getCurrent(), taskClass, null, device, null);
+		return findCurrent(taskClass, null, device, null) != null;
 	}
 	public boolean isCurrent(Class<? extends PA_Task> taskClass, BleServer server)
 	{
-		return PU_TaskQueue.isMatch(getCurrent(), taskClass, null, null, server);
+		return findCurrent(taskClass, null, null, server) != null;
 	}
 	
 	private boolean isInQueue(Class<? extends PA_Task> taskClass, BleManager mngr_nullable, BleDevice device_nullable, BleServer server_nullable)
 	{
-		for( int i = 0; i < m_queue.size(); i++ )
+		final List<PA_Task> candidates = m_index.getCandidates(taskClass, mngr_nullable, device_nullable, server_nullable);
+
+		for( int i = 0; i < candidates.size(); i++ )
 		{
-			if( PU_TaskQueue.isMatch(m_queue.get(i), taskClass, mngr_nullable, device_nullable, server_nullable) )
+			if( PU_TaskQueue.isMatch(candidates.get(i), taskClass, mngr_nullable, device_nullable, server_nullable) )
 			{
 				return true;
 			}
@@ -419,6 +722,15 @@ class P_TaskQueue
 		return m_queue.size();
 	}
 
+	/**
+	 * Returns <code>true</code> if there's nothing queued or executing, meaning nothing in here depends on
+	 * {@link #update(double)} being called at any particular rate.
+	 */
+	boolean isIdle()
+	{
+		return m_executeHandler != null && m_current == null && m_laneCurrents.isEmpty() && m_queue.isEmpty();
+	}
+
 	public List<PA_Task> getRaw()
 	{
 		return m_queue;
@@ -446,11 +758,25 @@ class P_TaskQueue
 	
 	public <T extends PA_Task> T get(Class<? extends PA_Task> taskClass, BleManager mngr)
 	{
-		if( PU_TaskQueue.isMatch(getCurrent(), taskClass, mngr, null, null) )
+		final PA_Task current = findCurrent(taskClass, mngr, null, null);
+
+		if( current != null )
 		{
-			return (T) getCurrent();
+			return (T) current;
+		}
+
+		final List<PA_Task> candidates = m_index.getCandidates(taskClass, mngr, null, null);
+
+		if( candidates.isEmpty() )
+		{
+			return null;
+		}
+		else if( candidates.size() == 1 )
+		{
+			return PU_TaskQueue.isMatch(candidates.get(0), taskClass, mngr, null, null) ? (T) candidates.get(0) : null;
 		}
 		
+		//--- More than one candidate so fall back to a scan to respect queue order.
 		for( int i = 0; i < m_queue.size(); i++ )
 		{
 			if( PU_TaskQueue.isMatch(m_queue.get(i), taskClass, mngr, null, null) )
@@ -464,32 +790,17 @@ class P_TaskQueue
 	
 	public <T extends PA_Task> T getCurrent(Class<? extends PA_Task> taskClass, BleDevice device)
 	{
-		if( PU_TaskQueue.isMatch(getCurrent(), taskClass, null, device, null) )
-		{
-			return (T) getCurrent();
-		}
-		
-		return null;
+		return (T) findCurrent(taskClass, null, device, null);
 	}
 	
 	public <T extends PA_Task> T getCurrent(Class<? extends PA_Task> taskClass, BleManager mngr)
 	{
-		if( PU_TaskQueue.isMatch(getCurrent(), taskClass, mngr, null, null) )
-		{
-			return (T) getCurrent();
-		}
-		
-		return null;
+		return (T) findCurrent(taskClass, mngr, null, null);
 	}
 	
 	public <T extends PA_Task> T getCurrent(Class<? extends PA_Task> taskClass, BleServer server)
 	{
-		if( PU_TaskQueue.isMatch(getCurrent(), taskClass, null, null, server) )
-		{
-			return (T) getCurrent();
-		}
-		
-		return null;
+		return (T) findCurrent(taskClass, null, null, server);
 	}
 	
 	void print()
@@ -503,6 +814,7 @@ class P_TaskQueue
 	private void clearQueueOf$removeFromQueue(int index)
 	{
 		PA_Task task = m_queue.remove(index);
+		m_index.remove(task);
 
 		if( task.wasSoftlyCancelled() )
 		{
@@ -518,38 +830,51 @@ class P_TaskQueue
 	
 	public void clearQueueOf(Class<? extends PA_Task> taskClass, BleManager mngr)
 	{
-		for( int i = m_queue.size()-1; i >= 0; i-- )
-		{
-			if( PU_TaskQueue.isMatch(m_queue.get(i), taskClass, mngr, null, null) )
-			{
-				clearQueueOf$removeFromQueue(i);
-			}
-		}
+		clearQueueOf(taskClass, mngr, null, null, -1);
 	}
 	
 	public void clearQueueOf(Class<? extends PA_Task> taskClass, BleDevice device, final int ordinal)
 	{
-		for( int i = m_queue.size()-1; i >= 0; i-- )
+		clearQueueOf(taskClass, null, device, null, ordinal);
+	}
+	
+	public void clearQueueOf(Class<? extends PA_Task> taskClass, BleServer server)
+	{
+		clearQueueOf(taskClass, null, null, server, -1);
+	}
+
+	private void clearQueueOf(final Class<? extends PA_Task> taskClass, final BleManager mngr_nullable, final BleDevice device_nullable, final BleServer server_nullable, final int ordinal)
+	{
+		final List<PA_Task> candidates = m_index.getCandidates(taskClass, mngr_nullable, device_nullable, server_nullable);
+
+		//--- Matches are copied out first since removing them changes the index's lists. Not a member buffer because
+		//---	ending a task calls out to listeners, which can end up clearing the queue again.
+		ArrayList<PA_Task> matches = null;
+
+		for( int i = 0; i < candidates.size(); i++ )
 		{
-			final PA_Task task_ith = m_queue.get(i);
+			final PA_Task task_ith = candidates.get(i);
 
-			if( ordinal <= -1 || ordinal >= 0 && task_ith.getOrdinal() <= ordinal )
+			if( ordinal <= -1 || task_ith.getOrdinal() <= ordinal )
 			{
-				if( PU_TaskQueue.isMatch(task_ith, taskClass, null, device, null) )
+				if( PU_TaskQueue.isMatch(task_ith, taskClass, mngr_nullable, device_nullable, server_nullable) )
 				{
-					clearQueueOf$removeFromQueue(i);
+					matches = matches != null ? matches : new ArrayList<PA_Task>();
+					matches.add(task_ith);
 				}
 			}
 		}
-	}
-	
-	public void clearQueueOf(Class<? extends PA_Task> taskClass, BleServer server)
-	{
-		for( int i = m_queue.size()-1; i >= 0; i-- )
+
+		if( matches == null )  return;
+
+		for( int i = matches.size()-1; i >= 0; i-- )
 		{
-			if( PU_TaskQueue.isMatch(m_queue.get(i), taskClass, null, null, server) )
+			final int index = m_queue.lastIndexOf(matches.get(i));
+
+			//--- Could already be gone if a listener downstream of clearing an earlier match did something to the queue.
+			if( index != -1 )
 			{
-				clearQueueOf$removeFromQueue(i);
+				clearQueueOf$removeFromQueue(index);
 			}
 		}
 	}
@@ -562,9 +887,10 @@ class P_TaskQueue
 //			current += "(" + m_pendingEndingStateForCurrentTask.name() +")";
 //		}
 		
+		final String lanes = m_laneCurrents.size() > 0 ? " " + m_laneCurrents.values().toString() : "";
 		final String queue = m_queue.size() > 0 ? m_queue.toString() : "[queue empty]";
 		
-		final String toReturn = current + " " + queue;
+		final String toReturn = current + lanes + " " + queue;
 		
 		return toReturn;
 	}
@@ -0,0 +1,200 @@
+package com.idevicesinc.sweetblue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Secondary indexes over the tasks sitting in {@link P_TaskQueue}'s backing list. The list itself is still
+ * the authority on ordering, because {@link PA_Task#isMoreImportantThan(PA_Task)} is overridden in a few places
+ * (transaction locks, bonding, scanning) such that ordering isn't a pure function of {@link PE_TaskPriority}.
+ * What this class provides is cheap answers to "is there anything of class X for device Y queued?" so that
+ * the common miss case doesn't have to walk the whole queue.
+ */
+class P_TaskQueue_Index
+{
+	private static final List<PA_Task> EMPTY = new ArrayList<PA_Task>(0);
+
+	//--- Cache of class -> list of that class plus all superclasses up to but not including PA_Task.
+	//---	Queries like isInQueue(PA_Task_RequiresConnection.class, device) need to hit subclasses.
+	private static final HashMap<Class<?>, Class<?>[]> s_hierarchyCache = new HashMap<Class<?>, Class<?>[]>();
+
+	private final HashMap<Class<?>, ArrayList<PA_Task>> m_byClass = new HashMap<Class<?>, ArrayList<PA_Task>>();
+	private final HashMap<String, ArrayList<PA_Task>> m_byDevice = new HashMap<String, ArrayList<PA_Task>>();
+	private final HashMap<BleServer, ArrayList<PA_Task>> m_byServer = new HashMap<BleServer, ArrayList<PA_Task>>();
+
+	private final int[] m_priorityCounts = new int[PE_TaskPriority.values().length];
+
+	void add(final PA_Task task)
+	{
+		final Class<?>[] hierarchy = getHierarchy(task.getClass());
+
+		for( int i = 0; i < hierarchy.length; i++ )
+		{
+			put(m_byClass, hierarchy[i], task);
+		}
+
+		if( task.getDevice() != null )
+		{
+			put(m_byDevice, task.getDevice().getMacAddress(), task);
+		}
+
+		if( task.getServer() != null )
+		{
+			put(m_byServer, task.getServer(), task);
+		}
+
+		m_priorityCounts[task.getPriority().ordinal()]++;
+	}
+
+	void remove(final PA_Task task)
+	{
+		final Class<?>[] hierarchy = getHierarchy(task.getClass());
+
+		for( int i = 0; i < hierarchy.length; i++ )
+		{
+			take(m_byClass, hierarchy[i], task);
+		}
+
+		if( task.getDevice() != null )
+		{
+			take(m_byDevice, task.getDevice().getMacAddress(), task);
+		}
+
+		if( task.getServer() != null )
+		{
+			take(m_byServer, task.getServer(), task);
+		}
+
+		m_priorityCounts[task.getPriority().ordinal()]--;
+	}
+
+	/**
+	 * Returns the smallest set of queued tasks that could possibly satisfy {@link PU_TaskQueue#isMatch(PA_Task, Class, BleManager, BleDevice, BleServer)}
+	 * for the given arguments. Callers still have to run the actual match on each candidate. Order is insertion order, not queue order.
+	 */
+	List<PA_Task> getCandidates(final Class<? extends PA_Task> taskClass, final BleManager mngr_nullable, final BleDevice device_nullable, final BleServer server_nullable)
+	{
+		final List<PA_Task> byClass = get(m_byClass, taskClass);
+
+		if( mngr_nullable != null || byClass.isEmpty() )
+		{
+			return byClass;
+		}
+		else if( device_nullable != null )
+		{
+			final List<PA_Task> byDevice = get(m_byDevice, device_nullable.getMacAddress());
+
+			return byDevice.size() < byClass.size() ? byDevice : byClass;
+		}
+		else if( server_nullable != null )
+		{
+			final List<PA_Task> byServer = get(m_byServer, server_nullable);
+
+			return byServer.size() < byClass.size() ? byServer : byClass;
+		}
+		else
+		{
+			return byClass;
+		}
+	}
+
+	/**
+	 * All queued tasks for the given device, in insertion order.
+	 */
+	List<PA_Task> getForDevice(final BleDevice device)
+	{
+		return get(m_byDevice, device.getMacAddress());
+	}
+
+	/**
+	 * All queued tasks for the given server, in insertion order.
+	 */
+	List<PA_Task> getForServer(final BleServer server)
+	{
+		return get(m_byServer, server);
+	}
+
+	/**
+	 * Returns <code>true</code> if {@link PU_TaskQueue#findSoonestSpot(List, PA_Task)} could possibly find a spot
+	 * for the given task that isn't the back of the queue. By default a task only cuts ahead of strictly lower priority
+	 * tasks, and the only overrides of {@link PA_Task#isMoreImportantThan(PA_Task)} that add new cases do so for
+	 * {@link P_Task_TxnLock} instances, so if neither exists we know the answer is "back of the line".
+	 */
+	boolean couldCutInLine(final PA_Task task)
+	{
+		if( !get(m_byClass, P_Task_TxnLock.class).isEmpty() )  return true;
+
+		for( int i = 0; i < task.getPriority().ordinal(); i++ )
+		{
+			if( m_priorityCounts[i] > 0 )  return true;
+		}
+
+		return false;
+	}
+
+	private static <K> List<PA_Task> get(final HashMap<K, ArrayList<PA_Task>> map, final K key)
+	{
+		final ArrayList<PA_Task> list = map.get(key);
+
+		return list != null ? list : EMPTY;
+	}
+
+	private static <K> void put(final HashMap<K, ArrayList<PA_Task>> map, final K key, final PA_Task task)
+	{
+		ArrayList<PA_Task> list = map.get(key);
+
+		if( list == null )
+		{
+			list = new ArrayList<PA_Task>();
+			map.put(key, list);
+		}
+
+		list.add(task);
+	}
+
+	private static <K> void take(final HashMap<K, ArrayList<PA_Task>> map, final K key, final PA_Task task)
+	{
+		final ArrayList<PA_Task> list = map.get(key);
+
+		if( list == null )  return;
+
+		for( int i = list.size()-1; i >= 0; i-- )
+		{
+			if( list.get(i) == task )
+			{
+				list.remove(i);
+
+				break;
+			}
+		}
+
+		if( list.isEmpty() )
+		{
+			map.remove(key);
+		}
+	}
+
+	private static Class<?>[] getHierarchy(final Class<?> taskClass)
+	{
+		Class<?>[] hierarchy = s_hierarchyCache.get(taskClass);
+
+		if( hierarchy == null )
+		{
+			final ArrayList<Class<?>> classes = new ArrayList<Class<?>>();
+
+			for( Class<?> ith = taskClass; ith != null && ith != PA_Task.class && ith != Object.class; ith = ith.getSuperclass() )
+			{
+				classes.add(ith);
+			}
+
+			classes.add(PA_Task.class);
+
+			hierarchy = classes.toArray(new Class<?>[classes.size()]);
+
+			s_hierarchyCache.put(taskClass, hierarchy);
+		}
+
+		return hierarchy;
+	}
+}
@@ -2,15 +2,22 @@ package com.idevicesinc.sweetblue;
 
 import android.annotation.TargetApi;
 import android.bluetooth.le.ScanCallback;
+import android.bluetooth.le.ScanFilter;
 import android.bluetooth.le.ScanRecord;
 import android.bluetooth.le.ScanResult;
 import android.bluetooth.le.ScanSettings;
 import android.os.Build;
+import android.os.ParcelUuid;
 
 import com.idevicesinc.sweetblue.PA_StateTracker.E_Intent;
 import com.idevicesinc.sweetblue.utils.Interval;
+import com.idevicesinc.sweetblue.utils.ScanFilterSpec;
 import com.idevicesinc.sweetblue.utils.Utils;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 
 @TargetApi(Build.VERSION_CODES.LOLLIPOP)
@@ -22,6 +29,10 @@ class P_Task_Scan extends PA_Task_RequiresBleOn
 	}
 	
 	private E_Mode m_mode = null;
+
+	//--- Whether the current native scan was started with a report delay, and whether it's since been stopped and flushed.
+	private boolean m_batching = false;
+	private boolean m_flushing = false;
 	
 	//TODO
 	private final boolean m_explicit = true;
@@ -59,8 +70,45 @@ class P_Task_Scan extends PA_Task_RequiresBleOn
 			getManager().onDiscovered(result.getDevice(), result.getRssi(), scanRecord.getBytes());
 		}
 
-		public void onBatchScanResults(List<ScanResult> results)
+		public void onBatchScanResults(final List<ScanResult> results)
 		{
+			final Collection<ScanResult> latestResults = latestPerDevice(results);
+
+			if( getManager().getUpdateLoop().postNeeded() )
+			{
+				getManager().getUpdateLoop().postIfNeeded(new Runnable()
+				{
+					@Override public void run()
+					{
+						onBatchScanResults_mainThread(latestResults);
+					}
+				});
+			}
+			else
+			{
+				onBatchScanResults_mainThread(latestResults);
+			}
+		}
+
+		private void onBatchScanResults_mainThread(final Collection<ScanResult> latestResults)
+		{
+			//--- Batches flushed out while stopping were seen while scanning, so still count even though we may not be anymore.
+			final boolean flushed = m_flushing;
+
+			if( !flushed )
+			{
+				getManager().m_nativeStateTracker.append(BleManagerState.SCANNING, getIntent(), BleStatuses.GATT_STATUS_NOT_APPLICABLE);
+			}
+
+			final Iterator<ScanResult> iterator = latestResults.iterator();
+
+			while( iterator.hasNext() )
+			{
+				final ScanResult result = iterator.next();
+				final ScanRecord scanRecord = result.getScanRecord();
+
+				getManager().onDiscovered(result.getDevice(), result.getRssi(), scanRecord != null ? scanRecord.getBytes() : null, flushed);
+			}
 		}
 
 		public void onScanFailed(final int errorCode)
@@ -113,6 +161,38 @@ class P_Task_Scan extends PA_Task_RequiresBleOn
 	{
 		return m_scanCallback_postLollipop;
 	}
+
+	/**
+	 * Whether the Bluetooth stack is holding results back for {@link BleManagerConfig#scanReportDelay}, in which case
+	 * they need to be flushed out before the native scan is stopped or they're lost.
+	 */
+	boolean isBatching()
+	{
+		return m_batching;
+	}
+
+	void onFlushing()
+	{
+		m_flushing = true;
+	}
+
+	/**
+	 * Devices advertise a lot more often than the report delay, so only the latest result for each one in a batch is worth passing along.
+	 * Devices come out in the order they first appear in the batch.
+	 */
+	static Collection<ScanResult> latestPerDevice(final List<ScanResult> results)
+	{
+		final LinkedHashMap<String, ScanResult> latestResults = new LinkedHashMap<String, ScanResult>();
+
+		for( int i = 0; i < results.size(); i++ )
+		{
+			final ScanResult ith = results.get(i);
+
+			latestResults.put(ith.getDevice().getAddress(), ith);
+		}
+
+		return latestResults.values();
+	}
 	
 	@Override protected double getInitialTimeout()
 	{
@@ -171,9 +251,67 @@ class P_Task_Scan extends PA_Task_RequiresBleOn
 			scanMode = ScanSettings.SCAN_MODE_LOW_POWER;
 		}
 
-		final ScanSettings scanSettings = !Utils.isLollipop() ? null : new ScanSettings.Builder().setScanMode(scanMode).build();
+		final ScanSettings.Builder builder = new ScanSettings.Builder().setScanMode(scanMode);
+
+		//--- Asking for a report delay without hardware support makes the scan fail outright, so just fall back to one result at a time.
+		m_batching = Interval.isEnabled(getManager().m_config.scanReportDelay) && getManager().getNativeAdapter().isOffloadedScanBatchingSupported();
+		m_flushing = false;
+
+		if( m_batching )
+		{
+			builder.setReportDelay(getManager().m_config.scanReportDelay.millis());
+		}
+
+		final ScanSettings scanSettings = builder.build();
+
+		getManager().getNativeAdapter().getBluetoothLeScanner().startScan(newNativeScanFilters(), scanSettings, m_scanCallback_postLollipop);
+	}
+
+	/**
+	 * Compiles {@link BleManagerConfig#scanFilterSpecs} into filters the Bluetooth stack can offload, or returns <code>null</code> to get everything.
+	 * Whatever can't be offloaded is left out, which only makes a native filter match more than it should, and is checked again by {@link P_ScanFilterManager}.
+	 */
+	private List<ScanFilter> newNativeScanFilters()
+	{
+		final List<ScanFilterSpec> specs = getManager().m_config.scanFilterSpecs;
+
+		if( specs == null || specs.isEmpty() )  return null;
+
+		final ArrayList<ScanFilter> filters = new ArrayList<ScanFilter>();
+
+		for( int i = 0; i < specs.size(); i++ )
+		{
+			final ScanFilterSpec ith = specs.get(i);
+			final ScanFilter.Builder builder = new ScanFilter.Builder();
+
+			if( ith.getServiceUuid() != null )
+			{
+				builder.setServiceUuid(new ParcelUuid(ith.getServiceUuid()));
+			}
+
+			if( ith.getMacAddress() != null )
+			{
+				builder.setDeviceAddress(ith.getMacAddress());
+			}
+
+			if( ith.getManufacturerId() >= 0 )
+			{
+				final byte[] data = ith.getManufacturerData();
+
+				if( ith.getManufacturerDataMask() != null )
+				{
+					builder.setManufacturerData(ith.getManufacturerId(), data, ith.getManufacturerDataMask());
+				}
+				else
+				{
+					builder.setManufacturerData(ith.getManufacturerId(), data != null ? data : new byte[0]);
+				}
+			}
+
+			filters.add(builder.build());
+		}
 
-		getManager().getNativeAdapter().getBluetoothLeScanner().startScan(null, scanSettings, m_scanCallback_postLollipop);
+		return filters;
 	}
 
 	private P_Task_Scan.E_Mode startNativeScan_preLollipop(final E_Intent intent)
@@ -236,6 +236,17 @@ class P_TransactionManager
 		}
 	}
 	
+	double getTimeToNextUpdate()
+	{
+		//--- Transactions can do whatever they want in update(), so tick at the normal rate while any are running.
+		if( m_authTxn != null && m_authTxn.isRunning() )  return 0.0;
+		if( m_initTxn != null && m_initTxn.isRunning() )  return 0.0;
+		if( m_otaTxn != null && m_otaTxn.isRunning() )  return 0.0;
+		if( m_anonTxn != null && m_anonTxn.isRunning() )  return 0.0;
+
+		return Double.POSITIVE_INFINITY;
+	}
+	
 	void update(double timeStep)
 	{
 		if( m_authTxn != null && m_authTxn.isRunning() )
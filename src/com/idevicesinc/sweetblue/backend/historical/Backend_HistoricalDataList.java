@@ -28,6 +28,21 @@ public interface Backend_HistoricalDataList
 		void onDone();
 	}
 
+	/**
+	 * Pass an implementation of this to {@link Backend_HistoricalDataList_ChunkedLoad#load(int, AsyncLoadCallback)} to hear about each chunk as it's loaded.
+	 */
+	public interface AsyncLoadProgressCallback extends AsyncLoadCallback
+	{
+		/**
+		 * Called after each chunk is merged into the list, at which point the newest <code>loadedCount</code> entries on disk are available.
+		 */
+		void onProgress(final int loadedCount, final int totalCount);
+	}
+
+	/**
+	 * The given {@link UpdateLoop} runs on a thread shared with other devices' lists, and is the same for every list belonging
+	 * to a given MAC address. Post any background work to it instead of creating threads, so that work for a device stays ordered.
+	 */
 	void init(final Backend_HistoricalDatabase database, final UpdateLoop updateLoop, final String macAddress, final UUID uuid, final String uuidName, final boolean hasExistingTable);
 
 	void add_single(final HistoricalData historicalData, final BleDeviceConfig.HistoricalDataLogFilter.PersistenceLevel logChoice, final long limit);
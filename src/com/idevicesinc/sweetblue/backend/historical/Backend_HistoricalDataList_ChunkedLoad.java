@@ -0,0 +1,15 @@
+package com.idevicesinc.sweetblue.backend.historical;
+
+/**
+ * Optional extension of {@link Backend_HistoricalDataList} for lists that can load from disk a chunk at a time.
+ * Lists that don't implement it are loaded all at once through {@link #load(AsyncLoadCallback)}.
+ */
+public interface Backend_HistoricalDataList_ChunkedLoad extends Backend_HistoricalDataList
+{
+	/**
+	 * Same as {@link #load(AsyncLoadCallback)} but loads at most <code>chunkSize</code> entries at a time, newest first, posting each chunk
+	 * separately so other work for the device can run in between. Entries are readable as soon as their chunk is merged, while
+	 * {@link #getLoadState()} is still {@link #LOAD_STATE__LOADING}. A <code>chunkSize</code> of zero or less loads everything at once.
+	 */
+	void load(final int chunkSize, final AsyncLoadCallback callback_nullable);
+}
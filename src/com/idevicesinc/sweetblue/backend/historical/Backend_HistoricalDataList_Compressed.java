@@ -0,0 +1,909 @@
+package com.idevicesinc.sweetblue.backend.historical;
+
+import com.idevicesinc.sweetblue.BleDeviceConfig.HistoricalDataLogFilter.PersistenceLevel;
+import com.idevicesinc.sweetblue.utils.EpochTimeRange;
+import com.idevicesinc.sweetblue.utils.HistoricalData;
+import com.idevicesinc.sweetblue.utils.HistoricalDataCursor;
+import com.idevicesinc.sweetblue.utils.UpdateLoop;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+
+/**
+ * Unlimited in-memory implementation of {@link Backend_HistoricalDataList} that keeps entries compressed. Entries are grouped in time order
+ * into blocks of up to {@link #BLOCK_SIZE}, each encoded with {@link P_HistoricalDataCodec} (delta-of-delta timestamps, blobs stored as the
+ * bytes that changed from the previous one), which for the small, slowly changing payloads most characteristics produce is a few bytes
+ * per entry instead of the 70 or so bytes of a {@link HistoricalData} object with its {@link com.idevicesinc.sweetblue.utils.EpochTime} and <code>byte[]</code>.
+ * <br><br>
+ * Appending in time order just encodes onto the end of the newest block. Reads decode one block at a time, keeping the last one decoded
+ * around since reads tend to stay in the same block. Trimming the oldest entries to honor a log limit only bumps a per-block skip count.
+ * Adding out of order or deleting from the middle of a block re-encodes that one block.
+ * <br><br>
+ * Iterators returned by {@link #getIterator(EpochTimeRange)} decode from the blocks as they were when the iterator was created,
+ * without locking, so another thread can walk through a long log while new data keeps coming in.
+ * <br><br>
+ * Entries added with {@link PersistenceLevel#DISK} or {@link PersistenceLevel#BOTH} are also written through to the
+ * {@link Backend_HistoricalDatabase} on the {@link UpdateLoop} given to {@link #init(Backend_HistoricalDatabase, UpdateLoop, String, UUID, String, boolean)}.
+ * <br><br>
+ * Not the default, opt in with <code>Backend_Modules.HISTORICAL_DATA_LIST = Backend_HistoricalDataList_Compressed.class;</code>
+ * before creating your {@link com.idevicesinc.sweetblue.BleManager}.
+ */
+public class Backend_HistoricalDataList_Compressed extends PA_HistoricalDataList
+{
+	public static final int BLOCK_SIZE = 128;
+
+	private static final int INITIAL_BLOCK_CAPACITY = 4;
+
+	//--- Every entry of block i is no later than any entry of block i+1. The first m_blockSkips[i] entries of a block are deleted.
+	private byte[][] m_blocks = new byte[INITIAL_BLOCK_CAPACITY][];
+	private int[] m_blockLengths = new int[INITIAL_BLOCK_CAPACITY];
+	private int[] m_blockCounts = new int[INITIAL_BLOCK_CAPACITY];
+	private int[] m_blockSkips = new int[INITIAL_BLOCK_CAPACITY];
+	private long[] m_blockFirstTimes = new long[INITIAL_BLOCK_CAPACITY];
+	private long[] m_blockLastTimes = new long[INITIAL_BLOCK_CAPACITY];
+	private int m_blockCount = 0;
+	private int m_count = 0;
+
+	//--- Running totals of m_blockLengths and of the blocks' capacities, so sizes can be asked for on every add without walking the blocks.
+	private long m_encodedSize = 0;
+	private long m_blockCapacity = 0;
+
+	//--- m_blockPositions[i] is the index of block i's first live entry, recomputed lazily after changes.
+	private int[] m_blockPositions = new int[INITIAL_BLOCK_CAPACITY];
+	private boolean m_arePositionsDirty = false;
+
+	//--- Appends continue from the encoder's state, which has to be rebuilt from the newest block after anything else touches it.
+	private final P_HistoricalDataCodec m_encoder = new P_HistoricalDataCodec();
+	private boolean m_isEncoderCurrent = false;
+
+	private final P_HistoricalDataCodec m_decoder = new P_HistoricalDataCodec();
+	private byte[] m_scratch = new byte[256];
+
+	//--- All entries of the last block decoded, skipped ones included.
+	private int m_decodedBlock = -1;
+	private long[] m_decodedTimes = new long[BLOCK_SIZE];
+	private int[] m_decodedOffsets = new int[BLOCK_SIZE];
+	private int[] m_decodedLengths = new int[BLOCK_SIZE];
+	private byte[] m_decodedArena = new byte[256];
+
+	//--- Result of the last range lookup, cleared on any change to the list.
+	private P_HistoricalDataIndexCache m_indexCache = null;
+
+	public Backend_HistoricalDataList_Compressed()
+	{
+	}
+
+	/**
+	 * Returns the number of bytes taken up by encoded entries, not counting per-block bookkeeping or the decode cache.
+	 */
+	public synchronized long getEncodedSize()
+	{
+		return m_encodedSize;
+	}
+
+	@Override public synchronized int getCount(final EpochTimeRange range)
+	{
+		return getIndexCache(range).getCount();
+	}
+
+	@Override public synchronized HistoricalData get(final EpochTimeRange range, final int offset)
+	{
+		final P_HistoricalDataIndexCache indexCache = getIndexCache(range);
+
+		if( offset < 0 || !indexCache.isInBounds(offset) )  return HistoricalData.NULL;
+
+		return newHistoricalData(indexCache.m_from_index + offset);
+	}
+
+	@Override public synchronized Iterator<HistoricalData> getIterator(final EpochTimeRange range)
+	{
+		final P_HistoricalDataIndexCache indexCache = getIndexCache(range);
+		final int count = indexCache.getCount();
+
+		if( count == 0 )  return new RangeIterator(null, null, null, null, 0, 0);
+
+		final int firstBlock = findBlock(indexCache.m_from_index);
+		final int lastBlock = findBlock(indexCache.m_from_index + count - 1);
+		final int firstEntry = indexCache.m_from_index - m_blockPositions[firstBlock];
+
+		final byte[][] blocks = Arrays.copyOfRange(m_blocks, firstBlock, lastBlock + 1);
+		final int[] lengths = Arrays.copyOfRange(m_blockLengths, firstBlock, lastBlock + 1);
+		final int[] counts = Arrays.copyOfRange(m_blockCounts, firstBlock, lastBlock + 1);
+		final int[] skips = Arrays.copyOfRange(m_blockSkips, firstBlock, lastBlock + 1);
+
+		return new RangeIterator(blocks, lengths, counts, skips, firstEntry, count);
+	}
+
+	@Override public synchronized void delete_fromMemoryOnly(final EpochTimeRange range, final long count)
+	{
+		if( count <= 0 )  return;
+
+		final P_HistoricalDataIndexCache indexCache = getIndexCache(range);
+
+		final int toDelete = (int) Math.min(count, indexCache.getCount());
+
+		if( toDelete > 0 )
+		{
+			remove(indexCache.m_from_index, toDelete);
+		}
+	}
+
+	@Override public synchronized HistoricalDataCursor getCursor(final EpochTimeRange range)
+	{
+		//--- Nothing's been loaded or added yet so everything is on disk, and reading it from there avoids decoding a possibly huge log into memory.
+		if( m_count == 0 && m_loadState == LOAD_STATE__NOT_LOADED && m_database != null )
+		{
+			return m_database.getCursor(m_macAddress, m_uuid, range);
+		}
+
+		final P_HistoricalDataIndexCache indexCache = getIndexCache(range);
+		final int count = indexCache.getCount();
+
+		final long[] times = new long[count];
+		final int[] offsets = new int[count];
+		final int[] lengths = new int[count];
+
+		byte[] arena = new byte[Math.max(16, count * 4)];
+		int arenaEnd = 0;
+
+		for( int i = 0; i < count; i++ )
+		{
+			final int decoded = seek(indexCache.m_from_index + i);
+			final int length = m_decodedLengths[decoded];
+
+			if( arenaEnd + length > arena.length )
+			{
+				arena = Arrays.copyOf(arena, Math.max(arenaEnd + length, arena.length * 2));
+			}
+
+			System.arraycopy(m_decodedArena, m_decodedOffsets[decoded], arena, arenaEnd, length);
+
+			times[i] = m_decodedTimes[decoded];
+			offsets[i] = arenaEnd;
+			lengths[i] = length;
+
+			arenaEnd += length;
+		}
+
+		return new P_HistoricalDataCursor_Arrays(times, arena, offsets, lengths, count);
+	}
+
+	@Override public synchronized EpochTimeRange getRange()
+	{
+		if( m_count == 0 )  return EpochTimeRange.NULL;
+
+		return new EpochTimeRange(getFirstLiveTime(0), m_blockLastTimes[m_blockCount - 1]);
+	}
+
+	@Override public synchronized long getMemoryUsage()
+	{
+		//--- Seven arrays of bookkeeping per block, plus the decode cache.
+		long size = (long) m_blocks.length * (4 + 4 + 4 + 4 + 8 + 8 + 4) + m_scratch.length;
+
+		size += (long) m_decodedTimes.length * 8 + (long) m_decodedOffsets.length * 4 + (long) m_decodedLengths.length * 4 + m_decodedArena.length;
+
+		return size + m_blockCapacity;
+	}
+
+	private HistoricalData newHistoricalData(final int index)
+	{
+		final int decoded = seek(index);
+		final int offset = m_decodedOffsets[decoded];
+
+		return new HistoricalData(Arrays.copyOfRange(m_decodedArena, offset, offset + m_decodedLengths[decoded]), m_decodedTimes[decoded]);
+	}
+
+	private long getFirstLiveTime(final int block)
+	{
+		if( m_blockSkips[block] == 0 )  return m_blockFirstTimes[block];
+
+		decode(block);
+
+		return m_decodedTimes[m_blockSkips[block]];
+	}
+
+	private P_HistoricalDataIndexCache getIndexCache(final EpochTimeRange range_nullable)
+	{
+		final EpochTimeRange range = EpochTimeRange.denull(range_nullable);
+
+		if( m_indexCache != null && m_indexCache.equals(range) )  return m_indexCache;
+
+		final long from = range.from().toMilliseconds();
+		final long to = range.to().toMilliseconds();
+
+		//--- An empty range ends up with to_index < from_index, which P_HistoricalDataIndexCache treats as invalid, i.e. a count of zero.
+		final int from_index = lowerBound(from);
+		final int to_index = upperBound(to) - 1;
+
+		m_indexCache = new P_HistoricalDataIndexCache(from, to, from_index, to_index);
+
+		return m_indexCache;
+	}
+
+	/**
+	 * Index of the first entry with a time &gt;= the given time.
+	 */
+	private int lowerBound(final long time)
+	{
+		final int block = firstBlockEndingAfter(time, /*inclusive=*/true);
+
+		if( block == m_blockCount )  return m_count;
+
+		decode(block);
+
+		int i = m_blockSkips[block];
+
+		while( m_decodedTimes[i] < time )
+		{
+			i++;
+		}
+
+		return getBlockPosition(block) + i - m_blockSkips[block];
+	}
+
+	/**
+	 * Index of the first entry with a time &gt; the given time.
+	 */
+	private int upperBound(final long time)
+	{
+		final int block = firstBlockEndingAfter(time, /*inclusive=*/false);
+
+		if( block == m_blockCount )  return m_count;
+
+		decode(block);
+
+		int i = m_blockSkips[block];
+
+		while( m_decodedTimes[i] <= time )
+		{
+			i++;
+		}
+
+		return getBlockPosition(block) + i - m_blockSkips[block];
+	}
+
+	/**
+	 * Index of the first block whose last entry is at or after (inclusive) or strictly after the given time, or the block count if none.
+	 */
+	private int firstBlockEndingAfter(final long time, final boolean inclusive)
+	{
+		int low = 0;
+		int high = m_blockCount;
+
+		while( low < high )
+		{
+			final int mid = (low + high) >>> 1;
+
+			if( inclusive ? m_blockLastTimes[mid] < time : m_blockLastTimes[mid] <= time )
+			{
+				low = mid + 1;
+			}
+			else
+			{
+				high = mid;
+			}
+		}
+
+		return low;
+	}
+
+	private int getBlockPosition(final int block)
+	{
+		if( m_arePositionsDirty )
+		{
+			for( int i = 0, position = 0; i < m_blockCount; i++ )
+			{
+				m_blockPositions[i] = position;
+				position += m_blockCounts[i] - m_blockSkips[i];
+			}
+
+			m_arePositionsDirty = false;
+		}
+
+		return m_blockPositions[block];
+	}
+
+	/**
+	 * Index of the block holding the entry at the given index.
+	 */
+	private int findBlock(final int index)
+	{
+		getBlockPosition(0);
+
+		int low = 0;
+		int high = m_blockCount - 1;
+
+		while( low < high )
+		{
+			final int mid = (low + high + 1) >>> 1;
+
+			if( m_blockPositions[mid] <= index )
+			{
+				low = mid;
+			}
+			else
+			{
+				high = mid - 1;
+			}
+		}
+
+		return low;
+	}
+
+	/**
+	 * Decodes the block holding the entry at the given index, returning where it is in the m_decoded* arrays.
+	 */
+	private int seek(final int index)
+	{
+		final int block = findBlock(index);
+
+		decode(block);
+
+		return index - m_blockPositions[block] + m_blockSkips[block];
+	}
+
+	private void decode(final int block)
+	{
+		if( m_decodedBlock == block )  return;
+
+		final int count = m_blockCounts[block];
+
+		if( m_decodedTimes.length < count )
+		{
+			m_decodedTimes = new long[count];
+			m_decodedOffsets = new int[count];
+			m_decodedLengths = new int[count];
+		}
+
+		final ByteBuffer buffer = ByteBuffer.wrap(m_blocks[block]);
+
+		m_decoder.reset(0);
+
+		for( int i = 0, position = 0, arenaEnd = 0; i < count; i++ )
+		{
+			position = m_decoder.decode(buffer, position, m_blockLengths[block]);
+
+			final int length = m_decoder.getBlobLength();
+
+			if( arenaEnd + length > m_decodedArena.length )
+			{
+				m_decodedArena = Arrays.copyOf(m_decodedArena, Math.max(arenaEnd + length, m_decodedArena.length * 2));
+			}
+
+			System.arraycopy(m_decoder.getBlob(), 0, m_decodedArena, arenaEnd, length);
+
+			m_decodedTimes[i] = m_decoder.getTime();
+			m_decodedOffsets[i] = arenaEnd;
+			m_decodedLengths[i] = length;
+
+			arenaEnd += length;
+		}
+
+		m_decodedBlock = block;
+	}
+
+	@Override void insert(final long time, final byte[] blob_nullable)
+	{
+		if( m_blockCount == 0 || m_blockLastTimes[m_blockCount - 1] <= time )
+		{
+			append(time, blob_nullable);
+		}
+		else
+		{
+			insertOutOfOrder(time, blob_nullable);
+		}
+
+		m_count++;
+
+		onChanged();
+	}
+
+	private void append(final long time, final byte[] blob_nullable)
+	{
+		final int length = blob_nullable != null ? blob_nullable.length : 0;
+
+		if( m_blockCount == 0 || m_blockCounts[m_blockCount - 1] >= BLOCK_SIZE )
+		{
+			insertBlock(m_blockCount, new byte[Math.max(64, P_HistoricalDataCodec.getMaxEncodedLength(length))], 0, 0, time, time);
+
+			m_encoder.reset(0);
+			m_isEncoderCurrent = true;
+		}
+		else if( !m_isEncoderCurrent )
+		{
+			restoreEncoder();
+		}
+
+		final int block = m_blockCount - 1;
+
+		if( m_blockLengths[block] + P_HistoricalDataCodec.getMaxEncodedLength(length) > m_blocks[block].length )
+		{
+			m_blockCapacity -= m_blocks[block].length;
+			m_blocks[block] = Arrays.copyOf(m_blocks[block], Math.max(m_blockLengths[block] + P_HistoricalDataCodec.getMaxEncodedLength(length), m_blocks[block].length * 2));
+			m_blockCapacity += m_blocks[block].length;
+		}
+
+		final int newLength = m_encoder.encode(time, blob_nullable, m_blocks[block], m_blockLengths[block]);
+
+		m_encodedSize += newLength - m_blockLengths[block];
+		m_blockLengths[block] = newLength;
+		m_blockLastTimes[block] = time;
+		m_blockCounts[block]++;
+
+		if( m_decodedBlock == block )
+		{
+			m_decodedBlock = -1;
+		}
+	}
+
+	private void restoreEncoder()
+	{
+		final int block = m_blockCount - 1;
+		final ByteBuffer buffer = ByteBuffer.wrap(m_blocks[block]);
+
+		m_encoder.reset(0);
+
+		for( int i = 0, position = 0; i < m_blockCounts[block]; i++ )
+		{
+			position = m_encoder.decode(buffer, position, m_blockLengths[block]);
+		}
+
+		m_isEncoderCurrent = true;
+	}
+
+	private void insertOutOfOrder(final long time, final byte[] blob_nullable)
+	{
+		//--- Goes in the last block starting at or before the time, so blocks stay in order.
+		int block = firstBlockEndingAfter(time, /*inclusive=*/true);
+
+		while( block > 0 && m_blockFirstTimes[block] > time )
+		{
+			block--;
+		}
+
+		decode(block);
+
+		final int skip = m_blockSkips[block];
+		final int count = m_blockCounts[block];
+
+		int index = skip;
+
+		while( index < count && m_decodedTimes[index] <= time )
+		{
+			index++;
+		}
+
+		final P_HistoricalDataCodec encoder = new P_HistoricalDataCodec();
+		encoder.reset(0);
+
+		int length = 0;
+
+		for( int i = skip; i <= count; i++ )
+		{
+			if( i == index )
+			{
+				length = encodeScratch(encoder, length, time, blob_nullable);
+			}
+
+			if( i < count )
+			{
+				length = encodeScratch(encoder, length, i);
+			}
+		}
+
+		setBlock(block, length, count - skip + 1, Math.min(time, m_decodedTimes[skip]), Math.max(time, m_decodedTimes[count - 1]));
+
+		//--- Keeps re-encoding cheap if lots of data arrives out of order into the same block.
+		if( m_blockCounts[block] >= BLOCK_SIZE * 2 )
+		{
+			split(block);
+		}
+	}
+
+	private void split(final int block)
+	{
+		decode(block);
+
+		final int count = m_blockCounts[block];
+		final int half = count / 2;
+
+		final P_HistoricalDataCodec encoder = new P_HistoricalDataCodec();
+
+		encoder.reset(0);
+
+		int length = 0;
+
+		for( int i = half; i < count; i++ )
+		{
+			length = encodeScratch(encoder, length, i);
+		}
+
+		insertBlock(block + 1, Arrays.copyOf(m_scratch, length), length, count - half, m_decodedTimes[half], m_decodedTimes[count - 1]);
+
+		encoder.reset(0);
+
+		length = 0;
+
+		for( int i = 0; i < half; i++ )
+		{
+			length = encodeScratch(encoder, length, i);
+		}
+
+		setBlock(block, length, half, m_decodedTimes[0], m_decodedTimes[half - 1]);
+	}
+
+	private int encodeScratch(final P_HistoricalDataCodec encoder, final int position, final int decoded)
+	{
+		final int offset = m_decodedOffsets[decoded];
+
+		return encodeScratch(encoder, position, m_decodedTimes[decoded], Arrays.copyOfRange(m_decodedArena, offset, offset + m_decodedLengths[decoded]));
+	}
+
+	private int encodeScratch(final P_HistoricalDataCodec encoder, final int position, final long time, final byte[] blob_nullable)
+	{
+		final int maxLength = P_HistoricalDataCodec.getMaxEncodedLength(blob_nullable != null ? blob_nullable.length : 0);
+
+		if( position + maxLength > m_scratch.length )
+		{
+			m_scratch = Arrays.copyOf(m_scratch, Math.max(position + maxLength, m_scratch.length * 2));
+		}
+
+		return encoder.encode(time, blob_nullable, m_scratch, position);
+	}
+
+	/**
+	 * Replaces the given block with what's been encoded into {@link #m_scratch}, with nothing skipped.
+	 */
+	private void setBlock(final int block, final int length, final int count, final long firstTime, final long lastTime)
+	{
+		m_encodedSize += length - m_blockLengths[block];
+		m_blockCapacity += length - m_blocks[block].length;
+
+		m_blocks[block] = Arrays.copyOf(m_scratch, length);
+		m_blockLengths[block] = length;
+		m_blockCounts[block] = count;
+		m_blockSkips[block] = 0;
+		m_blockFirstTimes[block] = firstTime;
+		m_blockLastTimes[block] = lastTime;
+
+		m_decodedBlock = -1;
+		m_isEncoderCurrent = false;
+	}
+
+	private void insertBlock(final int block, final byte[] data, final int length, final int count, final long firstTime, final long lastTime)
+	{
+		if( m_blockCount == m_blocks.length )
+		{
+			final int capacity = m_blockCount * 2;
+
+			m_blocks = Arrays.copyOf(m_blocks, capacity);
+			m_blockLengths = Arrays.copyOf(m_blockLengths, capacity);
+			m_blockCounts = Arrays.copyOf(m_blockCounts, capacity);
+			m_blockSkips = Arrays.copyOf(m_blockSkips, capacity);
+			m_blockFirstTimes = Arrays.copyOf(m_blockFirstTimes, capacity);
+			m_blockLastTimes = Arrays.copyOf(m_blockLastTimes, capacity);
+			m_blockPositions = Arrays.copyOf(m_blockPositions, capacity);
+		}
+
+		final int toMove = m_blockCount - block;
+
+		if( toMove > 0 )
+		{
+			System.arraycopy(m_blocks, block, m_blocks, block + 1, toMove);
+			System.arraycopy(m_blockLengths, block, m_blockLengths, block + 1, toMove);
+			System.arraycopy(m_blockCounts, block, m_blockCounts, block + 1, toMove);
+			System.arraycopy(m_blockSkips, block, m_blockSkips, block + 1, toMove);
+			System.arraycopy(m_blockFirstTimes, block, m_blockFirstTimes, block + 1, toMove);
+			System.arraycopy(m_blockLastTimes, block, m_blockLastTimes, block + 1, toMove);
+		}
+
+		m_blocks[block] = data;
+		m_blockLengths[block] = length;
+		m_blockCounts[block] = count;
+		m_blockSkips[block] = 0;
+		m_blockFirstTimes[block] = firstTime;
+		m_blockLastTimes[block] = lastTime;
+		m_blockCount++;
+
+		m_encodedSize += length;
+		m_blockCapacity += data.length;
+
+		m_decodedBlock = -1;
+		m_isEncoderCurrent = false;
+	}
+
+	private void removeBlocks(final int block, final int count)
+	{
+		for( int i = block; i < block + count; i++ )
+		{
+			m_encodedSize -= m_blockLengths[i];
+			m_blockCapacity -= m_blocks[i].length;
+		}
+
+		final int toMove = m_blockCount - block - count;
+
+		System.arraycopy(m_blocks, block + count, m_blocks, block, toMove);
+		System.arraycopy(m_blockLengths, block + count, m_blockLengths, block, toMove);
+		System.arraycopy(m_blockCounts, block + count, m_blockCounts, block, toMove);
+		System.arraycopy(m_blockSkips, block + count, m_blockSkips, block, toMove);
+		System.arraycopy(m_blockFirstTimes, block + count, m_blockFirstTimes, block, toMove);
+		System.arraycopy(m_blockLastTimes, block + count, m_blockLastTimes, block, toMove);
+
+		m_blockCount -= count;
+
+		Arrays.fill(m_blocks, m_blockCount, m_blockCount + count, null);
+
+		m_decodedBlock = -1;
+		m_isEncoderCurrent = false;
+	}
+
+	/**
+	 * Removes the oldest entries beyond the given limit, returning how many were removed.
+	 */
+	@Override int trimToLimit(final long limit)
+	{
+		if( limit == Long.MAX_VALUE || m_count <= limit )  return 0;
+
+		final int overflow = (int) (m_count - Math.max(0, limit));
+
+		remove(0, overflow);
+
+		return overflow;
+	}
+
+	private void remove(final int index, final int count)
+	{
+		int block = findBlock(index);
+		int start = index - m_blockPositions[block];
+		int remaining = count;
+
+		while( remaining > 0 )
+		{
+			final int live = m_blockCounts[block] - m_blockSkips[block];
+			final int removed = Math.min(remaining, live - start);
+
+			remaining -= removed;
+
+			if( removed == live )
+			{
+				removeBlocks(block, 1);
+			}
+			else if( start == 0 )
+			{
+				//--- Removing from the front of a block, which is what trimming to a limit does, doesn't need re-encoding.
+				m_blockSkips[block] += removed;
+
+				block++;
+			}
+			else
+			{
+				removeFromMiddle(block, m_blockSkips[block] + start, removed);
+
+				block++;
+			}
+
+			start = 0;
+		}
+
+		m_count -= count;
+
+		onChanged();
+	}
+
+	private void removeFromMiddle(final int block, final int from, final int count)
+	{
+		decode(block);
+
+		final int skip = m_blockSkips[block];
+		final int blockCount = m_blockCounts[block];
+		final int to = from + count;
+
+		final P_HistoricalDataCodec encoder = new P_HistoricalDataCodec();
+
+		encoder.reset(0);
+
+		int length = 0;
+
+		for( int i = skip; i < blockCount; i++ )
+		{
+			if( i >= from && i < to )  continue;
+
+			length = encodeScratch(encoder, length, i);
+		}
+
+		final long firstTime = m_decodedTimes[skip];
+		final long lastTime = to == blockCount ? m_decodedTimes[from - 1] : m_decodedTimes[blockCount - 1];
+
+		setBlock(block, length, blockCount - skip - count, firstTime, lastTime);
+	}
+
+	private void onChanged()
+	{
+		m_arePositionsDirty = true;
+		m_indexCache = null;
+	}
+
+	@Override PA_HistoricalDataList newLoadTarget()
+	{
+		return new Backend_HistoricalDataList_Compressed();
+	}
+
+	@Override void merge(final PA_HistoricalDataList loaded_base)
+	{
+		final Backend_HistoricalDataList_Compressed loaded = (Backend_HistoricalDataList_Compressed) loaded_base;
+
+		synchronized (this)
+		{
+			final int older = prependBlocks(loaded);
+
+			for( int i = older; i < loaded.m_count; i++ )
+			{
+				final int decoded = loaded.seek(i);
+				final long time = loaded.m_decodedTimes[decoded];
+				final int offset = loaded.m_decodedOffsets[decoded];
+				final byte[] blob = Arrays.copyOfRange(loaded.m_decodedArena, offset, offset + loaded.m_decodedLengths[decoded]);
+
+				//--- Anything written through to disk after the load started may already be in memory.
+				if( indexOf(time, blob) != -1 )  continue;
+
+				insert(time, blob);
+			}
+		}
+	}
+
+	/**
+	 * Chunks of an incremental load come newest first, so most of each one is older than anything here. Whole blocks of the given
+	 * list that are older go in front as they are, without re-encoding. Returns how many entries that covered.
+	 */
+	private int prependBlocks(final Backend_HistoricalDataList_Compressed loaded)
+	{
+		if( m_count == 0 )  return 0;
+
+		final long firstTime = m_decodedTimes[seek(0)];
+
+		int block = 0;
+		int count = 0;
+
+		while( block < loaded.m_blockCount && loaded.m_blockSkips[block] == 0 && loaded.m_blockLastTimes[block] < firstTime )
+		{
+			insertBlock(block, loaded.m_blocks[block], loaded.m_blockLengths[block], loaded.m_blockCounts[block], loaded.m_blockFirstTimes[block], loaded.m_blockLastTimes[block]);
+
+			count += loaded.m_blockCounts[block];
+			block++;
+		}
+
+		if( count > 0 )
+		{
+			m_count += count;
+
+			onChanged();
+		}
+
+		return count;
+	}
+
+	/**
+	 * Index of an entry with the given time and blob, or -1 if there isn't one.
+	 */
+	private int indexOf(final long time, final byte[] blob)
+	{
+		for( int i = lowerBound(time); i < m_count; i++ )
+		{
+			final int decoded = seek(i);
+
+			if( m_decodedTimes[decoded] != time )  break;
+
+			final int offset = m_decodedOffsets[decoded];
+
+			if( Arrays.equals(blob, Arrays.copyOfRange(m_decodedArena, offset, offset + m_decodedLengths[decoded])) )  return i;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Decodes from the blocks as they were when it was created, without locking. Blocks are only ever appended to past their length or
+	 * replaced outright, never changed in place, so holding on to them and their lengths and counts is enough of a snapshot.
+	 * Removing goes through the live list, finding the entry by its time and blob since it may have moved or been trimmed in the meantime.
+	 */
+	private class RangeIterator implements Iterator<HistoricalData>
+	{
+		private final byte[][] m_blocks;
+		private final int[] m_blockLengths;
+		private final int[] m_blockCounts;
+		private final int[] m_blockSkips;
+
+		private final P_HistoricalDataCodec m_decoder = new P_HistoricalDataCodec();
+		private ByteBuffer m_buffer;
+		private int m_block;
+		private int m_entry;
+		private int m_position;
+
+		private int m_remaining;
+		private HistoricalData m_last = null;
+
+		private RangeIterator(final byte[][] blocks, final int[] blockLengths, final int[] blockCounts, final int[] blockSkips, final int firstLiveEntry, final int count)
+		{
+			m_blocks = blocks;
+			m_blockLengths = blockLengths;
+			m_blockCounts = blockCounts;
+			m_blockSkips = blockSkips;
+			m_remaining = count;
+
+			if( count == 0 )  return;
+
+			startBlock(0);
+
+			for( int i = 0; i < firstLiveEntry; i++ )
+			{
+				decodeNext();
+			}
+		}
+
+		private void startBlock(final int block)
+		{
+			m_block = block;
+			m_entry = 0;
+			m_position = 0;
+			m_buffer = ByteBuffer.wrap(m_blocks[block]);
+
+			m_decoder.reset(0);
+
+			//--- Entries are delta encoded, so the way past deleted ones is through them.
+			for( int i = 0; i < m_blockSkips[block]; i++ )
+			{
+				decodeNext();
+			}
+		}
+
+		private void decodeNext()
+		{
+			m_position = m_decoder.decode(m_buffer, m_position, m_blockLengths[m_block]);
+			m_entry++;
+		}
+
+		@Override public boolean hasNext()
+		{
+			return m_remaining > 0;
+		}
+
+		@Override public HistoricalData next()
+		{
+			if( m_remaining <= 0 )  throw new NoSuchElementException();
+
+			while( m_entry == m_blockCounts[m_block] )
+			{
+				startBlock(m_block + 1);
+			}
+
+			decodeNext();
+
+			m_remaining--;
+			m_last = new HistoricalData(Arrays.copyOf(m_decoder.getBlob(), m_decoder.getBlobLength()), m_decoder.getTime());
+
+			return m_last;
+		}
+
+		@Override public void remove()
+		{
+			if( m_last == null )  throw new IllegalStateException();
+
+			final HistoricalData last = m_last;
+
+			m_last = null;
+
+			synchronized (Backend_HistoricalDataList_Compressed.this)
+			{
+				final int index = indexOf(last.getEpochTime_millis(), last.getBlob());
+
+				if( index != -1 )
+				{
+					Backend_HistoricalDataList_Compressed.this.remove(index, 1);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,552 @@
+package com.idevicesinc.sweetblue.backend.historical;
+
+import com.idevicesinc.sweetblue.BleDeviceConfig.HistoricalDataLogFilter.PersistenceLevel;
+import com.idevicesinc.sweetblue.utils.EpochTimeRange;
+import com.idevicesinc.sweetblue.utils.HistoricalData;
+import com.idevicesinc.sweetblue.utils.HistoricalDataCursor;
+import com.idevicesinc.sweetblue.utils.UpdateLoop;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+
+/**
+ * Unlimited in-memory implementation of {@link Backend_HistoricalDataList}. Instead of one {@link HistoricalData} object per entry,
+ * timestamps are kept sorted in a <code>long[]</code> and blobs are packed back to back in a single <code>byte[]</code> "arena"
+ * addressed by parallel offset/length arrays, so a list of tens of thousands of entries is a handful of objects. Range lookups
+ * are binary searches, and trimming the oldest entries to honor a log limit just moves a start index.
+ * <br><br>
+ * Entries added with {@link PersistenceLevel#DISK} or {@link PersistenceLevel#BOTH} are also written through to the
+ * {@link Backend_HistoricalDatabase} on the {@link UpdateLoop} given to {@link #init(Backend_HistoricalDatabase, UpdateLoop, String, UUID, String, boolean)}.
+ * <br><br>
+ * Iterators returned by {@link #getIterator(EpochTimeRange)} read from a snapshot of the list taken when they're created, without locking,
+ * so another thread can walk through a long log while new data keeps coming in. Appends and trimming the oldest entries only ever write
+ * past the end of what any snapshot can see, so they're free; anything that would overwrite entries in place first copies the arrays
+ * if a snapshot has been taken since the last copy.
+ * <br><br>
+ * Not the default, opt in with <code>Backend_Modules.HISTORICAL_DATA_LIST = Backend_HistoricalDataList_InMemory.class;</code>
+ * before creating your {@link com.idevicesinc.sweetblue.BleManager}.
+ */
+public class Backend_HistoricalDataList_InMemory extends PA_HistoricalDataList
+{
+	private static final int INITIAL_ENTRY_CAPACITY = 16;
+	private static final int INITIAL_ARENA_CAPACITY = 256;
+
+	//--- Entry i lives at physical index m_start + i in each of the four arrays below.
+	private long[] m_times = new long[INITIAL_ENTRY_CAPACITY];
+	private int[] m_offsets = new int[INITIAL_ENTRY_CAPACITY];
+	private int[] m_lengths = new int[INITIAL_ENTRY_CAPACITY];
+	private int m_start = 0;
+	private int m_count = 0;
+
+	private byte[] m_arena = new byte[INITIAL_ARENA_CAPACITY];
+	private int m_arenaEnd = 0;
+	private int m_liveBytes = 0;
+
+	//--- Whether an iterator may still be reading the current arrays, see detach().
+	private boolean m_shared = false;
+
+	//--- Result of the last range lookup, cleared on any change to the list.
+	private P_HistoricalDataIndexCache m_indexCache = null;
+
+	public Backend_HistoricalDataList_InMemory()
+	{
+	}
+
+	@Override public synchronized int getCount(final EpochTimeRange range)
+	{
+		return getIndexCache(range).getCount();
+	}
+
+	@Override public synchronized HistoricalData get(final EpochTimeRange range, final int offset)
+	{
+		final P_HistoricalDataIndexCache indexCache = getIndexCache(range);
+
+		if( offset < 0 || !indexCache.isInBounds(offset) )  return HistoricalData.NULL;
+
+		return newHistoricalData(indexCache.m_from_index + offset);
+	}
+
+	@Override public synchronized Iterator<HistoricalData> getIterator(final EpochTimeRange range)
+	{
+		final P_HistoricalDataIndexCache indexCache = getIndexCache(range);
+		final int count = indexCache.getCount();
+
+		if( count == 0 )  return new RangeIterator(null, null, null, null, 0, 0);
+
+		m_shared = true;
+
+		return new RangeIterator(m_times, m_offsets, m_lengths, m_arena, m_start + indexCache.m_from_index, count);
+	}
+
+	@Override public synchronized void delete_fromMemoryOnly(final EpochTimeRange range, final long count)
+	{
+		if( count <= 0 )  return;
+
+		final P_HistoricalDataIndexCache indexCache = getIndexCache(range);
+
+		final int toDelete = (int) Math.min(count, indexCache.getCount());
+
+		if( toDelete > 0 )
+		{
+			remove(indexCache.m_from_index, toDelete);
+		}
+	}
+
+	@Override public synchronized HistoricalDataCursor getCursor(final EpochTimeRange range)
+	{
+		//--- Nothing's been loaded or added yet so everything is on disk, and reading it from there avoids copying a possibly huge log into memory.
+		if( m_count == 0 && m_loadState == LOAD_STATE__NOT_LOADED && m_database != null )
+		{
+			return m_database.getCursor(m_macAddress, m_uuid, range);
+		}
+
+		final P_HistoricalDataIndexCache indexCache = getIndexCache(range);
+		final int count = indexCache.getCount();
+		final int from = m_start + indexCache.m_from_index;
+
+		final long[] times = Arrays.copyOfRange(m_times, from, from + count);
+		final int[] offsets = new int[count];
+		final int[] lengths = Arrays.copyOfRange(m_lengths, from, from + count);
+
+		int arenaSize = 0;
+
+		for( int i = 0; i < count; i++ )
+		{
+			arenaSize += lengths[i];
+		}
+
+		final byte[] arena = new byte[arenaSize];
+
+		for( int i = 0, offset = 0; i < count; i++ )
+		{
+			System.arraycopy(m_arena, m_offsets[from + i], arena, offset, lengths[i]);
+			offsets[i] = offset;
+			offset += lengths[i];
+		}
+
+		return new P_HistoricalDataCursor_Arrays(times, arena, offsets, lengths, count);
+	}
+
+	@Override public synchronized EpochTimeRange getRange()
+	{
+		if( m_count == 0 )  return EpochTimeRange.NULL;
+
+		return new EpochTimeRange(m_times[m_start], m_times[m_start + m_count - 1]);
+	}
+
+	@Override public synchronized long getMemoryUsage()
+	{
+		return (long) m_times.length * 8 + (long) m_offsets.length * 4 + (long) m_lengths.length * 4 + m_arena.length;
+	}
+
+	private HistoricalData newHistoricalData(final int index)
+	{
+		final int physical = m_start + index;
+		final int offset = m_offsets[physical];
+
+		return new HistoricalData(Arrays.copyOfRange(m_arena, offset, offset + m_lengths[physical]), m_times[physical]);
+	}
+
+	private P_HistoricalDataIndexCache getIndexCache(final EpochTimeRange range_nullable)
+	{
+		final EpochTimeRange range = EpochTimeRange.denull(range_nullable);
+
+		if( m_indexCache != null && m_indexCache.equals(range) )  return m_indexCache;
+
+		final long from = range.from().toMilliseconds();
+		final long to = range.to().toMilliseconds();
+
+		//--- An empty range ends up with to_index < from_index, which P_HistoricalDataIndexCache treats as invalid, i.e. a count of zero.
+		final int from_index = lowerBound(from);
+		final int to_index = upperBound(to) - 1;
+
+		m_indexCache = new P_HistoricalDataIndexCache(from, to, from_index, to_index);
+
+		return m_indexCache;
+	}
+
+	/**
+	 * Index of the first entry with a time &gt;= the given time.
+	 */
+	private int lowerBound(final long time)
+	{
+		int low = 0;
+		int high = m_count;
+
+		while( low < high )
+		{
+			final int mid = (low + high) >>> 1;
+
+			if( m_times[m_start + mid] < time )
+			{
+				low = mid + 1;
+			}
+			else
+			{
+				high = mid;
+			}
+		}
+
+		return low;
+	}
+
+	/**
+	 * Index of the first entry with a time &gt; the given time.
+	 */
+	private int upperBound(final long time)
+	{
+		int low = 0;
+		int high = m_count;
+
+		while( low < high )
+		{
+			final int mid = (low + high) >>> 1;
+
+			if( m_times[m_start + mid] <= time )
+			{
+				low = mid + 1;
+			}
+			else
+			{
+				high = mid;
+			}
+		}
+
+		return low;
+	}
+
+	@Override void insert(final long time, final byte[] blob_nullable)
+	{
+		final int length = blob_nullable != null ? blob_nullable.length : 0;
+
+		ensureEntryCapacity(m_count + 1);
+		ensureArenaCapacity(length);
+
+		//--- Data almost always arrives in order, so only search if it didn't.
+		final int index = m_count == 0 || m_times[m_start + m_count - 1] <= time ? m_count : upperBound(time);
+		final int physical = m_start + index;
+
+		if( index < m_count )
+		{
+			detach();
+
+			final int toMove = m_count - index;
+
+			System.arraycopy(m_times, physical, m_times, physical + 1, toMove);
+			System.arraycopy(m_offsets, physical, m_offsets, physical + 1, toMove);
+			System.arraycopy(m_lengths, physical, m_lengths, physical + 1, toMove);
+		}
+
+		if( length > 0 )
+		{
+			System.arraycopy(blob_nullable, 0, m_arena, m_arenaEnd, length);
+		}
+
+		m_times[physical] = time;
+		m_offsets[physical] = m_arenaEnd;
+		m_lengths[physical] = length;
+
+		m_arenaEnd += length;
+		m_liveBytes += length;
+		m_count++;
+
+		m_indexCache = null;
+	}
+
+	/**
+	 * Removes the oldest entries beyond the given limit, returning how many were removed.
+	 */
+	@Override int trimToLimit(final long limit)
+	{
+		if( limit == Long.MAX_VALUE || m_count <= limit )  return 0;
+
+		final int overflow = (int) (m_count - Math.max(0, limit));
+
+		remove(0, overflow);
+
+		return overflow;
+	}
+
+	private void remove(final int index, final int count)
+	{
+		//--- Removing from the front just moves the start index, but anything else shifts entries around in place.
+		if( index != 0 || count == m_count )
+		{
+			detach();
+		}
+
+		for( int i = m_start + index; i < m_start + index + count; i++ )
+		{
+			m_liveBytes -= m_lengths[i];
+		}
+
+		if( index == 0 )
+		{
+			m_start += count;
+		}
+		else
+		{
+			final int physical = m_start + index;
+			final int toMove = m_count - index - count;
+
+			System.arraycopy(m_times, physical + count, m_times, physical, toMove);
+			System.arraycopy(m_offsets, physical + count, m_offsets, physical, toMove);
+			System.arraycopy(m_lengths, physical + count, m_lengths, physical, toMove);
+		}
+
+		m_count -= count;
+
+		if( m_count == 0 )
+		{
+			m_start = 0;
+			m_arenaEnd = 0;
+			m_liveBytes = 0;
+		}
+
+		m_indexCache = null;
+	}
+
+	private void ensureEntryCapacity(final int count)
+	{
+		if( m_start + count <= m_times.length )  return;
+
+		//--- If trimming freed up at least half the arrays just slide everything back to the front, otherwise grow.
+		final int capacity = count <= m_times.length / 2 ? m_times.length : Math.max(count, m_times.length * 2);
+
+		if( capacity == m_times.length )
+		{
+			detach();
+		}
+
+		final long[] times = capacity == m_times.length ? m_times : new long[capacity];
+		final int[] offsets = capacity == m_offsets.length ? m_offsets : new int[capacity];
+		final int[] lengths = capacity == m_lengths.length ? m_lengths : new int[capacity];
+
+		System.arraycopy(m_times, m_start, times, 0, m_count);
+		System.arraycopy(m_offsets, m_start, offsets, 0, m_count);
+		System.arraycopy(m_lengths, m_start, lengths, 0, m_count);
+
+		m_times = times;
+		m_offsets = offsets;
+		m_lengths = lengths;
+		m_start = 0;
+	}
+
+	private void ensureArenaCapacity(final int length)
+	{
+		if( m_arenaEnd + length <= m_arena.length )  return;
+
+		final int needed = m_liveBytes + length;
+
+		//--- Same idea as ensureEntryCapacity(), compact away bytes from removed entries if that's enough, otherwise grow.
+		final byte[] arena = needed <= m_arena.length / 2 ? new byte[m_arena.length] : new byte[Math.max(needed, m_arena.length * 2)];
+
+		//--- The arena's always new, but the offsets are rewritten so they need to be too if something's still reading the old ones.
+		final int[] offsets = m_shared ? new int[m_offsets.length] : m_offsets;
+
+		int offset = 0;
+
+		for( int i = m_start; i < m_start + m_count; i++ )
+		{
+			System.arraycopy(m_arena, m_offsets[i], arena, offset, m_lengths[i]);
+			offsets[i] = offset;
+			offset += m_lengths[i];
+		}
+
+		m_offsets = offsets;
+		m_arena = arena;
+		m_arenaEnd = offset;
+	}
+
+	@Override PA_HistoricalDataList newLoadTarget()
+	{
+		return new Backend_HistoricalDataList_InMemory();
+	}
+
+	@Override void merge(final PA_HistoricalDataList loaded_base)
+	{
+		final Backend_HistoricalDataList_InMemory loaded = (Backend_HistoricalDataList_InMemory) loaded_base;
+
+		synchronized (this)
+		{
+			//--- Chunks of an incremental load come newest first, so most of each one is older than anything here and can go in front in one move.
+			final int older = m_count > 0 ? loaded.lowerBound(m_times[m_start]) : 0;
+
+			prepend(loaded, older);
+
+			for( int i = older; i < loaded.m_count; i++ )
+			{
+				final int physical = loaded.m_start + i;
+				final long time = loaded.m_times[physical];
+				final int offset = loaded.m_offsets[physical];
+				final int length = loaded.m_lengths[physical];
+
+				//--- Anything written through to disk after the load started may already be in memory.
+				if( indexOf(time, loaded.m_arena, offset, length) != -1 )  continue;
+
+				insert(time, Arrays.copyOfRange(loaded.m_arena, offset, offset + length));
+			}
+		}
+	}
+
+	/**
+	 * Puts the first <code>count</code> entries of the given list in front of all entries of this one, which they must all be older than.
+	 */
+	private void prepend(final Backend_HistoricalDataList_InMemory loaded, final int count)
+	{
+		if( count == 0 )  return;
+
+		int length = 0;
+
+		for( int i = 0; i < count; i++ )
+		{
+			length += loaded.m_lengths[loaded.m_start + i];
+		}
+
+		//--- Slots in front of the start may have been trimmed since a snapshot was taken, so they can't be reused underneath it.
+		detach();
+
+		ensureArenaCapacity(length);
+
+		if( m_start >= count )
+		{
+			m_start -= count;
+		}
+		else
+		{
+			ensureEntryCapacity(m_count + count);
+
+			System.arraycopy(m_times, m_start, m_times, m_start + count, m_count);
+			System.arraycopy(m_offsets, m_start, m_offsets, m_start + count, m_count);
+			System.arraycopy(m_lengths, m_start, m_lengths, m_start + count, m_count);
+		}
+
+		for( int i = 0; i < count; i++ )
+		{
+			final int physical = m_start + i;
+			final int loadedPhysical = loaded.m_start + i;
+
+			System.arraycopy(loaded.m_arena, loaded.m_offsets[loadedPhysical], m_arena, m_arenaEnd, loaded.m_lengths[loadedPhysical]);
+
+			m_times[physical] = loaded.m_times[loadedPhysical];
+			m_offsets[physical] = m_arenaEnd;
+			m_lengths[physical] = loaded.m_lengths[loadedPhysical];
+
+			m_arenaEnd += m_lengths[physical];
+		}
+
+		m_liveBytes += length;
+		m_count += count;
+
+		m_indexCache = null;
+	}
+
+	/**
+	 * Index of an entry with the given time and blob, or -1 if there isn't one.
+	 */
+	private int indexOf(final long time, final byte[] arena, final int offset, final int length)
+	{
+		for( int i = lowerBound(time); i < m_count && m_times[m_start + i] == time; i++ )
+		{
+			final int physical = m_start + i;
+
+			if( m_lengths[physical] != length )  continue;
+
+			boolean equal = true;
+
+			for( int j = 0; j < length; j++ )
+			{
+				if( m_arena[m_offsets[physical] + j] != arena[offset + j] )
+				{
+					equal = false;
+
+					break;
+				}
+			}
+
+			if( equal )  return i;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Copies the arrays if an iterator may still be reading them, so the current ones can be changed in place.
+	 */
+	private void detach()
+	{
+		if( !m_shared )  return;
+
+		m_times = m_times.clone();
+		m_offsets = m_offsets.clone();
+		m_lengths = m_lengths.clone();
+		m_arena = m_arena.clone();
+
+		m_shared = false;
+	}
+
+	/**
+	 * Reads from the arrays as they were when it was created. Removing goes through the live list, finding the entry by its time and blob
+	 * since it may have moved or been trimmed in the meantime.
+	 */
+	private class RangeIterator implements Iterator<HistoricalData>
+	{
+		private final long[] m_times;
+		private final int[] m_offsets;
+		private final int[] m_lengths;
+		private final byte[] m_arena;
+		private final int m_end;
+
+		private int m_physical;
+		private boolean m_canRemove = false;
+
+		private RangeIterator(final long[] times, final int[] offsets, final int[] lengths, final byte[] arena, final int physical, final int count)
+		{
+			m_times = times;
+			m_offsets = offsets;
+			m_lengths = lengths;
+			m_arena = arena;
+			m_physical = physical;
+			m_end = physical + count;
+		}
+
+		@Override public boolean hasNext()
+		{
+			return m_physical < m_end;
+		}
+
+		@Override public HistoricalData next()
+		{
+			if( m_physical >= m_end )  throw new NoSuchElementException();
+
+			final int offset = m_offsets[m_physical];
+			final HistoricalData next = new HistoricalData(Arrays.copyOfRange(m_arena, offset, offset + m_lengths[m_physical]), m_times[m_physical]);
+
+			m_physical++;
+			m_canRemove = true;
+
+			return next;
+		}
+
+		@Override public void remove()
+		{
+			if( !m_canRemove )  throw new IllegalStateException();
+
+			m_canRemove = false;
+
+			final int previous = m_physical - 1;
+
+			synchronized (Backend_HistoricalDataList_InMemory.this)
+			{
+				final int index = indexOf(m_times[previous], m_arena, m_offsets[previous], m_lengths[previous]);
+
+				if( index != -1 )
+				{
+					Backend_HistoricalDataList_InMemory.this.remove(index, 1);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,13 @@
+package com.idevicesinc.sweetblue.backend.historical;
+
+/**
+ * Optional extension of {@link Backend_HistoricalDataList} for lists that can measure themselves against
+ * {@link com.idevicesinc.sweetblue.BleManagerConfig#historicalDataMemoryBudget}. Lists that don't implement it are estimated from their count.
+ */
+public interface Backend_HistoricalDataList_MemoryUsage extends Backend_HistoricalDataList
+{
+	/**
+	 * Rough number of bytes this list takes up in memory. Called after every change while there's a budget, so should be cheap.
+	 */
+	long getMemoryUsage();
+}
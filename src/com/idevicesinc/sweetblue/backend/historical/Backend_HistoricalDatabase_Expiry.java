@@ -0,0 +1,18 @@
+package com.idevicesinc.sweetblue.backend.historical;
+
+import java.util.UUID;
+
+/**
+ * Optional extension of {@link Backend_HistoricalDatabase} for databases that have a cheaper way to enforce
+ * {@link com.idevicesinc.sweetblue.BleDeviceConfig#historicalDataRetention} than a range delete. Expired data in databases that don't
+ * implement it is deleted through {@link #delete_singleUuid_inRange(String, UUID, com.idevicesinc.sweetblue.utils.EpochTimeRange, long)}.
+ */
+public interface Backend_HistoricalDatabase_Expiry extends Backend_HistoricalDatabase
+{
+	/**
+	 * Deletes data older than the given epoch time. Called in the background periodically, so unlike
+	 * {@link #delete_singleUuid_inRange(String, UUID, com.idevicesinc.sweetblue.utils.EpochTimeRange, long)} implementations are free
+	 * to only delete what they can drop cheaply (for example whole files) and leave the rest for a later call.
+	 */
+	void expire_singleUuid(final String macAddress, final UUID uuid, final long olderThan);
+}
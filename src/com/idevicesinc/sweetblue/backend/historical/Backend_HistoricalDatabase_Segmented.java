@@ -0,0 +1,310 @@
+package com.idevicesinc.sweetblue.backend.historical;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.util.Log;
+
+import com.idevicesinc.sweetblue.BleManager;
+import com.idevicesinc.sweetblue.utils.EmptyCursor;
+import com.idevicesinc.sweetblue.utils.EpochTimeRange;
+import com.idevicesinc.sweetblue.utils.ForEach_Void;
+import com.idevicesinc.sweetblue.utils.HistoricalData;
+import com.idevicesinc.sweetblue.utils.HistoricalDataCursor;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.UUID;
+
+/**
+ * SQLite-free implementation of {@link Backend_HistoricalDatabase} that stores each MAC-address/UUID combination as a directory
+ * of append-only segment files. Records are a delta-encoded timestamp plus a length-prefixed blob, so high-rate logging is
+ * just sequential writes, and a sparse time index per segment keeps range reads from decoding more than they have to.
+ * {@link #getCursor(String, UUID, EpochTimeRange)} reads straight out of memory-mapped segment files, so scanning a large log doesn't grow the heap.
+ * Once a segment grows past {@link #getMaxSegmentSize()} a new one is started, and once there are more than
+ * {@link #getMaxSegmentCount()} segments the oldest is deleted.
+ * <br><br>
+ * Opt in with <code>Backend_Modules.HISTORICAL_DATABASE = Backend_HistoricalDatabase_Segmented.class;</code> before creating your
+ * {@link BleManager}. To change the size limits, subclass with a public constructor taking a {@link Context} that calls
+ * {@link #Backend_HistoricalDatabase_Segmented(File, int, int)}. {@link #query(String)} isn't supported since there's no SQL underneath.
+ */
+public class Backend_HistoricalDatabase_Segmented implements Backend_HistoricalDatabase_Expiry
+{
+	public static final String DEFAULT_DIRECTORY_NAME = "sweetblue_historical_data";
+	public static final int DEFAULT_MAX_SEGMENT_SIZE = 1024 * 1024;
+	public static final int DEFAULT_MAX_SEGMENT_COUNT = Integer.MAX_VALUE;
+
+	private static final HistoricalDataCursor EMPTY_CURSOR = new P_HistoricalDataCursor_Empty();
+
+	private final File m_directory;
+	private final int m_maxSegmentSize;
+	private final int m_maxSegmentCount;
+
+	private final HashMap<String, P_HistoricalDataStream> m_streams = new HashMap<String, P_HistoricalDataStream>();
+
+	//--- Streams touched between add_multiple_start() and add_multiple_end(), flushed all at once at the end.
+	private final HashMap<String, P_HistoricalDataStream> m_multipleAddStreams = new HashMap<String, P_HistoricalDataStream>();
+
+	public Backend_HistoricalDatabase_Segmented(final Context context)
+	{
+		this(new File(context.getFilesDir(), DEFAULT_DIRECTORY_NAME), DEFAULT_MAX_SEGMENT_SIZE, DEFAULT_MAX_SEGMENT_COUNT);
+	}
+
+	public Backend_HistoricalDatabase_Segmented(final File directory, final int maxSegmentSize, final int maxSegmentCount)
+	{
+		m_directory = directory;
+		m_maxSegmentSize = maxSegmentSize;
+		m_maxSegmentCount = maxSegmentCount;
+	}
+
+	public File getDirectory()
+	{
+		return m_directory;
+	}
+
+	public int getMaxSegmentSize()
+	{
+		return m_maxSegmentSize;
+	}
+
+	public int getMaxSegmentCount()
+	{
+		return m_maxSegmentCount;
+	}
+
+	@Override public void init(final BleManager manager)
+	{
+	}
+
+	@Override public void add_single(final String macAddress, final UUID uuid, final HistoricalData data, final long maxCountToDelete)
+	{
+		final P_HistoricalDataStream stream = getStream(macAddress, uuid);
+
+		try
+		{
+			stream.append(data.getEpochTime_millis(), data.getBlob());
+			stream.flush();
+
+			if( maxCountToDelete > 0 )
+			{
+				stream.trim(maxCountToDelete);
+			}
+		}
+		catch(IOException e)
+		{
+			onError(e);
+		}
+	}
+
+	@Override public void add_multiple_start()
+	{
+		synchronized (m_multipleAddStreams)
+		{
+			m_multipleAddStreams.clear();
+		}
+	}
+
+	@Override public void add_multiple_next(final String macAddress, final UUID uuid, final HistoricalData data)
+	{
+		final P_HistoricalDataStream stream = getStream(macAddress, uuid);
+
+		try
+		{
+			stream.append(data.getEpochTime_millis(), data.getBlob());
+		}
+		catch(IOException e)
+		{
+			onError(e);
+		}
+
+		synchronized (m_multipleAddStreams)
+		{
+			m_multipleAddStreams.put(getTableName(macAddress, uuid), stream);
+		}
+	}
+
+	@Override public void add_multiple_end()
+	{
+		synchronized (m_multipleAddStreams)
+		{
+			for( P_HistoricalDataStream stream : m_multipleAddStreams.values() )
+			{
+				try
+				{
+					stream.flush();
+				}
+				catch(IOException e)
+				{
+					onError(e);
+				}
+			}
+
+			m_multipleAddStreams.clear();
+		}
+	}
+
+	@Override public void delete_singleUuid_all(final String macAddress, final UUID uuid)
+	{
+		getStream(macAddress, uuid).deleteAll();
+	}
+
+	@Override public void delete_singleUuid_inRange(final String macAddress, final UUID uuid, final EpochTimeRange range, final long maxCountToDelete)
+	{
+		final EpochTimeRange range_nonNull = EpochTimeRange.denull(range);
+
+		try
+		{
+			getStream(macAddress, uuid).delete(range_nonNull.from().toMilliseconds(), range_nonNull.to().toMilliseconds(), maxCountToDelete);
+		}
+		catch(IOException e)
+		{
+			onError(e);
+		}
+	}
+
+	@Override public void delete_singleUuid_singleDate(final String macAddress, final UUID uuid, final long date)
+	{
+		try
+		{
+			getStream(macAddress, uuid).delete(date, date, Long.MAX_VALUE);
+		}
+		catch(IOException e)
+		{
+			onError(e);
+		}
+	}
+
+	@Override public void delete_multipleUuids(final String[] macAddresses, final UUID[] uuids, final EpochTimeRange range, final long count)
+	{
+		for( int i = 0; i < uuids.length; i++ )
+		{
+			if( uuids[i] == null )  continue;
+
+			delete_singleUuid_inRange(macAddresses[i], uuids[i], range, count);
+		}
+	}
+
+	/**
+	 * Only deletes whole segments, so expired records sharing a segment with newer ones stay until the rest of the segment expires too.
+	 * The smaller {@link #getMaxSegmentSize()}, the closer retention is followed.
+	 */
+	@Override public void expire_singleUuid(final String macAddress, final UUID uuid, final long olderThan)
+	{
+		try
+		{
+			getStream(macAddress, uuid).expire(olderThan);
+		}
+		catch(IOException e)
+		{
+			onError(e);
+		}
+	}
+
+	@Override public boolean doesDataExist(final String macAddress, final UUID uuid)
+	{
+		try
+		{
+			return !getStream(macAddress, uuid).isEmpty();
+		}
+		catch(IOException e)
+		{
+			onError(e);
+
+			return false;
+		}
+	}
+
+	@Override public void load(final String macAddress, final UUID uuid, final EpochTimeRange range, final ForEach_Void<HistoricalData> forEach)
+	{
+		forEach(macAddress, uuid, range, new P_HistoricalDataSegment.Visitor()
+		{
+			@Override public boolean onRecord(long time, byte[] buffer, int offset, int length)
+			{
+				forEach.next(new HistoricalData(Arrays.copyOfRange(buffer, offset, offset + length), time));
+
+				return true;
+			}
+		});
+	}
+
+	@Override public int getCount(final String macAddress, final UUID uuid, final EpochTimeRange range)
+	{
+		final EpochTimeRange range_nonNull = EpochTimeRange.denull(range);
+
+		try
+		{
+			return getStream(macAddress, uuid).getCount(range_nonNull.from().toMilliseconds(), range_nonNull.to().toMilliseconds());
+		}
+		catch(IOException e)
+		{
+			onError(e);
+
+			return 0;
+		}
+	}
+
+	@Override public HistoricalDataCursor getCursor(final String macAddress, final UUID uuid, final EpochTimeRange range)
+	{
+		final EpochTimeRange range_nonNull = EpochTimeRange.denull(range);
+
+		try
+		{
+			return getStream(macAddress, uuid).newCursor(range_nonNull.from().toMilliseconds(), range_nonNull.to().toMilliseconds());
+		}
+		catch(IOException e)
+		{
+			onError(e);
+
+			return EMPTY_CURSOR;
+		}
+	}
+
+	@Override public Cursor query(final String query)
+	{
+		return EmptyCursor.SINGLETON;
+	}
+
+	@Override public String getTableName(final String macAddress, final UUID uuid)
+	{
+		return macAddress.replace(":", "") + "_" + uuid;
+	}
+
+	private void forEach(final String macAddress, final UUID uuid, final EpochTimeRange range, final P_HistoricalDataSegment.Visitor visitor)
+	{
+		final EpochTimeRange range_nonNull = EpochTimeRange.denull(range);
+
+		try
+		{
+			getStream(macAddress, uuid).forEach(range_nonNull.from().toMilliseconds(), range_nonNull.to().toMilliseconds(), visitor);
+		}
+		catch(IOException e)
+		{
+			onError(e);
+		}
+	}
+
+	private P_HistoricalDataStream getStream(final String macAddress, final UUID uuid)
+	{
+		final String tableName = getTableName(macAddress, uuid);
+
+		synchronized (m_streams)
+		{
+			P_HistoricalDataStream stream = m_streams.get(tableName);
+
+			if( stream == null )
+			{
+				stream = new P_HistoricalDataStream(new File(m_directory, tableName), m_maxSegmentSize, m_maxSegmentCount);
+
+				m_streams.put(tableName, stream);
+			}
+
+			return stream;
+		}
+	}
+
+	private void onError(final IOException e)
+	{
+		Log.e("SweetBlue", "Historical data I/O failed: " + e.getMessage());
+	}
+}
@@ -0,0 +1,284 @@
+package com.idevicesinc.sweetblue.backend.historical;
+
+import com.idevicesinc.sweetblue.BleDeviceConfig.HistoricalDataLogFilter.PersistenceLevel;
+import com.idevicesinc.sweetblue.utils.EpochTimeRange;
+import com.idevicesinc.sweetblue.utils.ForEach_Breakable;
+import com.idevicesinc.sweetblue.utils.ForEach_Returning;
+import com.idevicesinc.sweetblue.utils.ForEach_Void;
+import com.idevicesinc.sweetblue.utils.HistoricalData;
+import com.idevicesinc.sweetblue.utils.HistoricalDataCursor;
+import com.idevicesinc.sweetblue.utils.UpdateLoop;
+
+import java.util.Iterator;
+import java.util.UUID;
+
+/**
+ * What {@link Backend_HistoricalDataList_InMemory} and {@link Backend_HistoricalDataList_Compressed} have in common, which is everything
+ * but how entries are actually stored: adding through {@link #insert(long, byte[])}, writing through to and loading from the
+ * {@link Backend_HistoricalDatabase} on the {@link UpdateLoop}, and walking an iterator for {@link #doForEach(EpochTimeRange, Object)}.
+ */
+abstract class PA_HistoricalDataList implements Backend_HistoricalDataList_ChunkedLoad, Backend_HistoricalDataList_MemoryUsage
+{
+	Backend_HistoricalDatabase m_database;
+	UpdateLoop m_updateLoop;
+	String m_macAddress;
+	UUID m_uuid;
+
+	volatile int m_loadState = LOAD_STATE__NOT_LOADED;
+
+	/**
+	 * Adds an entry in time order. Called with the lock on this held.
+	 */
+	abstract void insert(final long time, final byte[] blob_nullable);
+
+	/**
+	 * Removes the oldest entries beyond the given limit, returning how many were removed. Called with the lock on this held.
+	 */
+	abstract int trimToLimit(final long limit);
+
+	/**
+	 * Returns a new empty list of the same kind, to load into off to the side before {@link #merge(PA_HistoricalDataList)}.
+	 */
+	abstract PA_HistoricalDataList newLoadTarget();
+
+	/**
+	 * Merges in a list returned by {@link #newLoadTarget()}, skipping anything already here.
+	 */
+	abstract void merge(final PA_HistoricalDataList loaded);
+
+	@Override public void init(final Backend_HistoricalDatabase database, final UpdateLoop updateLoop, final String macAddress, final UUID uuid, final String uuidName, final boolean hasExistingTable)
+	{
+		m_database = database;
+		m_updateLoop = updateLoop;
+		m_macAddress = macAddress;
+		m_uuid = uuid;
+
+		//--- Nothing on disk means there's nothing to load.
+		m_loadState = hasExistingTable ? LOAD_STATE__NOT_LOADED : LOAD_STATE__LOADED;
+	}
+
+	@Override public void add_single(final HistoricalData historicalData, final PersistenceLevel logChoice, final long limit)
+	{
+		if( logChoice == PersistenceLevel.NONE )  return;
+
+		int trimmedCount = 0;
+
+		if( logChoice.includesMemory() )
+		{
+			synchronized (this)
+			{
+				insert(historicalData.getEpochTime_millis(), historicalData.getBlob());
+
+				trimmedCount = trimToLimit(limit);
+			}
+		}
+
+		if( logChoice.includesDisk() )
+		{
+			writeToDatabase(historicalData, logChoice == PersistenceLevel.BOTH, trimmedCount, limit);
+		}
+	}
+
+	@Override public void add_multiple(final Iterator<HistoricalData> historicalData, final PersistenceLevel logChoice, final long limit)
+	{
+		while( historicalData.hasNext() )
+		{
+			add_single(historicalData.next(), logChoice, limit);
+		}
+	}
+
+	@Override public void add_multiple(final ForEach_Returning<HistoricalData> historicalData, final PersistenceLevel logChoice, final long limit)
+	{
+		int i = 0;
+
+		while( true )
+		{
+			final HistoricalData next = historicalData.next(i);
+
+			if( next == null )  break;
+
+			add_single(next, logChoice, limit);
+
+			i++;
+		}
+	}
+
+	@Override public boolean doForEach(final EpochTimeRange range, final Object forEach)
+	{
+		if( !(forEach instanceof ForEach_Void) && !(forEach instanceof ForEach_Breakable) )  return false;
+
+		final Iterator<HistoricalData> iterator = getIterator(range);
+
+		if( !iterator.hasNext() )  return false;
+
+		while( iterator.hasNext() )
+		{
+			final HistoricalData next = iterator.next();
+
+			if( forEach instanceof ForEach_Void )
+			{
+				((ForEach_Void)forEach).next(next);
+			}
+			else
+			{
+				final ForEach_Breakable.Please please = ((ForEach_Breakable)forEach).next(next);
+
+				if( please != null && please.shouldBreak() )  break;
+			}
+		}
+
+		return true;
+	}
+
+	@Override public void delete_fromMemoryOnlyForNowButDatabaseSoon(final EpochTimeRange range, final long count)
+	{
+		delete_fromMemoryOnly(range, count);
+	}
+
+	@Override public void delete_fromMemoryAndDatabase(final EpochTimeRange range, final long count)
+	{
+		delete_fromMemoryOnly(range, count);
+
+		if( m_database == null || count <= 0 )  return;
+
+		post(new Runnable()
+		{
+			@Override public void run()
+			{
+				m_database.delete_singleUuid_inRange(m_macAddress, m_uuid, range, count);
+			}
+		});
+	}
+
+	@Override public String getMacAddress()
+	{
+		return m_macAddress;
+	}
+
+	@Override public void load(final AsyncLoadCallback callback_nullable)
+	{
+		load(0, callback_nullable);
+	}
+
+	@Override public void load(final int chunkSize, final AsyncLoadCallback callback_nullable)
+	{
+		if( m_loadState != LOAD_STATE__NOT_LOADED || m_database == null )
+		{
+			if( m_database == null )
+			{
+				m_loadState = LOAD_STATE__LOADED;
+			}
+
+			if( callback_nullable != null )
+			{
+				callback_nullable.onDone();
+			}
+
+			return;
+		}
+
+		m_loadState = LOAD_STATE__LOADING;
+
+		if( chunkSize > 0 )
+		{
+			post(new P_HistoricalDataChunkedLoad(m_database, m_macAddress, m_uuid, chunkSize, callback_nullable)
+			{
+				@Override void merge(final HistoricalDataCursor cursor, final int from, final int to)
+				{
+					final PA_HistoricalDataList loaded = newLoadTarget();
+
+					for( int i = from; i < to; i++ )
+					{
+						if( !cursor.moveToPosition(i) )  break;
+
+						loaded.insert(cursor.getEpochTime(), cursor.getBlob());
+					}
+
+					PA_HistoricalDataList.this.merge(loaded);
+				}
+
+				@Override void post(final Runnable runnable)
+				{
+					PA_HistoricalDataList.this.post(runnable);
+				}
+
+				@Override void onLoaded()
+				{
+					m_loadState = LOAD_STATE__LOADED;
+				}
+			});
+
+			return;
+		}
+
+		post(new Runnable()
+		{
+			@Override public void run()
+			{
+				final PA_HistoricalDataList loaded = newLoadTarget();
+
+				m_database.load(m_macAddress, m_uuid, EpochTimeRange.FROM_MIN_TO_MAX, new ForEach_Void<HistoricalData>()
+				{
+					@Override public void next(final HistoricalData next)
+					{
+						loaded.insert(next.getEpochTime_millis(), next.getBlob());
+					}
+				});
+
+				merge(loaded);
+
+				m_loadState = LOAD_STATE__LOADED;
+
+				if( callback_nullable != null )
+				{
+					callback_nullable.onDone();
+				}
+			}
+		});
+	}
+
+	@Override public int getLoadState()
+	{
+		return m_loadState;
+	}
+
+	void post(final Runnable runnable)
+	{
+		if( m_updateLoop != null )
+		{
+			m_updateLoop.forcePost(runnable);
+		}
+		else
+		{
+			runnable.run();
+		}
+	}
+
+	/**
+	 * When also in memory, the database follows whatever was trimmed from memory. Otherwise it's trimmed to the limit on its own.
+	 */
+	private void writeToDatabase(final HistoricalData historicalData, final boolean inMemoryToo, final int trimmedCount, final long limit)
+	{
+		if( m_database == null )  return;
+
+		post(new Runnable()
+		{
+			@Override public void run()
+			{
+				//--- Counted here rather than up front so it's on the right thread and includes writes that were still queued ahead of this one.
+				final long maxCountToDelete = inMemoryToo ? trimmedCount : getDiskOverflow(limit);
+
+				m_database.add_single(m_macAddress, m_uuid, historicalData, maxCountToDelete);
+			}
+		});
+	}
+
+	private long getDiskOverflow(final long limit)
+	{
+		if( limit == Long.MAX_VALUE || m_database == null )  return 0;
+
+		final long overflow = m_database.getCount(m_macAddress, m_uuid, EpochTimeRange.FROM_MIN_TO_MAX) + 1 - limit;
+
+		return Math.max(0, overflow);
+	}
+}
@@ -0,0 +1,87 @@
+package com.idevicesinc.sweetblue.backend.historical;
+
+import com.idevicesinc.sweetblue.utils.EpochTimeRange;
+import com.idevicesinc.sweetblue.utils.HistoricalDataCursor;
+
+import java.util.UUID;
+
+/**
+ * Loads the persisted data for one characteristic in chunks, newest first, for {@link Backend_HistoricalDataList_ChunkedLoad#load(int, Backend_HistoricalDataList.AsyncLoadCallback)}.
+ * Each chunk is read by position from a single {@link HistoricalDataCursor}, handed to {@link #merge(HistoricalDataCursor, int, int)},
+ * and then the next chunk is posted again, so a long load doesn't hold up other work on the same thread.
+ */
+abstract class P_HistoricalDataChunkedLoad implements Runnable
+{
+	private final Backend_HistoricalDatabase m_database;
+	private final String m_macAddress;
+	private final UUID m_uuid;
+	private final int m_chunkSize;
+	private final Backend_HistoricalDataList.AsyncLoadCallback m_callback_nullable;
+
+	private HistoricalDataCursor m_cursor = null;
+	private int m_totalCount = 0;
+
+	//--- Positions [0, m_remaining) of the cursor haven't been merged yet.
+	private int m_remaining = 0;
+
+	P_HistoricalDataChunkedLoad(final Backend_HistoricalDatabase database, final String macAddress, final UUID uuid, final int chunkSize, final Backend_HistoricalDataList.AsyncLoadCallback callback_nullable)
+	{
+		m_database = database;
+		m_macAddress = macAddress;
+		m_uuid = uuid;
+		m_chunkSize = Math.max(1, chunkSize);
+		m_callback_nullable = callback_nullable;
+	}
+
+	/**
+	 * Merges the entries of the cursor from <code>from</code> (inclusive) to <code>to</code> (exclusive) into the list.
+	 */
+	abstract void merge(final HistoricalDataCursor cursor, final int from, final int to);
+
+	/**
+	 * Posts the next chunk.
+	 */
+	abstract void post(final Runnable runnable);
+
+	/**
+	 * Called once after the last chunk is merged, before {@link Backend_HistoricalDataList.AsyncLoadCallback#onDone()}.
+	 */
+	abstract void onLoaded();
+
+	@Override public void run()
+	{
+		if( m_cursor == null )
+		{
+			m_cursor = m_database.getCursor(m_macAddress, m_uuid, EpochTimeRange.FROM_MIN_TO_MAX);
+			m_totalCount = m_cursor.getCount();
+			m_remaining = m_totalCount;
+		}
+
+		final int from = Math.max(0, m_remaining - m_chunkSize);
+
+		merge(m_cursor, from, m_remaining);
+
+		m_remaining = from;
+
+		if( m_callback_nullable instanceof Backend_HistoricalDataList.AsyncLoadProgressCallback )
+		{
+			((Backend_HistoricalDataList.AsyncLoadProgressCallback) m_callback_nullable).onProgress(m_totalCount - m_remaining, m_totalCount);
+		}
+
+		if( m_remaining > 0 )
+		{
+			post(this);
+		}
+		else
+		{
+			m_cursor.close();
+
+			onLoaded();
+
+			if( m_callback_nullable != null )
+			{
+				m_callback_nullable.onDone();
+			}
+		}
+	}
+}
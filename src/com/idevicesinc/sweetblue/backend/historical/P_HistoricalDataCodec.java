@@ -0,0 +1,277 @@
+package com.idevicesinc.sweetblue.backend.historical;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Gorilla-style compression of consecutive historical data records, used for both {@link P_HistoricalDataSegment} files and the
+ * in-memory blocks of {@link Backend_HistoricalDataList_Compressed}. Each record is:
+ * <br><br>
+ * [zigzag varint delta-of-delta of the timestamp][varint header][blob bytes, depending on the header]
+ * <br><br>
+ * where the low two bits of the header say whether the blob is the same as the previous one (nothing follows), differs from it in
+ * a run of bytes (the rest of the header is the index of the first differing byte, followed by a varint count and the XOR of the run),
+ * or is stored as is (the rest of the header is the length, followed by the blob). Sampling at a steady rate makes the first byte zero,
+ * and a slowly changing value usually only differs in its low byte, so a typical sample is two to four bytes.
+ * <br><br>
+ * Unlike the original bit-packed scheme everything is byte aligned, which keeps decoding simple enough to run straight off a
+ * memory-mapped file. State only carries over between records, so {@link #reset(long)} at the start of each block lets any
+ * block be decoded on its own. Decoding leaves an instance in the same state encoding the same records would have, so an encoder can
+ * be caught up on an existing block by decoding it, then carry on appending to it.
+ */
+class P_HistoricalDataCodec
+{
+	private static final int MODE_SAME	= 0;
+	private static final int MODE_XOR	= 1;
+	private static final int MODE_RAW	= 2;
+
+	private long m_time = 0;
+	private long m_delta = 0;
+
+	private byte[] m_blob = new byte[16];
+	private int m_blobLength = 0;
+
+	private long m_varLong;
+
+	/**
+	 * Starts a new block, with delta decoding resuming from the given time.
+	 */
+	void reset(final long prevTime)
+	{
+		m_time = prevTime;
+		m_delta = 0;
+		m_blobLength = 0;
+	}
+
+	/**
+	 * Time of the last record encoded or decoded.
+	 */
+	long getTime()
+	{
+		return m_time;
+	}
+
+	/**
+	 * Blob of the last record encoded or decoded, valid up to {@link #getBlobLength()} until the next record.
+	 */
+	byte[] getBlob()
+	{
+		return m_blob;
+	}
+
+	int getBlobLength()
+	{
+		return m_blobLength;
+	}
+
+	static int getMaxEncodedLength(final int blobLength)
+	{
+		return 10 + 5 + 5 + blobLength;
+	}
+
+	/**
+	 * Encodes the record into the buffer, which must have at least {@link #getMaxEncodedLength(int)} bytes free past the given position,
+	 * and returns the position right after it.
+	 */
+	int encode(final long time, final byte[] blob_nullable, final byte[] out, int position)
+	{
+		final int length = blob_nullable != null ? blob_nullable.length : 0;
+		final long delta = time - m_time;
+
+		position = writeVarLong(out, position, zigzag(delta - m_delta));
+
+		int first = 0;
+
+		if( length == m_blobLength )
+		{
+			while( first < length && blob_nullable[first] == m_blob[first] )
+			{
+				first++;
+			}
+		}
+
+		if( length == m_blobLength && first == length )
+		{
+			position = writeVarLong(out, position, MODE_SAME);
+		}
+		else if( length == m_blobLength )
+		{
+			int last = length - 1;
+
+			while( blob_nullable[last] == m_blob[last] )
+			{
+				last--;
+			}
+
+			final int runLength = last - first + 1;
+
+			//--- A run of changed bytes only beats storing the whole thing if it's a good bit shorter.
+			if( runLength + 1 < length )
+			{
+				position = writeVarLong(out, position, MODE_XOR | ((long) first << 2));
+				position = writeVarLong(out, position, runLength);
+
+				for( int i = first; i <= last; i++ )
+				{
+					out[position++] = (byte) (blob_nullable[i] ^ m_blob[i]);
+				}
+			}
+			else
+			{
+				position = writeRaw(blob_nullable, length, out, position);
+			}
+		}
+		else
+		{
+			position = writeRaw(blob_nullable, length, out, position);
+		}
+
+		setBlob(blob_nullable, length);
+
+		m_time = time;
+		m_delta = delta;
+
+		return position;
+	}
+
+	/**
+	 * Decodes the record at the given position, returning the position right after it, or -1 without changing any state
+	 * if the record isn't complete before the limit (e.g. the tail of a file torn by a crash).
+	 */
+	int decode(final ByteBuffer in, int position, final int limit)
+	{
+		position = readVarLong(in, position, limit);
+
+		if( position < 0 )  return -1;
+
+		final long delta = m_delta + unzigzag(m_varLong);
+
+		position = readVarLong(in, position, limit);
+
+		if( position < 0 )  return -1;
+
+		final long header = m_varLong;
+		final int mode = (int) (header & 0x3);
+
+		//--- Nothing to do for MODE_SAME, the blob's already there.
+		if( mode == MODE_XOR )
+		{
+			final int first = (int) (header >>> 2);
+
+			position = readVarLong(in, position, limit);
+
+			if( position < 0 )  return -1;
+
+			final int runLength = (int) m_varLong;
+
+			if( first < 0 || runLength < 0 || first + runLength > m_blobLength || position + runLength > limit )  return -1;
+
+			for( int i = 0; i < runLength; i++ )
+			{
+				m_blob[first + i] ^= in.get(position++);
+			}
+		}
+		else if( mode == MODE_RAW )
+		{
+			final int length = (int) (header >>> 2);
+
+			if( length < 0 || position + length > limit )  return -1;
+
+			ensureBlobCapacity(length);
+
+			for( int i = 0; i < length; i++ )
+			{
+				m_blob[i] = in.get(position++);
+			}
+
+			m_blobLength = length;
+		}
+		else if( mode != MODE_SAME )
+		{
+			return -1;
+		}
+
+		m_time += delta;
+		m_delta = delta;
+
+		return position;
+	}
+
+	private int writeRaw(final byte[] blob_nullable, final int length, final byte[] out, int position)
+	{
+		position = writeVarLong(out, position, MODE_RAW | ((long) length << 2));
+
+		if( length > 0 )
+		{
+			System.arraycopy(blob_nullable, 0, out, position, length);
+		}
+
+		return position + length;
+	}
+
+	private void setBlob(final byte[] blob_nullable, final int length)
+	{
+		ensureBlobCapacity(length);
+
+		if( length > 0 )
+		{
+			System.arraycopy(blob_nullable, 0, m_blob, 0, length);
+		}
+
+		m_blobLength = length;
+	}
+
+	private void ensureBlobCapacity(final int length)
+	{
+		if( m_blob.length >= length )  return;
+
+		m_blob = Arrays.copyOf(m_blob, Math.max(length, m_blob.length * 2));
+	}
+
+	private int readVarLong(final ByteBuffer in, int position, final int limit)
+	{
+		long value = 0;
+		int shift = 0;
+
+		while( position < limit && shift < 64 )
+		{
+			final byte b = in.get(position++);
+
+			value |= (long) (b & 0x7F) << shift;
+
+			if( (b & 0x80) == 0 )
+			{
+				m_varLong = value;
+
+				return position;
+			}
+
+			shift += 7;
+		}
+
+		return -1;
+	}
+
+	static long zigzag(final long value)
+	{
+		return (value << 1) ^ (value >> 63);
+	}
+
+	static long unzigzag(final long value)
+	{
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	static int writeVarLong(final byte[] buffer, int position, long value)
+	{
+		while( (value & ~0x7FL) != 0 )
+		{
+			buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+
+		buffer[position++] = (byte) value;
+
+		return position;
+	}
+}
@@ -0,0 +1,141 @@
+package com.idevicesinc.sweetblue.backend.historical;
+
+import com.idevicesinc.sweetblue.utils.HistoricalData;
+import com.idevicesinc.sweetblue.utils.HistoricalDataCursor;
+
+import java.util.Arrays;
+
+/**
+ * Cursor over a copy of a contiguous run of {@link Backend_HistoricalDataList_InMemory} or {@link Backend_HistoricalDataList_Compressed} entries, so it stays valid
+ * no matter what happens to the list afterwards.
+ */
+class P_HistoricalDataCursor_Arrays implements HistoricalDataCursor
+{
+	private final long[] m_times;
+	private final byte[] m_arena;
+	private final int[] m_offsets;
+	private final int[] m_lengths;
+	private final int m_count;
+
+	private int m_position = -1;
+
+	private boolean m_isClosed = false;
+
+	P_HistoricalDataCursor_Arrays(final long[] times, final byte[] arena, final int[] offsets, final int[] lengths, final int count)
+	{
+		m_times = times;
+		m_arena = arena;
+		m_offsets = offsets;
+		m_lengths = lengths;
+		m_count = count;
+	}
+
+	@Override public int getCount()
+	{
+		return m_count;
+	}
+
+	private boolean checkPosition(final int position)
+	{
+		return position >= 0 && position < m_count;
+	}
+
+	@Override public int getPosition()
+	{
+		return m_position;
+	}
+
+	@Override public boolean move(int offset)
+	{
+		return moveToPosition(getPosition() + offset);
+	}
+
+	@Override public boolean moveToPosition(int position)
+	{
+		//--- Same as android.database.Cursor, clamp to one before the first or one after the last.
+		m_position = Math.max(-1, Math.min(m_count, position));
+
+		return checkPosition(m_position);
+	}
+
+	@Override public boolean moveToFirst()
+	{
+		return moveToPosition(0);
+	}
+
+	@Override public boolean moveToLast()
+	{
+		return moveToPosition(m_count-1);
+	}
+
+	@Override public boolean moveToNext()
+	{
+		return moveToPosition(getPosition()+1);
+	}
+
+	@Override public boolean moveToPrevious()
+	{
+		return moveToPosition(getPosition()-1);
+	}
+
+	@Override public boolean isFirst()
+	{
+		return m_count > 0 && m_position == 0;
+	}
+
+	@Override public boolean isLast()
+	{
+		return m_count > 0 && m_position == m_count-1;
+	}
+
+	@Override public boolean isBeforeFirst()
+	{
+		return m_count == 0 || m_position == -1;
+	}
+
+	@Override public boolean isAfterLast()
+	{
+		return m_count == 0 || m_position == m_count;
+	}
+
+	@Override public void close()
+	{
+		m_isClosed = true;
+	}
+
+	@Override public boolean isClosed()
+	{
+		return m_isClosed;
+	}
+
+	@Override public long getEpochTime()
+	{
+		return checkPosition(m_position) ? m_times[m_position] : HistoricalData.NULL.getEpochTime_millis();
+	}
+
+	@Override public byte[] getBlob()
+	{
+		if( checkPosition(m_position) )
+		{
+			final int offset = m_offsets[m_position];
+
+			return Arrays.copyOfRange(m_arena, offset, offset + m_lengths[m_position]);
+		}
+		else
+		{
+			return HistoricalData.NULL.getBlob();
+		}
+	}
+
+	@Override public HistoricalData getHistoricalData()
+	{
+		if( checkPosition(m_position) )
+		{
+			return new HistoricalData(getBlob(), getEpochTime());
+		}
+		else
+		{
+			return HistoricalData.NULL;
+		}
+	}
+}
@@ -0,0 +1,326 @@
+package com.idevicesinc.sweetblue.backend.historical;
+
+import com.idevicesinc.sweetblue.utils.HistoricalData;
+import com.idevicesinc.sweetblue.utils.HistoricalDataCursor;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * {@link HistoricalDataCursor} over {@link P_HistoricalDataSegment} files mapped into memory with {@link FileChannel#map(FileChannel.MapMode, long, long)}.
+ * Nothing is decoded up front except blocks straddling the edges of the range (to count them). Records are decoded from the mapping
+ * on demand as the cursor moves (each block's compression state starts over, so seeking only goes back as far as
+ * the start of a block), so heap use is a few small arrays per index block no matter how big the files are.
+ * <br><br>
+ * The segments' state is captured at construction, so later appends, trims, or deletes don't affect an open cursor.
+ */
+class P_HistoricalDataCursor_Mapped implements HistoricalDataCursor
+{
+	private final long m_from;
+	private final long m_to;
+
+	private ByteBuffer[] m_maps;
+	private final int[] m_skips;
+
+	//--- One entry per index block that overlaps the range. m_blockFirstPositions[i] is the cursor position of block i's first match.
+	private int m_blockCount = 0;
+	private int[] m_blockSegments;
+	private int[] m_blockOffsets;
+	private int[] m_blockEnds;
+	private long[] m_blockPrevTimes;
+	private int[] m_blockFirstRecords;
+	private int[] m_blockFirstPositions;
+
+	private final int m_count;
+
+	private int m_position = -1;
+
+	//--- Decode state, always sitting right after the record at m_position if that's valid.
+	private int m_block = -1;
+	private int m_readOffset;
+	private int m_record;
+	private long m_time;
+	private int m_matchPosition;
+	private final P_HistoricalDataCodec m_decoder = new P_HistoricalDataCodec();
+
+	private boolean m_isClosed = false;
+
+	P_HistoricalDataCursor_Mapped(final List<P_HistoricalDataSegment> segments, final long from, final long to) throws IOException
+	{
+		m_from = from;
+		m_to = to;
+
+		m_maps = new ByteBuffer[segments.size()];
+		m_skips = new int[segments.size()];
+
+		int totalBlocks = 0;
+
+		for( int i = 0; i < segments.size(); i++ )
+		{
+			totalBlocks += segments.get(i).getBlockCount();
+		}
+
+		m_blockSegments = new int[totalBlocks];
+		m_blockOffsets = new int[totalBlocks];
+		m_blockEnds = new int[totalBlocks];
+		m_blockPrevTimes = new long[totalBlocks];
+		m_blockFirstRecords = new int[totalBlocks];
+		m_blockFirstPositions = new int[totalBlocks];
+
+		int count = 0;
+
+		for( int i = 0; i < segments.size(); i++ )
+		{
+			final P_HistoricalDataSegment segment = segments.get(i);
+
+			if( !segment.overlaps(from, to) )  continue;
+
+			m_maps[i] = map(segment);
+			m_skips[i] = segment.getSkip();
+
+			for( int block = segment.getSkip() / P_HistoricalDataSegment.INDEX_INTERVAL; block < segment.getBlockCount(); block++ )
+			{
+				if( !segment.blockOverlaps(block, from, to) )  continue;
+
+				final int index = m_blockCount;
+
+				m_blockSegments[index] = i;
+				m_blockOffsets[index] = (int) segment.getBlockOffset(block);
+				m_blockEnds[index] = (int) segment.getBlockEnd(block);
+				m_blockPrevTimes[index] = segment.getBlockPrevTime(block);
+				m_blockFirstRecords[index] = block * P_HistoricalDataSegment.INDEX_INTERVAL;
+				m_blockFirstPositions[index] = count;
+
+				final int containedCount = segment.getBlockCountIfContained(block, from, to);
+
+				count += containedCount >= 0 ? containedCount : countMatches(index);
+
+				m_blockCount++;
+			}
+		}
+
+		m_count = count;
+	}
+
+	private static ByteBuffer map(final P_HistoricalDataSegment segment) throws IOException
+	{
+		final RandomAccessFile file = new RandomAccessFile(segment.m_file, "r");
+
+		try
+		{
+			//--- The mapping stays valid after the channel is closed.
+			return file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, segment.getSize());
+		}
+		finally
+		{
+			file.close();
+		}
+	}
+
+	private int countMatches(final int block)
+	{
+		startBlock(block);
+
+		int count = 0;
+
+		while( nextRecord() )
+		{
+			if( isMatch() )
+			{
+				count++;
+			}
+		}
+
+		m_block = -1;
+
+		return count;
+	}
+
+	private void startBlock(final int block)
+	{
+		m_block = block;
+		m_readOffset = m_blockOffsets[block];
+		m_record = m_blockFirstRecords[block] - 1;
+		m_time = m_blockPrevTimes[block];
+		m_decoder.reset(m_time);
+		m_matchPosition = m_blockFirstPositions[block] - 1;
+	}
+
+	/**
+	 * Decodes the next record in the current block, returning <code>false</code> at the end of the block.
+	 */
+	private boolean nextRecord()
+	{
+		if( m_readOffset >= m_blockEnds[m_block] )  return false;
+
+		final int next = m_decoder.decode(m_maps[m_blockSegments[m_block]], m_readOffset, m_blockEnds[m_block]);
+
+		if( next < 0 )  return false;
+
+		m_readOffset = next;
+		m_time = m_decoder.getTime();
+		m_record++;
+
+		return true;
+	}
+
+	private boolean isMatch()
+	{
+		return m_record >= m_skips[m_blockSegments[m_block]] && m_time >= m_from && m_time <= m_to;
+	}
+
+	private int findBlock(final int position)
+	{
+		int low = 0;
+		int high = m_blockCount - 1;
+
+		while( low < high )
+		{
+			final int mid = (low + high + 1) >>> 1;
+
+			if( m_blockFirstPositions[mid] <= position )
+			{
+				low = mid;
+			}
+			else
+			{
+				high = mid - 1;
+			}
+		}
+
+		return low;
+	}
+
+	private void seek(final int position)
+	{
+		final int block = findBlock(position);
+
+		//--- Moving forward within the same block, which is what moveToNext() does almost every time, just keeps decoding.
+		if( block != m_block || m_matchPosition > position )
+		{
+			startBlock(block);
+		}
+
+		while( m_matchPosition < position && nextRecord() )
+		{
+			if( isMatch() )
+			{
+				m_matchPosition++;
+			}
+		}
+	}
+
+	@Override public int getCount()
+	{
+		return m_count;
+	}
+
+	@Override public int getPosition()
+	{
+		return m_position;
+	}
+
+	@Override public boolean move(int offset)
+	{
+		return moveToPosition(getPosition() + offset);
+	}
+
+	@Override public boolean moveToPosition(int position)
+	{
+		m_position = Math.max(-1, Math.min(m_count, position));
+
+		if( !isValidPosition() )  return false;
+
+		seek(m_position);
+
+		return true;
+	}
+
+	private boolean isValidPosition()
+	{
+		return !m_isClosed && m_position >= 0 && m_position < m_count;
+	}
+
+	@Override public boolean moveToFirst()
+	{
+		return moveToPosition(0);
+	}
+
+	@Override public boolean moveToLast()
+	{
+		return moveToPosition(m_count-1);
+	}
+
+	@Override public boolean moveToNext()
+	{
+		return moveToPosition(getPosition()+1);
+	}
+
+	@Override public boolean moveToPrevious()
+	{
+		return moveToPosition(getPosition()-1);
+	}
+
+	@Override public boolean isFirst()
+	{
+		return m_count > 0 && m_position == 0;
+	}
+
+	@Override public boolean isLast()
+	{
+		return m_count > 0 && m_position == m_count-1;
+	}
+
+	@Override public boolean isBeforeFirst()
+	{
+		return m_count == 0 || m_position == -1;
+	}
+
+	@Override public boolean isAfterLast()
+	{
+		return m_count == 0 || m_position == m_count;
+	}
+
+	@Override public void close()
+	{
+		if( m_isClosed )  return;
+
+		m_isClosed = true;
+
+		//--- Mappings are unmapped whenever they get garbage collected, so the most we can do is let go of them.
+		m_maps = null;
+	}
+
+	@Override public boolean isClosed()
+	{
+		return m_isClosed;
+	}
+
+	@Override public long getEpochTime()
+	{
+		return isValidPosition() ? m_time : HistoricalData.NULL.getEpochTime_millis();
+	}
+
+	@Override public byte[] getBlob()
+	{
+		if( !isValidPosition() )  return HistoricalData.NULL.getBlob();
+
+		return Arrays.copyOf(m_decoder.getBlob(), m_decoder.getBlobLength());
+	}
+
+	@Override public HistoricalData getHistoricalData()
+	{
+		if( isValidPosition() )
+		{
+			return new HistoricalData(getBlob(), getEpochTime());
+		}
+		else
+		{
+			return HistoricalData.NULL;
+		}
+	}
+}
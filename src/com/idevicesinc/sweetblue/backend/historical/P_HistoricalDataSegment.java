@@ -0,0 +1,707 @@
+package com.idevicesinc.sweetblue.backend.historical;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * One append-only file of historical data records for a single MAC/UUID stream, see {@link Backend_HistoricalDatabase_Segmented}.
+ * <br><br>
+ * Records are compressed with {@link P_HistoricalDataCodec}, which is reset at the start of every block of {@link #INDEX_INTERVAL}
+ * records so blocks decode independently. For each block a sparse index entry is kept in memory with the file offset
+ * of the block, the time needed to resume delta decoding there, and the block's min/max time, so range reads only touch the
+ * blocks that can possibly match even if data arrived out of order. The index is written next to the segment once it's sealed
+ * and rebuilt by scanning otherwise.
+ * <br><br>
+ * Not thread safe, {@link P_HistoricalDataStream} synchronizes access.
+ */
+class P_HistoricalDataSegment
+{
+	static final String EXTENSION = ".seg";
+	static final String INDEX_EXTENSION = ".idx";
+	static final String TRIM_EXTENSION = ".trim";
+
+	static final int INDEX_INTERVAL = 64;
+
+	private static final int INDEX_MAGIC = 0x53424958;
+
+	static interface Visitor
+	{
+		/**
+		 * Return <code>false</code> to stop visiting. The blob is only valid for the duration of the call.
+		 */
+		boolean onRecord(long time, byte[] buffer, int offset, int length);
+	}
+
+	final File m_file;
+	final long m_sequence;
+
+	private int m_count = 0;
+	private long m_size = 0;
+	private long m_lastTime = 0;
+	private long m_minTime = Long.MAX_VALUE;
+	private long m_maxTime = Long.MIN_VALUE;
+
+	//--- Number of records at the front that have been logically deleted but are still in the file.
+	private int m_skip = 0;
+
+	private long[] m_blockOffsets = new long[4];
+	private long[] m_blockPrevTimes = new long[4];
+	private long[] m_blockMins = new long[4];
+	private long[] m_blockMaxes = new long[4];
+	private int m_blockCount = 0;
+
+	//--- Encoded records not yet written to m_out.
+	private byte[] m_pending = new byte[256];
+	private int m_pendingLength = 0;
+
+	private FileOutputStream m_out = null;
+
+	//--- The encoder has to pick up where the last record left off, which after reopening from an index file means decoding the last block first.
+	private final P_HistoricalDataCodec m_encoder = new P_HistoricalDataCodec();
+	private boolean m_isEncoderCurrent = true;
+
+	private final P_HistoricalDataCodec m_decoder = new P_HistoricalDataCodec();
+	private byte[] m_readBuffer = new byte[0];
+
+	P_HistoricalDataSegment(final File file, final long sequence)
+	{
+		m_file = file;
+		m_sequence = sequence;
+	}
+
+	static File getFile(final File directory, final long sequence)
+	{
+		return new File(directory, String.format("%016d", sequence) + EXTENSION);
+	}
+
+	static long parseSequence(final String fileName)
+	{
+		try
+		{
+			return Long.parseLong(fileName.substring(0, fileName.length() - EXTENSION.length()));
+		}
+		catch(NumberFormatException e)
+		{
+			return -1;
+		}
+	}
+
+	int getCount()
+	{
+		return m_count - m_skip;
+	}
+
+	long getSize()
+	{
+		return m_size;
+	}
+
+	long getMinTime()
+	{
+		return m_minTime;
+	}
+
+	long getMaxTime()
+	{
+		return m_maxTime;
+	}
+
+	int getSkip()
+	{
+		return m_skip;
+	}
+
+	int getBlockCount()
+	{
+		return m_blockCount;
+	}
+
+	long getBlockOffset(final int block)
+	{
+		return m_blockOffsets[block];
+	}
+
+	long getBlockPrevTime(final int block)
+	{
+		return m_blockPrevTimes[block];
+	}
+
+	boolean blockOverlaps(final int block, final long from, final long to)
+	{
+		return m_blockMaxes[block] >= from && m_blockMins[block] <= to;
+	}
+
+	/**
+	 * Returns the number of live records in the block if they're all known to be in range without decoding, otherwise -1.
+	 */
+	int getBlockCountIfContained(final int block, final long from, final long to)
+	{
+		if( m_blockMins[block] < from || m_blockMaxes[block] > to )  return -1;
+
+		final int start = Math.max(block * INDEX_INTERVAL, m_skip);
+		final int end = Math.min((block + 1) * INDEX_INTERVAL, m_count);
+
+		return Math.max(0, end - start);
+	}
+
+	boolean overlaps(final long from, final long to)
+	{
+		return getCount() > 0 && m_maxTime >= from && m_minTime <= to;
+	}
+
+	/**
+	 * Reads the sparse index for an existing file, from the sidecar index file if it's there and up to date, otherwise by scanning.
+	 */
+	void open() throws IOException
+	{
+		m_skip = readTrim();
+
+		if( !readIndex() )
+		{
+			scan();
+		}
+
+		m_skip = Math.min(m_skip, m_count);
+	}
+
+	void append(final long time, final byte[] blob_nullable) throws IOException
+	{
+		final int length = blob_nullable != null ? blob_nullable.length : 0;
+
+		if( m_count % INDEX_INTERVAL == 0 )
+		{
+			addBlock(m_size + m_pendingLength, m_lastTime);
+
+			m_encoder.reset(m_lastTime);
+			m_isEncoderCurrent = true;
+		}
+		else if( !m_isEncoderCurrent )
+		{
+			restoreEncoder();
+		}
+
+		ensurePending(P_HistoricalDataCodec.getMaxEncodedLength(length));
+
+		m_pendingLength = m_encoder.encode(time, blob_nullable, m_pending, m_pendingLength);
+
+		onRecord(time);
+	}
+
+	private void restoreEncoder() throws IOException
+	{
+		flush();
+
+		final int block = m_blockCount - 1;
+		final int blockLength = readBlock(block);
+		final ByteBuffer buffer = ByteBuffer.wrap(m_readBuffer);
+
+		m_encoder.reset(m_blockPrevTimes[block]);
+
+		for( int position = 0; position >= 0 && position < blockLength; )
+		{
+			position = m_encoder.decode(buffer, position, blockLength);
+		}
+
+		m_isEncoderCurrent = true;
+	}
+
+	/**
+	 * Writes out everything passed to {@link #append(long, byte[])} so far with a single write call.
+	 */
+	void flush() throws IOException
+	{
+		if( m_pendingLength == 0 )  return;
+
+		if( m_out == null )
+		{
+			m_out = new FileOutputStream(m_file, /*append=*/true);
+		}
+
+		m_out.write(m_pending, 0, m_pendingLength);
+
+		m_size += m_pendingLength;
+		m_pendingLength = 0;
+	}
+
+	/**
+	 * Flushes and closes the file, then writes the sparse index next to it so reopening doesn't require a scan.
+	 */
+	void seal() throws IOException
+	{
+		flush();
+		close();
+		writeIndex();
+	}
+
+	void close()
+	{
+		if( m_out == null )  return;
+
+		try
+		{
+			m_out.close();
+		}
+		catch(IOException e)
+		{
+		}
+
+		m_out = null;
+	}
+
+	void delete()
+	{
+		close();
+
+		m_file.delete();
+		deleteSidecars();
+	}
+
+	/**
+	 * Deletes the index and trim files that go along with the segment file, leaving the segment file itself.
+	 */
+	void deleteSidecars()
+	{
+		sidecar(INDEX_EXTENSION).delete();
+		sidecar(TRIM_EXTENSION).delete();
+	}
+
+	/**
+	 * Logically deletes the given number of oldest records, returning how many were actually deleted.
+	 */
+	int trim(final int count) throws IOException
+	{
+		final int trimmed = Math.min(count, getCount());
+
+		if( trimmed <= 0 )  return 0;
+
+		final int oldSkip = m_skip;
+
+		m_skip += trimmed;
+
+		//--- Persisting on every single trim would double the I/O of a limited log, so only do it once per index block.
+		//---	Worst case after a crash is that up to one block of trimmed records comes back.
+		if( m_skip / INDEX_INTERVAL != oldSkip / INDEX_INTERVAL || m_skip == m_count )
+		{
+			writeTrim();
+		}
+
+		return trimmed;
+	}
+
+	/**
+	 * Visits all live records with a time in the given range, in file order.
+	 */
+	boolean forEach(final long from, final long to, final Visitor visitor) throws IOException
+	{
+		flush();
+
+		if( !overlaps(from, to) )  return true;
+
+		final RandomAccessFile file = new RandomAccessFile(m_file, "r");
+
+		try
+		{
+			for( int block = m_skip / INDEX_INTERVAL; block < m_blockCount; block++ )
+			{
+				if( m_blockMaxes[block] < from || m_blockMins[block] > to )  continue;
+
+				if( !visitBlock(readBlock(file, block), block, from, to, visitor) )  return false;
+			}
+		}
+		finally
+		{
+			file.close();
+		}
+
+		return true;
+	}
+
+	/**
+	 * Counts live records in the given range, only decoding blocks that straddle the range.
+	 */
+	int getCount(final long from, final long to) throws IOException
+	{
+		if( !overlaps(from, to) )  return 0;
+
+		if( from <= m_minTime && to >= m_maxTime )  return getCount();
+
+		flush();
+
+		final int[] count = {0};
+		final Visitor counter = new Visitor()
+		{
+			@Override public boolean onRecord(long time, byte[] buffer, int offset, int length)
+			{
+				count[0]++;
+
+				return true;
+			}
+		};
+
+		RandomAccessFile file = null;
+
+		try
+		{
+			for( int block = m_skip / INDEX_INTERVAL; block < m_blockCount; block++ )
+			{
+				if( !blockOverlaps(block, from, to) )  continue;
+
+				final int containedCount = getBlockCountIfContained(block, from, to);
+
+				if( containedCount >= 0 )
+				{
+					count[0] += containedCount;
+				}
+				else
+				{
+					file = file != null ? file : new RandomAccessFile(m_file, "r");
+
+					visitBlock(readBlock(file, block), block, from, to, counter);
+				}
+			}
+		}
+		finally
+		{
+			if( file != null )
+			{
+				file.close();
+			}
+		}
+
+		return count[0];
+	}
+
+	/**
+	 * Reads the given block into {@link #m_readBuffer}, returning its length.
+	 */
+	private int readBlock(final RandomAccessFile file, final int block) throws IOException
+	{
+		final int blockLength = (int) (getBlockEnd(block) - m_blockOffsets[block]);
+
+		if( m_readBuffer.length < blockLength )
+		{
+			m_readBuffer = new byte[blockLength];
+		}
+
+		file.seek(m_blockOffsets[block]);
+		file.readFully(m_readBuffer, 0, blockLength);
+
+		return blockLength;
+	}
+
+	private int readBlock(final int block) throws IOException
+	{
+		final RandomAccessFile file = new RandomAccessFile(m_file, "r");
+
+		try
+		{
+			return readBlock(file, block);
+		}
+		finally
+		{
+			file.close();
+		}
+	}
+
+	private boolean visitBlock(final int blockLength, final int block, final long from, final long to, final Visitor visitor)
+	{
+		final ByteBuffer buffer = ByteBuffer.wrap(m_readBuffer);
+
+		m_decoder.reset(m_blockPrevTimes[block]);
+
+		int position = 0;
+
+		for( int i = block * INDEX_INTERVAL; position < blockLength; i++ )
+		{
+			position = m_decoder.decode(buffer, position, blockLength);
+
+			if( position < 0 )  break;
+
+			final long time = m_decoder.getTime();
+
+			if( i >= m_skip && time >= from && time <= to )
+			{
+				if( !visitor.onRecord(time, m_decoder.getBlob(), 0, m_decoder.getBlobLength()) )  return false;
+			}
+		}
+
+		return true;
+	}
+
+	long getBlockEnd(final int block)
+	{
+		return block + 1 < m_blockCount ? m_blockOffsets[block + 1] : m_size;
+	}
+
+	private void onRecord(final long time)
+	{
+		final int block = m_blockCount - 1;
+
+		m_blockMins[block] = Math.min(m_blockMins[block], time);
+		m_blockMaxes[block] = Math.max(m_blockMaxes[block], time);
+
+		m_minTime = Math.min(m_minTime, time);
+		m_maxTime = Math.max(m_maxTime, time);
+
+		m_lastTime = time;
+		m_count++;
+	}
+
+	private void addBlock(final long offset, final long prevTime)
+	{
+		if( m_blockCount == m_blockOffsets.length )
+		{
+			final int capacity = m_blockCount * 2;
+
+			m_blockOffsets = Arrays.copyOf(m_blockOffsets, capacity);
+			m_blockPrevTimes = Arrays.copyOf(m_blockPrevTimes, capacity);
+			m_blockMins = Arrays.copyOf(m_blockMins, capacity);
+			m_blockMaxes = Arrays.copyOf(m_blockMaxes, capacity);
+		}
+
+		m_blockOffsets[m_blockCount] = offset;
+		m_blockPrevTimes[m_blockCount] = prevTime;
+		m_blockMins[m_blockCount] = Long.MAX_VALUE;
+		m_blockMaxes[m_blockCount] = Long.MIN_VALUE;
+		m_blockCount++;
+	}
+
+	private void ensurePending(final int extra)
+	{
+		if( m_pendingLength + extra <= m_pending.length )  return;
+
+		m_pending = Arrays.copyOf(m_pending, Math.max(m_pendingLength + extra, m_pending.length * 2));
+	}
+
+	/**
+	 * Rebuilds the sparse index by decoding the whole file. A partially written record at the end, from a crash mid-write, is cut off.
+	 */
+	private void scan() throws IOException
+	{
+		m_count = 0;
+		m_size = 0;
+		m_lastTime = 0;
+		m_blockCount = 0;
+		m_minTime = Long.MAX_VALUE;
+		m_maxTime = Long.MIN_VALUE;
+
+		if( !m_file.exists() )  return;
+
+		final byte[] buffer = new byte[(int) m_file.length()];
+
+		final FileInputStream in = new FileInputStream(m_file);
+
+		try
+		{
+			int read = 0;
+
+			while( read < buffer.length )
+			{
+				final int result = in.read(buffer, read, buffer.length - read);
+
+				if( result < 0 )  break;
+
+				read += result;
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+
+		final ByteBuffer wrapped = ByteBuffer.wrap(buffer);
+
+		int position = 0;
+
+		//--- Decoding with the encoder itself leaves it ready for the next append.
+		while( position < buffer.length )
+		{
+			final boolean isBlockStart = m_count % INDEX_INTERVAL == 0;
+
+			if( isBlockStart )
+			{
+				m_encoder.reset(m_lastTime);
+			}
+
+			final int next = m_encoder.decode(wrapped, position, buffer.length);
+
+			if( next < 0 )  break;
+
+			if( isBlockStart )
+			{
+				addBlock(position, m_lastTime);
+			}
+
+			onRecord(m_encoder.getTime());
+
+			position = next;
+		}
+
+		m_isEncoderCurrent = true;
+
+		m_size = position;
+
+		if( position < buffer.length )
+		{
+			final RandomAccessFile file = new RandomAccessFile(m_file, "rw");
+
+			try
+			{
+				file.setLength(position);
+			}
+			finally
+			{
+				file.close();
+			}
+		}
+	}
+
+	private File sidecar(final String extension)
+	{
+		final String name = m_file.getName();
+
+		return new File(m_file.getParentFile(), name.substring(0, name.length() - EXTENSION.length()) + extension);
+	}
+
+	private void writeIndex() throws IOException
+	{
+		final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(sidecar(INDEX_EXTENSION))));
+
+		try
+		{
+			out.writeInt(INDEX_MAGIC);
+			out.writeLong(m_size);
+			out.writeInt(m_count);
+			out.writeLong(m_lastTime);
+			out.writeLong(m_minTime);
+			out.writeLong(m_maxTime);
+			out.writeInt(m_blockCount);
+
+			for( int i = 0; i < m_blockCount; i++ )
+			{
+				out.writeLong(m_blockOffsets[i]);
+				out.writeLong(m_blockPrevTimes[i]);
+				out.writeLong(m_blockMins[i]);
+				out.writeLong(m_blockMaxes[i]);
+			}
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	private boolean readIndex()
+	{
+		final File file = sidecar(INDEX_EXTENSION);
+
+		if( !file.exists() )  return false;
+
+		DataInputStream in = null;
+
+		try
+		{
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+			if( in.readInt() != INDEX_MAGIC )  return false;
+
+			final long size = in.readLong();
+
+			//--- Segment was written to after the index was, e.g. it was reopened as the active segment.
+			if( size != m_file.length() )  return false;
+
+			m_size = size;
+			m_count = in.readInt();
+			m_isEncoderCurrent = false;
+			m_lastTime = in.readLong();
+			m_minTime = in.readLong();
+			m_maxTime = in.readLong();
+
+			final int blockCount = in.readInt();
+
+			m_blockCount = 0;
+
+			for( int i = 0; i < blockCount; i++ )
+			{
+				addBlock(in.readLong(), in.readLong());
+				m_blockMins[i] = in.readLong();
+				m_blockMaxes[i] = in.readLong();
+			}
+
+			return true;
+		}
+		catch(IOException e)
+		{
+			return false;
+		}
+		finally
+		{
+			if( in != null )
+			{
+				try
+				{
+					in.close();
+				}
+				catch(IOException e)
+				{
+				}
+			}
+		}
+	}
+
+	private int readTrim()
+	{
+		final File file = sidecar(TRIM_EXTENSION);
+
+		if( !file.exists() )  return 0;
+
+		DataInputStream in = null;
+
+		try
+		{
+			in = new DataInputStream(new FileInputStream(file));
+
+			return Math.max(0, in.readInt());
+		}
+		catch(IOException e)
+		{
+			return 0;
+		}
+		finally
+		{
+			if( in != null )
+			{
+				try
+				{
+					in.close();
+				}
+				catch(IOException e)
+				{
+				}
+			}
+		}
+	}
+
+	private void writeTrim() throws IOException
+	{
+		final DataOutputStream out = new DataOutputStream(new FileOutputStream(sidecar(TRIM_EXTENSION)));
+
+		try
+		{
+			out.writeInt(m_skip);
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+}
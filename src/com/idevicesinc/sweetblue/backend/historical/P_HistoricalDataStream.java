@@ -0,0 +1,377 @@
+package com.idevicesinc.sweetblue.backend.historical;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * The ordered list of {@link P_HistoricalDataSegment} files for one MAC/UUID combination. Appends only ever go to the last
+ * segment, which is sealed and replaced once it grows past the size limit. The oldest segments are deleted outright once
+ * there are more than the retention limit. All methods are synchronized because reads can come from any thread while writes
+ * come from the device's historical data thread.
+ */
+class P_HistoricalDataStream
+{
+	private static final String TEMP_EXTENSION = ".tmp";
+
+	private final File m_directory;
+	private final int m_maxSegmentSize;
+	private final int m_maxSegmentCount;
+
+	private final ArrayList<P_HistoricalDataSegment> m_segments = new ArrayList<P_HistoricalDataSegment>();
+
+	private boolean m_isOpen = false;
+
+	P_HistoricalDataStream(final File directory, final int maxSegmentSize, final int maxSegmentCount)
+	{
+		m_directory = directory;
+		m_maxSegmentSize = maxSegmentSize;
+		m_maxSegmentCount = Math.max(1, maxSegmentCount);
+	}
+
+	File getDirectory()
+	{
+		return m_directory;
+	}
+
+	synchronized void append(final long time, final byte[] blob) throws IOException
+	{
+		getActiveSegment().append(time, blob);
+	}
+
+	/**
+	 * Writes out everything appended so far, then rolls over to a new segment if the active one is full.
+	 */
+	synchronized void flush() throws IOException
+	{
+		open();
+
+		if( m_segments.isEmpty() )  return;
+
+		final P_HistoricalDataSegment active = m_segments.get(m_segments.size() - 1);
+
+		active.flush();
+
+		if( active.getSize() >= m_maxSegmentSize )
+		{
+			active.seal();
+
+			m_segments.add(newSegment(active.m_sequence + 1));
+
+			while( m_segments.size() > m_maxSegmentCount )
+			{
+				m_segments.remove(0).delete();
+			}
+		}
+	}
+
+	synchronized int getCount(final long from, final long to) throws IOException
+	{
+		open();
+
+		int count = 0;
+
+		for( int i = 0; i < m_segments.size(); i++ )
+		{
+			count += m_segments.get(i).getCount(from, to);
+		}
+
+		return count;
+	}
+
+	synchronized boolean isEmpty() throws IOException
+	{
+		return getCount(Long.MIN_VALUE, Long.MAX_VALUE) == 0;
+	}
+
+	synchronized void forEach(final long from, final long to, final P_HistoricalDataSegment.Visitor visitor) throws IOException
+	{
+		open();
+
+		for( int i = 0; i < m_segments.size(); i++ )
+		{
+			if( !m_segments.get(i).forEach(from, to, visitor) )  break;
+		}
+	}
+
+	/**
+	 * Returns a cursor over memory-mapped snapshots of the segments, see {@link P_HistoricalDataCursor_Mapped}.
+	 */
+	synchronized P_HistoricalDataCursor_Mapped newCursor(final long from, final long to) throws IOException
+	{
+		open();
+
+		if( !m_segments.isEmpty() )
+		{
+			m_segments.get(m_segments.size() - 1).flush();
+		}
+
+		return new P_HistoricalDataCursor_Mapped(m_segments, from, to);
+	}
+
+	/**
+	 * Deletes the given number of oldest records.
+	 */
+	synchronized void trim(long count) throws IOException
+	{
+		open();
+
+		while( count > 0 && !m_segments.isEmpty() )
+		{
+			final P_HistoricalDataSegment oldest = m_segments.get(0);
+
+			if( oldest.getCount() <= count && m_segments.size() > 1 )
+			{
+				count -= oldest.getCount();
+
+				m_segments.remove(0).delete();
+			}
+			else
+			{
+				count -= oldest.trim((int) Math.min(count, Integer.MAX_VALUE));
+
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Deletes segments from the front as long as every record in them is older than the given time. Nothing is rewritten, so
+	 * this is as cheap as {@link #trim(long)}, but expired records in the same segment as newer ones are left alone.
+	 */
+	synchronized void expire(final long olderThan) throws IOException
+	{
+		open();
+
+		while( !m_segments.isEmpty() )
+		{
+			final P_HistoricalDataSegment oldest = m_segments.get(0);
+
+			if( oldest.getCount() > 0 && oldest.getMaxTime() >= olderThan )  break;
+
+			if( m_segments.size() > 1 )
+			{
+				m_segments.remove(0).delete();
+			}
+			else
+			{
+				oldest.trim(oldest.getCount());
+
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Deletes up to the given number of records in the given time range, oldest first in file order. Segments with matching
+	 * records are rewritten without them, which is slow, but range deletes are rare compared to appends and trims.
+	 */
+	synchronized void delete(final long from, final long to, long maxCount) throws IOException
+	{
+		//--- Everything is in range so deleting the oldest in file order is just a trim, no rewriting needed.
+		if( from == Long.MIN_VALUE && to == Long.MAX_VALUE )
+		{
+			trim(maxCount);
+
+			return;
+		}
+
+		open();
+
+		for( int i = 0; i < m_segments.size() && maxCount > 0; i++ )
+		{
+			final P_HistoricalDataSegment segment = m_segments.get(i);
+
+			final int matching = segment.getCount(from, to);
+
+			if( matching == 0 )  continue;
+
+			if( matching == segment.getCount() && matching <= maxCount && i < m_segments.size() - 1 )
+			{
+				maxCount -= matching;
+
+				m_segments.remove(i--).delete();
+
+				continue;
+			}
+
+			final int toDelete = (int) Math.min(matching, maxCount);
+
+			maxCount -= toDelete;
+
+			m_segments.set(i, rewrite(segment, from, to, toDelete, i == m_segments.size() - 1));
+		}
+	}
+
+	synchronized void deleteAll()
+	{
+		for( int i = 0; i < m_segments.size(); i++ )
+		{
+			m_segments.get(i).delete();
+		}
+
+		m_segments.clear();
+
+		final File[] files = m_directory.listFiles();
+
+		if( files != null )
+		{
+			for( int i = 0; i < files.length; i++ )
+			{
+				files[i].delete();
+			}
+		}
+
+		m_directory.delete();
+
+		m_isOpen = false;
+	}
+
+	private P_HistoricalDataSegment rewrite(final P_HistoricalDataSegment segment, final long from, final long to, final int toDelete, final boolean isActive) throws IOException
+	{
+		final P_HistoricalDataSegment rewritten = new P_HistoricalDataSegment(new File(m_directory, segment.m_file.getName() + TEMP_EXTENSION), segment.m_sequence);
+
+		final int[] deleted = {0};
+		final IOException[] error = {null};
+
+		segment.forEach(Long.MIN_VALUE, Long.MAX_VALUE, new P_HistoricalDataSegment.Visitor()
+		{
+			@Override public boolean onRecord(long time, byte[] buffer, int offset, int length)
+			{
+				if( deleted[0] < toDelete && time >= from && time <= to )
+				{
+					deleted[0]++;
+				}
+				else
+				{
+					try
+					{
+						rewritten.append(time, Arrays.copyOfRange(buffer, offset, offset + length));
+					}
+					catch(IOException e)
+					{
+						error[0] = e;
+
+						return false;
+					}
+				}
+
+				return true;
+			}
+		});
+
+		if( error[0] != null )
+		{
+			rewritten.delete();
+
+			throw error[0];
+		}
+
+		rewritten.flush();
+		rewritten.close();
+
+		//--- The original's sidecars describe the original, so they have to go before the rewrite takes its place. If this is interrupted
+		//--- before the rename, the worst case is records trimmed from the original coming back, rather than any being lost.
+		segment.close();
+		segment.deleteSidecars();
+
+		//--- Renaming over the original replaces it in one step, so there's always one complete copy or the other on disk.
+		if( !rewritten.m_file.renameTo(segment.m_file) )
+		{
+			rewritten.delete();
+
+			throw new IOException("Couldn't replace " + segment.m_file);
+		}
+
+		final P_HistoricalDataSegment replacement = new P_HistoricalDataSegment(segment.m_file, segment.m_sequence);
+
+		replacement.open();
+
+		if( !isActive )
+		{
+			replacement.seal();
+		}
+
+		return replacement;
+	}
+
+	private P_HistoricalDataSegment getActiveSegment() throws IOException
+	{
+		open();
+
+		if( m_segments.isEmpty() )
+		{
+			m_segments.add(newSegment(0));
+		}
+
+		return m_segments.get(m_segments.size() - 1);
+	}
+
+	private P_HistoricalDataSegment newSegment(final long sequence)
+	{
+		m_directory.mkdirs();
+
+		return new P_HistoricalDataSegment(P_HistoricalDataSegment.getFile(m_directory, sequence), sequence);
+	}
+
+	private void open() throws IOException
+	{
+		if( m_isOpen )  return;
+
+		m_isOpen = true;
+
+		final File[] files = m_directory.listFiles();
+
+		if( files == null )  return;
+
+		final ArrayList<Long> sequences = new ArrayList<Long>();
+
+		for( int i = 0; i < files.length; i++ )
+		{
+			final String name = files[i].getName();
+
+			if( name.endsWith(P_HistoricalDataSegment.EXTENSION) )
+			{
+				final long sequence = P_HistoricalDataSegment.parseSequence(name);
+
+				if( sequence >= 0 )
+				{
+					sequences.add(sequence);
+				}
+			}
+			else if( name.endsWith(TEMP_EXTENSION) )
+			{
+				final File original = new File(m_directory, name.substring(0, name.length() - TEMP_EXTENSION.length()));
+
+				//--- Left over from a rewrite that didn't finish, so the original is still the one to go by. A rewrite is only ever
+				//--- renamed once it's complete, so without the original it's the only copy left and is kept instead.
+				if( original.exists() )
+				{
+					files[i].delete();
+				}
+				else if( files[i].renameTo(original) )
+				{
+					final long sequence = P_HistoricalDataSegment.parseSequence(original.getName());
+
+					if( sequence >= 0 )
+					{
+						sequences.add(sequence);
+					}
+				}
+			}
+		}
+
+		Collections.sort(sequences);
+
+		for( int i = 0; i < sequences.size(); i++ )
+		{
+			final P_HistoricalDataSegment segment = new P_HistoricalDataSegment(P_HistoricalDataSegment.getFile(m_directory, sequences.get(i)), sequences.get(i));
+
+			segment.open();
+
+			m_segments.add(segment);
+		}
+	}
+}
@@ -0,0 +1,375 @@
+package com.idevicesinc.sweetblue.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A fixed-capacity ring buffer of variable-length, timestamped byte frames, backed by a single direct (off-heap) {@link ByteBuffer}.
+ * Meant for one writer thread and any number of reader threads, each with their own {@link Cursor}. Readers get a read-only
+ * view straight into the backing memory instead of a copy, so memory use stays fixed no matter how fast data comes in.
+ * <br><br>
+ * What happens when the writer catches up to the slowest reader depends on the {@link OverflowPolicy} given to the constructor.
+ *
+ * @see com.idevicesinc.sweetblue.BleDevice#openNotificationStream(java.util.UUID, int, OverflowPolicy)
+ */
+public class ByteRingBuffer
+{
+	/**
+	 * What to do when a new frame doesn't fit.
+	 */
+	public static enum OverflowPolicy
+	{
+		/**
+		 * Overwrite the oldest frames to make room, so the writer never waits on readers. Readers that fall too far behind
+		 * skip ahead to the oldest frame still available, see {@link Cursor#getLapCount()}.
+		 */
+		OVERWRITE_OLDEST,
+
+		/**
+		 * Drop the new frame if it would overwrite anything an open {@link Cursor} hasn't read yet, see {@link ByteRingBuffer#getDroppedCount()}.
+		 */
+		DROP_NEWEST;
+	}
+
+	//--- Frame layout is [int payload length][long timestamp][payload]. A length of PADDING means skip to the start of the buffer.
+	private static final int HEADER_SIZE = 4 + 8;
+	private static final int PADDING = -1;
+
+	private static final Cursor[] EMPTY_CURSORS = new Cursor[0];
+
+	private final ByteBuffer m_buffer;
+	private final ByteBuffer m_writeView;
+	private final int m_capacity;
+	private final OverflowPolicy m_policy;
+
+	//--- Absolute positions that only ever increase, the index into the buffer is the position modulo capacity.
+	private volatile long m_writePos = 0;
+	private volatile long m_oldestPos = 0;
+
+	private volatile int m_droppedCount = 0;
+
+	private volatile Cursor[] m_cursors = EMPTY_CURSORS;
+
+	public ByteRingBuffer(final int capacityInBytes, final OverflowPolicy policy)
+	{
+		m_capacity = capacityInBytes;
+		m_policy = policy != null ? policy : OverflowPolicy.OVERWRITE_OLDEST;
+		m_buffer = ByteBuffer.allocateDirect(capacityInBytes).order(ByteOrder.nativeOrder());
+		m_writeView = m_buffer.duplicate().order(ByteOrder.nativeOrder());
+	}
+
+	public int getCapacity()
+	{
+		return m_capacity;
+	}
+
+	public OverflowPolicy getOverflowPolicy()
+	{
+		return m_policy;
+	}
+
+	/**
+	 * Returns the number of frames that couldn't be written, either because they were bigger than the whole buffer
+	 * or because of {@link OverflowPolicy#DROP_NEWEST}.
+	 */
+	public int getDroppedCount()
+	{
+		return m_droppedCount;
+	}
+
+	/**
+	 * Writes a frame. Must only be called from one thread at a time. Returns <code>false</code> if the frame was dropped.
+	 */
+	public boolean write(final byte[] data_nullable, final long timestamp)
+	{
+		final int length = data_nullable != null ? data_nullable.length : 0;
+		final int frameSize = HEADER_SIZE + length;
+
+		if( frameSize > m_capacity )
+		{
+			m_droppedCount++;
+
+			return false;
+		}
+
+		long writePos = m_writePos;
+		final int remaining = m_capacity - index(writePos);
+		final int padding = remaining < frameSize ? remaining : 0;
+
+		if( m_policy == OverflowPolicy.DROP_NEWEST )
+		{
+			final long slowestReadPos = getSlowestReadPos(writePos);
+
+			//--- Even readers that are caught up need protecting, since they'll be reading the padding marker at the current position next.
+			//---	Only with no readers at all is there nothing to protect, as new ones start wherever the writer is.
+			if( m_cursors.length > 0 && writePos + padding + frameSize - slowestReadPos > m_capacity )
+			{
+				m_droppedCount++;
+
+				return false;
+			}
+		}
+
+		if( padding > 0 )
+		{
+			makeRoom(writePos, padding);
+
+			if( padding >= 4 )
+			{
+				m_writeView.putInt(index(writePos), PADDING);
+			}
+
+			writePos += padding;
+			m_writePos = writePos;
+		}
+
+		makeRoom(writePos, frameSize);
+
+		final int index = index(writePos);
+
+		m_writeView.putInt(index, length);
+		m_writeView.putLong(index + 4, timestamp);
+
+		if( length > 0 )
+		{
+			m_writeView.position(index + HEADER_SIZE);
+			m_writeView.put(data_nullable, 0, length);
+		}
+
+		//--- Volatile write publishes the frame to readers.
+		m_writePos = writePos + frameSize;
+
+		return true;
+	}
+
+	/**
+	 * Returns a new {@link Cursor} that will see every frame written from now on. Call {@link Cursor#close()} when done with it,
+	 * especially with {@link OverflowPolicy#DROP_NEWEST} where open cursors hold the writer back.
+	 */
+	public Cursor newCursor()
+	{
+		final Cursor cursor = new Cursor(m_writePos);
+
+		synchronized(this)
+		{
+			final Cursor[] cursors = new Cursor[m_cursors.length + 1];
+			System.arraycopy(m_cursors, 0, cursors, 0, m_cursors.length);
+			cursors[cursors.length-1] = cursor;
+
+			m_cursors = cursors;
+		}
+
+		return cursor;
+	}
+
+	private synchronized void removeCursor(final Cursor cursor)
+	{
+		for( int i = 0; i < m_cursors.length; i++ )
+		{
+			if( m_cursors[i] == cursor )
+			{
+				final Cursor[] cursors = new Cursor[m_cursors.length - 1];
+				System.arraycopy(m_cursors, 0, cursors, 0, i);
+				System.arraycopy(m_cursors, i+1, cursors, i, cursors.length - i);
+
+				m_cursors = cursors;
+
+				return;
+			}
+		}
+	}
+
+	private int index(final long position)
+	{
+		return (int) (position % m_capacity);
+	}
+
+	private long getSlowestReadPos(final long writePos)
+	{
+		final Cursor[] cursors = m_cursors;
+		long slowest = writePos;
+
+		for( int i = 0; i < cursors.length; i++ )
+		{
+			slowest = Math.min(slowest, cursors[i].m_heldPos);
+		}
+
+		return slowest;
+	}
+
+	private void makeRoom(final long writePos, final int size)
+	{
+		if( m_policy != OverflowPolicy.OVERWRITE_OLDEST )  return;
+
+		long oldestPos = m_oldestPos;
+
+		while( writePos + size - oldestPos > m_capacity )
+		{
+			oldestPos += getFrameSpan(oldestPos);
+		}
+
+		//--- Published before the bytes are actually overwritten so readers can tell if they were too slow.
+		m_oldestPos = oldestPos;
+	}
+
+	private int getFrameSpan(final long position)
+	{
+		final int index = index(position);
+		final int remaining = m_capacity - index;
+
+		if( remaining < HEADER_SIZE )  return remaining;
+
+		final int length = m_writeView.getInt(index);
+
+		return length == PADDING ? remaining : HEADER_SIZE + length;
+	}
+
+	/**
+	 * Reads frames out of a {@link ByteRingBuffer} without copying. Each instance should only be used from one thread at a time.
+	 */
+	public class Cursor
+	{
+		private final ByteBuffer m_view;
+
+		private long m_readPos;
+		private long m_framePos = -1;
+
+		//--- Start of the frame whose payload view is still out, or the read position if there isn't one. Everything from here on
+		//---	is off limits to a DROP_NEWEST writer, since the zero-copy payload is read after next() has already moved past the frame.
+		private volatile long m_heldPos;
+		private long m_timestamp = 0;
+		private int m_lapCount = 0;
+
+		private Cursor(final long readPos)
+		{
+			m_readPos = readPos;
+			m_heldPos = readPos;
+			m_view = m_buffer.asReadOnlyBuffer().order(ByteOrder.nativeOrder());
+		}
+
+		/**
+		 * Advances to the next frame, returning <code>false</code> if there isn't one yet.
+		 */
+		public boolean next()
+		{
+			long readPos = m_readPos;
+
+			while( true )
+			{
+				final long writePos = m_writePos;
+
+				if( m_policy == OverflowPolicy.OVERWRITE_OLDEST )
+				{
+					final long oldestPos = m_oldestPos;
+
+					if( readPos < oldestPos )
+					{
+						readPos = oldestPos;
+						m_lapCount++;
+					}
+				}
+
+				if( readPos >= writePos )
+				{
+					m_readPos = readPos;
+					m_heldPos = readPos;
+
+					return false;
+				}
+
+				final int index = index(readPos);
+				final int remaining = m_capacity - index;
+
+				if( remaining < HEADER_SIZE )
+				{
+					readPos += remaining;
+
+					continue;
+				}
+
+				//--- Absolute gets are still bounds-checked against the limit left over from the last frame.
+				m_view.clear();
+
+				final int length = m_view.getInt(index);
+				final long timestamp = m_view.getLong(index + 4);
+
+				//--- The writer may have lapped us while we were reading the header, in which case it's garbage and we have to skip ahead.
+				if( m_policy == OverflowPolicy.OVERWRITE_OLDEST && readPos < m_oldestPos )
+				{
+					continue;
+				}
+
+				if( length == PADDING )
+				{
+					readPos += remaining;
+
+					continue;
+				}
+
+				//--- Shouldn't happen if the header wasn't overwritten, but nothing after a bad length can be trusted so treat it as a lap.
+				if( length < 0 || length > remaining - HEADER_SIZE )
+				{
+					readPos = writePos;
+					m_lapCount++;
+
+					continue;
+				}
+
+				m_framePos = readPos;
+				m_heldPos = readPos;
+				m_timestamp = timestamp;
+
+				m_view.limit(index + HEADER_SIZE + length);
+				m_view.position(index + HEADER_SIZE);
+
+				m_readPos = readPos + HEADER_SIZE + length;
+
+				return true;
+			}
+		}
+
+		/**
+		 * Read-only view of the current frame's payload, backed directly by the ring buffer's memory. The same instance
+		 * is returned every time, repositioned by each call to {@link #next()}. With {@link OverflowPolicy#DROP_NEWEST} the frame
+		 * is safe from the writer until the next call to {@link #next()} or {@link #close()}.
+		 */
+		public ByteBuffer payload()
+		{
+			return m_view;
+		}
+
+		/**
+		 * The timestamp the current frame was written with.
+		 */
+		public long timestamp()
+		{
+			return m_timestamp;
+		}
+
+		/**
+		 * With {@link OverflowPolicy#OVERWRITE_OLDEST}, returns <code>false</code> if the writer has started overwriting the current frame,
+		 * meaning whatever was just read from {@link #payload()} may be corrupt. Check this after you're done with a frame.
+		 * Always <code>true</code> with {@link OverflowPolicy#DROP_NEWEST}.
+		 */
+		public boolean isValid()
+		{
+			return m_framePos >= 0 && m_framePos >= m_oldestPos;
+		}
+
+		/**
+		 * Returns how many times this cursor fell far enough behind that it had to skip ahead, losing frames.
+		 */
+		public int getLapCount()
+		{
+			return m_lapCount;
+		}
+
+		/**
+		 * Stops this cursor from holding back the writer. The cursor shouldn't be used afterwards.
+		 */
+		public void close()
+		{
+			removeCursor(this);
+		}
+	}
+}
@@ -0,0 +1,93 @@
+package com.idevicesinc.sweetblue.utils;
+
+import com.idevicesinc.sweetblue.annotations.Immutable;
+
+/**
+ * Snapshot of how in-memory historical data is doing against {@link com.idevicesinc.sweetblue.BleManagerConfig#historicalDataMemoryBudget},
+ * across all devices. Counts are since the {@link com.idevicesinc.sweetblue.BleManager} was created.
+ *
+ * @see com.idevicesinc.sweetblue.BleManager#getHistoricalDataMemoryMetrics()
+ */
+@Immutable
+public class HistoricalDataMemoryMetrics
+{
+	private final long m_budget;
+	private final long m_bytesUsed;
+	private final int m_listCount;
+	private final long m_hits;
+	private final long m_misses;
+	private final long m_evictions;
+
+	public HistoricalDataMemoryMetrics(final long budget, final long bytesUsed, final int listCount, final long hits, final long misses, final long evictions)
+	{
+		m_budget = budget;
+		m_bytesUsed = bytesUsed;
+		m_listCount = listCount;
+		m_hits = hits;
+		m_misses = misses;
+		m_evictions = evictions;
+	}
+
+	/**
+	 * The budget in bytes, or zero if there isn't one.
+	 */
+	public long getBudget()
+	{
+		return m_budget;
+	}
+
+	/**
+	 * Rough number of bytes taken up by the lists being tracked. Only tracked while there's a budget.
+	 */
+	public long getBytesUsed()
+	{
+		return m_bytesUsed;
+	}
+
+	/**
+	 * Number of per-characteristic lists currently being tracked against the budget.
+	 */
+	public int getListCount()
+	{
+		return m_listCount;
+	}
+
+	/**
+	 * Number of times data for a characteristic was asked for or added to while its list was already in memory.
+	 */
+	public long getHits()
+	{
+		return m_hits;
+	}
+
+	/**
+	 * Number of times data for a characteristic was asked for or added to while its list wasn't in memory, either because it was
+	 * never used before or because it was evicted.
+	 */
+	public long getMisses()
+	{
+		return m_misses;
+	}
+
+	/**
+	 * Number of lists dropped from memory to stay within the budget.
+	 */
+	public long getEvictions()
+	{
+		return m_evictions;
+	}
+
+	@Override public String toString()
+	{
+		return Utils.toString
+		(
+			this.getClass(),
+			"budget",		m_budget,
+			"bytesUsed",	m_bytesUsed,
+			"listCount",	m_listCount,
+			"hits",			m_hits,
+			"misses",		m_misses,
+			"evictions",	m_evictions
+		);
+	}
+}
@@ -5,6 +5,7 @@ import android.database.Cursor;
 import com.idevicesinc.sweetblue.BleDevice;
 import com.idevicesinc.sweetblue.backend.historical.Backend_HistoricalDatabase;
 
+import java.util.ArrayList;
 import java.util.UUID;
 
 /**
@@ -65,7 +66,7 @@ public class HistoricalDataQuery
 
 		public HistoricalDataQuery between(final EpochTimeRange range)
 		{
-			m_query.m_where += " " + m_column.getColumnName() + " BETWEEN "+range.from().toMilliseconds() + " AND " + range.to().toMilliseconds();
+			m_query.m_range = range;
 
 			return m_query;
 		}
@@ -136,40 +137,30 @@ public class HistoricalDataQuery
 
 		private Part_SelectColumn column(final HistoricalDataColumn column)
 		{
-			if( !m_query.m_select.isEmpty() )
-			{
-				m_query.m_select += ",";
-			}
-
 //			m_query.m_select += " " + column.getColumnName();
-			m_query.m_select += " *";
 
 			return new Part_SelectColumn(m_query);
 		}
 
 		public Part_Function min(final HistoricalDataColumn column)
 		{
-			return function("min", column);
+			return function(HistoricalDataQueryPlan.Function.MIN, column);
 		}
 
 		public Part_Function max(final HistoricalDataColumn column)
 		{
-			return function("max", column);
+			return function(HistoricalDataQueryPlan.Function.MAX, column);
 		}
 
 		public Part_Function avg(final HistoricalDataColumn column)
 		{
-			return function("avg", column);
+			return function(HistoricalDataQueryPlan.Function.AVG, column);
 		}
 
-		private Part_Function function(final String function, final HistoricalDataColumn column)
+		private Part_Function function(final HistoricalDataQueryPlan.Function function, final HistoricalDataColumn column)
 		{
-			if( !m_query.m_select.isEmpty() )
-			{
-				m_query.m_select += ",";
-			}
-
-			m_query.m_select += " "+function+"(CAST("+column.getColumnName()+" AS INTEGER))";
+			m_query.m_functions.add(function);
+			m_query.m_functionColumns.add(column);
 //			m_query.m_selectParenCount++;
 
 			return new Part_Function(m_query);
@@ -187,8 +178,12 @@ public class HistoricalDataQuery
 	private final BleDevice m_device;
 
 	private UUID m_uuid = null;
-	private String m_select = "";
-	private String m_where = "";
+	private EpochTimeRange m_range = EpochTimeRange.FROM_MIN_TO_MAX;
+	private boolean m_ascending = true;
+	private int m_offset = 0;
+	private int m_limit = HistoricalDataQueryPlan.NO_LIMIT;
+	private final ArrayList<HistoricalDataQueryPlan.Function> m_functions = new ArrayList<HistoricalDataQueryPlan.Function>();
+	private final ArrayList<HistoricalDataColumn> m_functionColumns = new ArrayList<HistoricalDataColumn>();
 
 	final Backend_HistoricalDatabase m_database;
 
@@ -220,32 +215,63 @@ public class HistoricalDataQuery
 		return new Part_Where(this);
 	}
 
-	private UUID getUuidOrInvalid()
+	/**
+	 * Orders rows oldest first, which is the default.
+	 */
+	public HistoricalDataQuery ascending()
 	{
-		final UUID uuid = m_uuid != null ? m_uuid : Uuids.INVALID;
+		m_ascending = true;
 
-		return uuid;
+		return this;
 	}
 
-	private String getTableName()
+	/**
+	 * Orders rows newest first.
+	 */
+	public HistoricalDataQuery descending()
 	{
-		final UUID uuid = getUuidOrInvalid();
-		final String tableName = m_database.getTableName(m_device.getMacAddress(), uuid);
+		m_ascending = false;
 
-		return tableName;
+		return this;
 	}
 
-	private String makeQuery()
+	/**
+	 * Returns at most the given number of rows.
+	 */
+	public HistoricalDataQuery limit(final int limit)
 	{
-		final String tableName = getTableName();
-		String query = "SELECT" + m_select + " FROM " + tableName;
+		m_limit = limit;
 
-		if( !m_where.isEmpty() )
-		{
-			query += " WHERE" + m_where;
-		}
+		return this;
+	}
+
+	/**
+	 * Skips the given number of rows before returning any.
+	 */
+	public HistoricalDataQuery offset(final int offset)
+	{
+		m_offset = offset;
 
-		return query;
+		return this;
+	}
+
+	/**
+	 * Returns the plan this query runs as, which {@link BleDevice#queryHistoricalData(HistoricalDataQueryPlan)} can execute against
+	 * whatever backends are in use, with or without SQL.
+	 */
+	public HistoricalDataQueryPlan compile()
+	{
+		final HistoricalDataQueryPlan.Function[] functions = m_functions.toArray(new HistoricalDataQueryPlan.Function[m_functions.size()]);
+		final HistoricalDataColumn[] functionColumns = m_functionColumns.toArray(new HistoricalDataColumn[m_functionColumns.size()]);
+
+		return new HistoricalDataQueryPlan(getUuidOrInvalid(), m_range, m_ascending, m_offset, m_limit, functions, functionColumns);
+	}
+
+	private UUID getUuidOrInvalid()
+	{
+		final UUID uuid = m_uuid != null ? m_uuid : Uuids.INVALID;
+
+		return uuid;
 	}
 
 	private BleDevice.HistoricalDataQueryListener.HistoricalDataQueryEvent go_earlyOut()
@@ -253,7 +279,8 @@ public class HistoricalDataQuery
 		final String macAddress = m_device.getMacAddress();
 		final UUID uuid = getUuidOrInvalid();
 
-		if( !m_database.doesDataExist(macAddress, uuid) )
+		//--- Data might only be in memory, or still waiting in the write buffer, so the database alone can't say there's none.
+		if( !m_device.hasHistoricalData(uuid) && !m_database.doesDataExist(macAddress, uuid) )
 		{
 			return new BleDevice.HistoricalDataQueryListener.HistoricalDataQueryEvent(m_device, uuid, EmptyCursor.SINGLETON, BleDevice.HistoricalDataQueryListener.Status.NO_TABLE, "");
 		}
@@ -270,7 +297,7 @@ public class HistoricalDataQuery
 			return e_earlyOut;
 		}
 
-		return m_device.queryHistoricalData(makeQuery());
+		return m_device.queryHistoricalData(compile());
 	}
 
 	public void go(final BleDevice.HistoricalDataQueryListener listener)
@@ -284,6 +311,6 @@ public class HistoricalDataQuery
 			return;
 		}
 
-		m_device.queryHistoricalData(makeQuery(), listener);
+		m_device.queryHistoricalData(compile(), listener);
 	}
 }
@@ -0,0 +1,321 @@
+package com.idevicesinc.sweetblue.utils;
+
+import android.database.Cursor;
+
+import com.idevicesinc.sweetblue.BleDeviceConfig;
+import com.idevicesinc.sweetblue.annotations.Immutable;
+import com.idevicesinc.sweetblue.annotations.Nullable;
+import com.idevicesinc.sweetblue.backend.historical.Backend_HistoricalDataList;
+import com.idevicesinc.sweetblue.backend.historical.Backend_HistoricalDatabase;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.UUID;
+
+/**
+ * What a {@link HistoricalDataQuery} compiles down to: a time range, an order, a limit/offset, and optionally a list of aggregate functions.
+ * Unlike the SQL from {@link #toSql(String)}, which only works if {@link Backend_HistoricalDatabase#query(String)} is actually backed by SQL,
+ * a plan can run against any {@link Backend_HistoricalDataList} or {@link Backend_HistoricalDatabase}. The time range is handed to the
+ * backend's own <code>getCursor()</code> so it's resolved by whatever time index the backend has. Backends don't all hand rows back in
+ * time order, so the timestamps in range are scanned once to put them in order, after which ordering, offset, and limit just map cursor
+ * positions and the only blobs read are the ones that end up in the result (or go into an aggregate). Note that what a backend does to
+ * create the cursor is up to it, for example the in-memory lists copy the whole range up front.
+ * <br><br>
+ * Results without aggregates have the columns {@link HistoricalDataColumn#EPOCH_TIME} and {@link HistoricalDataColumn#DATA}, at
+ * {@link HistoricalDataColumn#getColumnIndex()}, same as a <code>SELECT *</code>. Results with aggregates are a single row with one
+ * column per aggregate, in the order they were added. Aggregates of {@link HistoricalDataColumn#DATA} need
+ * {@link BleDeviceConfig#historicalDataRollupDecoder} to turn blobs into numbers, and are <code>null</code> otherwise.
+ */
+@Immutable
+@com.idevicesinc.sweetblue.annotations.Alpha
+public class HistoricalDataQueryPlan
+{
+	/**
+	 * Aggregate functions a plan can compute.
+	 */
+	public static enum Function
+	{
+		MIN("min"),
+		MAX("max"),
+		AVG("avg");
+
+		private final String m_sqlName;
+
+		private Function(final String sqlName)
+		{
+			m_sqlName = sqlName;
+		}
+
+		/**
+		 * The SQL name of this function.
+		 */
+		public String getSqlName()
+		{
+			return m_sqlName;
+		}
+	}
+
+	/**
+	 * Passed as the limit to {@link #HistoricalDataQueryPlan(UUID, EpochTimeRange, boolean, int, int, Function[], HistoricalDataColumn[])} to mean no limit.
+	 */
+	public static final int NO_LIMIT = Integer.MAX_VALUE;
+
+	private final UUID m_uuid;
+	private final EpochTimeRange m_range;
+	private final boolean m_ascending;
+	private final int m_offset;
+	private final int m_limit;
+	private final Function[] m_functions;
+	private final HistoricalDataColumn[] m_functionColumns;
+
+	public HistoricalDataQueryPlan(final UUID uuid, final EpochTimeRange range, final boolean ascending, final int offset, final int limit, final Function[] functions, final HistoricalDataColumn[] functionColumns)
+	{
+		m_uuid = uuid != null ? uuid : Uuids.INVALID;
+		m_range = EpochTimeRange.denull(range);
+		m_ascending = ascending;
+		m_offset = Math.max(0, offset);
+		m_limit = Math.max(0, limit);
+		m_functions = functions != null ? functions.clone() : new Function[0];
+		m_functionColumns = functionColumns != null ? functionColumns.clone() : new HistoricalDataColumn[0];
+	}
+
+	public UUID getUuid()
+	{
+		return m_uuid;
+	}
+
+	/**
+	 * The time range the backend is asked for, both ends inclusive.
+	 */
+	public EpochTimeRange getRange()
+	{
+		return m_range;
+	}
+
+	/**
+	 * Whether rows come out oldest first.
+	 */
+	public boolean isAscending()
+	{
+		return m_ascending;
+	}
+
+	public int getOffset()
+	{
+		return m_offset;
+	}
+
+	/**
+	 * The most rows returned, or {@link #NO_LIMIT}.
+	 */
+	public int getLimit()
+	{
+		return m_limit;
+	}
+
+	/**
+	 * Returns <code>true</code> if this plan computes aggregates, in which case it returns a single row.
+	 */
+	public boolean isAggregate()
+	{
+		return m_functions.length > 0;
+	}
+
+	/**
+	 * Equivalent SQL against the given table, as the default {@link Backend_HistoricalDatabase} would understand it.
+	 */
+	public String toSql(final String tableName)
+	{
+		final StringBuilder sql = new StringBuilder("SELECT");
+
+		if( isAggregate() )
+		{
+			for( int i = 0; i < m_functions.length; i++ )
+			{
+				sql.append(i == 0 ? " " : ", ").append(getColumnName(i));
+			}
+		}
+		else
+		{
+			sql.append(" *");
+		}
+
+		sql.append(" FROM ").append(tableName);
+
+		if( !isUnbounded() )
+		{
+			sql.append(" WHERE ").append(HistoricalDataColumn.EPOCH_TIME.getColumnName()).append(" BETWEEN ").append(m_range.from().toMilliseconds()).append(" AND ").append(m_range.to().toMilliseconds());
+		}
+
+		if( !isAggregate() )
+		{
+			sql.append(" ORDER BY ").append(HistoricalDataColumn.EPOCH_TIME.getColumnName()).append(m_ascending ? " ASC" : " DESC");
+		}
+
+		if( m_limit != NO_LIMIT || m_offset > 0 )
+		{
+			sql.append(" LIMIT ").append(m_limit != NO_LIMIT ? m_limit : -1);
+
+			if( m_offset > 0 )
+			{
+				sql.append(" OFFSET ").append(m_offset);
+			}
+		}
+
+		return sql.toString();
+	}
+
+	/**
+	 * Runs this plan against an in-memory list.
+	 */
+	public @Nullable(Nullable.Prevalence.NEVER) Cursor execute(final Backend_HistoricalDataList list, final BleDeviceConfig.HistoricalDataRollupDecoder decoder_nullable)
+	{
+		return execute(list.getCursor(m_range), decoder_nullable);
+	}
+
+	/**
+	 * Runs this plan against a database, for the given MAC address.
+	 */
+	public @Nullable(Nullable.Prevalence.NEVER) Cursor execute(final Backend_HistoricalDatabase database, final String macAddress, final BleDeviceConfig.HistoricalDataRollupDecoder decoder_nullable)
+	{
+		return execute(database.getCursor(macAddress, m_uuid, m_range), decoder_nullable);
+	}
+
+	/**
+	 * Runs this plan against a cursor that's already limited to {@link #getRange()}. The returned cursor takes ownership of the given cursor.
+	 */
+	public @Nullable(Nullable.Prevalence.NEVER) Cursor execute(final HistoricalDataCursor cursor_inRange, final BleDeviceConfig.HistoricalDataRollupDecoder decoder_nullable)
+	{
+		if( !isAggregate() )
+		{
+			final int available = Math.max(0, cursor_inRange.getCount() - m_offset);
+
+			return new P_HistoricalDataQueryCursor(cursor_inRange, getTimeOrder(cursor_inRange), m_ascending, m_offset, Math.min(available, m_limit));
+		}
+
+		final String[] columnNames = new String[m_functions.length];
+		final double[] values = new double[m_functions.length];
+		final boolean[] nulls = new boolean[m_functions.length];
+
+		for( int i = 0; i < m_functions.length; i++ )
+		{
+			columnNames[i] = getColumnName(i);
+
+			values[i] = aggregate(cursor_inRange, m_functions[i], m_functionColumns[i], decoder_nullable);
+			nulls[i] = Double.isNaN(values[i]);
+		}
+
+		cursor_inRange.close();
+
+		//--- An aggregate is always one row, which the offset can skip past.
+		final int rowCount = m_offset == 0 && m_limit > 0 ? 1 : 0;
+
+		return new P_HistoricalDataQueryCursor(columnNames, values, nulls, rowCount);
+	}
+
+	/**
+	 * Returns the source positions of the given cursor's rows sorted oldest first, or <code>null</code> if they're already in that order.
+	 * Rows with the same timestamp keep the order the backend gave them in.
+	 */
+	private static int[] getTimeOrder(final HistoricalDataCursor cursor)
+	{
+		final int count = cursor.getCount();
+		final long[] times = new long[count];
+		boolean sorted = true;
+
+		for( int i = 0; i < count; i++ )
+		{
+			cursor.moveToPosition(i);
+
+			times[i] = cursor.getEpochTime();
+
+			if( i > 0 && times[i] < times[i-1] )
+			{
+				sorted = false;
+			}
+		}
+
+		if( sorted )  return null;
+
+		final Integer[] positions = new Integer[count];
+
+		for( int i = 0; i < count; i++ )
+		{
+			positions[i] = i;
+		}
+
+		//--- Object sort is stable, which is what keeps ties in backend order.
+		Arrays.sort(positions, new Comparator<Integer>()
+		{
+			@Override public int compare(final Integer lhs, final Integer rhs)
+			{
+				final long lhsTime = times[lhs];
+				final long rhsTime = times[rhs];
+
+				return lhsTime < rhsTime ? -1 : (lhsTime > rhsTime ? 1 : 0);
+			}
+		});
+
+		final int[] order = new int[count];
+
+		for( int i = 0; i < count; i++ )
+		{
+			order[i] = positions[i];
+		}
+
+		return order;
+	}
+
+	private boolean isUnbounded()
+	{
+		return m_range.from().toMilliseconds() == Long.MIN_VALUE && m_range.to().toMilliseconds() == Long.MAX_VALUE;
+	}
+
+	private String getColumnName(final int function)
+	{
+		final HistoricalDataColumn column = m_functionColumns[function];
+		final String columnName = column == HistoricalDataColumn.DATA ? "CAST(" + column.getColumnName() + " AS INTEGER)" : column.getColumnName();
+
+		return m_functions[function].getSqlName() + "(" + columnName + ")";
+	}
+
+	/**
+	 * Returns {@link Double#NaN} if there's nothing to aggregate.
+	 */
+	private double aggregate(final HistoricalDataCursor cursor, final Function function, final HistoricalDataColumn column, final BleDeviceConfig.HistoricalDataRollupDecoder decoder_nullable)
+	{
+		if( cursor.getCount() == 0 )  return Double.NaN;
+
+		if( column == HistoricalDataColumn.DATA && decoder_nullable == null )
+		{
+			return Double.NaN;
+		}
+
+		double result = Double.NaN;
+		double sum = 0.0;
+		int count = 0;
+
+		for( boolean valid = cursor.moveToFirst(); valid; valid = cursor.moveToNext() )
+		{
+			final double value = column == HistoricalDataColumn.EPOCH_TIME ? cursor.getEpochTime() : decoder_nullable.decode(m_uuid, cursor.getBlob());
+
+			if( Double.isNaN(value) )  continue;
+
+			if( function == Function.MIN )
+			{
+				result = Double.isNaN(result) ? value : Math.min(result, value);
+			}
+			else if( function == Function.MAX )
+			{
+				result = Double.isNaN(result) ? value : Math.max(result, value);
+			}
+			else
+			{
+				sum += value;
+				count++;
+			}
+		}
+
+		return function == Function.AVG ? (count > 0 ? sum / count : Double.NaN) : result;
+	}
+}
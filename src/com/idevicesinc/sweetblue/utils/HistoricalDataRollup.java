@@ -0,0 +1,87 @@
+package com.idevicesinc.sweetblue.utils;
+
+import com.idevicesinc.sweetblue.annotations.Immutable;
+
+/**
+ * Aggregate (min/max/mean/count) of the numeric values of all {@link HistoricalData} falling within one fixed-width time bucket.
+ * The numeric value of each {@link HistoricalData} comes from {@link com.idevicesinc.sweetblue.BleDeviceConfig#historicalDataRollupDecoder}.
+ *
+ * @see com.idevicesinc.sweetblue.BleDevice#getHistoricalData_rollups(java.util.UUID, EpochTimeRange, Interval)
+ */
+@Immutable
+public class HistoricalDataRollup
+{
+	private final long m_start;
+	private final long m_width;
+	private final double m_min;
+	private final double m_max;
+	private final double m_sum;
+	private final int m_count;
+
+	public HistoricalDataRollup(final long bucketStart_millis, final long bucketWidth_millis, final double min, final double max, final double sum, final int count)
+	{
+		m_start = bucketStart_millis;
+		m_width = bucketWidth_millis;
+		m_min = min;
+		m_max = max;
+		m_sum = sum;
+		m_count = count;
+	}
+
+	/**
+	 * The start of this bucket, inclusive.
+	 */
+	public EpochTime getStart()
+	{
+		return new EpochTime(m_start);
+	}
+
+	/**
+	 * The range of time this bucket covers, both ends inclusive.
+	 */
+	public EpochTimeRange getEpochTimeRange()
+	{
+		return new EpochTimeRange(m_start, m_start + m_width - 1);
+	}
+
+	/**
+	 * The width of this bucket.
+	 */
+	public Interval getResolution()
+	{
+		return Interval.millis(m_width);
+	}
+
+	public double getMin()
+	{
+		return m_min;
+	}
+
+	public double getMax()
+	{
+		return m_max;
+	}
+
+	public double getMean()
+	{
+		return m_count > 0 ? m_sum / m_count : 0.0;
+	}
+
+	public double getSum()
+	{
+		return m_sum;
+	}
+
+	/**
+	 * The number of {@link HistoricalData} that went into this bucket.
+	 */
+	public int getCount()
+	{
+		return m_count;
+	}
+
+	@Override public String toString()
+	{
+		return "start=" + m_start + " min=" + m_min + " max=" + m_max + " mean=" + getMean() + " count=" + m_count;
+	}
+}
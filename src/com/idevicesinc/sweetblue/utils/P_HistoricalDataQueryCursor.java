@@ -0,0 +1,339 @@
+package com.idevicesinc.sweetblue.utils;
+
+import android.content.ContentResolver;
+import android.database.CharArrayBuffer;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.database.DataSetObserver;
+import android.net.Uri;
+import android.os.Bundle;
+
+/**
+ * {@link Cursor} returned by {@link HistoricalDataQueryPlan#execute(HistoricalDataCursor, com.idevicesinc.sweetblue.BleDeviceConfig.HistoricalDataRollupDecoder)}.
+ * Either a window onto a {@link HistoricalDataCursor}, read as the position moves, or a single row of precomputed aggregates.
+ * For the former the source cursor doesn't have to be in time order, in which case it comes with the order to read its rows in.
+ */
+class P_HistoricalDataQueryCursor implements Cursor
+{
+	private static final String[] ROW_COLUMN_NAMES = {HistoricalDataColumn.EPOCH_TIME.getColumnName(), HistoricalDataColumn.DATA.getColumnName()};
+
+	//--- Set for a window onto rows.
+	private final HistoricalDataCursor m_source;
+	private final int[] m_order_nullable;
+	private final boolean m_ascending;
+	private final int m_offset;
+
+	//--- Set for a row of aggregates.
+	private final double[] m_values;
+	private final boolean[] m_nulls;
+
+	private final String[] m_columnNames;
+	private final int m_count;
+
+	private int m_position = -1;
+	private boolean m_isClosed = false;
+
+	P_HistoricalDataQueryCursor(final HistoricalDataCursor source, final int[] order_nullable, final boolean ascending, final int offset, final int count)
+	{
+		m_source = source;
+		m_order_nullable = order_nullable;
+		m_ascending = ascending;
+		m_offset = offset;
+		m_count = count;
+		m_columnNames = ROW_COLUMN_NAMES;
+
+		m_values = null;
+		m_nulls = null;
+	}
+
+	P_HistoricalDataQueryCursor(final String[] columnNames, final double[] values, final boolean[] nulls, final int count)
+	{
+		m_columnNames = columnNames;
+		m_values = values;
+		m_nulls = nulls;
+		m_count = count;
+
+		m_source = null;
+		m_order_nullable = null;
+		m_ascending = true;
+		m_offset = 0;
+	}
+
+	private boolean isRows()
+	{
+		return m_source != null;
+	}
+
+	private boolean isValidPosition()
+	{
+		return !m_isClosed && m_position >= 0 && m_position < m_count;
+	}
+
+	@Override public int getCount()
+	{
+		return m_count;
+	}
+
+	@Override public int getPosition()
+	{
+		return m_position;
+	}
+
+	@Override public boolean move(int offset)
+	{
+		return moveToPosition(m_position + offset);
+	}
+
+	@Override public boolean moveToPosition(int position)
+	{
+		m_position = Math.max(-1, Math.min(m_count, position));
+
+		if( !isValidPosition() )  return false;
+
+		if( isRows() )
+		{
+			final int sortedPosition = m_ascending ? m_offset + m_position : m_source.getCount() - 1 - m_offset - m_position;
+
+			return m_source.moveToPosition(m_order_nullable != null ? m_order_nullable[sortedPosition] : sortedPosition);
+		}
+
+		return true;
+	}
+
+	@Override public boolean moveToFirst()
+	{
+		return moveToPosition(0);
+	}
+
+	@Override public boolean moveToLast()
+	{
+		return moveToPosition(m_count - 1);
+	}
+
+	@Override public boolean moveToNext()
+	{
+		return moveToPosition(m_position + 1);
+	}
+
+	@Override public boolean moveToPrevious()
+	{
+		return moveToPosition(m_position - 1);
+	}
+
+	@Override public boolean isFirst()
+	{
+		return m_count > 0 && m_position == 0;
+	}
+
+	@Override public boolean isLast()
+	{
+		return m_count > 0 && m_position == m_count - 1;
+	}
+
+	@Override public boolean isBeforeFirst()
+	{
+		return m_count == 0 || m_position == -1;
+	}
+
+	@Override public boolean isAfterLast()
+	{
+		return m_count == 0 || m_position == m_count;
+	}
+
+	@Override public int getColumnIndex(String columnName)
+	{
+		for( int i = 0; i < m_columnNames.length; i++ )
+		{
+			if( m_columnNames[i].equals(columnName) )  return i;
+		}
+
+		return -1;
+	}
+
+	@Override public int getColumnIndexOrThrow(String columnName) throws IllegalArgumentException
+	{
+		final int index = getColumnIndex(columnName);
+
+		if( index < 0 )  throw new IllegalArgumentException("No column named " + columnName);
+
+		return index;
+	}
+
+	@Override public String getColumnName(int columnIndex)
+	{
+		return m_columnNames[columnIndex];
+	}
+
+	@Override public String[] getColumnNames()
+	{
+		return m_columnNames.clone();
+	}
+
+	@Override public int getColumnCount()
+	{
+		return m_columnNames.length;
+	}
+
+	private boolean isDataColumn(final int columnIndex)
+	{
+		return isRows() && columnIndex == HistoricalDataColumn.DATA.getColumnIndex();
+	}
+
+	@Override public byte[] getBlob(int columnIndex)
+	{
+		if( !isValidPosition() || !isDataColumn(columnIndex) )  return new byte[0];
+
+		return m_source.getBlob();
+	}
+
+	@Override public String getString(int columnIndex)
+	{
+		if( !isValidPosition() || isNull(columnIndex) )  return null;
+
+		if( isRows() )
+		{
+			return isDataColumn(columnIndex) ? Utils.getStringValue(m_source.getBlob()) : String.valueOf(m_source.getEpochTime());
+		}
+
+		return String.valueOf(m_values[columnIndex]);
+	}
+
+	@Override public void copyStringToBuffer(int columnIndex, CharArrayBuffer buffer)
+	{
+		final String string = getString(columnIndex);
+		final char[] chars = string != null ? string.toCharArray() : new char[0];
+
+		if( buffer.data == null || buffer.data.length < chars.length )
+		{
+			buffer.data = chars;
+		}
+		else
+		{
+			System.arraycopy(chars, 0, buffer.data, 0, chars.length);
+		}
+
+		buffer.sizeCopied = chars.length;
+	}
+
+	@Override public short getShort(int columnIndex)
+	{
+		return (short) getLong(columnIndex);
+	}
+
+	@Override public int getInt(int columnIndex)
+	{
+		return (int) getLong(columnIndex);
+	}
+
+	@Override public long getLong(int columnIndex)
+	{
+		if( !isValidPosition() || isNull(columnIndex) )  return 0;
+
+		if( isRows() )
+		{
+			return isDataColumn(columnIndex) ? 0 : m_source.getEpochTime();
+		}
+
+		return (long) m_values[columnIndex];
+	}
+
+	@Override public float getFloat(int columnIndex)
+	{
+		return (float) getDouble(columnIndex);
+	}
+
+	@Override public double getDouble(int columnIndex)
+	{
+		if( !isValidPosition() || isNull(columnIndex) )  return 0.0;
+
+		if( isRows() )
+		{
+			return getLong(columnIndex);
+		}
+
+		return m_values[columnIndex];
+	}
+
+	@Override public int getType(int columnIndex)
+	{
+		if( isNull(columnIndex) )  return FIELD_TYPE_NULL;
+
+		if( isRows() )
+		{
+			return isDataColumn(columnIndex) ? FIELD_TYPE_BLOB : FIELD_TYPE_INTEGER;
+		}
+
+		return FIELD_TYPE_FLOAT;
+	}
+
+	@Override public boolean isNull(int columnIndex)
+	{
+		return !isRows() && m_nulls[columnIndex];
+	}
+
+	@Override public void deactivate()
+	{
+	}
+
+	@Override public boolean requery()
+	{
+		return false;
+	}
+
+	@Override public void close()
+	{
+		if( m_isClosed )  return;
+
+		m_isClosed = true;
+
+		if( m_source != null )
+		{
+			m_source.close();
+		}
+	}
+
+	@Override public boolean isClosed()
+	{
+		return m_isClosed;
+	}
+
+	@Override public void registerContentObserver(ContentObserver observer)
+	{
+	}
+
+	@Override public void unregisterContentObserver(ContentObserver observer)
+	{
+	}
+
+	@Override public void registerDataSetObserver(DataSetObserver observer)
+	{
+	}
+
+	@Override public void unregisterDataSetObserver(DataSetObserver observer)
+	{
+	}
+
+	@Override public void setNotificationUri(ContentResolver cr, Uri uri)
+	{
+	}
+
+	@Override public Uri getNotificationUri()
+	{
+		return Uri.EMPTY;
+	}
+
+	@Override public boolean getWantsAllOnMoveCalls()
+	{
+		return false;
+	}
+
+	@Override public Bundle getExtras()
+	{
+		return null;
+	}
+
+	@Override public Bundle respond(Bundle extras)
+	{
+		return null;
+	}
+}
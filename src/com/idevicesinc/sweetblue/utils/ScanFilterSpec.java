@@ -0,0 +1,221 @@
+package com.idevicesinc.sweetblue.utils;
+
+import com.idevicesinc.sweetblue.annotations.Immutable;
+import com.idevicesinc.sweetblue.annotations.Nullable;
+import com.idevicesinc.sweetblue.annotations.Nullable.Prevalence;
+
+import java.util.Locale;
+import java.util.UUID;
+
+/**
+ * Declarative description of devices to scan for, given to {@link com.idevicesinc.sweetblue.BleManagerConfig#scanFilterSpecs}.
+ * Unlike {@link com.idevicesinc.sweetblue.BleManagerConfig.ScanFilter}, which can only look at advertisements once they've reached the app,
+ * on Lollipop and up most of a spec can be handed down to the Bluetooth stack as an {@link android.bluetooth.le.ScanFilter}, which
+ * on many phones is evaluated by the Bluetooth chip itself, so advertisements that don't match never wake the CPU.
+ * <br><br>
+ * Every criterion set on a spec has to match. Start from {@link #ANY} and narrow it down with the <code>with*</code> methods.
+ * Name prefixes and MAC address ranges other than a single address can't be offloaded, so those are only checked in software,
+ * as is everything on phones without offload support.
+ */
+@Immutable
+public class ScanFilterSpec
+{
+	/**
+	 * A spec that matches every device.
+	 */
+	public static final ScanFilterSpec ANY = new ScanFilterSpec(null, null, -1, null, null, null, null);
+
+	private final UUID m_serviceUuid;
+	private final String m_namePrefix;
+	private final int m_manufacturerId;
+	private final byte[] m_manufacturerData;
+	private final byte[] m_manufacturerDataMask;
+	private final String m_macAddress_from;
+	private final String m_macAddress_to;
+
+	private ScanFilterSpec(final UUID serviceUuid, final String namePrefix, final int manufacturerId, final byte[] manufacturerData, final byte[] manufacturerDataMask, final String macAddress_from, final String macAddress_to)
+	{
+		m_serviceUuid = serviceUuid;
+		m_namePrefix = namePrefix;
+		m_manufacturerId = manufacturerId;
+		m_manufacturerData = manufacturerData;
+		m_manufacturerDataMask = manufacturerDataMask;
+		m_macAddress_from = macAddress_from;
+		m_macAddress_to = macAddress_to;
+	}
+
+	/**
+	 * Returns a copy of this spec that only matches devices advertising the given service.
+	 */
+	public ScanFilterSpec withServiceUuid(final UUID serviceUuid)
+	{
+		return new ScanFilterSpec(serviceUuid, m_namePrefix, m_manufacturerId, m_manufacturerData, m_manufacturerDataMask, m_macAddress_from, m_macAddress_to);
+	}
+
+	/**
+	 * Returns a copy of this spec that only matches devices whose native name starts with the given prefix. Only checked in software.
+	 */
+	public ScanFilterSpec withNamePrefix(final String namePrefix)
+	{
+		return new ScanFilterSpec(m_serviceUuid, namePrefix, m_manufacturerId, m_manufacturerData, m_manufacturerDataMask, m_macAddress_from, m_macAddress_to);
+	}
+
+	/**
+	 * Returns a copy of this spec that only matches devices advertising manufacturer specific data for the given company identifier.
+	 */
+	public ScanFilterSpec withManufacturerId(final int manufacturerId)
+	{
+		return withManufacturerData(manufacturerId, null, null);
+	}
+
+	/**
+	 * Same as {@link #withManufacturerId(int)} but the data following the company identifier also has to start with the given bytes,
+	 * comparing only the bits set in the mask if one is given. The mask has to be the same length as the data.
+	 */
+	public ScanFilterSpec withManufacturerData(final int manufacturerId, @Nullable(Prevalence.NORMAL) final byte[] data_nullable, @Nullable(Prevalence.NORMAL) final byte[] mask_nullable)
+	{
+		if( mask_nullable != null && (data_nullable == null || mask_nullable.length != data_nullable.length) )
+		{
+			throw new IllegalArgumentException("Manufacturer data mask has to be the same length as the data.");
+		}
+
+		final byte[] data = data_nullable != null ? data_nullable.clone() : null;
+		final byte[] mask = mask_nullable != null ? mask_nullable.clone() : null;
+
+		return new ScanFilterSpec(m_serviceUuid, m_namePrefix, manufacturerId, data, mask, m_macAddress_from, m_macAddress_to);
+	}
+
+	/**
+	 * Returns a copy of this spec that only matches the device with the given MAC address.
+	 */
+	public ScanFilterSpec withMacAddress(final String macAddress)
+	{
+		return withMacAddressRange(macAddress, macAddress);
+	}
+
+	/**
+	 * Returns a copy of this spec that only matches devices with a MAC address from <code>from</code> to <code>to</code>, inclusive.
+	 * Only offloaded if both are the same address.
+	 */
+	public ScanFilterSpec withMacAddressRange(final String from, final String to)
+	{
+		if( from == null || to == null )
+		{
+			throw new IllegalArgumentException("MAC address range needs both ends.");
+		}
+
+		return new ScanFilterSpec(m_serviceUuid, m_namePrefix, m_manufacturerId, m_manufacturerData, m_manufacturerDataMask, from.toUpperCase(Locale.US), to.toUpperCase(Locale.US));
+	}
+
+	@Nullable(Prevalence.NORMAL) public UUID getServiceUuid()
+	{
+		return m_serviceUuid;
+	}
+
+	@Nullable(Prevalence.NORMAL) public String getNamePrefix()
+	{
+		return m_namePrefix;
+	}
+
+	/**
+	 * Returns the company identifier to match, or -1 if there isn't one.
+	 */
+	public int getManufacturerId()
+	{
+		return m_manufacturerId;
+	}
+
+	@Nullable(Prevalence.NORMAL) public byte[] getManufacturerData()
+	{
+		return m_manufacturerData != null ? m_manufacturerData.clone() : null;
+	}
+
+	@Nullable(Prevalence.NORMAL) public byte[] getManufacturerDataMask()
+	{
+		return m_manufacturerDataMask != null ? m_manufacturerDataMask.clone() : null;
+	}
+
+	/**
+	 * Returns the single MAC address this spec is restricted to, or <code>null</code> if it isn't restricted to one.
+	 */
+	@Nullable(Prevalence.NORMAL) public String getMacAddress()
+	{
+		return m_macAddress_from != null && m_macAddress_from.equals(m_macAddress_to) ? m_macAddress_from : null;
+	}
+
+	/**
+	 * Whether a discovered device matches every criterion of this spec.
+	 */
+	public boolean matches(final String macAddress, @Nullable(Prevalence.NORMAL) final String name_native, @Nullable(Prevalence.NORMAL) final byte[] scanRecord)
+	{
+		return matches(macAddress, name_native, new ScanRecordView(scanRecord));
+	}
+
+	/**
+	 * Same as {@link #matches(String, String, byte[])} but reuses a {@link ScanRecordView} that's already been created.
+	 */
+	public boolean matches(final String macAddress, @Nullable(Prevalence.NORMAL) final String name_native, final ScanRecordView scanRecord)
+	{
+		if( m_serviceUuid != null && !scanRecord.getServiceUuids().contains(m_serviceUuid) )  return false;
+
+		if( m_namePrefix != null && (name_native == null || !name_native.startsWith(m_namePrefix)) )  return false;
+
+		if( m_macAddress_from != null )
+		{
+			final long address = macAddressToLong(macAddress);
+
+			if( address < macAddressToLong(m_macAddress_from) || address > macAddressToLong(m_macAddress_to) )  return false;
+		}
+
+		if( m_manufacturerId >= 0 )
+		{
+			final byte[] data = scanRecord.getManufacturerData(m_manufacturerId);
+
+			if( data == null )  return false;
+
+			if( m_manufacturerData != null )
+			{
+				if( data.length < m_manufacturerData.length )  return false;
+
+				for( int i = 0; i < m_manufacturerData.length; i++ )
+				{
+					final int mask = m_manufacturerDataMask != null ? m_manufacturerDataMask[i] : 0xFF;
+
+					if( (data[i] & mask) != (m_manufacturerData[i] & mask) )  return false;
+				}
+			}
+		}
+
+		return true;
+	}
+
+	private static long macAddressToLong(final String macAddress)
+	{
+		long value = 0;
+
+		for( int i = 0; i < macAddress.length(); i++ )
+		{
+			final int digit = Character.digit(macAddress.charAt(i), 16);
+
+			if( digit >= 0 )
+			{
+				value = (value << 4) | digit;
+			}
+		}
+
+		return value;
+	}
+
+	@Override public String toString()
+	{
+		return Utils.toString
+		(
+			this.getClass(),
+			"serviceUuid",		m_serviceUuid,
+			"namePrefix",		m_namePrefix,
+			"manufacturerId",	m_manufacturerId,
+			"macAddress_from",	m_macAddress_from,
+			"macAddress_to",	m_macAddress_to
+		);
+	}
+}
@@ -0,0 +1,342 @@
+package com.idevicesinc.sweetblue.utils;
+
+import com.idevicesinc.sweetblue.annotations.Nullable;
+import com.idevicesinc.sweetblue.annotations.Nullable.Prevalence;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Read-only view onto a raw scan record. The advertising data structures in it are indexed in one pass when the view is created
+ * or {@link #reset(byte[])}, without copying anything, and each kind of data is only decoded when it's first asked for.
+ * The given <code>byte[]</code> is referenced directly, so it shouldn't be changed while the view is in use.
+ * <br><br>
+ * Instances are not thread-safe, but one can be reused for many scan records through {@link #reset(byte[])} to cut down on allocations.
+ */
+public class ScanRecordView
+{
+	public static final int TYPE_FLAGS							= 0x01;
+	public static final int TYPE_SERVICE_UUIDS_16_PARTIAL		= 0x02;
+	public static final int TYPE_SERVICE_UUIDS_16_COMPLETE		= 0x03;
+	public static final int TYPE_SERVICE_UUIDS_32_PARTIAL		= 0x04;
+	public static final int TYPE_SERVICE_UUIDS_32_COMPLETE		= 0x05;
+	public static final int TYPE_SERVICE_UUIDS_128_PARTIAL		= 0x06;
+	public static final int TYPE_SERVICE_UUIDS_128_COMPLETE		= 0x07;
+	public static final int TYPE_LOCAL_NAME_SHORT				= 0x08;
+	public static final int TYPE_LOCAL_NAME_COMPLETE			= 0x09;
+	public static final int TYPE_TX_POWER_LEVEL					= 0x0A;
+	public static final int TYPE_SERVICE_DATA_16				= 0x16;
+	public static final int TYPE_SERVICE_DATA_32				= 0x20;
+	public static final int TYPE_SERVICE_DATA_128				= 0x21;
+	public static final int TYPE_MANUFACTURER_DATA				= 0xFF;
+
+	/**
+	 * Returned by {@link #getFlags()} and {@link #getTxPowerLevel()} when the scan record doesn't have them.
+	 */
+	public static final int NOT_PRESENT = Integer.MIN_VALUE;
+
+	private static final byte[] EMPTY_BYTE_ARRAY = new byte[0];
+
+	//--- Most significant bits of the Bluetooth base UUID, 0000xxxx-0000-1000-8000-00805F9B34FB, without the 16 or 32 bit value.
+	private static final long BASE_UUID_MSB = 0x0000000000001000L;
+	private static final long BASE_UUID_LSB = 0x800000805F9B34FBL;
+
+	//--- Adopted services (0x18xx) and member services (0xFDxx-0xFFxx) make up nearly all 16 bit UUIDs seen in advertisements.
+	private static final int CACHE_ADOPTED_START = 0x1800;
+	private static final int CACHE_MEMBER_START = 0xFD00;
+	private static final UUID[] s_uuidCache = new UUID[0x100 + 0x300];
+
+	private byte[] m_record;
+
+	//--- Type, offset of the data following the type, and length of that data, for each structure in the record.
+	private int[] m_types = new int[8];
+	private int[] m_offsets = new int[8];
+	private int[] m_lengths = new int[8];
+	private int m_count;
+
+	private List<UUID> m_serviceUuids;
+	private String m_localName;
+
+	public ScanRecordView(@Nullable(Prevalence.NORMAL) final byte[] scanRecord_nullable)
+	{
+		reset(scanRecord_nullable);
+	}
+
+	/**
+	 * Points this view at a different scan record.
+	 */
+	public void reset(@Nullable(Prevalence.NORMAL) final byte[] scanRecord_nullable)
+	{
+		m_record = scanRecord_nullable != null ? scanRecord_nullable : EMPTY_BYTE_ARRAY;
+		m_count = 0;
+		m_serviceUuids = null;
+		m_localName = null;
+
+		int offset = 0;
+
+		while( offset < m_record.length )
+		{
+			final int length = m_record[offset] & 0xFF;
+
+			//--- A zero length marks the start of padding, and anything running past the end is malformed.
+			if( length == 0 || offset + 1 + length > m_record.length )  break;
+
+			if( m_count == m_types.length )
+			{
+				m_types = grow(m_types);
+				m_offsets = grow(m_offsets);
+				m_lengths = grow(m_lengths);
+			}
+
+			m_types[m_count] = m_record[offset + 1] & 0xFF;
+			m_offsets[m_count] = offset + 2;
+			m_lengths[m_count] = length - 1;
+			m_count++;
+
+			offset += 1 + length;
+		}
+	}
+
+	private static int[] grow(final int[] array)
+	{
+		final int[] grown = new int[array.length * 2];
+
+		System.arraycopy(array, 0, grown, 0, array.length);
+
+		return grown;
+	}
+
+	/**
+	 * Returns the raw scan record this view is looking at, never <code>null</code>.
+	 */
+	public byte[] getBytes()
+	{
+		return m_record;
+	}
+
+	/**
+	 * Returns the number of advertising data structures in the scan record.
+	 */
+	public int getStructureCount()
+	{
+		return m_count;
+	}
+
+	/**
+	 * Whether there's at least one advertising data structure of the given type, for example {@link #TYPE_SERVICE_DATA_16}.
+	 */
+	public boolean has(final int type)
+	{
+		return indexOf(type, 0) != -1;
+	}
+
+	/**
+	 * Returns the flags, or {@link #NOT_PRESENT}.
+	 */
+	public int getFlags()
+	{
+		final int index = indexOf(TYPE_FLAGS, 0);
+
+		return index != -1 && m_lengths[index] > 0 ? m_record[m_offsets[index]] & 0xFF : NOT_PRESENT;
+	}
+
+	/**
+	 * Returns the advertised transmit power in dBm, or {@link #NOT_PRESENT}.
+	 */
+	public int getTxPowerLevel()
+	{
+		final int index = indexOf(TYPE_TX_POWER_LEVEL, 0);
+
+		return index != -1 && m_lengths[index] > 0 ? m_record[m_offsets[index]] : NOT_PRESENT;
+	}
+
+	/**
+	 * Returns the complete local name, or the shortened one if that's all there is, or <code>null</code>.
+	 */
+	@Nullable(Prevalence.NORMAL) public String getLocalName()
+	{
+		if( m_localName == null )
+		{
+			int index = indexOf(TYPE_LOCAL_NAME_COMPLETE, 0);
+			index = index != -1 ? index : indexOf(TYPE_LOCAL_NAME_SHORT, 0);
+
+			if( index != -1 )
+			{
+				m_localName = Utils.getStringValue(Utils.subBytes(m_record, m_offsets[index], m_offsets[index] + m_lengths[index]));
+			}
+		}
+
+		return m_localName;
+	}
+
+	/**
+	 * Returns all advertised service {@link UUID}s, whether 16, 32, or 128 bit, in the order they appear. The list can't be modified.
+	 */
+	public List<UUID> getServiceUuids()
+	{
+		if( m_serviceUuids == null )
+		{
+			ArrayList<UUID> uuids = null;
+
+			for( int i = 0; i < m_count; i++ )
+			{
+				final int size = getUuidSize(m_types[i]);
+
+				if( size == 0 )  continue;
+
+				uuids = uuids != null ? uuids : new ArrayList<UUID>();
+
+				for( int offset = m_offsets[i]; offset + size <= m_offsets[i] + m_lengths[i]; offset += size )
+				{
+					uuids.add(readUuid(m_record, offset, size));
+				}
+			}
+
+			m_serviceUuids = uuids != null ? Collections.unmodifiableList(uuids) : Collections.<UUID>emptyList();
+		}
+
+		return m_serviceUuids;
+	}
+
+	/**
+	 * Returns the manufacturer specific data for the given company identifier, not including the identifier itself, or <code>null</code>.
+	 */
+	@Nullable(Prevalence.NORMAL) public byte[] getManufacturerData(final int manufacturerId)
+	{
+		for( int i = indexOf(TYPE_MANUFACTURER_DATA, 0); i != -1; i = indexOf(TYPE_MANUFACTURER_DATA, i + 1) )
+		{
+			final int offset = m_offsets[i];
+
+			if( m_lengths[i] < 2 )  continue;
+
+			//--- Company identifiers are little endian.
+			if( ((m_record[offset] & 0xFF) | ((m_record[offset + 1] & 0xFF) << 8)) == manufacturerId )
+			{
+				return Utils.subBytes(m_record, offset + 2, offset + m_lengths[i]);
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Returns the service data for the given service, not including the {@link UUID} itself, or <code>null</code>.
+	 */
+	@Nullable(Prevalence.NORMAL) public byte[] getServiceData(final UUID serviceUuid)
+	{
+		for( int i = 0; i < m_count; i++ )
+		{
+			final int size = getServiceDataUuidSize(m_types[i]);
+
+			if( size == 0 || m_lengths[i] < size )  continue;
+
+			if( serviceUuid.equals(readUuid(m_record, m_offsets[i], size)) )
+			{
+				return Utils.subBytes(m_record, m_offsets[i] + size, m_offsets[i] + m_lengths[i]);
+			}
+		}
+
+		return null;
+	}
+
+	private int indexOf(final int type, final int from)
+	{
+		for( int i = from; i < m_count; i++ )
+		{
+			if( m_types[i] == type )  return i;
+		}
+
+		return -1;
+	}
+
+	private static int getUuidSize(final int type)
+	{
+		switch( type )
+		{
+			case TYPE_SERVICE_UUIDS_16_PARTIAL:
+			case TYPE_SERVICE_UUIDS_16_COMPLETE:		return 2;
+			case TYPE_SERVICE_UUIDS_32_PARTIAL:
+			case TYPE_SERVICE_UUIDS_32_COMPLETE:		return 4;
+			case TYPE_SERVICE_UUIDS_128_PARTIAL:
+			case TYPE_SERVICE_UUIDS_128_COMPLETE:		return 16;
+			default:									return 0;
+		}
+	}
+
+	private static int getServiceDataUuidSize(final int type)
+	{
+		switch( type )
+		{
+			case TYPE_SERVICE_DATA_16:		return 2;
+			case TYPE_SERVICE_DATA_32:		return 4;
+			case TYPE_SERVICE_DATA_128:		return 16;
+			default:						return 0;
+		}
+	}
+
+	private static UUID readUuid(final byte[] record, final int offset, final int size)
+	{
+		if( size == 16 )
+		{
+			//--- Little endian over the air, so the last eight bytes are the most significant.
+			long msb = 0;
+			long lsb = 0;
+
+			for( int i = 15; i >= 8; i-- )
+			{
+				msb = (msb << 8) | (record[offset + i] & 0xFF);
+			}
+
+			for( int i = 7; i >= 0; i-- )
+			{
+				lsb = (lsb << 8) | (record[offset + i] & 0xFF);
+			}
+
+			return new UUID(msb, lsb);
+		}
+
+		long value = 0;
+
+		for( int i = size - 1; i >= 0; i-- )
+		{
+			value = (value << 8) | (record[offset + i] & 0xFF);
+		}
+
+		return size == 2 ? fromShortUuid((int) value) : new UUID(BASE_UUID_MSB | (value << 32), BASE_UUID_LSB);
+	}
+
+	/**
+	 * Returns the full {@link UUID} for a 16 bit UUID, reusing the same instance for commonly advertised ones.
+	 */
+	public static UUID fromShortUuid(final int uuid16)
+	{
+		final int cacheIndex;
+
+		if( uuid16 >= CACHE_ADOPTED_START && uuid16 < CACHE_ADOPTED_START + 0x100 )
+		{
+			cacheIndex = uuid16 - CACHE_ADOPTED_START;
+		}
+		else if( uuid16 >= CACHE_MEMBER_START && uuid16 <= 0xFFFF )
+		{
+			cacheIndex = 0x100 + uuid16 - CACHE_MEMBER_START;
+		}
+		else
+		{
+			return new UUID(BASE_UUID_MSB | ((long) uuid16 << 32), BASE_UUID_LSB);
+		}
+
+		//--- Racing threads at worst create equal instances, which is harmless since UUIDs are immutable.
+		UUID uuid = s_uuidCache[cacheIndex];
+
+		if( uuid == null )
+		{
+			uuid = new UUID(BASE_UUID_MSB | ((long) uuid16 << 32), BASE_UUID_LSB);
+
+			s_uuidCache[cacheIndex] = uuid;
+		}
+
+		return uuid;
+	}
+}
@@ -3,6 +3,7 @@ package com.idevicesinc.sweetblue.utils;
 import com.idevicesinc.sweetblue.annotations.Lambda;
 
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.Looper;
 
 /**
@@ -10,6 +11,7 @@ import android.os.Looper;
  */
 public class UpdateLoop
 {
+
 	/**
 	 * A callback where you handle the update time step.
 	 */
@@ -21,6 +23,19 @@ public class UpdateLoop
 		 */
 		void onUpdate(double timestep);
 	}
+
+	/**
+	 * Optionally passed to {@link UpdateLoop#start(double, double, DeadlineProvider)} so the loop can sleep when there's nothing to do.
+	 */
+	@Lambda
+	public static interface DeadlineProvider
+	{
+		/**
+		 * Returns the amount of time in seconds until the next update is actually needed. Return zero or less to keep
+		 * ticking at the normal update rate, or {@link Double#POSITIVE_INFINITY} if nothing is scheduled.
+		 */
+		double getTimeToNextUpdate();
+	}
 	
 	private final Runnable m_autoUpdateRunnable = new Runnable()
 	{
@@ -30,7 +45,7 @@ public class UpdateLoop
 			double timeStep = ((double) currentTime - m_lastAutoUpdateTime)/1000.0;
 			
 			timeStep = timeStep <= 0.0 ? .00001 : timeStep;
-			timeStep = timeStep > 1.0 ? 1.0 : timeStep;
+			timeStep = timeStep > m_maxTimeStep ? m_maxTimeStep : timeStep;
 			
 			m_callback.onUpdate(timeStep);
 			
@@ -40,17 +55,39 @@ public class UpdateLoop
 		}
 	};
 	
-	private boolean m_isRunning = false;
+	private final Runnable m_wakeRunnable = new Runnable()
+	{
+		@Override public void run()
+		{
+			wake_loopThread();
+		}
+	};
+	
+	private volatile boolean m_isRunning = false;
 	private long m_lastAutoUpdateTime = 0;
 	private long m_autoUpdateRate = 0;
-	private Handler m_handler;
+	private long m_maxIdleRate = 0;
+	private double m_maxTimeStep = 1.0;
+	private DeadlineProvider m_deadlineProvider = null;
 	private final Callback m_callback;
+
+	//--- Created lazily for non-main-thread loops. Volatile so a fully constructed instance is visible to every thread that posts.
+	private volatile Handler m_handler;
+
+	//--- Written by any thread posting to the loop, read by the loop thread to decide if it's safe to idle.
+	private volatile boolean m_isIdling = false;
+	private volatile int m_postCount = 0;
+	private int m_postCount_lastUpdate = 0;
 	
 	public static UpdateLoop newMainThreadLoop(Callback callback)
 	{
 		return new UpdateLoop(callback, true);
 	}
 	
+	/**
+	 * Returns a loop that runs on its own dedicated thread. The thread isn't actually created until the loop is first
+	 * started or posted to.
+	 */
 	public static UpdateLoop newAnonThreadLoop(Callback callback)
 	{
 		return new UpdateLoop(callback, false);
@@ -58,20 +95,24 @@ public class UpdateLoop
 
 	public static UpdateLoop newAnonThreadLoop()
 	{
-		return new UpdateLoop(new Callback()
-		{
-			@Override public void onUpdate(double timestep)
-			{
-
-			}
-		}, false);
+		return newAnonThreadLoop(new EmptyCallback());
 	}
-	
+
 	private UpdateLoop(Callback callback, boolean runOnMainThread)
 	{
 		m_callback = callback;
 		
-		initHandler(runOnMainThread);
+		if( runOnMainThread )
+		{
+			m_handler = new Handler(Looper.getMainLooper());
+		}
+	}
+
+	private static class EmptyCallback implements Callback
+	{
+		@Override public void onUpdate(double timestep)
+		{
+		}
 	}
 	
 	public boolean isRunning()
@@ -79,31 +120,26 @@ public class UpdateLoop
 		return m_isRunning;
 	}
 	
-	private void initHandler(boolean runOnMainThread)
+	private Handler getHandler()
 	{
-		if( runOnMainThread )
-		{
-			m_handler = new Handler(Looper.getMainLooper());
-		}
-		else
+		final Handler handler = m_handler;
+
+		if( handler != null )  return handler;
+
+		synchronized(this)
 		{
-			final Thread thread = new Thread()
+			if( m_handler == null )
 			{
-				@Override public void run()
-				{
-					Looper.prepare();
-					m_handler = new Handler(Looper.myLooper());
-					
-					if( m_isRunning )
-					{
-						postUpdate();
-					}
-					
-					Looper.loop();
-				}
-			};
-			
-			thread.start();
+				//--- HandlerThread.getLooper() blocks until the looper is ready, with proper synchronization,
+				//---	so unlike a spin on a non-volatile field this both sleeps and is guaranteed to see the looper.
+				final HandlerThread thread = new HandlerThread("SweetBlue UpdateLoop");
+
+				thread.start();
+
+				m_handler = new Handler(thread.getLooper());
+			}
+
+			return m_handler;
 		}
 	}
 	
@@ -111,11 +147,66 @@ public class UpdateLoop
 	{
 		if( m_handler != null )
 		{
-			m_handler.postDelayed(m_autoUpdateRunnable, m_autoUpdateRate);
+			m_handler.postDelayed(m_autoUpdateRunnable, getNextDelay());
 		}
 	}
+
+	private long getNextDelay()
+	{
+		if( m_deadlineProvider == null || m_maxIdleRate <= m_autoUpdateRate || m_handler.getLooper().getThread() != Thread.currentThread() )
+		{
+			m_isIdling = false;
+
+			return m_autoUpdateRate;
+		}
+
+		//--- Set provisionally before checking the post count so that any thread posting from here on will also wake us up.
+		m_isIdling = true;
+
+		final int postCount = m_postCount;
+		final boolean postedSinceLastUpdate = postCount != m_postCount_lastUpdate;
+		m_postCount_lastUpdate = postCount;
+
+		if( postedSinceLastUpdate )
+		{
+			//--- Something came in from another thread that we haven't seen the effects of yet, so check back soon.
+			m_isIdling = false;
+
+			return m_autoUpdateRate;
+		}
+
+		final double timeToNextUpdate = m_deadlineProvider.getTimeToNextUpdate();
+		final long delay;
+
+		if( timeToNextUpdate <= 0.0 )
+		{
+			delay = m_autoUpdateRate;
+		}
+		else if( timeToNextUpdate * 1000 >= m_maxIdleRate )
+		{
+			delay = m_maxIdleRate;
+		}
+		else
+		{
+			delay = Math.max(m_autoUpdateRate, (long) (timeToNextUpdate * 1000));
+		}
+
+		m_isIdling = delay > m_autoUpdateRate;
+
+		return delay;
+	}
 	
 	public void start(double updateRate)
+	{
+		start(updateRate, 0.0, null);
+	}
+
+	/**
+	 * Same as {@link #start(double)} but the loop will sleep for up to <code>maxIdleRate</code> seconds at a time,
+	 * based on what the given {@link DeadlineProvider} says, instead of ticking at <code>updateRate</code> forever.
+	 * Posting to the loop from another thread or calling {@link #wake()} cuts the sleep short.
+	 */
+	public void start(double updateRate, double maxIdleRate, DeadlineProvider deadlineProvider_nullable)
 	{
 		if( updateRate == 0.0 )  return;
 		
@@ -127,10 +218,42 @@ public class UpdateLoop
 		m_isRunning = true;
 		
 		m_autoUpdateRate = (long) (updateRate * 1000);
+		m_maxIdleRate = deadlineProvider_nullable != null ? (long) (maxIdleRate * 1000) : 0;
+		m_maxTimeStep = Math.max(1.0, deadlineProvider_nullable != null ? maxIdleRate : 0.0);
+		m_deadlineProvider = deadlineProvider_nullable;
 		m_lastAutoUpdateTime = System.currentTimeMillis();
+
+		getHandler();
 		
 		postUpdate();
 	}
+
+	/**
+	 * If the loop is currently sleeping because of a {@link DeadlineProvider}, this makes it tick as soon as possible
+	 * so it can re-evaluate. Safe to call from any thread.
+	 */
+	public void wake()
+	{
+		if( !m_isIdling || m_handler == null )  return;
+
+		if( postNeeded() )
+		{
+			m_handler.post(m_wakeRunnable);
+		}
+		else
+		{
+			wake_loopThread();
+		}
+	}
+
+	private void wake_loopThread()
+	{
+		if( !m_isRunning || !m_isIdling )  return;
+
+		m_isIdling = false;
+		m_handler.removeCallbacks(m_autoUpdateRunnable);
+		m_handler.post(m_autoUpdateRunnable);
+	}
 	
 	public void stop()
 	{
@@ -142,38 +265,47 @@ public class UpdateLoop
 		}
 		
 		m_isRunning = false;
+		m_isIdling = false;
 	}
 	
-	private void waitForHandler()
+	public void forcePost(Runnable runnable)
 	{
-		//--- DRK > This can technically take a little time to initialize after 
-		//---		this class is constructed so wait for it if needed.
-		while(m_handler == null) {}
+		getHandler().postDelayed(runnable, 1);
+
+		onPostedFromAnywhere();
 	}
-	
-	public void forcePost(Runnable runnable)
+
+	private void onPostedFromAnywhere()
 	{
-		waitForHandler();
-		
-		m_handler.postDelayed(runnable, 1);
+		m_postCount++;
+
+		if( m_isIdling )
+		{
+			wake();
+		}
 	}
 
 	public boolean postNeeded()
 	{
-		return m_handler.getLooper().getThread() != Thread.currentThread();
+		final Handler handler = m_handler;
+
+		//--- If the thread hasn't been created yet we can't possibly be on it.
+		if( handler == null )  return true;
+
+		return handler.getLooper().getThread() != Thread.currentThread();
 	}
 	
 	public void postIfNeeded(Runnable runnable)
 	{
-		waitForHandler();
-		
 		if( false == postNeeded() )
 		{
 			runnable.run();
 		}
 		else
 		{
-			m_handler.post(runnable);
+			getHandler().post(runnable);
+
+			onPostedFromAnywhere();
 		}
 	}
 }
@@ -0,0 +1,115 @@
+package com.idevicesinc.sweetblue;
+
+
+import android.app.Activity;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+//--- Lives next to the main package rather than in tests/ since the scheduler and task queue are package-private.
+@Config(manifest = Config.NONE)
+@RunWith(RobolectricTestRunner.class)
+public class ConnectSchedulerTest {
+
+    BleManager mgr;
+
+    @Before
+    public void setup() {
+        Activity activity = Robolectric.buildActivity(Activity.class).create().get();
+        mgr = BleManager.get(activity);
+    }
+
+    private BleDevice newDevice(int index, int rssi) {
+        BleDevice device = mgr.newDevice(String.format("00:00:00:00:00:%02X", index));
+        device.updateRssi(rssi);
+
+        return device;
+    }
+
+    @Test
+    public void ordersByFailuresThenRssiThenLastFailure() {
+        BleDevice failedTwice = newDevice(1, -40);
+        BleDevice failedOnce = newDevice(2, -40);
+        BleDevice weak = newDevice(3, -90);
+        BleDevice strong = newDevice(4, -40);
+        BleDevice noRssi = newDevice(5, 0);
+        BleDevice strongFailedLongAgo = newDevice(6, -40);
+
+        failedTwice.getConnectionFailManager().onFailureCounted(100);
+        failedTwice.getConnectionFailManager().onFailureCounted(200);
+        failedOnce.getConnectionFailManager().onFailureCounted(100);
+
+        //--- Failed before, but has since connected, which only leaves the time behind as a tie breaker.
+        strongFailedLongAgo.getConnectionFailManager().onFailureCounted(50);
+        strongFailedLongAgo.getConnectionFailManager().onFullyInitialized();
+
+        List<BleDevice> devices = new ArrayList<BleDevice>();
+        devices.add(failedTwice);
+        devices.add(noRssi);
+        devices.add(failedOnce);
+        devices.add(strongFailedLongAgo);
+        devices.add(weak);
+        devices.add(strong);
+
+        P_ConnectScheduler.sort(devices);
+
+        assertSame(strong, devices.get(0));
+        assertSame(strongFailedLongAgo, devices.get(1));
+        assertSame(weak, devices.get(2));
+        assertSame(noRssi, devices.get(3));
+        assertSame(failedOnce, devices.get(4));
+        assertSame(failedTwice, devices.get(5));
+    }
+
+    @Test
+    public void failuresSurviveNewConnectionAttempt() {
+        BleDevice device = newDevice(1, -40);
+        P_ConnectionFailManager fails = device.getConnectionFailManager();
+
+        fails.onFailureCounted(100);
+
+        //--- These reset the retry count that used to drive the ordering.
+        fails.onExplicitConnectionStarted();
+        fails.onExplicitDisconnect();
+
+        assertEquals(0, device.getConnectionRetryCount());
+        assertEquals(1, fails.getFailCount_sinceLastConnect());
+        assertEquals(100, fails.getTimeOfLastFail_total());
+    }
+
+    @Test
+    public void limitsConcurrentConnects() {
+        BleManagerConfig config = new BleManagerConfig();
+        config.enableParallelDeviceTasks = true;
+        config.maxConcurrentConnects = 2;
+        mgr.setConfig(config);
+
+        P_TaskQueue queue = mgr.getTaskQueue();
+
+        BleDevice first = newDevice(1, -40);
+        BleDevice second = newDevice(2, -40);
+        BleDevice third = newDevice(3, -40);
+
+        queue.add(new P_Task_Connect(first, null));
+        queue.add(new P_Task_Connect(second, null));
+        queue.add(new P_Task_Connect(third, null));
+
+        assertTrue(queue.isCurrent(P_Task_Connect.class, first));
+        assertTrue(queue.isCurrent(P_Task_Connect.class, second));
+        assertFalse(queue.isCurrent(P_Task_Connect.class, third));
+        assertTrue(queue.isInQueue(P_Task_Connect.class, third));
+    }
+
+}
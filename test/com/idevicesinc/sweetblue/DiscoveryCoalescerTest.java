@@ -0,0 +1,167 @@
+package com.idevicesinc.sweetblue;
+
+
+import android.app.Activity;
+import android.bluetooth.BluetoothDevice;
+
+import com.idevicesinc.sweetblue.utils.Interval;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+
+//--- Lives next to the main package rather than in tests/ since the coalescer is package-private.
+@Config(manifest = Config.NONE)
+@RunWith(RobolectricTestRunner.class)
+public class DiscoveryCoalescerTest {
+
+    private static final String MAC_ADDRESS = "00:00:00:00:00:01";
+    private static final double WINDOW = 1.0;
+
+    private static class Emission {
+        final BleDevice device;
+        final int rssi;
+        final int rssiMin;
+        final int rssiMax;
+        final double rssiMean;
+        final int sightingCount;
+
+        Emission(BleDevice device, int rssi, int rssiMin, int rssiMax, double rssiMean, int sightingCount) {
+            this.device = device;
+            this.rssi = rssi;
+            this.rssiMin = rssiMin;
+            this.rssiMax = rssiMax;
+            this.rssiMean = rssiMean;
+            this.sightingCount = sightingCount;
+        }
+    }
+
+    //--- Records what would be emitted instead of going through the manager, so the test doesn't depend on the adapter's state.
+    private static class RecordingCoalescer extends P_DiscoveryCoalescer {
+        final List<Emission> emissions = new ArrayList<Emission>();
+
+        RecordingCoalescer(BleManager mngr) {
+            super(mngr);
+        }
+
+        @Override
+        boolean canEmit(BleDevice device) {
+            return true;
+        }
+
+        @Override
+        void emit(BleDevice device, BluetoothDevice device_native, List<UUID> services_nullable, byte[] scanRecord_nullable, int rssi, int rssiMin, int rssiMax, double rssiMean, int sightingCount) {
+            emissions.add(new Emission(device, rssi, rssiMin, rssiMax, rssiMean, sightingCount));
+        }
+    }
+
+    BleManager mgr;
+    BleDevice device;
+    BluetoothDevice nativeDevice;
+    RecordingCoalescer coalescer;
+
+    @Before
+    public void setup() {
+        Activity activity = Robolectric.buildActivity(Activity.class).create().get();
+        mgr = BleManager.get(activity);
+
+        BleManagerConfig config = new BleManagerConfig();
+        config.rediscoveryCoalescingWindow = Interval.secs(WINDOW);
+        mgr.setConfig(config);
+
+        device = mgr.newDevice(MAC_ADDRESS);
+        nativeDevice = mgr.newNativeDevice(MAC_ADDRESS);
+        coalescer = new RecordingCoalescer(mgr);
+    }
+
+    @Test
+    public void emitsOnceOnTrailingEdge() {
+        assertTrue(coalescer.add(device, nativeDevice, null, null, -50));
+        assertTrue(coalescer.add(device, nativeDevice, null, null, -60));
+        assertTrue(coalescer.add(device, nativeDevice, null, null, -40));
+
+        coalescer.update(WINDOW / 2);
+        assertTrue(coalescer.emissions.isEmpty());
+
+        //--- Sightings partway through don't restart the window, they're just folded into it.
+        assertTrue(coalescer.add(device, nativeDevice, null, null, -70));
+        coalescer.update(WINDOW / 4);
+        assertTrue(coalescer.emissions.isEmpty());
+
+        coalescer.update(WINDOW / 4);
+        assertEquals(1, coalescer.emissions.size());
+
+        Emission emission = coalescer.emissions.get(0);
+        assertSame(device, emission.device);
+        assertEquals(-70, emission.rssi);
+        assertEquals(-70, emission.rssiMin);
+        assertEquals(-40, emission.rssiMax);
+        assertEquals(-55.0, emission.rssiMean, 0.0);
+        assertEquals(4, emission.sightingCount);
+
+        //--- Nothing more goes out until the device is seen again.
+        coalescer.update(WINDOW * 10);
+        assertEquals(1, coalescer.emissions.size());
+        assertEquals(Double.POSITIVE_INFINITY, coalescer.getTimeToNextUpdate(), 0.0);
+    }
+
+    @Test
+    public void windowBoundaries() {
+        coalescer.add(device, nativeDevice, null, null, -50);
+        assertEquals(WINDOW, coalescer.getTimeToNextUpdate(), 0.0);
+
+        coalescer.update(WINDOW / 4);
+        assertEquals(WINDOW * 3 / 4, coalescer.getTimeToNextUpdate(), 0.0);
+
+        //--- Due exactly when the window has passed, not a step later.
+        coalescer.update(WINDOW * 3 / 4);
+        assertEquals(1, coalescer.emissions.size());
+
+        //--- A sighting after an emission starts a fresh window with fresh statistics.
+        coalescer.add(device, nativeDevice, null, null, -80);
+        coalescer.update(WINDOW / 2);
+        assertEquals(1, coalescer.emissions.size());
+        coalescer.update(WINDOW / 2);
+        assertEquals(2, coalescer.emissions.size());
+        assertEquals(1, coalescer.emissions.get(1).sightingCount);
+        assertEquals(-80, coalescer.emissions.get(1).rssiMin);
+    }
+
+    @Test
+    public void disablingWindowFlushesPending() {
+        coalescer.add(device, nativeDevice, null, null, -50);
+
+        BleManagerConfig config = new BleManagerConfig();
+        config.rediscoveryCoalescingWindow = Interval.DISABLED;
+        mgr.setConfig(config);
+
+        assertFalse(coalescer.add(device, nativeDevice, null, null, -60));
+        assertEquals(0.0, coalescer.getTimeToNextUpdate(), 0.0);
+
+        coalescer.update(0.0);
+        assertEquals(1, coalescer.emissions.size());
+        assertEquals(1, coalescer.emissions.get(0).sightingCount);
+    }
+
+    @Test
+    public void removeDropsPending() {
+        coalescer.add(device, nativeDevice, null, null, -50);
+        coalescer.remove(device);
+
+        coalescer.update(WINDOW);
+        assertTrue(coalescer.emissions.isEmpty());
+    }
+
+}
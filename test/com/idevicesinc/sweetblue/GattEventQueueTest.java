@@ -0,0 +1,118 @@
+package com.idevicesinc.sweetblue;
+
+
+import android.app.Activity;
+
+import static org.junit.Assert.assertEquals;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+//--- Lives next to the main package rather than in tests/ since the event queue is package-private.
+//---	The test thread is the update thread here, so publish() drains right away unless a drain is already in progress.
+@Config(manifest = Config.NONE)
+@RunWith(RobolectricTestRunner.class)
+public class GattEventQueueTest {
+
+    private static class RecordingListener implements P_GattEventQueue.Listener {
+        final List<Integer> received = new ArrayList<Integer>();
+        P_GattEventQueue queue;
+        int toPublishFromFirstEvent = 0;
+
+        @Override
+        public void onEvent(P_GattEventQueue.Event event) {
+            received.add(event.m_intValue);
+
+            //--- Simulates callbacks coming in while the update thread is busy with the first one.
+            if (received.size() == 1) {
+                for (int i = 1; i <= toPublishFromFirstEvent; i++) {
+                    publish(queue, i);
+                }
+            }
+        }
+    }
+
+    BleManager mgr;
+    RecordingListener listener;
+    P_GattEventQueue queue;
+
+    @Before
+    public void setup() {
+        Activity activity = Robolectric.buildActivity(Activity.class).create().get();
+        mgr = BleManager.get(activity);
+
+        listener = new RecordingListener();
+        queue = new P_GattEventQueue(mgr, listener);
+        listener.queue = queue;
+    }
+
+    private static void publish(P_GattEventQueue queue, int value) {
+        P_GattEventQueue.Event event = queue.obtain().init(P_GattEventQueue.Type.CHARACTERISTIC_CHANGED, null, 0);
+        event.m_intValue = value;
+        queue.publish(event);
+    }
+
+    private void assertReceivedInOrder(int count) {
+        assertEquals(count, listener.received.size());
+
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, (int) listener.received.get(i));
+        }
+    }
+
+    @Test
+    public void deliversInOrder() {
+        final int count = P_GattEventQueue.CAPACITY * 3;
+
+        for (int i = 0; i < count; i++) {
+            publish(queue, i);
+        }
+
+        assertReceivedInOrder(count);
+    }
+
+    @Test
+    public void reusesPooledEvents() {
+        P_GattEventQueue.Event first = queue.obtain();
+
+        for (int i = 0; i < P_GattEventQueue.CAPACITY; i++) {
+            publish(queue, i);
+        }
+
+        //--- Every slot has been used and drained once, so we're back around to the first one.
+        assertEquals(first, queue.obtain());
+    }
+
+    @Test
+    public void backlogDrainsInOrder() {
+        listener.toPublishFromFirstEvent = P_GattEventQueue.CAPACITY / 2;
+
+        publish(queue, 0);
+
+        assertReceivedInOrder(P_GattEventQueue.CAPACITY / 2 + 1);
+    }
+
+    @Test
+    public void overflowDrainsInOrder() {
+        //--- Enough to fill the ring and spill a good chunk into the overflow queue.
+        listener.toPublishFromFirstEvent = P_GattEventQueue.CAPACITY * 2;
+
+        publish(queue, 0);
+
+        assertReceivedInOrder(P_GattEventQueue.CAPACITY * 2 + 1);
+
+        //--- And once it's caught up things go back to normal.
+        listener.received.clear();
+        publish(queue, 0);
+        publish(queue, 1);
+        assertReceivedInOrder(2);
+    }
+
+}
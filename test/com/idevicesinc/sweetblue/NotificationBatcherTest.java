@@ -0,0 +1,203 @@
+package com.idevicesinc.sweetblue;
+
+
+import android.app.Activity;
+
+import com.idevicesinc.sweetblue.BleDevice.NotificationBatchListener;
+import com.idevicesinc.sweetblue.BleDevice.NotificationBatchListener.NotificationBatchEvent;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+
+//--- Lives next to the main package rather than in tests/ since the batcher is package-private.
+@Config(manifest = Config.NONE)
+@RunWith(RobolectricTestRunner.class)
+public class NotificationBatcherTest {
+
+    private static final String MAC_ADDRESS = "00:00:00:00:00:01";
+    private static final UUID CHAR_UUID = UUID.fromString("00000001-0000-1000-8000-00805f9b34fb");
+    private static final UUID OTHER_CHAR_UUID = UUID.fromString("00000002-0000-1000-8000-00805f9b34fb");
+
+    //--- Pretends the device is connected so notifications actually get batched.
+    private static class ConnectedBatcher extends P_NotificationBatcher {
+        ConnectedBatcher(BleDevice device) {
+            super(device);
+        }
+
+        @Override
+        boolean isDisconnected() {
+            return false;
+        }
+    }
+
+    //--- Copies everything out since the event is cleared and reused once the listener returns.
+    private static class RecordingListener implements NotificationBatchListener {
+        final List<byte[][]> data = new ArrayList<byte[][]>();
+        final List<long[]> timestamps = new ArrayList<long[]>();
+
+        @Override
+        public void onEvent(NotificationBatchEvent e) {
+            byte[][] ithData = new byte[e.count()][];
+            long[] ithTimestamps = new long[e.count()];
+
+            for (int i = 0; i < e.count(); i++) {
+                ithData[i] = e.data(i);
+                ithTimestamps[i] = e.timestamp(i);
+            }
+
+            data.add(ithData);
+            timestamps.add(ithTimestamps);
+        }
+    }
+
+    BleDevice device;
+    RecordingListener listener;
+
+    @Before
+    public void setup() {
+        Activity activity = Robolectric.buildActivity(Activity.class).create().get();
+        BleManager mgr = BleManager.get(activity);
+
+        device = mgr.newDevice(MAC_ADDRESS);
+        listener = new RecordingListener();
+    }
+
+    @Test
+    public void deliversInOrderOncePerUpdate() {
+        P_NotificationBatcher batcher = new ConnectedBatcher(device);
+        batcher.setListener(CHAR_UUID, listener);
+
+        assertTrue(batcher.onCharacteristicChanged(CHAR_UUID, new byte[]{1}, 10));
+        assertTrue(batcher.onCharacteristicChanged(CHAR_UUID, new byte[]{2}, 20));
+        assertTrue(batcher.onCharacteristicChanged(CHAR_UUID, new byte[]{3}, 30));
+
+        assertTrue(batcher.hasPending());
+        assertTrue(listener.data.isEmpty());
+
+        batcher.update();
+
+        assertFalse(batcher.hasPending());
+        assertEquals(1, listener.data.size());
+        assertArrayEquals(new byte[][]{{1}, {2}, {3}}, listener.data.get(0));
+        assertArrayEquals(new long[]{10, 20, 30}, listener.timestamps.get(0));
+
+        //--- Nothing new came in, so nothing goes out.
+        batcher.update();
+        assertEquals(1, listener.data.size());
+
+        //--- The next batch starts empty rather than carrying over the last one.
+        batcher.onCharacteristicChanged(CHAR_UUID, new byte[]{4}, 40);
+        batcher.update();
+        assertEquals(2, listener.data.size());
+        assertArrayEquals(new byte[][]{{4}}, listener.data.get(1));
+        assertArrayEquals(new long[]{40}, listener.timestamps.get(1));
+    }
+
+    @Test
+    public void growsPastInitialCapacity() {
+        P_NotificationBatcher batcher = new ConnectedBatcher(device);
+        batcher.setListener(CHAR_UUID, listener);
+
+        final int count = 100;
+
+        for (int i = 0; i < count; i++) {
+            batcher.onCharacteristicChanged(CHAR_UUID, new byte[]{(byte) i}, i);
+        }
+
+        batcher.update();
+
+        assertEquals(1, listener.data.size());
+        assertEquals(count, listener.data.get(0).length);
+
+        for (int i = 0; i < count; i++) {
+            assertEquals((byte) i, listener.data.get(0)[i][0]);
+            assertEquals(i, listener.timestamps.get(0)[i]);
+        }
+    }
+
+    @Test
+    public void otherCharacteristicsPassThrough() {
+        P_NotificationBatcher batcher = new ConnectedBatcher(device);
+
+        assertFalse(batcher.onCharacteristicChanged(CHAR_UUID, new byte[]{1}, 10));
+
+        batcher.setListener(CHAR_UUID, listener);
+
+        assertFalse(batcher.onCharacteristicChanged(OTHER_CHAR_UUID, new byte[]{1}, 10));
+        assertFalse(batcher.hasPending());
+    }
+
+    @Test
+    public void clearingListenerFlushesPending() {
+        P_NotificationBatcher batcher = new ConnectedBatcher(device);
+        batcher.setListener(CHAR_UUID, listener);
+
+        batcher.onCharacteristicChanged(CHAR_UUID, new byte[]{1}, 10);
+        batcher.onCharacteristicChanged(CHAR_UUID, new byte[]{2}, 20);
+
+        batcher.setListener(CHAR_UUID, null);
+
+        assertEquals(1, listener.data.size());
+        assertArrayEquals(new byte[][]{{1}, {2}}, listener.data.get(0));
+
+        //--- Back to normal delivery afterwards.
+        assertFalse(batcher.onCharacteristicChanged(CHAR_UUID, new byte[]{3}, 30));
+        batcher.update();
+        assertEquals(1, listener.data.size());
+    }
+
+    @Test
+    public void replacingListenerKeepsPending() {
+        P_NotificationBatcher batcher = new ConnectedBatcher(device);
+        batcher.setListener(CHAR_UUID, listener);
+
+        batcher.onCharacteristicChanged(CHAR_UUID, new byte[]{1}, 10);
+
+        RecordingListener replacement = new RecordingListener();
+        batcher.setListener(CHAR_UUID, replacement);
+        batcher.update();
+
+        assertTrue(listener.data.isEmpty());
+        assertEquals(1, replacement.data.size());
+        assertArrayEquals(new byte[][]{{1}}, replacement.data.get(0));
+    }
+
+    @Test
+    public void disconnectedSwallowsNotifications() {
+        //--- A freshly created device isn't connected, so the real check applies.
+        P_NotificationBatcher batcher = new P_NotificationBatcher(device);
+        batcher.setListener(CHAR_UUID, listener);
+
+        assertTrue(batcher.onCharacteristicChanged(CHAR_UUID, new byte[]{1}, 10));
+        assertFalse(batcher.hasPending());
+
+        batcher.update();
+        assertTrue(listener.data.isEmpty());
+    }
+
+    @Test
+    public void deviceSetterReachesBatcher() {
+        //--- The test thread is the update thread here, so this applies right away instead of being posted.
+        device.setListener_NotificationBatch(CHAR_UUID, listener);
+
+        assertTrue(device.getNotificationBatcher().onCharacteristicChanged(CHAR_UUID, new byte[]{1}, 10));
+
+        device.setListener_NotificationBatch(CHAR_UUID, null);
+
+        assertFalse(device.getNotificationBatcher().onCharacteristicChanged(CHAR_UUID, new byte[]{1}, 10));
+    }
+
+}
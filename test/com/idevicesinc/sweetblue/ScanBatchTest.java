@@ -0,0 +1,57 @@
+package com.idevicesinc.sweetblue;
+
+
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.le.ScanResult;
+import android.os.Build;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+
+//--- Lives next to the main package rather than in tests/ since the scan task is package-private.
+@Config(manifest = Config.NONE, sdk = Build.VERSION_CODES.LOLLIPOP)
+@RunWith(RobolectricTestRunner.class)
+public class ScanBatchTest {
+
+    private static ScanResult newResult(String macAddress, int rssi) {
+        return new ScanResult(BluetoothAdapter.getDefaultAdapter().getRemoteDevice(macAddress), null, rssi, 0);
+    }
+
+    @Test
+    public void latestPerDeviceTest() {
+        List<ScanResult> batch = new ArrayList<ScanResult>();
+        batch.add(newResult("00:00:00:00:00:01", -50));
+        batch.add(newResult("00:00:00:00:00:02", -60));
+        ScanResult latest1 = newResult("00:00:00:00:00:01", -51);
+        batch.add(latest1);
+        ScanResult latest2 = newResult("00:00:00:00:00:02", -61);
+        batch.add(latest2);
+        ScanResult only3 = newResult("00:00:00:00:00:03", -70);
+        batch.add(only3);
+
+        Collection<ScanResult> deduped = P_Task_Scan.latestPerDevice(batch);
+        assertEquals(3, deduped.size());
+
+        //--- Latest result wins, but devices keep the order they first showed up in.
+        Iterator<ScanResult> iterator = deduped.iterator();
+        assertSame(latest1, iterator.next());
+        assertSame(latest2, iterator.next());
+        assertSame(only3, iterator.next());
+    }
+
+    @Test
+    public void emptyBatchTest() {
+        assertEquals(0, P_Task_Scan.latestPerDevice(new ArrayList<ScanResult>()).size());
+    }
+
+}
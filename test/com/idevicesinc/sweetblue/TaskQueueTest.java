@@ -0,0 +1,84 @@
+package com.idevicesinc.sweetblue;
+
+
+import android.app.Activity;
+import android.bluetooth.BluetoothDevice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+
+//--- Lives next to the main package rather than in tests/ since the task queue is package-private.
+@Config(manifest = Config.NONE)
+@RunWith(RobolectricTestRunner.class)
+public class TaskQueueTest {
+
+    private static final String MAC_ADDRESS = "00:00:00:00:00:01";
+
+    Activity activity;
+
+    @Before
+    public void setup() {
+        activity = Robolectric.buildActivity(Activity.class).create().get();
+    }
+
+    @Test
+    public void serverDisconnectSoftlyCancelsQueuedConnect() {
+        BleManager mgr = BleManager.get(activity);
+        BleServer server = mgr.getServer();
+        BluetoothDevice nativeDevice = mgr.newNativeDevice(MAC_ADDRESS);
+        P_TaskQueue queue = mgr.getTaskQueue();
+
+        P_Task_ConnectServer connect = new P_Task_ConnectServer(server, nativeDevice, null, /*explicit=*/true, PE_TaskPriority.FOR_EXPLICIT_BONDING_AND_CONNECTING);
+        queue.add(connect);
+
+        //--- Server tasks have no device, so this used to skip the queue entirely.
+        queue.add(new P_Task_DisconnectServer(server, nativeDevice, null, /*explicit=*/true, PE_TaskPriority.FOR_EXPLICIT_BONDING_AND_CONNECTING));
+
+        assertTrue(connect.wasSoftlyCancelled());
+    }
+
+    @Test
+    public void clearQueueOfOnlyRemovesMatches() {
+        BleManager mgr = BleManager.get(activity);
+        P_TaskQueue queue = mgr.getTaskQueue();
+        BleDevice first = mgr.newDevice(MAC_ADDRESS);
+        BleDevice second = mgr.newDevice("00:00:00:00:00:02");
+        BleDevice third = mgr.newDevice("00:00:00:00:00:03");
+
+        queue.add(new P_Task_Connect(first, null));
+        P_Task_Connect secondConnect = new P_Task_Connect(second, null);
+        queue.add(secondConnect);
+        P_Task_Connect thirdConnect = new P_Task_Connect(third, null);
+        queue.add(thirdConnect);
+
+        int sizeBefore = queue.getSize();
+        assertTrue(queue.isInQueue(P_Task_Connect.class, second));
+        assertTrue(queue.isInQueue(P_Task_Connect.class, third));
+
+        //--- Ordinals are assigned in the order tasks are added, so one earlier than the task's own doesn't reach it.
+        queue.clearQueueOf(P_Task_Connect.class, second, secondConnect.getOrdinal() - 1);
+        assertTrue(queue.isInQueue(P_Task_Connect.class, second));
+
+        queue.clearQueueOf(P_Task_Connect.class, second, -1);
+        assertFalse(queue.isInQueue(P_Task_Connect.class, second));
+        assertTrue(queue.isInQueue(P_Task_Connect.class, third));
+        assertEquals(sizeBefore - 1, queue.getSize());
+
+        //--- The current task isn't part of the queue, so clearing never touches it.
+        queue.clearQueueOf(P_Task_Connect.class, first, -1);
+        assertTrue(queue.isCurrent(P_Task_Connect.class, first));
+
+        queue.clearQueueOf(P_Task_Connect.class, mgr);
+        assertFalse(queue.isInQueue(P_Task_Connect.class, third));
+        assertEquals(sizeBefore - 2, queue.getSize());
+    }
+
+}
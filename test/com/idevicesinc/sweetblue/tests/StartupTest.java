@@ -0,0 +1,68 @@
+package com.idevicesinc.sweetblue.tests;
+
+
+import android.app.Activity;
+import android.os.HandlerThread;
+
+import com.idevicesinc.sweetblue.BleManager;
+
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.HashSet;
+import java.util.Set;
+
+
+@Config(manifest = Config.NONE)
+@RunWith(RobolectricTestRunner.class)
+public class StartupTest {
+
+    private static final int DEVICE_COUNT = 500;
+
+    Activity activity;
+
+    @Before
+    public void setup() {
+        activity = Robolectric.buildActivity(Activity.class).create().get();
+    }
+
+    private static Set<Thread> getUpdateLoopThreads() {
+        Set<Thread> threads = new HashSet<Thread>();
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread instanceof HandlerThread && thread.getName().startsWith("SweetBlue")) {
+                threads.add(thread);
+            }
+        }
+        return threads;
+    }
+
+    @Test
+    public void coldStartWithManyDevices() {
+        //--- Other tests in the same process may have left some running, so only new ones count.
+        Set<Thread> threadsBefore = getUpdateLoopThreads();
+
+        final long start = System.nanoTime();
+
+        BleManager mgr = BleManager.get(activity);
+
+        for (int i = 0; i < DEVICE_COUNT; i++) {
+            mgr.newDevice(String.format("00:00:00:00:%02X:%02X", i / 256, i % 256));
+        }
+
+        final long elapsed = System.nanoTime() - start;
+
+        //--- Reported rather than asserted since it depends too much on the machine running the tests.
+        System.out.println("Cold start with " + DEVICE_COUNT + " devices took " + elapsed / 1000000 + "ms.");
+
+        //--- Neither the manager, which runs on the main thread by default, nor the historical data threads should start one before they're used.
+        Set<Thread> threadsAfter = getUpdateLoopThreads();
+        threadsAfter.removeAll(threadsBefore);
+        assertTrue(threadsAfter.isEmpty());
+    }
+
+}
@@ -0,0 +1,149 @@
+package com.idevicesinc.sweetblue.tests;
+
+import com.idevicesinc.sweetblue.utils.ByteRingBuffer;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+public class TestByteRingBuffer {
+
+    @Test
+    public void readBackInOrderTest() {
+        ByteRingBuffer buffer = new ByteRingBuffer(256, ByteRingBuffer.OverflowPolicy.OVERWRITE_OLDEST);
+        ByteRingBuffer.Cursor cursor = buffer.newCursor();
+
+        buffer.write(new byte[]{1, 2, 3}, 10);
+        buffer.write(new byte[]{4}, 20);
+
+        assertTrue(cursor.next());
+        assertEquals(3, cursor.payload().remaining());
+        assertEquals(1, cursor.payload().get(cursor.payload().position()));
+        assertEquals(10, cursor.timestamp());
+        assertTrue(cursor.next());
+        assertEquals(4, cursor.payload().get());
+        assertEquals(20, cursor.timestamp());
+        assertFalse(cursor.next());
+    }
+
+    @Test
+    public void wrapAroundTest() {
+        ByteRingBuffer buffer = new ByteRingBuffer(64, ByteRingBuffer.OverflowPolicy.OVERWRITE_OLDEST);
+        ByteRingBuffer.Cursor cursor = buffer.newCursor();
+
+        for (int i = 0; i < 100; i++) {
+            buffer.write(new byte[]{(byte) i, (byte) i, (byte) i, (byte) i, (byte) i}, i);
+
+            assertTrue(cursor.next());
+            assertEquals(i, cursor.timestamp());
+            assertEquals((byte) i, cursor.payload().get(cursor.payload().position() + 4));
+            assertTrue(cursor.isValid());
+        }
+
+        assertEquals(0, cursor.getLapCount());
+    }
+
+    @Test
+    public void overwriteOldestTest() {
+        ByteRingBuffer buffer = new ByteRingBuffer(64, ByteRingBuffer.OverflowPolicy.OVERWRITE_OLDEST);
+        ByteRingBuffer.Cursor cursor = buffer.newCursor();
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(buffer.write(new byte[4], i));
+        }
+
+        assertTrue(cursor.next());
+        assertEquals(1, cursor.getLapCount());
+        assertTrue(cursor.timestamp() > 0);
+
+        long last = cursor.timestamp();
+        while (cursor.next()) {
+            last = cursor.timestamp();
+        }
+        assertEquals(9, last);
+    }
+
+    @Test
+    public void dropNewestTest() {
+        ByteRingBuffer buffer = new ByteRingBuffer(64, ByteRingBuffer.OverflowPolicy.DROP_NEWEST);
+        ByteRingBuffer.Cursor cursor = buffer.newCursor();
+
+        int written = 0;
+        for (int i = 0; i < 10; i++) {
+            if (buffer.write(new byte[4], i)) written++;
+        }
+
+        assertEquals(4, written);
+        assertEquals(6, buffer.getDroppedCount());
+
+        int read = 0;
+        while (cursor.next()) {
+            assertEquals(read, cursor.timestamp());
+            read++;
+        }
+        assertEquals(written, read);
+
+        assertTrue(buffer.write(new byte[4], 99));
+        cursor.close();
+        assertTrue(buffer.write(new byte[40], 100));
+    }
+
+    @Test
+    public void dropNewestCaughtUpTest() {
+        ByteRingBuffer buffer = new ByteRingBuffer(64, ByteRingBuffer.OverflowPolicy.DROP_NEWEST);
+        ByteRingBuffer.Cursor cursor = buffer.newCursor();
+
+        assertTrue(buffer.write(new byte[10], 0));
+        assertTrue(buffer.write(new byte[10], 1));
+        assertTrue(cursor.next());
+        assertTrue(cursor.next());
+        assertFalse(cursor.next());
+
+        //--- 20 bytes of padding plus this frame would wrap around onto the padding marker the caught up cursor is sitting on.
+        assertFalse(buffer.write(new byte[34], 2));
+        assertEquals(1, buffer.getDroppedCount());
+        assertFalse(cursor.next());
+
+        assertTrue(buffer.write(new byte[10], 3));
+        assertTrue(cursor.next());
+        assertEquals(3, cursor.timestamp());
+        assertEquals(10, cursor.payload().remaining());
+        assertFalse(cursor.next());
+    }
+
+    @Test
+    public void dropNewestHeldPayloadTest() {
+        ByteRingBuffer buffer = new ByteRingBuffer(64, ByteRingBuffer.OverflowPolicy.DROP_NEWEST);
+        ByteRingBuffer.Cursor cursor = buffer.newCursor();
+
+        assertTrue(buffer.write(new byte[]{1, 2, 3, 4, 5, 6, 7, 8}, 0));
+        assertTrue(cursor.next());
+
+        //--- Room behind the cursor's read position, but the frame it's still looking at has to stay intact.
+        assertTrue(buffer.write(new byte[8], 1));
+        assertTrue(buffer.write(new byte[8], 2));
+        assertFalse(buffer.write(new byte[8], 3));
+
+        ByteBuffer payload = cursor.payload();
+        for (int i = 0; i < 8; i++) {
+            assertEquals(i + 1, payload.get(payload.position() + i));
+        }
+        assertTrue(cursor.isValid());
+
+        //--- Moving on releases it.
+        assertTrue(cursor.next());
+        assertTrue(buffer.write(new byte[8], 4));
+    }
+
+    @Test
+    public void tooBigTest() {
+        ByteRingBuffer buffer = new ByteRingBuffer(16, ByteRingBuffer.OverflowPolicy.OVERWRITE_OLDEST);
+
+        assertFalse(buffer.write(new byte[5], 0));
+        assertEquals(1, buffer.getDroppedCount());
+    }
+}
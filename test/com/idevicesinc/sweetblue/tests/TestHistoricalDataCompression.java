@@ -0,0 +1,270 @@
+package com.idevicesinc.sweetblue.tests;
+
+import com.idevicesinc.sweetblue.BleDeviceConfig.HistoricalDataLogFilter.PersistenceLevel;
+import com.idevicesinc.sweetblue.backend.historical.Backend_HistoricalDataList_Compressed;
+import com.idevicesinc.sweetblue.backend.historical.Backend_HistoricalDataList_InMemory;
+import com.idevicesinc.sweetblue.backend.historical.Backend_HistoricalDatabase_Segmented;
+import com.idevicesinc.sweetblue.utils.EpochTimeRange;
+import com.idevicesinc.sweetblue.utils.HistoricalData;
+import com.idevicesinc.sweetblue.utils.HistoricalDataCursor;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+public class TestHistoricalDataCompression {
+
+    private static final String MAC = "00:11:22:33:44:55";
+    private static final UUID UUID_1 = UUID.fromString("00002a37-0000-1000-8000-00805f9b34fb");
+
+    private static final int SAMPLE_COUNT = 100000;
+    private static final long START_TIME = 1450000000000L;
+
+    //--- Raw size of a sample: an 8-byte timestamp plus its 4-byte blob, before any per-object or per-row overhead.
+    private static final int RAW_BYTES_PER_SAMPLE = 8 + 4;
+
+    //--- What the compressed encoding is meant to save over keeping each sample as its own HistoricalData.
+    private static final int TARGET_REDUCTION = 10;
+
+    //--- A slowly changing 4-byte little-endian reading sampled once a second with a bit of jitter, like most sensor characteristics.
+    private static HistoricalData sample(Random random, int i) {
+        int value = 2000 + (int) (100 * Math.sin(i / 600.0));
+        byte[] blob = {(byte) value, (byte) (value >> 8), 0, 0};
+        return new HistoricalData(blob, START_TIME + i * 1000L + (random.nextInt(10) == 0 ? random.nextInt(5) : 0));
+    }
+
+    private static Backend_HistoricalDataList_Compressed newList() {
+        Backend_HistoricalDataList_Compressed list = new Backend_HistoricalDataList_Compressed();
+        list.init(null, null, MAC, UUID_1, "", false);
+        return list;
+    }
+
+    private static Backend_HistoricalDataList_InMemory newReferenceList() {
+        Backend_HistoricalDataList_InMemory list = new Backend_HistoricalDataList_InMemory();
+        list.init(null, null, MAC, UUID_1, "", false);
+        return list;
+    }
+
+    private static void assertSame(Backend_HistoricalDataList_InMemory expected, Backend_HistoricalDataList_Compressed actual, EpochTimeRange range) {
+        assertEquals(expected.getCount(range), actual.getCount(range));
+        Iterator<HistoricalData> expectedIterator = expected.getIterator(range);
+        Iterator<HistoricalData> actualIterator = actual.getIterator(range);
+        while (expectedIterator.hasNext()) {
+            HistoricalData e = expectedIterator.next();
+            HistoricalData a = actualIterator.next();
+            assertEquals(e.getEpochTime_millis(), a.getEpochTime_millis());
+            assertArrayEquals(e.getBlob(), a.getBlob());
+        }
+    }
+
+    @Test
+    public void matchesUncompressedListTest() {
+        Random random = new Random(42);
+        Backend_HistoricalDataList_InMemory expected = newReferenceList();
+        Backend_HistoricalDataList_Compressed actual = newList();
+
+        for (int i = 0; i < 5000; i++) {
+            //--- Mostly in order, with some late arrivals and odd sizes mixed in.
+            long time = random.nextInt(8) == 0 ? random.nextInt(i + 1) : i;
+            byte[] blob = new byte[random.nextInt(4) == 0 ? random.nextInt(6) : 4];
+            if (blob.length > 0) {
+                blob[0] = (byte) (i / 50);
+            }
+            HistoricalData data = new HistoricalData(blob, time);
+            expected.add_single(data, PersistenceLevel.MEMORY, 3000);
+            actual.add_single(data, PersistenceLevel.MEMORY, 3000);
+        }
+        assertSame(expected, actual, EpochTimeRange.FROM_MIN_TO_MAX);
+        assertSame(expected, actual, new EpochTimeRange(1000, 1999));
+
+        expected.delete_fromMemoryOnly(new EpochTimeRange(2500, 3500), 300);
+        actual.delete_fromMemoryOnly(new EpochTimeRange(2500, 3500), 300);
+        assertSame(expected, actual, EpochTimeRange.FROM_MIN_TO_MAX);
+        assertEquals(expected.getRange().from().toMilliseconds(), actual.getRange().from().toMilliseconds());
+
+        HistoricalDataCursor cursor = actual.getCursor(new EpochTimeRange(4000, 4999));
+        assertEquals(expected.getCount(new EpochTimeRange(4000, 4999)), cursor.getCount());
+        assertTrue(cursor.moveToLast());
+        assertEquals(expected.getRange().to().toMilliseconds(), cursor.getEpochTime());
+    }
+
+    @Test
+    public void iteratorSnapshotTest() {
+        Random random = new Random(3);
+        Backend_HistoricalDataList_Compressed list = newList();
+        for (int i = 0; i < 1000; i++) {
+            list.add_single(sample(random, i), PersistenceLevel.MEMORY, Long.MAX_VALUE);
+        }
+
+        Iterator<HistoricalData> iterator = list.getIterator(EpochTimeRange.FROM_MIN_TO_MAX);
+        HistoricalData first = iterator.next();
+
+        //--- Changes made after the iterator was created, including trimming the entry it's on, shouldn't show up in it.
+        for (int i = 1000; i < 1500; i++) {
+            list.add_single(sample(random, i), PersistenceLevel.MEMORY, 1200);
+        }
+        assertEquals(1200, list.getCount(EpochTimeRange.FROM_MIN_TO_MAX));
+
+        iterator.remove();
+        assertEquals(1200, list.getCount(EpochTimeRange.FROM_MIN_TO_MAX));
+
+        int count = 1;
+        long lastTime = first.getEpochTime_millis();
+        while (iterator.hasNext()) {
+            HistoricalData next = iterator.next();
+            assertTrue(next.getEpochTime_millis() >= lastTime);
+            lastTime = next.getEpochTime_millis();
+            count++;
+        }
+        assertEquals(1000, count);
+
+        //--- Removing through a stale iterator still finds the entry in the live list.
+        iterator.remove();
+        assertEquals(1199, list.getCount(EpochTimeRange.FROM_MIN_TO_MAX));
+    }
+
+    @Test
+    public void sizeTotalsTest() {
+        Random random = new Random(5);
+        Backend_HistoricalDataList_Compressed list = newList();
+        assertEquals(0, list.getEncodedSize());
+
+        long lastSize = 0;
+        for (int i = 0; i < 1000; i++) {
+            list.add_single(sample(random, i), PersistenceLevel.MEMORY, Long.MAX_VALUE);
+            assertTrue(list.getEncodedSize() > lastSize);
+            lastSize = list.getEncodedSize();
+        }
+        long memoryBefore = list.getMemoryUsage();
+
+        //--- Late arrivals re-encode and split blocks, deleting from the middle re-encodes them, and trimming drops whole blocks.
+        for (int i = 0; i < 500; i++) {
+            list.add_single(new HistoricalData(new byte[]{(byte) i, 1, 2, 3}, START_TIME + random.nextInt(1000) * 1000L), PersistenceLevel.MEMORY, Long.MAX_VALUE);
+        }
+        assertTrue(list.getEncodedSize() > lastSize);
+        assertTrue(list.getMemoryUsage() > memoryBefore);
+
+        list.delete_fromMemoryOnly(new EpochTimeRange(START_TIME + 200 * 1000L, START_TIME + 300 * 1000L), 50);
+        list.add_single(sample(random, 1000), PersistenceLevel.MEMORY, 700);
+        assertEquals(700, list.getCount(EpochTimeRange.FROM_MIN_TO_MAX));
+
+        list.delete_fromMemoryOnly(EpochTimeRange.FROM_MIN_TO_MAX, Long.MAX_VALUE);
+        assertEquals(0, list.getCount(EpochTimeRange.FROM_MIN_TO_MAX));
+        assertEquals(0, list.getEncodedSize());
+    }
+
+    @Test
+    public void reopenAndAppendTest() {
+        File directory = new File(System.getProperty("java.io.tmpdir"), "sweetblue_test_" + System.nanoTime());
+        try {
+            Backend_HistoricalDatabase_Segmented db = new Backend_HistoricalDatabase_Segmented(directory, 4096, Integer.MAX_VALUE);
+            Random random = new Random(7);
+            for (int i = 0; i < 100; i++) {
+                db.add_single(MAC, UUID_1, sample(random, i), 0);
+            }
+
+            //--- Appending after a reopen has to pick up compression where the last block left off.
+            db = new Backend_HistoricalDatabase_Segmented(directory, 4096, Integer.MAX_VALUE);
+            for (int i = 100; i < 200; i++) {
+                db.add_single(MAC, UUID_1, sample(random, i), 0);
+            }
+
+            db = new Backend_HistoricalDatabase_Segmented(directory, 4096, Integer.MAX_VALUE);
+            random = new Random(7);
+            HistoricalDataCursor cursor = db.getCursor(MAC, UUID_1, EpochTimeRange.FROM_MIN_TO_MAX);
+            assertEquals(200, cursor.getCount());
+            for (int i = 0; i < 200; i++) {
+                HistoricalData expected = sample(random, i);
+                assertTrue(cursor.moveToNext());
+                assertEquals(expected.getEpochTime_millis(), cursor.getEpochTime());
+                assertArrayEquals(expected.getBlob(), cursor.getBlob());
+            }
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    public void compressedSizeTest() {
+        Random random = new Random(1);
+        Backend_HistoricalDataList_Compressed list = newList();
+        HistoricalData[] objects = new HistoricalData[SAMPLE_COUNT];
+        File directory = new File(System.getProperty("java.io.tmpdir"), "sweetblue_test_" + System.nanoTime());
+
+        try {
+            Backend_HistoricalDatabase_Segmented db = new Backend_HistoricalDatabase_Segmented(directory, 1024 * 1024, Integer.MAX_VALUE);
+
+            db.add_multiple_start();
+            for (int i = 0; i < SAMPLE_COUNT; i++) {
+                HistoricalData data = sample(random, i);
+                list.add_single(data, PersistenceLevel.MEMORY, Long.MAX_VALUE);
+                db.add_multiple_next(MAC, UUID_1, data);
+            }
+            db.add_multiple_end();
+
+            //--- The same samples as objects, measured off the heap since the JVM doesn't offer a way to size an object graph directly.
+            random = new Random(1);
+            long heapBefore = usedHeap();
+            for (int i = 0; i < SAMPLE_COUNT; i++) {
+                objects[i] = sample(random, i);
+            }
+            double objectsPerSample = (double) (usedHeap() - heapBefore) / SAMPLE_COUNT;
+
+            double memoryPerSample = (double) list.getMemoryUsage() / SAMPLE_COUNT;
+            double encodedPerSample = (double) list.getEncodedSize() / SAMPLE_COUNT;
+            double diskPerSample = (double) directorySize(directory) / SAMPLE_COUNT;
+
+            System.out.println(String.format("Bytes per sample: %.1f as objects, %.2f compressed in memory (%.2f encoded), %.2f on disk.", objectsPerSample, memoryPerSample, encodedPerSample, diskPerSample));
+
+            //--- Steady sampling of a slowly changing value should come in an order of magnitude under the object representation,
+            //---	and at well under half the raw size both in memory and on disk.
+            assertTrue(memoryPerSample * TARGET_REDUCTION < objectsPerSample);
+            assertTrue(diskPerSample * TARGET_REDUCTION < objectsPerSample);
+            assertTrue(encodedPerSample * 2 < RAW_BYTES_PER_SAMPLE);
+            assertTrue(diskPerSample * 2 < RAW_BYTES_PER_SAMPLE);
+            //--- Also keeps the objects reachable until after they've been measured.
+            assertEquals(objects[SAMPLE_COUNT - 1].getEpochTime_millis(), list.getRange().to().toMilliseconds());
+            assertEquals(SAMPLE_COUNT, list.getCount(EpochTimeRange.FROM_MIN_TO_MAX));
+            assertEquals(SAMPLE_COUNT, db.getCount(MAC, UUID_1, EpochTimeRange.FROM_MIN_TO_MAX));
+        } finally {
+            delete(directory);
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long directorySize(File file) {
+        File[] children = file.listFiles();
+        if (children == null) {
+            return file.length();
+        }
+        long size = 0;
+        for (File child : children) {
+            size += directorySize(child);
+        }
+        return size;
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
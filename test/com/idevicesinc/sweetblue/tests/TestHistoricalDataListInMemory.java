@@ -0,0 +1,119 @@
+package com.idevicesinc.sweetblue.tests;
+
+import com.idevicesinc.sweetblue.BleDeviceConfig.HistoricalDataLogFilter.PersistenceLevel;
+import com.idevicesinc.sweetblue.backend.historical.Backend_HistoricalDataList_InMemory;
+import com.idevicesinc.sweetblue.utils.EpochTimeRange;
+import com.idevicesinc.sweetblue.utils.HistoricalData;
+import com.idevicesinc.sweetblue.utils.HistoricalDataCursor;
+import org.junit.Test;
+
+import java.util.Iterator;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+public class TestHistoricalDataListInMemory {
+
+    private static Backend_HistoricalDataList_InMemory newList() {
+        Backend_HistoricalDataList_InMemory list = new Backend_HistoricalDataList_InMemory();
+        list.init(null, null, "00:11:22:33:44:55", null, "", false);
+        return list;
+    }
+
+    @Test
+    public void outOfOrderTest() {
+        Backend_HistoricalDataList_InMemory list = newList();
+        list.add_single(new HistoricalData(new byte[]{3}, 3000), PersistenceLevel.MEMORY, Long.MAX_VALUE);
+        list.add_single(new HistoricalData(new byte[]{1}, 1000), PersistenceLevel.MEMORY, Long.MAX_VALUE);
+        list.add_single(new HistoricalData(new byte[]{2, 2}, 2000), PersistenceLevel.MEMORY, Long.MAX_VALUE);
+
+        assertEquals(3, list.getCount(EpochTimeRange.FROM_MIN_TO_MAX));
+        assertEquals(1000, list.get(EpochTimeRange.FROM_MIN_TO_MAX, 0).getEpochTime_millis());
+        assertArrayEquals(new byte[]{2, 2}, list.get(EpochTimeRange.FROM_MIN_TO_MAX, 1).getBlob());
+        assertEquals(3000, list.getRange().to().toMilliseconds());
+    }
+
+    @Test
+    public void rangeTest() {
+        Backend_HistoricalDataList_InMemory list = newList();
+        for (int i = 0; i < 1000; i++) {
+            list.add_single(new HistoricalData(new byte[]{(byte) i}, i * 10), PersistenceLevel.MEMORY, Long.MAX_VALUE);
+        }
+
+        EpochTimeRange range = new EpochTimeRange(105, 200);
+        assertEquals(10, list.getCount(range));
+        assertEquals(110, list.get(range, 0).getEpochTime_millis());
+        assertEquals(HistoricalData.NULL, list.get(range, 10));
+        assertEquals(0, list.getCount(new EpochTimeRange(101, 109)));
+
+        HistoricalDataCursor cursor = list.getCursor(range);
+        assertEquals(10, cursor.getCount());
+        assertTrue(cursor.moveToLast());
+        assertEquals(200, cursor.getEpochTime());
+        assertFalse(cursor.moveToNext());
+        assertTrue(cursor.isAfterLast());
+    }
+
+    @Test
+    public void limitTest() {
+        Backend_HistoricalDataList_InMemory list = newList();
+        for (int i = 0; i < 5000; i++) {
+            list.add_single(new HistoricalData(new byte[]{(byte) i, 0, 0, 0}, i), PersistenceLevel.MEMORY, 100);
+        }
+
+        assertEquals(100, list.getCount(EpochTimeRange.FROM_MIN_TO_MAX));
+        assertEquals(4900, list.getRange().from().toMilliseconds());
+        assertArrayEquals(new byte[]{(byte) 4999, 0, 0, 0}, list.get(EpochTimeRange.FROM_MIN_TO_MAX, 99).getBlob());
+    }
+
+    @Test
+    public void deleteTest() {
+        Backend_HistoricalDataList_InMemory list = newList();
+        for (int i = 0; i < 10; i++) {
+            list.add_single(new HistoricalData(new byte[]{(byte) i}, i), PersistenceLevel.MEMORY, Long.MAX_VALUE);
+        }
+
+        list.delete_fromMemoryOnly(new EpochTimeRange(3, 9), 2);
+        assertEquals(8, list.getCount(EpochTimeRange.FROM_MIN_TO_MAX));
+        assertEquals(5, list.get(EpochTimeRange.FROM_MIN_TO_MAX, 3).getEpochTime_millis());
+
+        Iterator<HistoricalData> iterator = list.getIterator(EpochTimeRange.FROM_MIN_TO_MAX);
+        while (iterator.hasNext()) {
+            if (iterator.next().getEpochTime_millis() % 2 == 0) {
+                iterator.remove();
+            }
+        }
+        assertEquals(4, list.getCount(EpochTimeRange.FROM_MIN_TO_MAX));
+        assertEquals(1, list.get(EpochTimeRange.FROM_MIN_TO_MAX, 0).getEpochTime_millis());
+    }
+
+    @Test
+    public void snapshotTest() {
+        Backend_HistoricalDataList_InMemory list = newList();
+        for (int i = 0; i < 10; i++) {
+            list.add_single(new HistoricalData(new byte[]{(byte) i}, i * 10), PersistenceLevel.MEMORY, 20);
+        }
+
+        Iterator<HistoricalData> iterator = list.getIterator(EpochTimeRange.FROM_MIN_TO_MAX);
+        assertEquals(0, iterator.next().getEpochTime_millis());
+
+        //--- Appending past the limit trims from the front, and an out of order entry shifts everything in place.
+        for (int i = 10; i < 100; i++) {
+            list.add_single(new HistoricalData(new byte[]{(byte) i}, i * 10), PersistenceLevel.MEMORY, 20);
+        }
+        list.add_single(new HistoricalData(new byte[]{-1}, 905), PersistenceLevel.MEMORY, 20);
+
+        for (int i = 1; i < 10; i++) {
+            HistoricalData next = iterator.next();
+            assertEquals(i * 10, next.getEpochTime_millis());
+            assertArrayEquals(new byte[]{(byte) i}, next.getBlob());
+        }
+        assertFalse(iterator.hasNext());
+
+        assertEquals(20, list.getCount(EpochTimeRange.FROM_MIN_TO_MAX));
+        assertArrayEquals(new byte[]{-1}, list.get(EpochTimeRange.FROM_MIN_TO_MAX, 10).getBlob());
+    }
+}
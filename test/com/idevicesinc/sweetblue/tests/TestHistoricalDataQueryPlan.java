@@ -0,0 +1,128 @@
+package com.idevicesinc.sweetblue.tests;
+
+import android.database.Cursor;
+
+import com.idevicesinc.sweetblue.BleDeviceConfig;
+import com.idevicesinc.sweetblue.BleDeviceConfig.HistoricalDataLogFilter.PersistenceLevel;
+import com.idevicesinc.sweetblue.backend.historical.Backend_HistoricalDataList_InMemory;
+import com.idevicesinc.sweetblue.backend.historical.Backend_HistoricalDatabase_Segmented;
+import com.idevicesinc.sweetblue.utils.EpochTimeRange;
+import com.idevicesinc.sweetblue.utils.HistoricalData;
+import com.idevicesinc.sweetblue.utils.HistoricalDataColumn;
+import com.idevicesinc.sweetblue.utils.HistoricalDataQueryPlan;
+import com.idevicesinc.sweetblue.utils.HistoricalDataQueryPlan.Function;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+public class TestHistoricalDataQueryPlan {
+
+    private static final String MAC = "00:11:22:33:44:55";
+    private static final UUID UUID_1 = UUID.fromString("00002a37-0000-1000-8000-00805f9b34fb");
+
+    private static final BleDeviceConfig.HistoricalDataRollupDecoder DECODER = new BleDeviceConfig.HistoricalDataRollupDecoder() {
+        @Override public double decode(UUID charUuid, byte[] data) {
+            return data[0];
+        }
+    };
+
+    //--- Times 0, 10, ..., 990 with values 0, 1, ..., 99.
+    private static Backend_HistoricalDataList_InMemory newList() {
+        Backend_HistoricalDataList_InMemory list = new Backend_HistoricalDataList_InMemory();
+        list.init(null, null, "00:11:22:33:44:55", UUID_1, "", false);
+        for (int i = 0; i < 100; i++) {
+            list.add_single(new HistoricalData(new byte[]{(byte) i}, i * 10), PersistenceLevel.MEMORY, Long.MAX_VALUE);
+        }
+        return list;
+    }
+
+    @Test
+    public void rowsTest() {
+        EpochTimeRange range = new EpochTimeRange(200, 500);
+        HistoricalDataQueryPlan plan = new HistoricalDataQueryPlan(UUID_1, range, false, 5, 10, null, null);
+        Cursor cursor = plan.execute(newList(), null);
+
+        assertEquals(10, cursor.getCount());
+        int timeColumn = HistoricalDataColumn.EPOCH_TIME.getColumnIndex();
+        int dataColumn = HistoricalDataColumn.DATA.getColumnIndex();
+        for (int i = 0; i < 10; i++) {
+            assertTrue(cursor.moveToNext());
+            assertEquals(500 - (5 + i) * 10, cursor.getLong(timeColumn));
+            assertEquals(45 - i, cursor.getBlob(dataColumn)[0]);
+        }
+        assertFalse(cursor.moveToNext());
+        cursor.close();
+
+        assertEquals("SELECT * FROM t WHERE date BETWEEN 200 AND 500 ORDER BY date DESC LIMIT 10 OFFSET 5", plan.toSql("t"));
+    }
+
+    @Test
+    public void aggregateTest() {
+        Function[] functions = {Function.MIN, Function.MAX, Function.AVG, Function.MAX};
+        HistoricalDataColumn[] columns = {HistoricalDataColumn.EPOCH_TIME, HistoricalDataColumn.DATA, HistoricalDataColumn.DATA, HistoricalDataColumn.EPOCH_TIME};
+        HistoricalDataQueryPlan plan = new HistoricalDataQueryPlan(UUID_1, new EpochTimeRange(100, 190), true, 0, HistoricalDataQueryPlan.NO_LIMIT, functions, columns);
+
+        Cursor cursor = plan.execute(newList(), DECODER);
+        assertEquals(1, cursor.getCount());
+        assertTrue(cursor.moveToFirst());
+        assertEquals(100, cursor.getLong(0));
+        assertEquals(19.0, cursor.getDouble(1), 0.0);
+        assertEquals(14.5, cursor.getDouble(2), 0.0);
+        assertEquals(190, cursor.getLong(3));
+
+        //--- Without a decoder there's no way to aggregate blobs.
+        cursor = plan.execute(newList(), null);
+        assertTrue(cursor.moveToFirst());
+        assertFalse(cursor.isNull(0));
+        assertTrue(cursor.isNull(1));
+    }
+
+    @Test
+    public void unorderedBackendTest() {
+        File directory = new File(System.getProperty("java.io.tmpdir"), "sweetblue_test_" + System.nanoTime());
+        Backend_HistoricalDatabase_Segmented db = new Backend_HistoricalDatabase_Segmented(directory, 4096, Integer.MAX_VALUE);
+
+        //--- Segmented cursors come back in file order, which here isn't time order.
+        long[] times = {300, 100, 200, 500, 400};
+        for (int i = 0; i < times.length; i++) {
+            db.add_single(MAC, UUID_1, new HistoricalData(new byte[]{(byte) (times[i] / 100)}, times[i]), 0);
+        }
+
+        HistoricalDataQueryPlan plan = new HistoricalDataQueryPlan(UUID_1, EpochTimeRange.FROM_MIN_TO_MAX, false, 1, 3, null, null);
+        Cursor cursor = plan.execute(db, MAC, null);
+        assertEquals(3, cursor.getCount());
+        for (int i = 0; i < 3; i++) {
+            assertTrue(cursor.moveToNext());
+            assertEquals(400 - i * 100, cursor.getLong(HistoricalDataColumn.EPOCH_TIME.getColumnIndex()));
+            assertEquals(4 - i, cursor.getBlob(HistoricalDataColumn.DATA.getColumnIndex())[0]);
+        }
+        cursor.close();
+
+        Function[] functions = {Function.MIN, Function.MAX};
+        HistoricalDataColumn[] columns = {HistoricalDataColumn.EPOCH_TIME, HistoricalDataColumn.EPOCH_TIME};
+        plan = new HistoricalDataQueryPlan(UUID_1, EpochTimeRange.FROM_MIN_TO_MAX, true, 0, HistoricalDataQueryPlan.NO_LIMIT, functions, columns);
+        cursor = plan.execute(db, MAC, null);
+        assertTrue(cursor.moveToFirst());
+        assertEquals(100, cursor.getLong(0));
+        assertEquals(500, cursor.getLong(1));
+        cursor.close();
+
+        delete(directory);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,293 @@
+package com.idevicesinc.sweetblue.tests;
+
+import com.idevicesinc.sweetblue.BleDeviceConfig.HistoricalDataLogFilter.PersistenceLevel;
+import com.idevicesinc.sweetblue.backend.historical.Backend_HistoricalDataList;
+import com.idevicesinc.sweetblue.backend.historical.Backend_HistoricalDataList_ChunkedLoad;
+import com.idevicesinc.sweetblue.backend.historical.Backend_HistoricalDataList_Compressed;
+import com.idevicesinc.sweetblue.backend.historical.Backend_HistoricalDataList_InMemory;
+import com.idevicesinc.sweetblue.backend.historical.Backend_HistoricalDatabase_Segmented;
+import com.idevicesinc.sweetblue.utils.EpochTimeRange;
+import com.idevicesinc.sweetblue.utils.ForEach_Void;
+import com.idevicesinc.sweetblue.utils.HistoricalData;
+import com.idevicesinc.sweetblue.utils.HistoricalDataCursor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.UUID;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+public class TestHistoricalDatabaseSegmented {
+
+    private static final String MAC = "00:11:22:33:44:55";
+    private static final UUID UUID_1 = UUID.fromString("00002a37-0000-1000-8000-00805f9b34fb");
+
+    private File m_directory;
+
+    @Before
+    public void setUp() {
+        m_directory = new File(System.getProperty("java.io.tmpdir"), "sweetblue_test_" + System.nanoTime());
+    }
+
+    @After
+    public void tearDown() {
+        delete(m_directory);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private Backend_HistoricalDatabase_Segmented newDatabase(int maxSegmentSize, int maxSegmentCount) {
+        return new Backend_HistoricalDatabase_Segmented(m_directory, maxSegmentSize, maxSegmentCount);
+    }
+
+    private static ArrayList<HistoricalData> load(Backend_HistoricalDatabase_Segmented db, EpochTimeRange range) {
+        final ArrayList<HistoricalData> list = new ArrayList<HistoricalData>();
+        db.load(MAC, UUID_1, range, new ForEach_Void<HistoricalData>() {
+            @Override
+            public void next(HistoricalData next) {
+                list.add(next);
+            }
+        });
+        return list;
+    }
+
+    @Test
+    public void persistenceTest() {
+        Backend_HistoricalDatabase_Segmented db = newDatabase(512, Integer.MAX_VALUE);
+        assertFalse(db.doesDataExist(MAC, UUID_1));
+
+        for (int i = 0; i < 1000; i++) {
+            db.add_single(MAC, UUID_1, new HistoricalData(new byte[]{(byte) i, (byte) (i >> 8)}, 1000000L + i * 1000), 0);
+        }
+
+        //--- Reopening from scratch has to find the same data, partly from sealed index files and partly by scanning.
+        db = newDatabase(512, Integer.MAX_VALUE);
+        assertTrue(db.doesDataExist(MAC, UUID_1));
+        assertEquals(1000, db.getCount(MAC, UUID_1, EpochTimeRange.FROM_MIN_TO_MAX));
+
+        EpochTimeRange range = new EpochTimeRange(1000000L + 100 * 1000, 1000000L + 199 * 1000);
+        assertEquals(100, db.getCount(MAC, UUID_1, range));
+
+        ArrayList<HistoricalData> loaded = load(db, range);
+        assertEquals(100, loaded.size());
+        assertEquals(1000000L + 100 * 1000, loaded.get(0).getEpochTime_millis());
+        assertArrayEquals(new byte[]{(byte) 199, 0}, loaded.get(99).getBlob());
+    }
+
+    @Test
+    public void batchAndOutOfOrderTest() {
+        Backend_HistoricalDatabase_Segmented db = newDatabase(4096, Integer.MAX_VALUE);
+
+        db.add_multiple_start();
+        for (int i = 0; i < 200; i++) {
+            long time = i % 2 == 0 ? 5000 + i : 5000 - i;
+            db.add_multiple_next(MAC, UUID_1, new HistoricalData(new byte[]{(byte) i}, time));
+        }
+        db.add_multiple_end();
+
+        assertEquals(200, db.getCount(MAC, UUID_1, EpochTimeRange.FROM_MIN_TO_MAX));
+        assertEquals(100, db.getCount(MAC, UUID_1, new EpochTimeRange(5000, Long.MAX_VALUE)));
+        assertEquals(100, db.getCount(MAC, UUID_1, new EpochTimeRange(0, 4999)));
+    }
+
+    @Test
+    public void trimAndRetentionTest() {
+        Backend_HistoricalDatabase_Segmented db = newDatabase(256, 4);
+
+        for (int i = 0; i < 100; i++) {
+            db.add_single(MAC, UUID_1, new HistoricalData(new byte[8], i), i >= 50 ? 1 : 0);
+        }
+        assertEquals(50, db.getCount(MAC, UUID_1, EpochTimeRange.FROM_MIN_TO_MAX));
+        assertEquals(50, load(db, EpochTimeRange.FROM_MIN_TO_MAX).get(0).getEpochTime_millis());
+
+        for (int i = 100; i < 2000; i++) {
+            db.add_single(MAC, UUID_1, new HistoricalData(new byte[8], i), 0);
+        }
+        //--- Only the newest four segments are kept. Same blob at a steady rate compresses to 2 bytes a record, versus 10 uncompressed.
+        int count = db.getCount(MAC, UUID_1, EpochTimeRange.FROM_MIN_TO_MAX);
+        assertTrue(count > 4 * 256 / 10 && count <= 4 * 256 / 2);
+        assertEquals(1999, load(db, EpochTimeRange.FROM_MIN_TO_MAX).get(count - 1).getEpochTime_millis());
+    }
+
+    @Test
+    public void deleteTest() {
+        Backend_HistoricalDatabase_Segmented db = newDatabase(256, Integer.MAX_VALUE);
+
+        for (int i = 0; i < 300; i++) {
+            db.add_single(MAC, UUID_1, new HistoricalData(new byte[]{(byte) i}, i), 0);
+        }
+
+        db.delete_singleUuid_inRange(MAC, UUID_1, new EpochTimeRange(100, 199), Long.MAX_VALUE);
+        db.delete_singleUuid_singleDate(MAC, UUID_1, 250);
+        assertEquals(199, db.getCount(MAC, UUID_1, EpochTimeRange.FROM_MIN_TO_MAX));
+        assertEquals(0, db.getCount(MAC, UUID_1, new EpochTimeRange(100, 199)));
+
+        db = newDatabase(256, Integer.MAX_VALUE);
+        assertEquals(199, db.getCount(MAC, UUID_1, EpochTimeRange.FROM_MIN_TO_MAX));
+
+        db.delete_singleUuid_all(MAC, UUID_1);
+        assertFalse(db.doesDataExist(MAC, UUID_1));
+    }
+
+    private static void findSegments(File file, ArrayList<File> segments) {
+        File[] children = file.listFiles();
+        if (children == null) {
+            if (file.getName().endsWith(".seg")) {
+                segments.add(file);
+            }
+            return;
+        }
+        Arrays.sort(children);
+        for (File child : children) {
+            findSegments(child, segments);
+        }
+    }
+
+    @Test
+    public void leftoverRewriteTest() throws Exception {
+        Backend_HistoricalDatabase_Segmented db = newDatabase(256, Integer.MAX_VALUE);
+        for (int i = 0; i < 300; i++) {
+            db.add_single(MAC, UUID_1, new HistoricalData(new byte[]{(byte) i}, i), 0);
+        }
+
+        ArrayList<File> segments = new ArrayList<File>();
+        findSegments(m_directory, segments);
+        assertTrue(segments.size() >= 2);
+
+        //--- A rewrite interrupted before its rename leaves a partial temp file next to the intact original.
+        File partial = new File(segments.get(0).getPath() + ".tmp");
+        FileOutputStream out = new FileOutputStream(partial);
+        out.write(new byte[]{1, 2, 3});
+        out.close();
+
+        //--- One interrupted between deleting the original and renaming, as older versions did, leaves only the complete temp file.
+        File orphaned = new File(segments.get(1).getPath() + ".tmp");
+        assertTrue(segments.get(1).renameTo(orphaned));
+
+        db = newDatabase(256, Integer.MAX_VALUE);
+        assertEquals(300, db.getCount(MAC, UUID_1, EpochTimeRange.FROM_MIN_TO_MAX));
+        assertFalse(partial.exists());
+        assertFalse(orphaned.exists());
+        assertTrue(segments.get(1).exists());
+    }
+
+    @Test
+    public void expireTest() {
+        Backend_HistoricalDatabase_Segmented db = newDatabase(256, Integer.MAX_VALUE);
+        for (int i = 0; i < 1000; i++) {
+            db.add_single(MAC, UUID_1, new HistoricalData(new byte[]{(byte) i, (byte) (i >> 8)}, i * 10), 0);
+        }
+
+        //--- Only whole segments go, so some records just before the cutoff may survive, but never any after it.
+        db.expire_singleUuid(MAC, UUID_1, 5000);
+        int count = db.getCount(MAC, UUID_1, EpochTimeRange.FROM_MIN_TO_MAX);
+        assertTrue(count < 1000 && count >= 500);
+        assertEquals(500, db.getCount(MAC, UUID_1, new EpochTimeRange(5000, Long.MAX_VALUE)));
+
+        db.expire_singleUuid(MAC, UUID_1, Long.MAX_VALUE);
+        assertFalse(db.doesDataExist(MAC, UUID_1));
+
+        db.add_single(MAC, UUID_1, new HistoricalData(new byte[]{1}, 20000), 0);
+        assertEquals(1, db.getCount(MAC, UUID_1, EpochTimeRange.FROM_MIN_TO_MAX));
+    }
+
+    @Test
+    public void mappedCursorTest() {
+        Backend_HistoricalDatabase_Segmented db = newDatabase(512, Integer.MAX_VALUE);
+
+        for (int i = 0; i < 1000; i++) {
+            db.add_single(MAC, UUID_1, new HistoricalData(new byte[]{(byte) i, (byte) (i >> 8)}, i * 10), i >= 900 ? 1 : 0);
+        }
+
+        HistoricalDataCursor cursor = db.getCursor(MAC, UUID_1, new EpochTimeRange(1005, 5000));
+        assertEquals(400, cursor.getCount());
+        assertTrue(cursor.isBeforeFirst());
+
+        int count = 0;
+        while (cursor.moveToNext()) {
+            assertEquals(1010 + count * 10, cursor.getEpochTime());
+            count++;
+        }
+        assertEquals(400, count);
+        assertTrue(cursor.isAfterLast());
+
+        assertTrue(cursor.moveToPosition(250));
+        assertEquals(3510, cursor.getEpochTime());
+        assertArrayEquals(new byte[]{(byte) 351, (byte) (351 >> 8)}, cursor.getBlob());
+        assertTrue(cursor.moveToPrevious());
+        assertEquals(3500, cursor.getHistoricalData().getEpochTime_millis());
+
+        //--- The first 100 records were trimmed, which the cursor has to skip over.
+        cursor = db.getCursor(MAC, UUID_1, EpochTimeRange.FROM_MIN_TO_MAX);
+        assertEquals(900, cursor.getCount());
+        assertTrue(cursor.moveToFirst());
+        assertEquals(1000, cursor.getEpochTime());
+        assertTrue(cursor.moveToLast());
+        assertEquals(9990, cursor.getEpochTime());
+        cursor.close();
+    }
+
+    @Test
+    public void chunkedLoadTest() {
+        Backend_HistoricalDatabase_Segmented db = newDatabase(4096, Integer.MAX_VALUE);
+        for (int i = 0; i < 1000; i++) {
+            db.add_single(MAC, UUID_1, new HistoricalData(new byte[]{(byte) i}, i * 10), 0);
+        }
+
+        Backend_HistoricalDataList_ChunkedLoad[] lists = {new Backend_HistoricalDataList_InMemory(), new Backend_HistoricalDataList_Compressed()};
+        for (final Backend_HistoricalDataList_ChunkedLoad list : lists) {
+            list.init(db, null, MAC, UUID_1, "", true);
+
+            //--- Already in memory before the load, so the chunks have to merge around it rather than just go in front.
+            list.add_single(new HistoricalData(new byte[]{1}, 5000), PersistenceLevel.MEMORY, Long.MAX_VALUE);
+
+            final ArrayList<Long> oldestLoaded = new ArrayList<Long>();
+            final ArrayList<Integer> progress = new ArrayList<Integer>();
+            list.load(300, new Backend_HistoricalDataList.AsyncLoadProgressCallback() {
+                @Override
+                public void onProgress(int loadedCount, int totalCount) {
+                    assertEquals(1000, totalCount);
+                    progress.add(loadedCount);
+                    oldestLoaded.add(list.getRange().from().toMilliseconds());
+                }
+
+                @Override
+                public void onDone() {
+                    assertEquals(Backend_HistoricalDataList.LOAD_STATE__LOADED, list.getLoadState());
+                }
+            });
+
+            assertEquals(Arrays.asList(300, 600, 900, 1000), progress);
+            assertEquals(Arrays.asList(5000L, 4000L, 1000L, 0L), oldestLoaded);
+            assertEquals(1001, list.getCount(EpochTimeRange.FROM_MIN_TO_MAX));
+
+            Iterator<HistoricalData> iterator = list.getIterator(EpochTimeRange.FROM_MIN_TO_MAX);
+            long previous = Long.MIN_VALUE;
+            while (iterator.hasNext()) {
+                long time = iterator.next().getEpochTime_millis();
+                assertTrue(time >= previous);
+                previous = time;
+            }
+            assertEquals(123 * 10, list.get(new EpochTimeRange(1230, 1230), 0).getEpochTime_millis());
+            assertEquals(123, list.get(new EpochTimeRange(1230, 1230), 0).getBlob()[0]);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.idevicesinc.sweetblue.tests;
+
+import com.idevicesinc.sweetblue.utils.ScanFilterSpec;
+import com.idevicesinc.sweetblue.utils.Utils_ScanRecord;
+import org.junit.Test;
+
+import java.util.UUID;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+
+public class TestScanFilterSpec {
+
+    private static final UUID SERVICE = UUID.fromString("0000180d-0000-1000-8000-00805f9b34fb");
+
+    //--- Flags, then manufacturer data for company 0x004C followed by 0x02 0x15 0x7F.
+    private static final byte[] RECORD = {0x02, 0x01, 0x06, 0x06, (byte) 0xFF, 0x4C, 0x00, 0x02, 0x15, 0x7F, 0x00, 0x00};
+
+    @Test
+    public void manufacturerDataTest() {
+        assertArrayEquals(new byte[]{0x02, 0x15, 0x7F}, Utils_ScanRecord.parseManufacturerData(RECORD, 0x004C));
+        assertNull(Utils_ScanRecord.parseManufacturerData(RECORD, 0x0059));
+
+        assertTrue(ScanFilterSpec.ANY.withManufacturerId(0x004C).matches("00:11:22:33:44:55", null, RECORD));
+        assertTrue(ScanFilterSpec.ANY.withManufacturerData(0x004C, new byte[]{0x02, 0x10}, new byte[]{(byte) 0xFF, (byte) 0xF0}).matches("00:11:22:33:44:55", null, RECORD));
+        assertFalse(ScanFilterSpec.ANY.withManufacturerData(0x004C, new byte[]{0x02, 0x16}, null).matches("00:11:22:33:44:55", null, RECORD));
+    }
+
+    @Test
+    public void criteriaTest() {
+        ScanFilterSpec spec = ScanFilterSpec.ANY.withServiceUuid(SERVICE).withNamePrefix("HRM").withMacAddressRange("00:11:22:33:44:00", "00:11:22:33:44:ff");
+        byte[] services = {0x03, 0x03, 0x0D, 0x18};
+
+        assertTrue(spec.matches("00:11:22:33:44:55", "HRM-123", services));
+        assertFalse(spec.matches("00:11:22:33:45:00", "HRM-123", services));
+        assertFalse(spec.matches("00:11:22:33:44:55", "Watch", services));
+        assertFalse(spec.matches("00:11:22:33:44:55", "HRM-123", RECORD));
+        assertNull(spec.getMacAddress());
+        assertTrue("00:11:22:33:44:55".equalsIgnoreCase(spec.withMacAddress("00:11:22:33:44:55").getMacAddress()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nullMacAddressTest() {
+        ScanFilterSpec.ANY.withMacAddressRange("00:11:22:33:44:00", null);
+    }
+}
@@ -0,0 +1,55 @@
+package com.idevicesinc.sweetblue.tests;
+
+import com.idevicesinc.sweetblue.utils.ScanRecordView;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+
+public class TestScanRecordView {
+
+    private static final byte[] RECORD = {
+        0x02, 0x01, 0x06,                                                   // flags
+        0x05, 0x03, 0x0D, 0x18, (byte) 0xAA, (byte) 0xFE,                   // 16 bit uuids 0x180D and 0xFEAA
+        0x05, 0x05, 0x78, 0x56, 0x34, 0x12,                                 // 32 bit uuid 0x12345678
+        0x11, 0x07, 0x10, 0x0F, 0x0E, 0x0D, 0x0C, 0x0B, 0x0A, 0x09,         // 128 bit uuid
+                    0x08, 0x07, 0x06, 0x05, 0x04, 0x03, 0x02, 0x01,
+        0x04, 0x09, 0x48, 0x52, 0x4D,                                       // name "HRM"
+        0x02, 0x0A, (byte) 0xF4,                                            // tx power -12
+        0x05, 0x16, (byte) 0xAA, (byte) 0xFE, 0x10, 0x20,                   // service data for 0xFEAA
+        0x00, 0x00                                                          // padding
+    };
+
+    @Test
+    public void parseTest() {
+        ScanRecordView view = new ScanRecordView(RECORD);
+
+        assertEquals(7, view.getStructureCount());
+        assertEquals(0x06, view.getFlags());
+        assertEquals(-12, view.getTxPowerLevel());
+        assertEquals("HRM", view.getLocalName());
+        assertNull(view.getManufacturerData(0x004C));
+
+        List<UUID> uuids = view.getServiceUuids();
+        assertEquals(4, uuids.size());
+        assertEquals(UUID.fromString("0000180d-0000-1000-8000-00805f9b34fb"), uuids.get(0));
+        assertEquals(UUID.fromString("0000feaa-0000-1000-8000-00805f9b34fb"), uuids.get(1));
+        assertEquals(UUID.fromString("12345678-0000-1000-8000-00805f9b34fb"), uuids.get(2));
+        assertEquals(UUID.fromString("01020304-0506-0708-090a-0b0c0d0e0f10"), uuids.get(3));
+        assertSame(uuids.get(0), ScanRecordView.fromShortUuid(0x180D));
+
+        assertArrayEquals(new byte[]{0x10, 0x20}, view.getServiceData(uuids.get(1)));
+
+        view.reset(new byte[]{0x03, 0x01});
+        assertEquals(0, view.getStructureCount());
+        assertEquals(ScanRecordView.NOT_PRESENT, view.getFlags());
+        assertTrue(view.getServiceUuids().isEmpty());
+    }
+}